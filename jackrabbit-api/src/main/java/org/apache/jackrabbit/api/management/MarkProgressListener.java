@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.api.management;
+
+/**
+ * The listener interface for receiving the progress of a garbage collection
+ * scan. If the event listener of a garbage collector implements this
+ * interface, it is also called after every batch of nodes that was scanned
+ * through the persistence managers. The persistence managers may be scanned
+ * concurrently, so implementations must be thread-safe.
+ */
+public interface MarkProgressListener extends MarkEventListener {
+
+    /**
+     * This method is called after a batch of nodes of a persistence manager
+     * has been scanned.
+     *
+     * @param persistenceManager name of the persistence manager, which is
+     *                           the workspace name or "version"
+     * @param nodes number of nodes of the persistence manager scanned so far
+     * @param references number of references to binaries found since the
+     *                   scan was started or resumed
+     * @param nodesPerSecond scan throughput of the persistence manager
+     */
+    void afterBatch(String persistenceManager, long nodes, long references,
+            double nodesPerSecond);
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.api.query;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.query.Query;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The Jackrabbit query interface. This interface contains the
+ * Jackrabbit-specific extensions to the JCR {@link Query} interface.
+ */
+@ProviderType
+public interface JackrabbitQuery extends Query {
+
+    /**
+     * Sets the continuation token of a previous result of a query with the
+     * same statement. The result of this query then starts after the last
+     * result of the previous result. An offset is applied relative to that
+     * position.
+     *
+     * @param token a token returned by
+     *              {@link JackrabbitQueryResult#getContinuationToken()}, or
+     *              <code>null</code> to start at the first result.
+     * @throws UnsupportedRepositoryOperationException if this query does not
+     *                                                 support continuation.
+     * @throws RepositoryException if another error occurs.
+     */
+    void setContinuationToken(String token) throws RepositoryException;
+
+}
@@ -18,12 +18,15 @@ package org.apache.jackrabbit.api.query;
 
 import javax.jcr.query.QueryResult;
 
+import org.osgi.annotation.versioning.ProviderType;
+
 /**
  * The Jackrabbit query result interface. This interface contains the
  * Jackrabbit-specific extensions to the JCR {@link QueryResult} interface.
  *
  * @since Jackrabbit 2.6
  */
+@ProviderType
 public interface JackrabbitQueryResult extends QueryResult {
 
     /**
@@ -35,4 +38,20 @@ public interface JackrabbitQueryResult extends QueryResult {
      */
     int getTotalSize();
 
+    /**
+     * Returns an opaque token that continues this result. A query with the
+     * same statement and the token set through
+     * {@link JackrabbitQuery#setContinuationToken(String)} returns the
+     * results that follow the last result of this query result. Paging
+     * through a large result set with continuation tokens avoids skipping
+     * over all previous results again for each page.
+     * <p>
+     * A token is only available if a limit is set and this result is
+     * complete up to the limit.
+     *
+     * @return the continuation token, or <code>null</code> if there are no
+     *         further results or the result has no limit
+     */
+    String getContinuationToken();
+
 }
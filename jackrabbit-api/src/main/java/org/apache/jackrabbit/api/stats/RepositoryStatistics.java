@@ -120,7 +120,51 @@ public interface RepositoryStatistics {
          * This is the sum of all observation durations divided by the number
          * of observation events in the respective time period.
          */
-        OBSERVATION_EVENT_AVERAGE(true);
+        OBSERVATION_EVENT_AVERAGE(true),
+
+        /**
+         * Number of synchronizations of a cluster node with the journal.
+         */
+        CLUSTER_SYNC_COUNTER(true),
+
+        /**
+         * Total time spent synchronizing a cluster node with the journal
+         * in milli seconds.
+         */
+        CLUSTER_SYNC_DURATION(true),
+
+        /**
+         * Average time spent synchronizing a cluster node with the journal
+         * in milli seconds.
+         */
+        CLUSTER_SYNC_AVERAGE(false),
+
+        /**
+         * Number of journal revisions committed by other cluster nodes
+         * that have been announced by a revision notifier, but not yet
+         * been processed by this cluster node.
+         */
+        CLUSTER_REVISION_LAG(false),
+
+        /**
+         * Time in milli seconds between the commit of the last revision
+         * announced by another cluster node and its processing by this
+         * cluster node.
+         */
+        CLUSTER_REPLICATION_LAG(false),
+
+        /**
+         * Number of bundle and node reference lookups that were answered
+         * by the node id filter of the persistence manager, without
+         * accessing the persistent storage.
+         */
+        BUNDLE_NODE_ID_FILTER_HIT_COUNTER(true),
+
+        /**
+         * Number of bundle lookups that passed the node id filter of the
+         * persistence manager, but did not find a bundle.
+         */
+        BUNDLE_NODE_ID_FILTER_FALSE_POSITIVE_COUNTER(true);
 
         private final boolean resetValueEachSecond;
 
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.apache.jackrabbit.core.query.lucene.SearchIndex;
+
+/**
+ * In-memory repository used by the benchmarks that need a running
+ * repository. Content, bundles and search indexes are all kept in memory,
+ * the home directory only contains the configuration files.
+ */
+public class BenchmarkRepository {
+
+    private final File home;
+
+    private final RepositoryImpl repository;
+
+    private final Session session;
+
+    /**
+     * Starts a new repository in a temporary directory and logs in as
+     * administrator.
+     *
+     * @throws RepositoryException if the repository cannot be started
+     * @throws IOException if the home directory cannot be created
+     */
+    public BenchmarkRepository() throws RepositoryException, IOException {
+        home = File.createTempFile("jackrabbit-benchmark", "");
+        if (!home.delete() || !home.mkdir()) {
+            throw new IOException("Unable to create " + home);
+        }
+        InputStream xml = BenchmarkRepository.class.getResourceAsStream(
+                "benchmark-repository.xml");
+        try {
+            repository = RepositoryImpl.create(
+                    RepositoryConfig.create(xml, home.getPath()));
+        } finally {
+            xml.close();
+        }
+        session = repository.login(
+                new SimpleCredentials("admin", "admin".toCharArray()));
+    }
+
+    /**
+     * @return administrator session of the default workspace
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * @return the search index of the default workspace
+     * @throws RepositoryException if the search index is not available
+     */
+    public SearchIndex getSearchIndex() throws RepositoryException {
+        return (SearchIndex) repository.getSearchManager(
+                session.getWorkspace().getName()).getQueryHandler();
+    }
+
+    /**
+     * Creates a tree of <code>nt:unstructured</code> nodes named
+     * <code>n0</code>, <code>n1</code>, ... below the given node.
+     *
+     * @param parent parent node
+     * @param depth number of levels
+     * @param breadth number of child nodes per node
+     * @throws RepositoryException if the tree cannot be created
+     */
+    public void createTree(Node parent, int depth, int breadth)
+            throws RepositoryException {
+        if (depth > 0) {
+            for (int i = 0; i < breadth; i++) {
+                Node child = parent.addNode("n" + i, "nt:unstructured");
+                child.setProperty("value", i);
+                child.setProperty("text", "node " + i + " at level " + depth);
+                createTree(child, depth - 1, breadth);
+            }
+            parent.getSession().save();
+        }
+    }
+
+    /**
+     * Shuts down the repository and deletes the home directory.
+     */
+    public void shutdown() {
+        session.logout();
+        repository.shutdown();
+        FileUtils.deleteQuietly(home);
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Path resolution through the caching hierarchy manager of a session, in a
+ * tree of 5 levels with 5 child nodes each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CachingHierarchyManagerBenchmark {
+
+    private static final int DEPTH = 5;
+
+    private static final int BREADTH = 5;
+
+    private BenchmarkRepository repository;
+
+    private HierarchyManager hierarchyManager;
+
+    private String[] jcrPaths;
+
+    private Path[] paths;
+
+    private NodeId[] ids;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        repository = new BenchmarkRepository();
+        Session session = repository.getSession();
+        Node root = session.getRootNode().addNode("tree", "nt:unstructured");
+        repository.createTree(root, DEPTH, BREADTH);
+
+        SessionImpl sessionImpl = (SessionImpl) session;
+        hierarchyManager = sessionImpl.getHierarchyManager();
+        jcrPaths = new String[BREADTH * BREADTH];
+        paths = new Path[jcrPaths.length];
+        ids = new NodeId[jcrPaths.length];
+        for (int i = 0; i < jcrPaths.length; i++) {
+            StringBuilder builder = new StringBuilder("/tree");
+            for (int level = 0; level < DEPTH; level++) {
+                builder.append("/n").append((i + level) % BREADTH);
+            }
+            jcrPaths[i] = builder.toString();
+            paths[i] = sessionImpl.getQPath(jcrPaths[i]);
+            ids[i] = ((NodeImpl) session.getNode(jcrPaths[i])).getNodeId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        repository.shutdown();
+    }
+
+    private int next() {
+        next = (next + 1) % paths.length;
+        return next;
+    }
+
+    @Benchmark
+    public ItemId resolvePath() throws RepositoryException {
+        return hierarchyManager.resolveNodePath(paths[next()]);
+    }
+
+    @Benchmark
+    public Path getPath() throws RepositoryException {
+        return hierarchyManager.getPath(ids[next()]);
+    }
+
+    @Benchmark
+    public Node getNode() throws RepositoryException {
+        return repository.getSession().getNode(jcrPaths[next()]);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.NodeIdMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cache lookups and updates with the different cache policies. The cache is
+ * big enough for half of the keys, so both hits and misses with eviction
+ * are measured. The unsynchronized {@link NodeIdMap} is included as a
+ * baseline for the lookup cost. Run with <code>-t</code> to measure
+ * contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class ConcurrentCacheBenchmark {
+
+    private static final int KEYS = 100000;
+
+    @Param({ConcurrentCache.POLICY_LRU, ConcurrentCache.POLICY_CLOCK})
+    public String policy;
+
+    private KeyValueCache<NodeId, Object> cache;
+
+    private NodeIdMap<Object> map;
+
+    private NodeId[] ids;
+
+    private final Object value = new Object();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next = (int) (Math.random() * KEYS);
+
+        int next() {
+            next = (next + 1) % KEYS;
+            return next;
+        }
+
+    }
+
+    @Setup
+    public void setUp() {
+        ids = new NodeId[KEYS];
+        cache = ConcurrentCache.newInstance("benchmark", policy);
+        cache.setMaxMemorySize(KEYS / 2);
+        map = new NodeIdMap<Object>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            ids[i] = NodeId.randomId();
+            cache.put(ids[i], value, 1);
+            map.put(ids[i], value);
+        }
+    }
+
+    @Benchmark
+    public Object get(Cursor cursor) {
+        return cache.get(ids[cursor.next()]);
+    }
+
+    @Benchmark
+    public Object getOrPut(Cursor cursor) {
+        NodeId id = ids[cursor.next()];
+        Object v = cache.get(id);
+        if (v == null) {
+            cache.put(id, value, 1);
+        }
+        return v;
+    }
+
+    @Benchmark
+    public Object nodeIdMapGet(Cursor cursor) {
+        return map.get(ids[cursor.next()]);
+    }
+
+}
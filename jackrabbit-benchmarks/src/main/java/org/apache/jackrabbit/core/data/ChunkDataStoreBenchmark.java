@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Adds versions of an 8 MB binary that differ from the previous version by
+ * a few inserted bytes, and reads whole records and 64 kB ranges, with the
+ * {@link FileDataStore} and the {@link ChunkDataStore}. The bytes added
+ * and the bytes actually stored are reported as the <code>added</code> and
+ * <code>stored</code> counters of the add benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkDataStoreBenchmark {
+
+    private static final int LENGTH = 8 * 1024 * 1024;
+
+    private static final int RANGE = 64 * 1024;
+
+    @Param({ "file", "chunk" })
+    public String store;
+
+    private File home;
+
+    private DataStore ds;
+
+    private byte[] data;
+
+    private DataRecord record;
+
+    private final Random random = new Random(1);
+
+    /**
+     * Bytes added and stored by the add benchmark.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Storage {
+
+        public long added;
+
+        public long stored;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            added = 0;
+            stored = 0;
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        home = File.createTempFile("jackrabbit-benchmark", "");
+        if (!home.delete() || !home.mkdir()) {
+            throw new IOException("Unable to create " + home);
+        }
+        if ("chunk".equals(store)) {
+            ChunkDataStore cds = new ChunkDataStore();
+            cds.setPath(home.getPath());
+            ds = cds;
+        } else {
+            FileDataStore fds = new FileDataStore();
+            fds.setPath(home.getPath());
+            ds = fds;
+        }
+        ds.init(home.getPath());
+        data = new byte[LENGTH];
+        random.nextBytes(data);
+        record = ds.addRecord(new ByteArrayInputStream(data));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ds.close();
+        FileUtils.deleteQuietly(home);
+    }
+
+    @Benchmark
+    public DataRecord addModifiedVersion(Storage storage) throws Exception {
+        // insert a few bytes at a random position
+        int position = random.nextInt(data.length);
+        byte[] next = new byte[data.length + 8];
+        byte[] inserted = new byte[8];
+        random.nextBytes(inserted);
+        System.arraycopy(data, 0, next, 0, position);
+        System.arraycopy(inserted, 0, next, position, inserted.length);
+        System.arraycopy(data, position, next, position + 8, data.length - position);
+        data = next;
+        long before = FileUtils.sizeOfDirectory(home);
+        DataRecord added = ds.addRecord(new ByteArrayInputStream(data));
+        storage.added += data.length;
+        storage.stored += FileUtils.sizeOfDirectory(home) - before;
+        return added;
+    }
+
+    @Benchmark
+    public void readRecord(Blackhole blackhole) throws Exception {
+        InputStream in = record.getStream();
+        try {
+            byte[] buffer = new byte[RANGE];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                blackhole.consume(buffer);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public void readRange(Blackhole blackhole) throws Exception {
+        InputStream in = record.getStream();
+        try {
+            long offset = random.nextInt(LENGTH - RANGE);
+            if (in.skip(offset) != offset) {
+                throw new IOException("Unable to skip to " + offset);
+            }
+            byte[] buffer = new byte[RANGE];
+            int n = 0;
+            while (n < RANGE) {
+                n += in.read(buffer, n, RANGE - n);
+            }
+            blackhole.consume(buffer);
+        } finally {
+            in.close();
+        }
+    }
+
+}
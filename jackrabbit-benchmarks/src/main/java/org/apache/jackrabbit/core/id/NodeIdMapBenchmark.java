@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.id;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.collections.map.ReferenceMap;
+import org.apache.jackrabbit.core.cache.ConcurrentCache;
+import org.apache.jackrabbit.core.cache.KeyValueCache;
+import org.apache.jackrabbit.core.cache.NodeIdCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and updates of the maps used by the item state caches: the weak
+ * reference map formerly used by the <code>ItemStateReferenceCache</code>,
+ * the {@link ConcurrentCache} used by the <code>MLRUItemStateCache</code>,
+ * the {@link NodeIdCache} used by the bundle cache and the
+ * {@link NodeIdMap}. All keys are already contained in the map, so
+ * an update replaces an existing entry. Run with <code>-prof gc</code> to
+ * compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NodeIdMapBenchmark {
+
+    private static final int KEYS = 100000;
+
+    @Param({"ReferenceMap", "ConcurrentCache", "NodeIdCache", "NodeIdMap"})
+    public String map;
+
+    private final Object value = new Object();
+
+    private NodeId[] ids;
+
+    private Target target;
+
+    private int index;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        if ("ReferenceMap".equals(map)) {
+            final Map<NodeId, Object> referenceMap =
+                new ReferenceMap(ReferenceMap.HARD, ReferenceMap.WEAK);
+            target = new Target() {
+                public void put(NodeId id) {
+                    referenceMap.put(id, value);
+                }
+                public Object get(NodeId id) {
+                    return referenceMap.get(id);
+                }
+            };
+        } else if (map.endsWith("Cache")) {
+            final KeyValueCache<NodeId, Object> cache;
+            if ("ConcurrentCache".equals(map)) {
+                cache = new ConcurrentCache<NodeId, Object>("benchmark");
+            } else {
+                cache = new NodeIdCache<Object>("benchmark");
+            }
+            cache.setMaxMemorySize(Long.MAX_VALUE);
+            target = new Target() {
+                public void put(NodeId id) {
+                    cache.put(id, value, 1);
+                }
+                public Object get(NodeId id) {
+                    return cache.get(id);
+                }
+            };
+        } else {
+            final NodeIdMap<Object> nodeIdMap = new NodeIdMap<Object>();
+            target = new Target() {
+                public void put(NodeId id) {
+                    nodeIdMap.put(id, value);
+                }
+                public Object get(NodeId id) {
+                    return nodeIdMap.get(id);
+                }
+            };
+        }
+
+        ids = new NodeId[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            ids[i] = NodeId.randomId();
+            target.put(ids[i]);
+        }
+    }
+
+    @Benchmark
+    public Object get() {
+        return target.get(next());
+    }
+
+    @Benchmark
+    public void update() {
+        target.put(next());
+    }
+
+    private NodeId next() {
+        index = (index + 1) % KEYS;
+        return ids[index];
+    }
+
+    private interface Target {
+
+        void put(NodeId id);
+
+        Object get(NodeId id);
+
+    }
+
+}
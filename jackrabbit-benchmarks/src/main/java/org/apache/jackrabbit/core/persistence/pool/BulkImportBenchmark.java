@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.pool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.apache.jackrabbit.core.config.RepositoryConfigurationParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Saves 1000 new nodes with two properties each in a single change log,
+ * into a workspace stored in an embedded Derby database. A batch size of 1
+ * writes every bundle with its own statement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkImportBenchmark {
+
+    private static final int NODES = 1000;
+
+    @Param({ "1", "100" })
+    public int batchSize;
+
+    private File home;
+
+    private RepositoryImpl repository;
+
+    private Session session;
+
+    private Node root;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        home = File.createTempFile("jackrabbit-benchmark", "");
+        if (!home.delete() || !home.mkdir()) {
+            throw new IOException("Unable to create " + home);
+        }
+        Properties variables = new Properties();
+        variables.setProperty(
+                RepositoryConfigurationParser.REPOSITORY_HOME_VARIABLE,
+                home.getPath());
+        variables.setProperty("batchSize", String.valueOf(batchSize));
+        InputStream xml = BulkImportBenchmark.class.getResourceAsStream(
+                "bulk-import-repository.xml");
+        try {
+            repository = RepositoryImpl.create(RepositoryConfig.create(
+                    new InputSource(xml), variables));
+        } finally {
+            xml.close();
+        }
+        session = repository.login(
+                new SimpleCredentials("admin", "admin".toCharArray()));
+        root = session.getRootNode().addNode("import", "nt:unstructured");
+        session.save();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.logout();
+        repository.shutdown();
+        FileUtils.deleteQuietly(home);
+    }
+
+    @Benchmark
+    public void importNodes() throws Exception {
+        Node parent = root.addNode("p" + next++, "nt:unstructured");
+        for (int i = 0; i < NODES; i++) {
+            Node child = parent.addNode("n" + i, "nt:unstructured");
+            child.setProperty("value", i);
+            child.setProperty("text", "imported node " + i);
+        }
+        session.save();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization and deserialization of node bundles with a given number of
+ * child nodes and properties.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BundleBindingBenchmark {
+
+    @Param({"0", "10", "1000"})
+    public int childNodes;
+
+    @Param({"10"})
+    public int properties;
+
+    private BundleBinding binding;
+
+    private NodePropBundle bundle;
+
+    private byte[] serialized;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Setup
+    public void setUp() throws IOException {
+        HashMapIndex index = new HashMapIndex();
+        binding = new BundleBinding(
+                new ErrorHandling(), null, index, index, null);
+
+        NameFactory factory = NameFactoryImpl.getInstance();
+        NodeId id = NodeId.randomId();
+        bundle = new NodePropBundle(id);
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+        for (int i = 0; i < childNodes; i++) {
+            bundle.addChildNodeEntry(
+                    factory.create("", "child" + i), NodeId.randomId());
+        }
+        for (int i = 0; i < properties; i++) {
+            PropertyEntry property = new PropertyEntry(
+                    new PropertyId(id, factory.create("", "property" + i)));
+            switch (i % 3) {
+            case 0:
+                property.setType(PropertyType.STRING);
+                property.setValues(new InternalValue[] {
+                        InternalValue.create("value " + i) });
+                break;
+            case 1:
+                property.setType(PropertyType.LONG);
+                property.setValues(new InternalValue[] {
+                        InternalValue.create(i) });
+                break;
+            default:
+                property.setType(PropertyType.DATE);
+                property.setValues(new InternalValue[] {
+                        InternalValue.create(Calendar.getInstance()) });
+            }
+            property.setMultiValued(false);
+            bundle.addProperty(property);
+        }
+        serialized = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        buffer.reset();
+        binding.writeBundle(buffer, bundle);
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public NodePropBundle read() throws IOException {
+        return binding.readBundle(
+                new ByteArrayInputStream(serialized), bundle.getId());
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.core.BenchmarkRepository;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.spi.commons.query.QueryParser;
+import org.apache.jackrabbit.spi.commons.query.QueryRootNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Translation of XPath and SQL statements into Lucene queries, split into
+ * parsing the statement into a query tree and building the Lucene query
+ * from the tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LuceneQueryBuilderBenchmark {
+
+    @Param({
+        "xpath:/jcr:root/tree//element(*, nt:unstructured)[@value > 2 and jcr:contains(., 'level')] order by @value",
+        "xpath://*[@text = 'node 1 at level 1' or fn:lower-case(@text) = 'x']",
+        "sql:SELECT * FROM nt:unstructured WHERE jcr:path LIKE '/tree/%' AND value BETWEEN 1 AND 3 ORDER BY value"
+    })
+    public String query;
+
+    private BenchmarkRepository repository;
+
+    private SearchIndex index;
+
+    private SessionImpl session;
+
+    private String language;
+
+    private String statement;
+
+    private QueryRootNode root;
+
+    @Setup
+    public void setUp() throws Exception {
+        repository = new BenchmarkRepository();
+        repository.createTree(repository.getSession().getRootNode()
+                .addNode("tree", "nt:unstructured"), 3, 5);
+        index = repository.getSearchIndex();
+        session = (SessionImpl) repository.getSession();
+        int colon = query.indexOf(':');
+        language = query.startsWith("sql") ? Query.SQL : Query.XPATH;
+        statement = query.substring(colon + 1);
+        root = parse();
+    }
+
+    @TearDown
+    public void tearDown() {
+        repository.shutdown();
+    }
+
+    @Benchmark
+    public QueryRootNode parse() throws Exception {
+        return QueryParser.parse(statement, language, session,
+                index.getQueryNodeFactory());
+    }
+
+    @Benchmark
+    public org.apache.lucene.search.Query build() throws Exception {
+        return LuceneQueryBuilder.createQuery(root, session,
+                index.getContext().getItemStateManager(),
+                index.getNamespaceMappings(), index.getTextAnalyzer(),
+                index.getContext().getPropertyTypeRegistry(),
+                index.getSynonymProvider(), index.getIndexFormatVersion(),
+                new PerQueryCache());
+    }
+
+}
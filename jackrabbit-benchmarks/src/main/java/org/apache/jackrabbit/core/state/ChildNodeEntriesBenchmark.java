@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding, removing and looking up child node entries of a node with a given
+ * number of children.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChildNodeEntriesBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private ChildNodeEntries entries;
+
+    private Name[] names;
+
+    private NodeId[] ids;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        entries = new ChildNodeEntries();
+        names = new Name[size];
+        ids = new NodeId[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = NameFactoryImpl.getInstance().create("", "node" + i);
+            ids[i] = NodeId.randomId();
+            entries.add(names[i], ids[i]);
+        }
+    }
+
+    private int next() {
+        next = (next + 1) % size;
+        return next;
+    }
+
+    @Benchmark
+    public ChildNodeEntry getByName() {
+        return entries.get(names[next()], 1);
+    }
+
+    @Benchmark
+    public ChildNodeEntry getById() {
+        return entries.get(ids[next()]);
+    }
+
+    /**
+     * Removes an entry and adds it again at the end. Removing from the
+     * middle of the list is the expensive part.
+     */
+    @Benchmark
+    public ChildNodeEntry removeAndAdd() {
+        int i = next();
+        entries.remove(ids[i]);
+        return entries.add(names[i], ids[i]);
+    }
+
+    @Benchmark
+    public ChildNodeEntries copyOnWrite() {
+        ChildNodeEntries copy = (ChildNodeEntries) entries.clone();
+        copy.add(names[next()], NodeId.randomId());
+        return copy;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi.commons.name;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.NamespaceException;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.conversion.DefaultNamePathResolver;
+import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation and parsing of names and paths, in their internal and JCR
+ * string forms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NameFactoryBenchmark {
+
+    private static final String URI = "http://www.jcp.org/jcr/1.0";
+
+    private final NameFactory nameFactory = NameFactoryImpl.getInstance();
+
+    private final PathFactory pathFactory = PathFactoryImpl.getInstance();
+
+    private NamePathResolver resolver;
+
+    private String nameString;
+
+    private String pathString;
+
+    private String jcrPath;
+
+    @Setup
+    public void setUp() throws Exception {
+        resolver = new DefaultNamePathResolver(new NamespaceResolver() {
+            public String getURI(String prefix) throws NamespaceException {
+                if ("jcr".equals(prefix)) {
+                    return URI;
+                } else if ("".equals(prefix)) {
+                    return "";
+                }
+                throw new NamespaceException(prefix);
+            }
+            public String getPrefix(String uri) throws NamespaceException {
+                if (URI.equals(uri)) {
+                    return "jcr";
+                } else if ("".equals(uri)) {
+                    return "";
+                }
+                throw new NamespaceException(uri);
+            }
+        });
+        nameString = nameFactory.create(URI, "content").toString();
+        jcrPath = "/content/jcr:system/a/b[2]/c/jcr:content";
+        pathString = resolver.getQPath(jcrPath).toString();
+    }
+
+    @Benchmark
+    public Name createName() {
+        return nameFactory.create(URI, "content");
+    }
+
+    @Benchmark
+    public Name parseName() {
+        return nameFactory.create(nameString);
+    }
+
+    @Benchmark
+    public Name parseJcrName() throws Exception {
+        return resolver.getQName("jcr:content");
+    }
+
+    @Benchmark
+    public Path parsePath() {
+        return pathFactory.create(pathString);
+    }
+
+    @Benchmark
+    public Path parseJcrPath() throws Exception {
+        return resolver.getQPath(jcrPath);
+    }
+
+    @Benchmark
+    public String formatJcrPath() throws Exception {
+        return resolver.getJCRPath(pathFactory.create(pathString));
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi.commons.name;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in a {@link PathMap} filled with a tree of paths, as done by the
+ * caching hierarchy manager.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PathMapBenchmark {
+
+    @Param({"3", "8"})
+    public int depth;
+
+    private static final int BREADTH = 4;
+
+    private final PathFactory factory = PathFactoryImpl.getInstance();
+
+    private PathMap<String> map;
+
+    private Path[] paths;
+
+    private Path[] missing;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        map = new PathMap<String>();
+        paths = new Path[64];
+        missing = new Path[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            Path path = factory.getRootPath();
+            for (int level = 0; level < depth; level++) {
+                path = factory.create(path, NameFactoryImpl.getInstance()
+                        .create("", "n" + (i + level) % BREADTH), true);
+                map.put(path, path.toString());
+            }
+            paths[i] = path;
+            missing[i] = factory.create(path,
+                    NameFactoryImpl.getInstance().create("", "missing"), true);
+        }
+    }
+
+    private int next() {
+        next = (next + 1) % paths.length;
+        return next;
+    }
+
+    @Benchmark
+    public PathMap.Element<String> exact() {
+        return map.map(paths[next()], true);
+    }
+
+    @Benchmark
+    public PathMap.Element<String> closestAncestor() {
+        return map.map(missing[next()], false);
+    }
+
+}
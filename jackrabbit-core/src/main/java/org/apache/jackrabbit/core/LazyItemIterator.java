@@ -55,6 +55,12 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** Logger instance for this class */
     private static Logger log = LoggerFactory.getLogger(LazyItemIterator.class);
 
+    /**
+     * Number of child nodes that are loaded from the persistence manager
+     * in one batch when iterating over the children of a node.
+     */
+    private static final int PREFETCH_BATCH_SIZE = 100;
+
     /**
      * The session context used to access the repository.
      */
@@ -75,6 +81,9 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** prefetched item to be returned on <code>{@link #next()}</code> */
     private Item next;
 
+    /** the position up to which child node states have been prefetched */
+    private int prefetched;
+
     /**
      * Creates a new <code>LazyItemIterator</code> instance.
      *
@@ -104,6 +113,19 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
         prefetchNext();
     }
 
+    /**
+     * Loads the states of the next batch of child nodes with as few
+     * persistence manager round trips as possible.
+     */
+    private void prefetchChildNodeStates() {
+        prefetched = Math.min(pos + PREFETCH_BATCH_SIZE, idList.size());
+        List<NodeId> ids = new ArrayList<NodeId>(prefetched - pos);
+        for (ItemId id : idList.subList(pos, prefetched)) {
+            ids.add((NodeId) id);
+        }
+        sessionContext.getItemStateManager().prefetch(ids);
+    }
+
     /**
      * Prefetches next item.
      * <p>
@@ -114,6 +136,9 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
         // reset
         next = null;
         while (next == null && pos < idList.size()) {
+            if (parentId != null && pos >= prefetched) {
+                prefetchChildNodeStates();
+            }
             ItemId id = idList.get(pos);
             try {
                 if (parentId != null) {
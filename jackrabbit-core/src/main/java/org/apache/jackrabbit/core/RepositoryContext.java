@@ -18,7 +18,11 @@ package org.apache.jackrabbit.core;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.NoSuchWorkspaceException;
 import javax.jcr.RepositoryException;
@@ -31,6 +35,7 @@ import org.apache.jackrabbit.core.fs.FileSystem;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.NodeIdFactory;
 import org.apache.jackrabbit.core.nodetype.NodeTypeRegistry;
+import org.apache.jackrabbit.core.observation.ObservationDispatcher;
 import org.apache.jackrabbit.core.security.JackrabbitSecurityManager;
 import org.apache.jackrabbit.core.security.authorization.PrivilegeRegistry;
 import org.apache.jackrabbit.core.state.ItemStateCacheFactory;
@@ -115,6 +120,14 @@ public class RepositoryContext {
     private final ScheduledExecutorService executor =
             new JackrabbitThreadPool();
 
+    /**
+     * Thread pool that delivers observation events to the asynchronous
+     * listeners of all workspaces, or <code>null</code> if every workspace
+     * uses a notification thread of its own.
+     */
+    private final ExecutorService observationExecutor =
+            createObservationExecutor();
+
     /**
      * Repository statistics collector.
      */
@@ -197,6 +210,34 @@ public class RepositoryContext {
         return executor;
     }
 
+    /**
+     * Returns the thread pool that delivers observation events with a queue
+     * per listener.
+     *
+     * @return observation thread pool, or <code>null</code> if every
+     *         workspace uses a notification thread of its own
+     * @see ObservationDispatcher#OBSERVATION_THREADS
+     */
+    public ExecutorService getObservationExecutor() {
+        return observationExecutor;
+    }
+
+    private static ExecutorService createObservationExecutor() {
+        if (ObservationDispatcher.OBSERVATION_THREADS <= 0) {
+            return null;
+        }
+        final AtomicInteger counter = new AtomicInteger(1);
+        return Executors.newFixedThreadPool(
+                ObservationDispatcher.OBSERVATION_THREADS, new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "ObservationManager-" + counter.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
     /**
      * Returns the namespace registry of this repository.
      *
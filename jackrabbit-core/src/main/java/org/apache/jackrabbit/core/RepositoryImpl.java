@@ -57,12 +57,14 @@ import org.apache.jackrabbit.api.management.RepositoryManager;
 import org.apache.jackrabbit.api.security.authentication.token.TokenCredentials;
 import org.apache.jackrabbit.commons.AbstractRepository;
 import org.apache.jackrabbit.core.cache.CacheManager;
+import org.apache.jackrabbit.core.cluster.BatchUpdateEventListener;
+import org.apache.jackrabbit.core.cluster.ChangeLogRecord;
+import org.apache.jackrabbit.core.cluster.Checkpoint;
 import org.apache.jackrabbit.core.cluster.ClusterContext;
 import org.apache.jackrabbit.core.cluster.ClusterException;
 import org.apache.jackrabbit.core.cluster.ClusterNode;
 import org.apache.jackrabbit.core.cluster.LockEventChannel;
 import org.apache.jackrabbit.core.cluster.UpdateEventChannel;
-import org.apache.jackrabbit.core.cluster.UpdateEventListener;
 import org.apache.jackrabbit.core.cluster.WorkspaceEventChannel;
 import org.apache.jackrabbit.core.cluster.WorkspaceListener;
 import org.apache.jackrabbit.core.config.ClusterConfig;
@@ -665,6 +667,7 @@ public class RepositoryImpl extends AbstractRepository
     protected ClusterNode createClusterNode() throws RepositoryException {
         try {
             ClusterNode clusterNode = new ClusterNode();
+            clusterNode.setRepositoryStatistics(context.getRepositoryStatistics());
             clusterNode.init(new ExternalEventListener());
             return clusterNode;
         } catch (Exception e) {
@@ -1165,6 +1168,12 @@ public class RepositoryImpl extends AbstractRepository
         // wake up threads waiting on this instance's monitor (e.g. workspace janitor)
         notifyAll();
 
+        // Shut down the observation thread pool, all workspaces have
+        // delivered their pending events when they were disposed
+        if (context.getObservationExecutor() != null) {
+            context.getObservationExecutor().shutdown();
+        }
+
         // Shut down the executor service
         ScheduledExecutorService executor = context.getExecutor();
         executor.shutdown();
@@ -1372,7 +1381,9 @@ public class RepositoryImpl extends AbstractRepository
                     context.getNamespaceRegistry(),
                     context.getNodeTypeRegistry(),
                     context.getDataStore(),
-                    context.getRepositoryStatistics());
+                    context.getRepositoryStatistics(),
+                    context.getClusterNode() != null,
+                    context.getExecutor());
             pm.init(pmContext);
             return pm;
         } catch (Exception e) {
@@ -1649,7 +1660,7 @@ public class RepositoryImpl extends AbstractRepository
      * representing the same named workspace, i.e. the same physical
      * storage.
      */
-    public class WorkspaceInfo implements UpdateEventListener {
+    public class WorkspaceInfo implements BatchUpdateEventListener {
 
         /**
          * workspace configuration (passed in constructor)
@@ -2085,7 +2096,8 @@ public class RepositoryImpl extends AbstractRepository
                 throw new RepositoryException(msg, ise);
             }
 
-            dispatcher = new ObservationDispatcher();
+            dispatcher = new ObservationDispatcher(
+                    context.getObservationExecutor(), context.getExecutor());
 
             // register the observation factory of that workspace
             delegatingDispatcher.addDispatcher(dispatcher);
@@ -2303,7 +2315,7 @@ public class RepositoryImpl extends AbstractRepository
             xaLock.release();
         }
 
-        //----------------------------------------------< UpdateEventListener >
+        //-----------------------------------------< BatchUpdateEventListener >
 
         /**
          * {@inheritDoc}
@@ -2313,19 +2325,44 @@ public class RepositoryImpl extends AbstractRepository
                                    long timestamp,
                                    String userData) throws RepositoryException {
             try {
-                EventStateCollection esc = new EventStateCollection(
-                        getObservationDispatcher(), null, null);
-                esc.setUserData(userData);
-                esc.addAll(events);
-                esc.setTimestamp(timestamp);
+                getItemStateProvider().externalUpdate(external,
+                        createEventStateCollection(events, timestamp, userData));
+            } catch (IllegalStateException e) {
+                String msg = "Unable to deliver events: " + e.getMessage();
+                throw new RepositoryException(msg, e);
+            }
+        }
 
-                getItemStateProvider().externalUpdate(external, esc);
+        /**
+         * {@inheritDoc}
+         */
+        public void externalUpdate(ChangeLog external,
+                                   List<ChangeLogRecord> records)
+                throws RepositoryException {
+            try {
+                List<EventStateCollection> events =
+                    new ArrayList<EventStateCollection>(records.size());
+                for (ChangeLogRecord record : records) {
+                    events.add(createEventStateCollection(record.getEvents(),
+                            record.getTimestamp(), record.getUserData()));
+                }
+                getItemStateProvider().externalUpdate(external, events);
             } catch (IllegalStateException e) {
                 String msg = "Unable to deliver events: " + e.getMessage();
                 throw new RepositoryException(msg, e);
             }
         }
 
+        private EventStateCollection createEventStateCollection(
+                List<EventState> events, long timestamp, String userData) {
+            EventStateCollection esc = new EventStateCollection(
+                    getObservationDispatcher(), null, null);
+            esc.setUserData(userData);
+            esc.addAll(events);
+            esc.setTimestamp(timestamp);
+            return esc;
+        }
+
     }
 
     /**
@@ -2452,6 +2489,54 @@ public class RepositoryImpl extends AbstractRepository
             getWorkspaceInfo(workspace).getLockManager();
         }
 
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Waits for the updates in progress of all workspaces, so that the
+         * search indexes include the changes up to the current revision.
+         * Workspaces that are not active are skipped, their indexes are
+         * re-created on cluster nodes that restore the checkpoint.
+         */
+        public void snapshotIndexes(File dir) throws RepositoryException {
+            List<WorkspaceInfo> infos;
+            synchronized (wspInfos) {
+                infos = new ArrayList<WorkspaceInfo>(wspInfos.values());
+            }
+            List<WorkspaceInfo> active = new ArrayList<WorkspaceInfo>();
+            try {
+                context.getInternalVersionManager().waitForUpdates();
+                for (WorkspaceInfo info : infos) {
+                    if (info.isInitialized()) {
+                        info.getItemStateProvider().waitForUpdates();
+                        active.add(info);
+                    }
+                }
+            } catch (ItemStateException e) {
+                throw new RepositoryException(
+                        "Unable to wait for updates in progress", e);
+            }
+
+            try {
+                if (systemSearchMgr != null) {
+                    systemSearchMgr.snapshot(
+                            new File(dir, Checkpoint.getIndexName(null)));
+                }
+                for (WorkspaceInfo info : active) {
+                    SearchManager searchMgr;
+                    synchronized (info) {
+                        searchMgr = info.searchMgr;
+                    }
+                    if (searchMgr != null) {
+                        searchMgr.snapshot(new File(
+                                dir, Checkpoint.getIndexName(info.getName())));
+                    }
+                }
+            } catch (IOException e) {
+                throw new RepositoryException(
+                        "Unable to copy search indexes", e);
+            }
+        }
+
     }
 
     /**
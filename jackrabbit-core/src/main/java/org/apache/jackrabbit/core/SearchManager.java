@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.core;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -44,6 +45,7 @@ import org.apache.jackrabbit.core.query.QueryHandler;
 import org.apache.jackrabbit.core.query.QueryHandlerContext;
 import org.apache.jackrabbit.core.query.QueryHandlerFactory;
 import org.apache.jackrabbit.core.query.QueryObjectModelImpl;
+import org.apache.jackrabbit.core.query.lucene.SearchIndex;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.NodeState;
@@ -304,6 +306,23 @@ public class SearchManager implements SynchronousEventListener {
 
     }
 
+    /**
+     * Copies the search index to a local directory, for a checkpoint of the
+     * cluster.
+     *
+     * @param dir local directory
+     * @return <code>false</code> if the query handler does not support
+     *         copies of its index
+     * @throws IOException if the index can not be copied
+     */
+    public boolean snapshot(File dir) throws IOException {
+        if (handler instanceof SearchIndex) {
+            ((SearchIndex) handler).snapshot(dir);
+            return true;
+        }
+        return false;
+    }
+
     //------------------------< for testing only >------------------------------
 
     /**
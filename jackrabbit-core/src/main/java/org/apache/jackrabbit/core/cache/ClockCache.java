@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent cache implementation that uses a frequency-aware CLOCK
+ * algorithm instead of per-segment LRU lists. Cache hits only bump a small
+ * saturating frequency counter on the cache entry, so the read path never
+ * takes a lock nor modifies any shared data structure.
+ * <p>
+ * New entries are first added to a small probation queue. When the cache
+ * is too big, entries leaving the probation queue are evicted unless they
+ * have been accessed in the meantime, in which case they are moved to the
+ * main clock. The main clock hand gives accessed entries another round
+ * (decrementing their frequency) and evicts the others. This way items that
+ * are read only once, for example during a large traversal, do not push
+ * frequently used items out of the cache.
+ * <p>
+ * The cache takes part in the memory distribution of the
+ * {@link CacheManager} just like the {@link ConcurrentCache}. None of the
+ * methods of this class are synchronized, but they are all thread-safe.
+ * Only eviction is serialized, and only among writers.
+ */
+public class ClockCache<K, V> extends AbstractCache
+        implements KeyValueCache<K, V> {
+
+    /**
+     * Maximum frequency an entry can reach. Limits the number of clock
+     * passes an idle entry can survive after having been hot.
+     */
+    private static final int MAX_FREQUENCY = 3;
+
+    /**
+     * The probation queue is drained first while it is larger than this
+     * fraction of the maximum cache size.
+     */
+    private static final int PROBATION_RATIO = 10;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<E> FREQUENCY =
+        AtomicIntegerFieldUpdater.newUpdater(E.class, "frequency");
+
+    private static class E<K, V> {
+
+        private final K key;
+
+        private final V value;
+
+        private final long size;
+
+        /**
+         * Saturating access counter, between 0 and {@link #MAX_FREQUENCY}.
+         * Readers increment it with a single compare-and-set attempt, so
+         * concurrent hits may be counted only once, which only affects the
+         * eviction order. Only the eviction process decrements it. Not
+         * private, as the field updater needs access to it.
+         */
+        volatile int frequency;
+
+        /**
+         * Set once the entry is no longer mapped in the cache, so that
+         * the clock hand can drop it.
+         */
+        private volatile boolean removed;
+
+        public E(K key, V value, long size) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+        }
+
+    }
+
+    private final String name;
+
+    private final ConcurrentHashMap<K, E<K, V>> map;
+
+    /**
+     * Entries that have been added to the cache but not yet been reached by
+     * the eviction process, in insertion order. Possibly also contains some
+     * removed entries that have not yet been dropped.
+     */
+    private final ConcurrentLinkedQueue<E<K, V>> probation =
+        new ConcurrentLinkedQueue<E<K, V>>();
+
+    /**
+     * The estimated size of the entries in the {@link #probation} queue.
+     */
+    private final AtomicLong probationSize = new AtomicLong();
+
+    /**
+     * The main clock, containing entries that have been accessed while in
+     * the {@link #probation} queue. Possibly also contains some removed
+     * entries that have not yet been dropped.
+     */
+    private final ConcurrentLinkedQueue<E<K, V>> clock =
+        new ConcurrentLinkedQueue<E<K, V>>();
+
+    /**
+     * Number of removed entries still present in the queues.
+     */
+    private final AtomicInteger removedInQueues = new AtomicInteger();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public ClockCache(String name, int concurrencyLevel) {
+        this.name = name;
+        this.map = new ConcurrentHashMap<K, E<K, V>>(
+                16, 0.75f, Math.max(1, concurrencyLevel));
+    }
+
+    public ClockCache(String name) {
+        this(name, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Checks if the identified entry is cached.
+     *
+     * @param key entry key
+     * @return <code>true</code> if the entry is cached,
+     *         <code>false</code> otherwise
+     */
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Returns the identified cache entry.
+     *
+     * @param key entry key
+     * @return entry value, or <code>null</code> if not found
+     */
+    public V get(K key) {
+        recordCacheAccess();
+
+        E<K, V> entry = map.get(key);
+        if (entry != null) {
+            int frequency = entry.frequency;
+            if (frequency < MAX_FREQUENCY) {
+                FREQUENCY.compareAndSet(entry, frequency, frequency + 1);
+            }
+            return entry.value;
+        }
+        recordCacheMiss();
+        return null;
+    }
+
+    /**
+     * Returns all values in the cache. Only guaranteed to return accurate
+     * results when there are no concurrent threads modifying the cache.
+     *
+     * @return cached values
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(map.size());
+        for (E<K, V> entry : map.values()) {
+            values.add(entry.value);
+        }
+        return values;
+    }
+
+    /**
+     * Adds the given entry to the cache.
+     *
+     * @param key entry key
+     * @param value entry value
+     * @param size entry size
+     * @return the previous value, or <code>null</code>
+     */
+    public V put(K key, V value, long size) {
+        E<K, V> entry = new E<K, V>(key, value, size);
+        recordSizeChange(size);
+        E<K, V> previous = map.put(key, entry);
+        probationSize.addAndGet(size);
+        probation.add(entry);
+
+        if (previous != null) {
+            // keep the frequency of an entry that gets updated
+            entry.frequency = previous.frequency;
+            markRemoved(previous);
+            shrinkIfNeeded();
+            return previous.value;
+        } else {
+            shrinkIfNeeded();
+            return null;
+        }
+    }
+
+    /**
+     * Removes the identified entry from the cache.
+     *
+     * @param key entry key
+     * @return removed entry, or <code>null</code> if not found
+     */
+    public V remove(K key) {
+        E<K, V> entry = map.remove(key);
+        if (entry != null) {
+            markRemoved(entry);
+            return entry.value;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Clears the cache. May return with a non-empty cache if other threads
+     * have concurrently been adding new entries.
+     */
+    public void clear() {
+        for (E<K, V> entry : map.values()) {
+            if (map.remove(entry.key, entry)) {
+                markRemoved(entry);
+            }
+        }
+        purgeRemovedEntries();
+    }
+
+    /**
+     * Checks if the cache size is zero.
+     */
+    public boolean isEmpty() {
+        return getMemoryUsed() == 0;
+    }
+
+    /**
+     * Sets the maximum size of the cache and evicts any excess items until
+     * the current size falls within the given limit.
+     */
+    @Override
+    public void setMaxMemorySize(long size) {
+        super.setMaxMemorySize(size);
+        shrinkIfNeeded();
+    }
+
+    public long getElementCount() {
+        return map.size();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + getClass().getSimpleName() + "@"
+                + Integer.toHexString(hashCode()) + "]";
+    }
+
+    /**
+     * Accounts for an entry that has been removed from the map. The entry
+     * stays queued until the eviction process reaches it or until too many
+     * removed entries have accumulated.
+     */
+    private void markRemoved(E<K, V> entry) {
+        entry.removed = true;
+        recordSizeChange(-entry.size);
+        if (removedInQueues.incrementAndGet() > map.size() + 16) {
+            purgeRemovedEntries();
+        }
+    }
+
+    /**
+     * Drops all removed entries from the queues. Needed when entries are
+     * replaced or removed faster than they get evicted, which is the normal
+     * case for a cache that is not full.
+     */
+    private void purgeRemovedEntries() {
+        if (evictionLock.tryLock()) {
+            try {
+                purgeRemovedEntries(probation, true);
+                purgeRemovedEntries(clock, false);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void purgeRemovedEntries(
+            ConcurrentLinkedQueue<E<K, V>> queue, boolean inProbation) {
+        Iterator<E<K, V>> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            E<K, V> entry = iterator.next();
+            if (entry.removed) {
+                iterator.remove();
+                removedInQueues.decrementAndGet();
+                if (inProbation) {
+                    probationSize.addAndGet(-entry.size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts entries until the cache is small enough. Entries are taken from
+     * the probation queue as long as it uses more than a fixed fraction of
+     * the cache, and from the main clock otherwise. Each full turn of the
+     * main clock decrements the frequency of every entry in it, so the loop
+     * terminates after at most {@link #MAX_FREQUENCY} + 1 turns.
+     */
+    private void shrinkIfNeeded() {
+        if (!isTooBig()) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            while (isTooBig()) {
+                E<K, V> entry = null;
+                boolean inProbation = clock.isEmpty()
+                    || probationSize.get() > getMaxMemorySize() / PROBATION_RATIO;
+                if (inProbation) {
+                    entry = probation.poll();
+                }
+                if (entry == null) {
+                    inProbation = false;
+                    entry = clock.poll();
+                }
+                if (entry == null) {
+                    // the size includes entries not yet added to the queues
+                    break;
+                }
+
+                if (inProbation) {
+                    probationSize.addAndGet(-entry.size);
+                }
+                if (entry.removed) {
+                    removedInQueues.decrementAndGet();
+                } else if (entry.frequency > 0) {
+                    FREQUENCY.decrementAndGet(entry);
+                    clock.add(entry);
+                } else if (map.remove(entry.key, entry)) {
+                    entry.removed = true;
+                    recordSizeChange(-entry.size);
+                } else {
+                    // concurrently replaced or removed, and already accounted
+                    // for, but not yet flagged
+                    removedInQueues.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+}
@@ -29,7 +29,8 @@ import java.util.Map;
  * eviction algorithm similar but not exactly the same as LRU. None of the
  * methods of this class are synchronized, but they are all thread-safe.
  */
-public class ConcurrentCache<K, V> extends AbstractCache {
+public class ConcurrentCache<K, V> extends AbstractCache
+        implements KeyValueCache<K, V> {
 
     /**
      * Default number of cache segments to use. Use the number of available
@@ -44,6 +45,23 @@ public class ConcurrentCache<K, V> extends AbstractCache {
     private static int DEFAULT_NUMBER_OF_SEGMENTS =
         Runtime.getRuntime().availableProcessors();
 
+    /**
+     * Name of the system property that selects the cache implementation used
+     * by caches that are not explicitly configured otherwise.
+     */
+    public static final String POLICY_PROPERTY =
+        "org.apache.jackrabbit.cachePolicy";
+
+    /**
+     * Policy name of the segmented LRU cache implemented by this class.
+     */
+    public static final String POLICY_LRU = "lru";
+
+    /**
+     * Policy name of the lock-free {@link ClockCache}.
+     */
+    public static final String POLICY_CLOCK = "clock";
+
     private static class E<V> {
 
         private final V value;
@@ -83,6 +101,37 @@ public class ConcurrentCache<K, V> extends AbstractCache {
         this(name, DEFAULT_NUMBER_OF_SEGMENTS);
     }
 
+    /**
+     * Returns the cache policy configured through the
+     * {@link #POLICY_PROPERTY} system property, or {@link #POLICY_LRU}
+     * if the property is not set.
+     *
+     * @return cache policy name
+     */
+    public static String getDefaultPolicy() {
+        return System.getProperty(POLICY_PROPERTY, POLICY_LRU);
+    }
+
+    /**
+     * Creates a new cache that uses the given eviction policy.
+     *
+     * @param name cache name
+     * @param policy {@link #POLICY_LRU} or {@link #POLICY_CLOCK}
+     * @return new cache instance
+     * @throws IllegalArgumentException if the policy is not known
+     */
+    public static <K, V> KeyValueCache<K, V> newInstance(
+            String name, String policy) {
+        if (POLICY_LRU.equalsIgnoreCase(policy)) {
+            return new ConcurrentCache<K, V>(name);
+        } else if (POLICY_CLOCK.equalsIgnoreCase(policy)) {
+            return new ClockCache<K, V>(name);
+        } else {
+            throw new IllegalArgumentException(
+                    "Unknown cache policy: " + policy);
+        }
+    }
+
     /**
      * Returns the cache segment for the given entry key. The segment is
      * selected based on the hash code of the key, after a transformation
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.List;
+
+/**
+ * A managed {@link Cache} of key-value pairs with an estimated size per
+ * entry. Implementations evict entries according to their own policy
+ * whenever the estimated memory use exceeds the size allocated by the
+ * {@link CacheManager}, and must be thread-safe.
+ *
+ * @see ConcurrentCache#newInstance(String, String)
+ */
+public interface KeyValueCache<K, V> extends Cache {
+
+    /**
+     * Checks if the identified entry is cached.
+     *
+     * @param key entry key
+     * @return <code>true</code> if the entry is cached,
+     *         <code>false</code> otherwise
+     */
+    boolean containsKey(K key);
+
+    /**
+     * Returns the identified cache entry.
+     *
+     * @param key entry key
+     * @return entry value, or <code>null</code> if not found
+     */
+    V get(K key);
+
+    /**
+     * Returns all values in the cache. Only guaranteed to return accurate
+     * results when there are no concurrent threads modifying the cache.
+     *
+     * @return cached values
+     */
+    List<V> values();
+
+    /**
+     * Adds the given entry to the cache.
+     *
+     * @param key entry key
+     * @param value entry value
+     * @param size entry size
+     * @return the previous value, or <code>null</code>
+     */
+    V put(K key, V value, long size);
+
+    /**
+     * Removes the identified entry from the cache.
+     *
+     * @param key entry key
+     * @return removed entry, or <code>null</code> if not found
+     */
+    V remove(K key);
+
+    /**
+     * Removes all entries from the cache.
+     */
+    void clear();
+
+    /**
+     * Checks if the cache size is zero.
+     */
+    boolean isEmpty();
+
+    /**
+     * Informs the access listener, if any, that the cache is no longer
+     * used.
+     */
+    void dispose();
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.NodeIdMap;
+
+/**
+ * Segmented LRU cache keyed by node identifiers. It evicts entries just like
+ * the {@link ConcurrentCache}, but each cache segment keeps its entries in a
+ * {@link NodeIdMap} and links them into an access ordered list itself. So a
+ * cached entry costs a single object, the node id used as key is not
+ * retained, and lookups do not allocate anything. None of the methods of
+ * this class are synchronized, but they are all thread-safe.
+ */
+public class NodeIdCache<V> extends AbstractCache
+        implements KeyValueCache<NodeId, V> {
+
+    private static class E<V> {
+
+        private final long msb;
+
+        private final long lsb;
+
+        private final V value;
+
+        private final long size;
+
+        /** the previous entry in access order */
+        private E<V> before;
+
+        /** the next entry in access order */
+        private E<V> after;
+
+        public E(long msb, long lsb, V value, long size) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.value = value;
+            this.size = size;
+        }
+
+    }
+
+    private static class Segment<V> {
+
+        private final NodeIdMap<E<V>> map = new NodeIdMap<E<V>>();
+
+        /**
+         * Header of the circular list of entries in access order. The entry
+         * after the header is the least recently used one.
+         */
+        private final E<V> header = new E<V>(0, 0, null, 0);
+
+        public Segment() {
+            header.before = header;
+            header.after = header;
+        }
+
+        /**
+         * Makes the given entry the most recently used one.
+         */
+        private void link(E<V> entry) {
+            entry.after = header;
+            entry.before = header.before;
+            entry.before.after = entry;
+            header.before = entry;
+        }
+
+        private void unlink(E<V> entry) {
+            entry.before.after = entry.after;
+            entry.after.before = entry.before;
+            entry.before = null;
+            entry.after = null;
+        }
+
+    }
+
+    private final String name;
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public NodeIdCache(String name, int numberOfSegments) {
+        this.name = name;
+        this.segments = new Segment[numberOfSegments];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment<V>();
+        }
+    }
+
+    public NodeIdCache(String name) {
+        this(name, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the cache segment for the given node id, selected in the same
+     * way as in {@link ConcurrentCache}.
+     *
+     * @param id node id
+     * @return cache segment
+     */
+    private Segment<V> getSegment(NodeId id) {
+        return segments[(id.hashCode() >>> 1) % segments.length];
+    }
+
+    /**
+     * Checks if the identified entry is cached.
+     *
+     * @param id node id
+     * @return <code>true</code> if the entry is cached,
+     *         <code>false</code> otherwise
+     */
+    public boolean containsKey(NodeId id) {
+        Segment<V> segment = getSegment(id);
+        synchronized (segment) {
+            return segment.map.containsKey(id);
+        }
+    }
+
+    /**
+     * Returns the identified cache entry.
+     *
+     * @param id node id
+     * @return entry value, or <code>null</code> if not found
+     */
+    public V get(NodeId id) {
+        recordCacheAccess();
+
+        Segment<V> segment = getSegment(id);
+        synchronized (segment) {
+            E<V> entry = segment.map.get(id);
+            if (entry != null) {
+                segment.unlink(entry);
+                segment.link(entry);
+                return entry.value;
+            }
+        }
+        recordCacheMiss();
+        return null;
+    }
+
+    /**
+     * Returns all values in the cache. Only guaranteed to return accurate
+     * results when there are no concurrent threads modifying the cache.
+     *
+     * @return cached values
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>();
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                for (E<V> entry : segment.map.values()) {
+                    values.add(entry.value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adds the given entry to the cache. Evicts the least recently used
+     * entry of the same segment if the cache is too big.
+     *
+     * @param id node id
+     * @param value entry value
+     * @param size entry size
+     * @return the previous value, or <code>null</code>
+     */
+    public V put(NodeId id, V value, long size) {
+        E<V> entry = new E<V>(
+                id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                value, size);
+        E<V> previous;
+
+        Segment<V> segment = getSegment(id);
+        synchronized (segment) {
+            recordSizeChange(size);
+            previous = segment.map.put(entry.msb, entry.lsb, entry);
+            if (previous != null) {
+                segment.unlink(previous);
+            }
+            segment.link(entry);
+            if (isTooBig()) {
+                evictEldest(segment);
+            }
+        }
+
+        if (previous != null) {
+            recordSizeChange(-previous.size);
+            shrinkIfNeeded();
+            return previous.value;
+        } else {
+            shrinkIfNeeded();
+            return null;
+        }
+    }
+
+    /**
+     * Removes the identified entry from the cache.
+     *
+     * @param id node id
+     * @return removed entry, or <code>null</code> if not found
+     */
+    public V remove(NodeId id) {
+        Segment<V> segment = getSegment(id);
+        synchronized (segment) {
+            E<V> entry = segment.map.remove(id);
+            if (entry != null) {
+                segment.unlink(entry);
+                recordSizeChange(-entry.size);
+                return entry.value;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Clears all segments of the cache. May return with a non-empty cache
+     * if other threads have concurrently been adding new entries.
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                for (E<V> entry : segment.map.values()) {
+                    recordSizeChange(-entry.size);
+                }
+                segment.map.clear();
+                segment.header.before = segment.header;
+                segment.header.after = segment.header;
+            }
+        }
+    }
+
+    /**
+     * Checks if the cache size is zero.
+     */
+    public boolean isEmpty() {
+        return getMemoryUsed() == 0;
+    }
+
+    /**
+     * Sets the maximum size of the cache and evicts any excess items until
+     * the current size falls within the given limit.
+     */
+    @Override
+    public void setMaxMemorySize(long size) {
+        super.setMaxMemorySize(size);
+        shrinkIfNeeded();
+    }
+
+    /**
+     * Removes the least recently used entries of the segments, one segment
+     * after the other, until the cache is small enough.
+     */
+    private void shrinkIfNeeded() {
+        // Semi-random start index to prevent bias against the first segments
+        int start = (int) Math.abs(getAccessCount() % segments.length);
+        for (int i = start; isTooBig(); i = (i + 1) % segments.length) {
+            synchronized (segments[i]) {
+                evictEldest(segments[i]);
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry of the given segment, if any.
+     * The caller must hold the lock of the segment.
+     */
+    private void evictEldest(Segment<V> segment) {
+        E<V> eldest = segment.header.after;
+        if (eldest != segment.header) {
+            segment.map.remove(eldest.msb, eldest.lsb);
+            segment.unlink(eldest);
+            recordSizeChange(-eldest.size);
+        }
+    }
+
+    public long getElementCount() {
+        long count = 0;
+        for (Segment<V> segment : segments) {
+            count += segment.map.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + getClass().getSimpleName() + "@"
+                + Integer.toHexString(hashCode()) + "]";
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.state.ChangeLog;
+
+/**
+ * Update event listener that is able to handle a batch of consecutive
+ * external updates at once.
+ */
+public interface BatchUpdateEventListener extends UpdateEventListener {
+
+    /**
+     * Handle a batch of consecutive external updates. The merged changes
+     * are applied at once, and the events of each update are delivered
+     * separately, in the order of the records.
+     *
+     * @param changes merged external changes containing only node and
+     *                property ids.
+     * @param records records of the external updates, in journal order
+     * @throws RepositoryException if the updates cannot be processed
+     */
+    void externalUpdate(ChangeLog changes, List<ChangeLogRecord> records)
+            throws RepositoryException;
+
+}
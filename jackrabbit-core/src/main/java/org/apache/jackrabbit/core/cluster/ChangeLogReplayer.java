@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays the change log records read from the journal concurrently. The
+ * records are queued per update event listener, i.e. per workspace, and
+ * the queues are processed by the threads of an executor. Each queue is
+ * processed by at most one thread at a time, which preserves the order of
+ * the records of a workspace. Consecutive records of a queue are delivered
+ * as one batch if the listener is a {@link BatchUpdateEventListener}.
+ * Records of the version storage are not queued, they are replayed by the
+ * caller after {@link #drain() draining} the queues, as the changes of the
+ * workspaces and the version storage depend on each other.
+ * <p>
+ * The number of queued records is bounded, so that the thread reading the
+ * journal blocks instead of decoding arbitrarily far ahead.
+ */
+class ChangeLogReplayer {
+
+    /**
+     * Logger.
+     */
+    private static Logger log = LoggerFactory.getLogger(ChangeLogReplayer.class);
+
+    /**
+     * Executor that processes the queues.
+     */
+    private final Executor executor;
+
+    /**
+     * Maximum number of records delivered in one batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Maximum number of records queued or being delivered.
+     */
+    private final int maxPending;
+
+    /**
+     * Queues of records, by listener.
+     */
+    private final Map<UpdateEventListener, Queue> queues =
+        new IdentityHashMap<UpdateEventListener, Queue>();
+
+    /**
+     * Number of records queued or being delivered.
+     */
+    private int pending;
+
+    /**
+     * Revisions of the records queued and not delivered successfully,
+     * mapped to the revision of the record preceding them in the journal.
+     */
+    private final TreeMap<Long, Long> outstanding = new TreeMap<Long, Long>();
+
+    /**
+     * Failure while delivering records, or <code>null</code>.
+     */
+    private Throwable failure;
+
+    /**
+     * Creates a new replayer.
+     *
+     * @param executor executor that processes the queues
+     * @param maxBatchSize maximum number of records delivered in one batch
+     * @param maxPending maximum number of records queued or being delivered
+     */
+    ChangeLogReplayer(Executor executor, int maxBatchSize, int maxPending) {
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Queues a record for delivery to the given listener. Blocks while the
+     * maximum number of records is pending.
+     *
+     * @param listener listener of the record's workspace
+     * @param record change log record
+     * @param previousRevision revision of the record preceding the given
+     *                         record in the journal
+     * @throws IllegalStateException if the delivery of an earlier record
+     *                               failed because of an illegal state
+     */
+    synchronized void replay(UpdateEventListener listener,
+            ChangeLogRecord record, long previousRevision) {
+        while (pending >= maxPending && failure == null) {
+            await();
+        }
+        throwFailure();
+
+        Queue queue = queues.get(listener);
+        if (queue == null) {
+            queue = new Queue(listener);
+            queues.put(listener, queue);
+        }
+        queue.records.add(record);
+        outstanding.put(record.getRevision(), previousRevision);
+        pending++;
+        if (!queue.scheduled) {
+            queue.scheduled = true;
+            executor.execute(queue);
+        }
+    }
+
+    /**
+     * Waits until all queued records have been delivered. A failure is
+     * reported until the replayer is {@link #reset()}.
+     *
+     * @throws IllegalStateException if the delivery of a record failed
+     *                               because of an illegal state
+     */
+    synchronized void drain() {
+        while (pending > 0) {
+            await();
+        }
+        throwFailure();
+    }
+
+    /**
+     * Returns the highest revision up to which all queued records have been
+     * delivered, i.e. the revision preceding the first record that has not
+     * been delivered because of a failure. Should be called after
+     * {@link #drain()}.
+     *
+     * @param revision revision to return if all records have been delivered
+     * @return revision up to which the records have been delivered without
+     *         gaps, not higher than the given revision
+     */
+    synchronized long getAppliedRevision(long revision) {
+        if (outstanding.isEmpty()) {
+            return revision;
+        }
+        return Math.min(revision, outstanding.firstEntry().getValue());
+    }
+
+    private void await() {
+        boolean interrupted = false;
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until all queued records have been delivered or dropped, and
+     * forgets a failure, so that the next synchronization starts afresh.
+     */
+    synchronized void reset() {
+        while (pending > 0) {
+            await();
+        }
+        failure = null;
+        outstanding.clear();
+    }
+
+    private void throwFailure() {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    /**
+     * Removes the next batch of records from a queue, or marks the queue as
+     * no longer scheduled if it is empty.
+     *
+     * @param queue queue
+     * @return next batch, or <code>null</code> if the queue is empty
+     */
+    private synchronized List<ChangeLogRecord> nextBatch(Queue queue) {
+        if (queue.records.isEmpty()) {
+            queue.scheduled = false;
+            return null;
+        }
+        int size = Math.min(queue.records.size(), maxBatchSize);
+        if (!(queue.listener instanceof BatchUpdateEventListener)) {
+            size = 1;
+        }
+        List<ChangeLogRecord> batch = new ArrayList<ChangeLogRecord>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(queue.records.removeFirst());
+        }
+        return batch;
+    }
+
+    /**
+     * Marks a batch as delivered.
+     *
+     * @param batch delivered batch
+     * @param applied <code>true</code> if the batch was delivered successfully,
+     *                <code>false</code> if it failed or was dropped
+     * @param e failure while delivering the batch, or <code>null</code>
+     */
+    private synchronized void delivered(
+            List<ChangeLogRecord> batch, boolean applied, Throwable e) {
+        pending -= batch.size();
+        if (e != null && failure == null) {
+            failure = e;
+        }
+        if (applied) {
+            for (ChangeLogRecord record : batch) {
+                outstanding.remove(record.getRevision());
+            }
+        }
+        notifyAll();
+    }
+
+    private synchronized boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Delivers a batch of records to a listener.
+     *
+     * @param listener listener
+     * @param batch records, in journal order
+     */
+    private static void deliver(
+            UpdateEventListener listener, List<ChangeLogRecord> batch) {
+        try {
+            if (batch.size() == 1) {
+                ChangeLogRecord record = batch.get(0);
+                listener.externalUpdate(record.getChanges(), record.getEvents(),
+                        record.getTimestamp(), record.getUserData());
+            } else {
+                ChangeLog changes = new ChangeLog();
+                for (ChangeLogRecord record : batch) {
+                    changes.merge(record.getChanges());
+                }
+                ((BatchUpdateEventListener) listener).externalUpdate(changes, batch);
+            }
+        } catch (RepositoryException e) {
+            String msg = "Unable to deliver update events: " + e.getMessage();
+            log.error(msg);
+            if (e.getCause() instanceof IllegalStateException) {
+                throw (IllegalStateException) e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Queue of the records of one listener.
+     */
+    private class Queue implements Runnable {
+
+        private final UpdateEventListener listener;
+
+        private final LinkedList<ChangeLogRecord> records =
+            new LinkedList<ChangeLogRecord>();
+
+        private boolean scheduled;
+
+        Queue(UpdateEventListener listener) {
+            this.listener = listener;
+        }
+
+        public void run() {
+            List<ChangeLogRecord> batch;
+            while ((batch = nextBatch(this)) != null) {
+                boolean applied = false;
+                Throwable failure = null;
+                try {
+                    // after a failure, the remaining records are dropped, they
+                    // are delivered again by the next synchronization
+                    if (!hasFailed()) {
+                        deliver(listener, batch);
+                        applied = true;
+                    }
+                } catch (IllegalStateException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    log.error("Unexpected exception while replaying journal records", e);
+                    failure = e;
+                } catch (Error e) {
+                    log.error("Unexpected error while replaying journal records", e);
+                    failure = e;
+                } finally {
+                    delivered(batch, applied, failure);
+                }
+            }
+        }
+
+    }
+
+}
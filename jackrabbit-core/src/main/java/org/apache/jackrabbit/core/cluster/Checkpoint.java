@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.core.fs.FileSystem;
+import org.apache.jackrabbit.core.fs.FileSystemException;
+import org.apache.jackrabbit.core.fs.FileSystemPathUtil;
+
+/**
+ * Checkpoint of a cluster, stored in a file system shared by all cluster
+ * nodes. A checkpoint consists of snapshots of the search indexes that
+ * reflect all changes up to a given journal revision. A cluster node that
+ * joins the cluster restores the snapshots and only replays the journal
+ * records after that revision, instead of the whole journal.
+ * <p>
+ * Every checkpoint is stored in a folder of its own. The properties file
+ * that points to the latest checkpoint is only written after all its
+ * snapshots have been stored, and the folder of the previous checkpoint is
+ * kept for cluster nodes that are still restoring it.
+ */
+public class Checkpoint {
+
+    /**
+     * Path of the properties file that points to the latest checkpoint.
+     */
+    static final String POINTER_FILE = "/checkpoint.properties";
+
+    /**
+     * Prefix of the checkpoint folder names.
+     */
+    static final String FOLDER_PREFIX = "checkpoint-";
+
+    /**
+     * Name of the revision property.
+     */
+    private static final String REVISION_PROPERTY = "revision";
+
+    /**
+     * Name of the folder property.
+     */
+    private static final String FOLDER_PROPERTY = "folder";
+
+    /**
+     * Shared checkpoint file system.
+     */
+    private final FileSystem fs;
+
+    /**
+     * Path of the checkpoint folder.
+     */
+    private final String folder;
+
+    /**
+     * Revision reflected by the snapshots.
+     */
+    private final long revision;
+
+    /**
+     * Names of the snapshots that have already been restored.
+     */
+    private final Set<String> restored = new HashSet<String>();
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param fs shared checkpoint file system
+     * @param folder path of the checkpoint folder
+     * @param revision revision reflected by the snapshots
+     */
+    Checkpoint(FileSystem fs, String folder, long revision) {
+        this.fs = fs;
+        this.folder = folder;
+        this.revision = revision;
+    }
+
+    /**
+     * Returns the revision reflected by the snapshots of this checkpoint.
+     *
+     * @return revision
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Restores the snapshot of a search index to a local directory, whose
+     * current content is deleted. Every snapshot is restored at most once,
+     * later calls for the same workspace return <code>false</code>.
+     *
+     * @param workspace workspace name, or <code>null</code> for the index
+     *                  of the system tree
+     * @param dir local index directory
+     * @return <code>true</code> if the snapshot was restored;
+     *         <code>false</code> if this checkpoint has no snapshot of the
+     *         index, or it has already been restored
+     * @throws IOException if an error occurs
+     */
+    public boolean restoreIndex(String workspace, File dir)
+            throws IOException {
+        String name = getIndexName(workspace);
+        synchronized (restored) {
+            if (!restored.add(name)) {
+                return false;
+            }
+        }
+        String path = folder + "/" + name;
+        try {
+            if (!fs.isFolder(path)) {
+                return false;
+            }
+            if (dir.exists()) {
+                FileUtils.cleanDirectory(dir);
+            }
+            download(fs, path, dir);
+            return true;
+        } catch (FileSystemException e) {
+            throw new IOException("Unable to restore snapshot " + path, e);
+        }
+    }
+
+    /**
+     * Returns the name of the snapshot of the search index of a workspace.
+     *
+     * @param workspace workspace name, or <code>null</code> for the index
+     *                  of the system tree
+     * @return snapshot name
+     */
+    public static String getIndexName(String workspace) {
+        if (workspace == null) {
+            return "system";
+        }
+        return "workspace-" + FileSystemPathUtil.escapeName(workspace);
+    }
+
+    /**
+     * Returns the latest checkpoint stored in a file system.
+     *
+     * @param fs shared checkpoint file system
+     * @return checkpoint, or <code>null</code> if none has been stored yet
+     * @throws FileSystemException if an error occurs
+     */
+    static Checkpoint read(FileSystem fs) throws FileSystemException {
+        if (!fs.isFile(POINTER_FILE)) {
+            return null;
+        }
+        Properties props = new Properties();
+        InputStream in = fs.getInputStream(POINTER_FILE);
+        try {
+            props.load(in);
+        } catch (IOException e) {
+            throw new FileSystemException("Unable to read " + POINTER_FILE, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return new Checkpoint(fs, props.getProperty(FOLDER_PROPERTY),
+                Long.parseLong(props.getProperty(REVISION_PROPERTY)));
+    }
+
+    /**
+     * Stores a new checkpoint in a file system, and deletes the checkpoints
+     * that precede the previous one.
+     *
+     * @param fs shared checkpoint file system
+     * @param revision revision reflected by the snapshots
+     * @param snapshots local directory that contains the snapshots, one
+     *                  sub directory per snapshot name
+     * @return stored checkpoint
+     * @throws FileSystemException if an error occurs
+     */
+    static Checkpoint write(FileSystem fs, long revision, File snapshots)
+            throws FileSystemException {
+        Checkpoint previous = read(fs);
+        if (previous != null && previous.getRevision() == revision) {
+            return previous;
+        }
+        String folder = "/" + FOLDER_PREFIX + revision;
+        if (fs.exists(folder)) {
+            fs.deleteFolder(folder);
+        }
+        upload(snapshots, fs, folder);
+
+        Properties props = new Properties();
+        props.setProperty(REVISION_PROPERTY, String.valueOf(revision));
+        props.setProperty(FOLDER_PROPERTY, folder);
+        OutputStream out = fs.getOutputStream(POINTER_FILE);
+        try {
+            try {
+                props.store(out, null);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new FileSystemException("Unable to write " + POINTER_FILE, e);
+        }
+
+        for (String name : fs.listFolders("/")) {
+            String path = "/" + name;
+            if (name.startsWith(FOLDER_PREFIX) && !path.equals(folder)
+                    && (previous == null || !path.equals(previous.folder))) {
+                fs.deleteFolder(path);
+            }
+        }
+        return new Checkpoint(fs, folder, revision);
+    }
+
+    /**
+     * Copies a local directory and its sub directories to a file system.
+     */
+    private static void upload(File dir, FileSystem fs, String path)
+            throws FileSystemException {
+        fs.createFolder(path);
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new FileSystemException("Unable to list " + dir);
+        }
+        for (File file : files) {
+            String child = path + "/" + file.getName();
+            if (file.isDirectory()) {
+                upload(file, fs, child);
+            } else {
+                try {
+                    InputStream in = new FileInputStream(file);
+                    try {
+                        OutputStream out = fs.getOutputStream(child);
+                        try {
+                            IOUtils.copy(in, out);
+                        } finally {
+                            out.close();
+                        }
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    throw new FileSystemException("Unable to copy " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a folder of a file system and its sub folders to a local
+     * directory.
+     */
+    private static void download(FileSystem fs, String path, File dir)
+            throws FileSystemException, IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        for (String name : fs.listFiles(path)) {
+            InputStream in = fs.getInputStream(path + "/" + name);
+            try {
+                OutputStream out = new FileOutputStream(new File(dir, name));
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        }
+        for (String name : fs.listFolders(path)) {
+            download(fs, path + "/" + name, new File(dir, name));
+        }
+    }
+
+}
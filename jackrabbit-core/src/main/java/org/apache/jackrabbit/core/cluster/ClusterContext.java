@@ -67,4 +67,17 @@ public interface ClusterContext {
      */
     void lockEventsReady(String workspace) throws RepositoryException;
 
+    /**
+     * Copies the search indexes of all active workspaces and of the system
+     * tree to a local directory, for a checkpoint of the cluster. The copies
+     * must reflect all changes up to the current revision of the cluster
+     * node; the cluster node does not apply changes of other cluster nodes
+     * while this method is running.
+     *
+     * @param dir local directory, the index of a workspace is copied to the
+     *            sub directory named {@link Checkpoint#getIndexName(String)}
+     * @throws RepositoryException if the indexes can not be copied
+     */
+    void snapshotIndexes(File dir) throws RepositoryException;
+
 }
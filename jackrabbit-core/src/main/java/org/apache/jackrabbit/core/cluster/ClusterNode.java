@@ -16,16 +16,30 @@
  */
 package org.apache.jackrabbit.core.cluster;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.RepositoryException;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.cluster.WorkspaceRecord.CreateWorkspaceAction;
+import org.apache.jackrabbit.core.config.BeanConfig;
+import org.apache.jackrabbit.core.config.CheckpointConfig;
 import org.apache.jackrabbit.core.config.ClusterConfig;
+import org.apache.jackrabbit.core.fs.FileSystem;
+import org.apache.jackrabbit.core.fs.FileSystemException;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.journal.AbstractJournal;
 import org.apache.jackrabbit.core.journal.InstanceRevision;
@@ -41,6 +55,7 @@ import org.apache.jackrabbit.core.version.InternalVersionManagerImpl;
 import org.apache.jackrabbit.core.xml.ClonedInputSource;
 import org.apache.jackrabbit.spi.PrivilegeDefinition;
 import org.apache.jackrabbit.spi.QNodeTypeDefinition;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,6 +79,24 @@ public class ClusterNode implements Runnable,
      */
     private static final String PRODUCER_ID = "JR";
 
+    /**
+     * Maximum number of consecutive change log records of a workspace that
+     * are replayed at once.
+     */
+    private static final int MAX_REPLAY_BATCH_SIZE = 100;
+
+    /**
+     * Maximum number of change log records read ahead of the ones being
+     * replayed.
+     */
+    private static final int MAX_REPLAY_PENDING = 1000;
+
+    /**
+     * Name of the local directory, inside the repository home, that the
+     * search indexes are copied to while writing a checkpoint.
+     */
+    private static final String CHECKPOINT_DIR = "checkpoint";
+
     /**
      * Status constant.
      */
@@ -134,6 +167,12 @@ public class ClusterNode implements Runnable,
      */
     private final Latch stopLatch = new Latch();
 
+    /**
+     * Semaphore released to wake up the synchronization thread before the
+     * sync delay has elapsed.
+     */
+    private final Semaphore syncRequest = new Semaphore(0);
+
     /**
      * Sync counter, used to avoid repeated sync() calls from piling up.
      * Only updated within the critical section guarded by {@link #syncLock}.
@@ -203,6 +242,113 @@ public class ClusterNode implements Runnable,
      */
     private boolean disableAutoSync;
 
+    /**
+     * Revision notifier, or <code>null</code> if changes of other cluster
+     * nodes are detected by periodic synchronization only.
+     */
+    private RevisionNotifier notifier;
+
+    /**
+     * Highest revision announced by another cluster node.
+     */
+    private final AtomicLong announcedRevision = new AtomicLong(-1);
+
+    /**
+     * Monitor guarding the revision set for records committed by this
+     * cluster node.
+     */
+    private final Object committedRevisionLock = new Object();
+
+    /**
+     * Commit time of the announced revision whose processing is pending,
+     * or <code>0</code>.
+     */
+    private volatile long announcedTimestamp;
+
+    /**
+     * Repository statistics.
+     */
+    private RepositoryStatisticsImpl statistics = new RepositoryStatisticsImpl();
+
+    /**
+     * Number of synchronizations.
+     */
+    private AtomicLong syncCounter;
+
+    /**
+     * Time spent synchronizing, in milliseconds.
+     */
+    private AtomicLong syncDuration;
+
+    /**
+     * Number of announced revisions not yet processed.
+     */
+    private AtomicLong revisionLag;
+
+    /**
+     * Time between the commit and the processing of the last announced
+     * revision, in milliseconds.
+     */
+    private AtomicLong replicationLag;
+
+    /**
+     * Executor replaying the changes of other cluster nodes, or
+     * <code>null</code> if they are replayed on the synchronizing thread.
+     */
+    private ExecutorService replayExecutor;
+
+    /**
+     * Replayer of the changes of other cluster nodes, or <code>null</code>.
+     */
+    private ChangeLogReplayer replayer;
+
+    /**
+     * Thread that currently synchronizes this cluster node and hands the
+     * change log records to the replayer.
+     */
+    private volatile Thread replayThread;
+
+    /**
+     * Revision of the last record consumed by the thread that hands the
+     * change log records to the replayer.
+     */
+    private long consumedRevision;
+
+    /**
+     * Shared file system that stores the checkpoints of the cluster, or
+     * <code>null</code> if checkpoints are not configured.
+     */
+    private FileSystem checkpointFs;
+
+    /**
+     * Interval between the checkpoints written by this cluster node, in
+     * milliseconds, or <code>0</code>.
+     */
+    private long checkpointInterval;
+
+    /**
+     * Checkpoint restored when this cluster node joined the cluster, or
+     * <code>null</code>.
+     */
+    private Checkpoint restoredCheckpoint;
+
+    /**
+     * Executor writing the checkpoints of this cluster node, or
+     * <code>null</code>.
+     */
+    private ScheduledExecutorService checkpointExecutor;
+
+    /**
+     * Set the repository statistics to record the synchronizations of this
+     * cluster node in. Must be called before the cluster node is
+     * initialized.
+     *
+     * @param statistics repository statistics
+     */
+    public void setRepositoryStatistics(RepositoryStatisticsImpl statistics) {
+        this.statistics = statistics;
+    }
+
     /**
      * Initialize this cluster node.
      *
@@ -226,6 +372,30 @@ public class ClusterNode implements Runnable,
         syncDelay = cc.getSyncDelay();
         stopDelay = cc.getStopDelay();
 
+        syncCounter = statistics.getCounter(
+                RepositoryStatistics.Type.CLUSTER_SYNC_COUNTER);
+        syncDuration = statistics.getCounter(
+                RepositoryStatistics.Type.CLUSTER_SYNC_DURATION);
+        revisionLag = statistics.getCounter(
+                RepositoryStatistics.Type.CLUSTER_REVISION_LAG);
+        replicationLag = statistics.getCounter(
+                RepositoryStatistics.Type.CLUSTER_REPLICATION_LAG);
+
+        int replayThreads = cc.getReplayThreads();
+        if (replayThreads > 1) {
+            replayExecutor = Executors.newFixedThreadPool(
+                    replayThreads, new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(
+                                    r, "ClusterNode-" + clusterNodeId + "-replay");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            replayer = new ChangeLogReplayer(replayExecutor,
+                    MAX_REPLAY_BATCH_SIZE, MAX_REPLAY_PENDING);
+        }
+
         try {
             journal = cc.getJournal(clusterContext.getNamespaceResolver());
             instanceRevision = journal.getInstanceRevision();
@@ -238,6 +408,129 @@ public class ClusterNode implements Runnable,
             throw new ClusterException(
                     "Journal initialization failed: " + this, e);
         }
+
+        CheckpointConfig checkpointConfig = cc.getCheckpointConfig();
+        if (checkpointConfig != null) {
+            try {
+                checkpointFs = checkpointConfig.getFileSystem();
+            } catch (RepositoryException e) {
+                throw new ClusterException(
+                        "Checkpoint file system initialization failed: " + this, e);
+            }
+            checkpointInterval = checkpointConfig.getInterval();
+            restoreCheckpoint();
+        }
+
+        BeanConfig notifierConfig = cc.getRevisionNotifierConfig();
+        if (notifierConfig != null) {
+            try {
+                notifier = notifierConfig.newInstance(RevisionNotifier.class);
+            } catch (RepositoryException e) {
+                throw new ClusterException(
+                        "Revision notifier initialization failed: " + this, e);
+            }
+            notifier.setListener(new RevisionListener() {
+                public void externalRevision(
+                        String clusterNodeId, long revision, long timestamp) {
+                    revisionAnnounced(clusterNodeId, revision, timestamp);
+                }
+            });
+            notifier.init(clusterNodeId);
+        }
+    }
+
+    /**
+     * Restores the latest checkpoint if this cluster node joins the cluster,
+     * i.e. has not processed any revision yet. The revision of this cluster
+     * node is set to the revision of the checkpoint, and the search indexes
+     * restore their snapshots when they are initialized.
+     *
+     * @throws ClusterException if the revision can not be set
+     */
+    private void restoreCheckpoint() throws ClusterException {
+        try {
+            if (instanceRevision.get() != 0) {
+                return;
+            }
+            Checkpoint checkpoint = Checkpoint.read(checkpointFs);
+            if (checkpoint != null && checkpoint.getRevision() > 0) {
+                instanceRevision.set(checkpoint.getRevision());
+                restoredCheckpoint = checkpoint;
+                log.info("Restored checkpoint at revision {}: {}",
+                        checkpoint.getRevision(), this);
+            }
+        } catch (FileSystemException e) {
+            log.warn("Unable to read checkpoint, "
+                    + "the whole journal will be replayed: " + this, e);
+        } catch (JournalException e) {
+            throw new ClusterException(
+                    "Unable to restore checkpoint: " + this, e);
+        }
+    }
+
+    /**
+     * Return the checkpoint restored when this cluster node joined the
+     * cluster.
+     *
+     * @return restored checkpoint, or <code>null</code>
+     */
+    public Checkpoint getRestoredCheckpoint() {
+        return restoredCheckpoint;
+    }
+
+    /**
+     * Writes a checkpoint of the cluster, which consists of snapshots of the
+     * search indexes of this cluster node and its current revision. Changes
+     * of other cluster nodes are not applied while the indexes are copied to
+     * a local directory, but while the copies are written to the shared
+     * checkpoint file system.
+     *
+     * @return written checkpoint
+     * @throws ClusterException if checkpoints are not configured, or an
+     *                          error occurs
+     */
+    public Checkpoint checkpoint() throws ClusterException {
+        if (checkpointFs == null) {
+            throw new ClusterException(
+                    "No checkpoint file system configured: " + this);
+        }
+        File dir = new File(clusterContext.getRepositoryHome(), CHECKPOINT_DIR);
+        try {
+            FileUtils.deleteQuietly(dir);
+            long revision;
+            try {
+                syncLock.acquire();
+            } catch (InterruptedException e) {
+                String msg = "Interrupted while waiting for mutex.";
+                throw new ClusterException(msg);
+            }
+            try {
+                revision = getRevision();
+                clusterContext.snapshotIndexes(dir);
+            } catch (RepositoryException e) {
+                throw new ClusterException(
+                        "Unable to copy search indexes: " + this, e);
+            } finally {
+                syncLock.release();
+            }
+            Checkpoint checkpoint = Checkpoint.write(checkpointFs, revision, dir);
+            log.info("Wrote checkpoint at revision {}: {}", revision, this);
+            return checkpoint;
+        } catch (FileSystemException e) {
+            throw new ClusterException(
+                    "Unable to write checkpoint: " + this, e);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    /**
+     * Return the revision notifier of this cluster node.
+     *
+     * @return revision notifier, or <code>null</code>
+     */
+    public RevisionNotifier getRevisionNotifier() {
+        return notifier;
     }
 
     /**
@@ -282,17 +575,41 @@ public class ClusterNode implements Runnable,
                 t.start();
                 syncThread = t;
             }
+            if (checkpointFs != null && checkpointInterval > 0) {
+                checkpointExecutor = Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactory() {
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "ClusterNode-"
+                                        + clusterNodeId + "-checkpoint");
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+                checkpointExecutor.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        try {
+                            checkpoint();
+                        } catch (ClusterException e) {
+                            log.warn("Unable to write checkpoint.", e);
+                        }
+                    }
+                }, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+            }
             status = STARTED;
         }
     }
 
     /**
-     * Run loop that will sync this node after some delay.
+     * Run loop that will sync this node after some delay, or as soon as
+     * another cluster node announces a new revision.
      */
     public void run() {
         for (;;) {
             try {
-                if (stopLatch.attempt(syncDelay)) {
+                syncRequest.tryAcquire(syncDelay, TimeUnit.MILLISECONDS);
+                // a single sync processes all revisions announced so far
+                syncRequest.drainPermits();
+                if (stopLatch.attempt(0)) {
                     break;
                 }
             } catch (InterruptedException e) {
@@ -337,7 +654,20 @@ public class ClusterNode implements Runnable,
             // while we were waiting to acquire the syncLock.
             if (count == syncCount.get()) {
                 syncCount.incrementAndGet();
-                journal.sync(startup);
+                long start = System.currentTimeMillis();
+                // records read by a lockAndSync() are always processed by
+                // the calling thread, as it may hold locks of workspaces
+                replayThread = Thread.currentThread();
+                consumedRevision = getRevision();
+                try {
+                    journal.sync(startup);
+                } finally {
+                    replayThread = null;
+                    if (replayer != null) {
+                        replayer.reset();
+                    }
+                }
+                synced(System.currentTimeMillis() - start);
             }
         } catch (JournalException e) {
             throw new ClusterException(e.getMessage(), e.getCause());
@@ -347,6 +677,64 @@ public class ClusterNode implements Runnable,
 
     }
 
+    /**
+     * Records a synchronization, and how far this cluster node still lags
+     * behind the revisions announced by other cluster nodes.
+     *
+     * @param duration duration of the synchronization, in milliseconds
+     */
+    private void synced(long duration) {
+        syncCounter.incrementAndGet();
+        syncDuration.addAndGet(duration);
+
+        long announced = announcedRevision.get();
+        if (announced >= 0) {
+            long revision = getRevision();
+            revisionLag.set(Math.max(0, announced - revision));
+            long timestamp = announcedTimestamp;
+            if (timestamp != 0 && revision >= announced) {
+                announcedTimestamp = 0;
+                replicationLag.set(Math.max(
+                        0, System.currentTimeMillis() - timestamp));
+            }
+        }
+    }
+
+    /**
+     * Return a flag indicating whether the change log records processed by
+     * the current thread are handed to the replayer.
+     *
+     * @return <code>true</code> if records are replayed concurrently
+     */
+    private boolean isReplaying() {
+        return replayer != null && replayThread == Thread.currentThread();
+    }
+
+    /**
+     * Invoked when another cluster node announces a committed revision.
+     * Wakes up the synchronization thread unless the revision has already
+     * been processed.
+     *
+     * @param clusterNodeId id of the announcing cluster node
+     * @param revision committed revision
+     * @param timestamp commit time, in milliseconds since the epoch
+     */
+    void revisionAnnounced(String clusterNodeId, long revision, long timestamp) {
+        log.debug("Cluster node {} committed revision {}", clusterNodeId, revision);
+
+        long announced = announcedRevision.get();
+        while (revision > announced) {
+            if (announcedRevision.compareAndSet(announced, revision)) {
+                announcedTimestamp = timestamp;
+                break;
+            }
+            announced = announcedRevision.get();
+        }
+        if (revision > getRevision()) {
+            syncRequest.release();
+        }
+    }
+
     /**
      * Synchronize contents from journal.
      *
@@ -373,6 +761,11 @@ public class ClusterNode implements Runnable,
             status = STOPPED;
 
             stopLatch.release();
+            syncRequest.release();
+
+            if (notifier != null) {
+                notifier.close();
+            }
 
             // Give synchronization thread some time to finish properly before
             // closing down the journal (see JCR-1553)
@@ -384,6 +777,25 @@ public class ClusterNode implements Runnable,
                     log.warn(msg);
                 }
             }
+            if (replayExecutor != null) {
+                replayExecutor.shutdown();
+            }
+            if (checkpointExecutor != null) {
+                checkpointExecutor.shutdown();
+                try {
+                    checkpointExecutor.awaitTermination(
+                            stopDelay, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    log.warn("Interrupted while waiting for checkpoint.");
+                }
+            }
+            if (checkpointFs != null) {
+                try {
+                    checkpointFs.close();
+                } catch (FileSystemException e) {
+                    log.warn("Unable to close checkpoint file system.", e);
+                }
+            }
             if (journal != null) {
                 journal.close();
             }
@@ -439,7 +851,7 @@ public class ClusterNode implements Runnable,
             record = new NamespaceRecord(oldPrefix, newPrefix, uri, producer.append());
             record.write();
             record.update();
-            setRevision(record.getRevision());
+            revisionCommitted(record.getRevision());
             succeeded = true;
         } catch (JournalException e) {
             String msg = "Unable to create log entry: " + e.getMessage();
@@ -475,7 +887,7 @@ public class ClusterNode implements Runnable,
             record = new NodeTypeRecord(ntDefs, true, producer.append());
             record.write();
             record.update();
-            setRevision(record.getRevision());
+            revisionCommitted(record.getRevision());
             succeeded = true;
         } catch (JournalException e) {
             String msg = "Unable to create log entry: " + e.getMessage();
@@ -505,7 +917,7 @@ public class ClusterNode implements Runnable,
             record = new NodeTypeRecord(ntDef, producer.append());
             record.write();
             record.update();
-            setRevision(record.getRevision());
+            revisionCommitted(record.getRevision());
             succeeded = true;
         } catch (JournalException e) {
             String msg = "Unable to create log entry: " + e.getMessage();
@@ -535,7 +947,7 @@ public class ClusterNode implements Runnable,
             record = new NodeTypeRecord(qnames, false, producer.append());
             record.write();
             record.update();
-            setRevision(record.getRevision());
+            revisionCommitted(record.getRevision());
             succeeded = true;
         } catch (JournalException e) {
             String msg = "Unable to create log entry: " + e.getMessage();
@@ -574,7 +986,7 @@ public class ClusterNode implements Runnable,
             record = new PrivilegeRecord(definitions, producer.append());
             record.write();
             record.update();
-            setRevision(record.getRevision());
+            revisionCommitted(record.getRevision());
             succeeded = true;
         } catch (JournalException e) {
             String msg = "Unable to create log entry: " + e.getMessage();
@@ -609,6 +1021,18 @@ public class ClusterNode implements Runnable,
          */
         private static final String ATTRIBUTE_UPDATE_SIZE = "updateSize";
 
+        /**
+         * Attribute name used to mark an update whose journal unlock has
+         * been deferred until {@link #updateFinished(Update)}.
+         */
+        private static final String ATTRIBUTE_DEFERRED = "deferred";
+
+        /**
+         * Attribute name used to store a record that has been appended, but
+         * not yet committed by the journal.
+         */
+        private static final String ATTRIBUTE_COMMITTED = "committed";
+
         /**
          * Workspace name.
          */
@@ -677,6 +1101,7 @@ public class ClusterNode implements Runnable,
                 throw new ClusterException(msg, e);
             } finally {
                 if (!succeeded) {
+                    deferUnlock(update);
                     record.cancelUpdate();
                     update.setAttribute(ATTRIBUTE_RECORD, null);
                 }
@@ -696,22 +1121,22 @@ public class ClusterNode implements Runnable,
                 }
                 return;
             }
+            boolean deferred = deferUnlock(update);
             try {
-
-                long recordRevision = record.getRevision();
-                setRevision(recordRevision);
-
+                // the revision may only be assigned when the record is
+                // appended, e.g. by a database journal with group commit
                 long journalUpdateSize = record.update();
 
-                log.debug("Stored record '{}' to Journal ({})", recordRevision, journalUpdateSize);
-
                 Object updateSizeValue = update.getAttribute(ATTRIBUTE_UPDATE_SIZE);
                 long updateSize = updateSizeValue != null? (Long)updateSizeValue : 0;
-                updateCount.compareAndSet(Integer.MAX_VALUE, 0);
-
-               	auditLogger.info("[{}] {} {} ({})", new Object[]{updateCount.incrementAndGet(), 
-                        record.getRevision(), path, updateSize});
-
+                CommittedRecord committed = new CommittedRecord(
+                        record, journalUpdateSize, updateSize, path);
+                if (deferred) {
+                    // the journal commits the record in updateFinished()
+                    update.setAttribute(ATTRIBUTE_COMMITTED, committed);
+                } else {
+                    committed.committed();
+                }
             } catch (JournalException e) {
                 String msg = "Unable to commit log entry.";
                 log.error(msg, e);
@@ -729,11 +1154,59 @@ public class ClusterNode implements Runnable,
         public void updateCancelled(Update update) {
             Record record = (Record) update.getAttribute(ATTRIBUTE_RECORD);
             if (record != null) {
+                deferUnlock(update);
                 record.cancelUpdate();
                 update.setAttribute(ATTRIBUTE_RECORD, null);
             }
         }
 
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Waits until the journal has committed the record of the update,
+         * if its unlock has been deferred.
+         */
+        public void updateFinished(Update update) {
+            if (update.getAttribute(ATTRIBUTE_DEFERRED) == null) {
+                return;
+            }
+            CommittedRecord committed =
+                (CommittedRecord) update.getAttribute(ATTRIBUTE_COMMITTED);
+            update.setAttribute(ATTRIBUTE_DEFERRED, null);
+            update.setAttribute(ATTRIBUTE_COMMITTED, null);
+            try {
+                ((AbstractJournal) journal).awaitUnlock();
+                if (committed != null) {
+                    committed.committed();
+                }
+            } catch (JournalException e) {
+                if (committed != null) {
+                    log.error("Unable to commit log entry.", e);
+                } else {
+                    log.debug("Unable to commit the journal group"
+                            + " of a cancelled update.", e);
+                }
+            }
+        }
+
+        /**
+         * Defers the unlock of the journal by the record of the given update
+         * until {@link #updateFinished(Update)}, if the journal supports it.
+         * The caller still holds the item state manager lock, which other
+         * updates of a journal group commit may need.
+         *
+         * @param update update operation
+         * @return <code>true</code> if the unlock has been deferred
+         */
+        private boolean deferUnlock(Update update) {
+            if (journal instanceof AbstractJournal
+                    && ((AbstractJournal) journal).deferUnlock()) {
+                update.setAttribute(ATTRIBUTE_DEFERRED, Boolean.TRUE);
+                return true;
+            }
+            return false;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -754,6 +1227,45 @@ public class ClusterNode implements Runnable,
         }
     }
 
+    /**
+     * Record of an update that has been appended to the journal.
+     */
+    class CommittedRecord {
+
+        private final Record record;
+
+        private final long journalUpdateSize;
+
+        private final long updateSize;
+
+        private final String path;
+
+        CommittedRecord(Record record, long journalUpdateSize,
+                        long updateSize, String path) {
+            this.record = record;
+            this.journalUpdateSize = journalUpdateSize;
+            this.updateSize = updateSize;
+            this.path = path;
+        }
+
+        /**
+         * Advances the revision of this cluster node to the record, once
+         * the journal has committed it, and logs the update.
+         */
+        void committed() {
+            long recordRevision = record.getRevision();
+            revisionCommitted(recordRevision);
+
+            log.debug("Stored record '{}' to Journal ({})", recordRevision, journalUpdateSize);
+
+            updateCount.compareAndSet(Integer.MAX_VALUE, 0);
+
+            auditLogger.info("[{}] {} {} ({})", new Object[]{updateCount.incrementAndGet(),
+                    recordRevision, path, updateSize});
+        }
+
+    }
+
     /**
      * Workspace lock channel.
      */
@@ -858,17 +1370,50 @@ public class ClusterNode implements Runnable,
         log.info("Processing revision: " + record.getRevision());
 
         try {
-            deserializer.deserialize(record).process(this);
+            ClusterRecord clusterRecord = deserializer.deserialize(record);
+            if (isReplaying() && !isQueued(clusterRecord)) {
+                // other records may depend on the changes replayed so far
+                replayer.drain();
+            }
+            clusterRecord.process(this);
         } catch (JournalException e) {
             String msg = "Unable to read revision '" + record.getRevision() + "'.";
             log.error(msg, e);
+        } finally {
+            consumedRevision = record.getRevision();
         }
     }
 
+    /**
+     * Return a flag indicating whether a record is handed to the replayer.
+     * Only the change log records of workspaces are, the changes of the
+     * version storage and the workspaces depend on each other.
+     *
+     * @param record cluster record
+     * @return <code>true</code> if the record is replayed concurrently
+     */
+    private static boolean isQueued(ClusterRecord record) {
+        return record instanceof ChangeLogRecord
+                && ((ChangeLogRecord) record).getWorkspace() != null;
+    }
+
     /**
      * {@inheritDoc}
      */
     public void setRevision(long revision) {
+        if (isReplaying()) {
+            // the changes up to this revision have to be applied first
+            try {
+                replayer.drain();
+            } catch (IllegalStateException e) {
+                // keep the revision of the last record applied without gaps
+                long applied = replayer.getAppliedRevision(revision);
+                log.error("Could not synchronize to revision: " + revision
+                        + " due to illegal state of update listener,"
+                        + " synchronized to revision: " + applied);
+                revision = applied;
+            }
+        }
         try {
             instanceRevision.set(revision);
         } catch (JournalException e) {
@@ -876,6 +1421,25 @@ public class ClusterNode implements Runnable,
         }
     }
 
+    /**
+     * Sets the revision of a record committed by this cluster node, and
+     * announces it to the other cluster nodes. The revision is never moved
+     * backwards, as the updates of a journal group commit may end in any
+     * order.
+     *
+     * @param revision committed revision
+     */
+    private void revisionCommitted(long revision) {
+        synchronized (committedRevisionLock) {
+            if (revision > getRevision()) {
+                setRevision(revision);
+            }
+        }
+        if (notifier != null) {
+            notifier.revisionCommitted(revision);
+        }
+    }
+
     //--------------------------------------------------- ClusterRecordProcessor
 
     /**
@@ -922,8 +1486,12 @@ public class ClusterNode implements Runnable,
            	auditLogger.info("[{}] {} {}", new Object[]{updateCount.incrementAndGet(), 
                     record.getRevision(), path});
 
-            listener.externalUpdate(record.getChanges(), eventStates,
-                    record.getTimestamp(), record.getUserData());
+            if (isReplaying() && workspace != null) {
+                replayer.replay(listener, record, consumedRevision);
+            } else {
+                listener.externalUpdate(record.getChanges(), eventStates,
+                        record.getTimestamp(), record.getUserData());
+            }
         } catch (RepositoryException e) {
             String msg = "Unable to deliver update events: " + e.getMessage();
             log.error(msg);
@@ -1072,7 +1640,7 @@ public class ClusterNode implements Runnable,
             record = new WorkspaceRecord(workspaceName, inputSource, producer.append());
             record.write();
             record.update();
-            setRevision(record.getRevision());
+            revisionCommitted(record.getRevision());
             succeeded = true;
         } catch (JournalException e) {
             String msg = "Unable to create log entry: " + e.getMessage();
@@ -1105,7 +1673,7 @@ public class ClusterNode implements Runnable,
             if (successful) {
                 record.write();
                 record.update();
-                setRevision(record.getRevision());
+                revisionCommitted(record.getRevision());
                 succeeded = true;
             }
         } catch (JournalException e) {
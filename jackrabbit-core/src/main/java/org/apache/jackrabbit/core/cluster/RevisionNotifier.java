@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+/**
+ * Channel that announces the journal revisions committed by a cluster node
+ * to the other members of the cluster, so that they can synchronize
+ * immediately instead of waiting for their next periodic synchronization.
+ * Announcements are a hint only: a cluster node still synchronizes
+ * periodically, and thereby picks up any revision whose announcement got
+ * lost.
+ * <p>
+ * Implementations are configured as a bean in the optional
+ * <code>RevisionNotifier</code> element of the <code>Cluster</code>
+ * configuration.
+ */
+public interface RevisionNotifier {
+
+    /**
+     * Initializes this notifier, and starts receiving the announcements of
+     * the other cluster nodes.
+     *
+     * @param clusterNodeId id of the local cluster node
+     * @throws ClusterException if an error occurs
+     */
+    void init(String clusterNodeId) throws ClusterException;
+
+    /**
+     * Announces a revision committed by the local cluster node. This method
+     * must not block.
+     *
+     * @param revision committed revision
+     */
+    void revisionCommitted(long revision);
+
+    /**
+     * Set the listener that receives the announcements of the other
+     * cluster nodes.
+     *
+     * @param listener revision listener
+     */
+    void setListener(RevisionListener listener);
+
+    /**
+     * Closes this notifier.
+     */
+    void close();
+
+}
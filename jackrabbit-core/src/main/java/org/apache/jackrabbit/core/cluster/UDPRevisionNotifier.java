@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Revision notifier that announces committed revisions with UDP datagrams.
+ * Every cluster node listens on a local port, and sends a datagram to each
+ * configured member whenever it commits a revision. The same member list
+ * may be used for all cluster nodes, as announcements of the local cluster
+ * node are ignored. It is configured through the following properties:
+ * <ul>
+ * <li><code>port</code>: the local port to listen on</li>
+ * <li><code>host</code>: the local address to listen on; optional, by default
+ * all local addresses are used</li>
+ * <li><code>members</code>: comma separated list of <code>host:port</code>
+ * addresses of the cluster members</li>
+ * </ul>
+ * For example:
+ * <pre>
+ * &lt;RevisionNotifier class="org.apache.jackrabbit.core.cluster.UDPRevisionNotifier"&gt;
+ *   &lt;param name="port" value="4711"/&gt;
+ *   &lt;param name="members" value="node1:4711,node2:4711"/&gt;
+ * &lt;/RevisionNotifier&gt;
+ * </pre>
+ * Datagrams may get lost, so cluster nodes still synchronize periodically.
+ */
+public class UDPRevisionNotifier implements RevisionNotifier, Runnable {
+
+    /**
+     * Version of the datagram format.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Maximum size of a datagram.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 1024;
+
+    /**
+     * Logger.
+     */
+    private static Logger log = LoggerFactory.getLogger(UDPRevisionNotifier.class);
+
+    /**
+     * Local address to listen on, bean property.
+     */
+    private String host;
+
+    /**
+     * Local port to listen on, bean property.
+     */
+    private int port;
+
+    /**
+     * Addresses of the cluster members, bean property.
+     */
+    private String members;
+
+    /**
+     * Id of the local cluster node.
+     */
+    private String clusterNodeId;
+
+    /**
+     * Resolved addresses of the cluster members.
+     */
+    private final List<InetSocketAddress> addresses =
+        new ArrayList<InetSocketAddress>();
+
+    /**
+     * Socket used for listening and sending.
+     */
+    private DatagramSocket socket;
+
+    /**
+     * Revision listener.
+     */
+    private volatile RevisionListener listener;
+
+    /**
+     * Bean getters
+     */
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getMembers() {
+        return members;
+    }
+
+    /**
+     * Bean setters
+     */
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public void setMembers(String members) {
+        this.members = members;
+    }
+
+    /**
+     * Return the local port this notifier listens on, which differs from
+     * the configured port if that is <code>0</code>.
+     *
+     * @return local port
+     */
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void init(String clusterNodeId) throws ClusterException {
+        this.clusterNodeId = clusterNodeId;
+
+        if (members != null) {
+            for (String member : members.split(",")) {
+                member = member.trim();
+                if (member.length() == 0) {
+                    continue;
+                }
+                int colon = member.lastIndexOf(':');
+                InetSocketAddress address;
+                try {
+                    address = new InetSocketAddress(member.substring(0, colon),
+                            Integer.parseInt(member.substring(colon + 1)));
+                } catch (RuntimeException e) {
+                    throw new ClusterException(
+                            "Invalid cluster member address: " + member, e);
+                }
+                if (address.isUnresolved()) {
+                    throw new ClusterException(
+                            "Unknown cluster member host: " + member);
+                }
+                addresses.add(address);
+            }
+        }
+
+        try {
+            if (host != null) {
+                socket = new DatagramSocket(new InetSocketAddress(host, port));
+            } else {
+                socket = new DatagramSocket(port);
+            }
+        } catch (SocketException e) {
+            throw new ClusterException(
+                    "Unable to listen for revision notifications on port "
+                    + port + ": " + e.getMessage(), e);
+        }
+
+        Thread t = new Thread(this, "UDPRevisionNotifier-" + clusterNodeId);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void revisionCommitted(long revision) {
+        byte[] data;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(VERSION);
+            out.writeUTF(clusterNodeId);
+            out.writeLong(revision);
+            out.writeLong(System.currentTimeMillis());
+            out.close();
+            data = buffer.toByteArray();
+        } catch (IOException e) {
+            // can not happen with a byte array
+            throw new IllegalStateException(e);
+        }
+
+        for (InetSocketAddress address : addresses) {
+            try {
+                socket.send(new DatagramPacket(data, data.length, address));
+            } catch (IOException e) {
+                log.debug("Unable to notify cluster member {} of revision {}: {}",
+                        new Object[] { address, revision, e.getMessage() });
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setListener(RevisionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Receives the announcements of the other cluster nodes until this
+     * notifier is closed.
+     */
+    public void run() {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.warn("Unable to receive revision notification", e);
+                }
+                continue;
+            }
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                        packet.getData(), packet.getOffset(), packet.getLength()));
+                if (in.readByte() != VERSION) {
+                    log.debug("Ignoring revision notification of unknown version from {}",
+                            packet.getSocketAddress());
+                    continue;
+                }
+                String id = in.readUTF();
+                long revision = in.readLong();
+                long timestamp = in.readLong();
+
+                RevisionListener listener = this.listener;
+                if (listener != null && !id.equals(clusterNodeId)) {
+                    listener.externalRevision(id, revision, timestamp);
+                }
+            } catch (IOException e) {
+                log.debug("Ignoring malformed revision notification from {}",
+                        packet.getSocketAddress());
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while processing revision notification", e);
+            }
+        }
+    }
+
+}
@@ -52,6 +52,16 @@ public interface UpdateEventChannel {
      */
     void updateCancelled(Update update);
 
+    /**
+     * Called when an update operation has been committed or cancelled, and
+     * the caller has released the locks it held for the update. Must be
+     * called after {@link #updateCommitted(Update, String)} and
+     * {@link #updateCancelled(Update)}.
+     *
+     * @param update update operation
+     */
+    void updateFinished(Update update);
+
     /**
      * Set listener that will receive information about incoming, external update events.
      *
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.config;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.fs.FileSystem;
+import org.apache.jackrabbit.core.fs.FileSystemFactory;
+
+/**
+ * Checkpoint configuration of a cluster node. Checkpoints are snapshots of
+ * the search indexes together with the revision they reflect, stored in a
+ * file system that is shared by all cluster nodes.
+ *
+ * @see ClusterConfig#getCheckpointConfig()
+ */
+public class CheckpointConfig implements FileSystemFactory {
+
+    /**
+     * Interval between checkpoints, in milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * Factory of the shared checkpoint file system.
+     */
+    private final FileSystemFactory fsf;
+
+    /**
+     * Creates a new checkpoint configuration.
+     *
+     * @param interval interval between checkpoints written by this cluster
+     *                 node, in milliseconds, or <code>0</code> if this
+     *                 cluster node only restores checkpoints
+     * @param fsf factory of the shared checkpoint file system
+     */
+    public CheckpointConfig(long interval, FileSystemFactory fsf) {
+        this.interval = interval;
+        this.fsf = fsf;
+    }
+
+    /**
+     * Returns the interval between checkpoints written by this cluster node.
+     *
+     * @return interval in milliseconds, or <code>0</code>
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Creates and returns the configured checkpoint file system.
+     *
+     * @return initialized file system
+     * @throws RepositoryException if the file system can not be created
+     */
+    public FileSystem getFileSystem() throws RepositoryException {
+        return fsf.getFileSystem();
+    }
+
+}
@@ -47,6 +47,21 @@ public class ClusterConfig implements JournalFactory {
      */
     private final JournalFactory jf;
 
+    /**
+     * Revision notifier configuration, or <code>null</code>.
+     */
+    private final BeanConfig notifierConfig;
+
+    /**
+     * Number of threads replaying the changes of other cluster nodes.
+     */
+    private final int replayThreads;
+
+    /**
+     * Checkpoint configuration, or <code>null</code>.
+     */
+    private final CheckpointConfig checkpointConfig;
+
     /**
      * Creates a new cluster configuration.
      *
@@ -68,10 +83,73 @@ public class ClusterConfig implements JournalFactory {
      */
     public ClusterConfig(String id, long syncDelay,
                          long stopDelay, JournalFactory jf) {
+        this(id, syncDelay, stopDelay, jf, null);
+    }
+
+    /**
+     * Creates a new cluster configuration.
+     *
+     * @param id custom cluster node id
+     * @param syncDelay syncDelay, in milliseconds
+     * @param stopDelay stopDelay in milliseconds
+     * @param jf journal factory
+     * @param notifierConfig revision notifier configuration, or
+     *                       <code>null</code> to rely on periodic
+     *                       synchronization only
+     */
+    public ClusterConfig(String id, long syncDelay, long stopDelay,
+                         JournalFactory jf, BeanConfig notifierConfig) {
+        this(id, syncDelay, stopDelay, jf, notifierConfig, 1);
+    }
+
+    /**
+     * Creates a new cluster configuration.
+     *
+     * @param id custom cluster node id
+     * @param syncDelay syncDelay, in milliseconds
+     * @param stopDelay stopDelay in milliseconds
+     * @param jf journal factory
+     * @param notifierConfig revision notifier configuration, or
+     *                       <code>null</code> to rely on periodic
+     *                       synchronization only
+     * @param replayThreads number of threads replaying the changes of other
+     *                      cluster nodes, <code>1</code> to replay them on
+     *                      the synchronizing thread
+     */
+    public ClusterConfig(String id, long syncDelay, long stopDelay,
+                         JournalFactory jf, BeanConfig notifierConfig,
+                         int replayThreads) {
+        this(id, syncDelay, stopDelay, jf, notifierConfig, replayThreads,
+                null);
+    }
+
+    /**
+     * Creates a new cluster configuration.
+     *
+     * @param id custom cluster node id
+     * @param syncDelay syncDelay, in milliseconds
+     * @param stopDelay stopDelay in milliseconds
+     * @param jf journal factory
+     * @param notifierConfig revision notifier configuration, or
+     *                       <code>null</code> to rely on periodic
+     *                       synchronization only
+     * @param replayThreads number of threads replaying the changes of other
+     *                      cluster nodes, <code>1</code> to replay them on
+     *                      the synchronizing thread
+     * @param checkpointConfig checkpoint configuration, or
+     *                         <code>null</code> to always replay the whole
+     *                         journal when joining the cluster
+     */
+    public ClusterConfig(String id, long syncDelay, long stopDelay,
+                         JournalFactory jf, BeanConfig notifierConfig,
+                         int replayThreads, CheckpointConfig checkpointConfig) {
         this.id = id;
         this.syncDelay = syncDelay;
         this.stopDelay = stopDelay < 0 ? syncDelay * 10 : stopDelay;
         this.jf = jf;
+        this.notifierConfig = notifierConfig;
+        this.replayThreads = replayThreads;
+        this.checkpointConfig = checkpointConfig;
     }
 
     /**
@@ -99,6 +177,33 @@ public class ClusterConfig implements JournalFactory {
         return stopDelay;
     }
 
+    /**
+     * Return the replayThreads configuration attribute value.
+     *
+     * @return number of threads replaying the changes of other cluster nodes
+     */
+    public int getReplayThreads() {
+        return replayThreads;
+    }
+
+    /**
+     * Returns the revision notifier configuration.
+     *
+     * @return revision notifier configuration, or <code>null</code>
+     */
+    public BeanConfig getRevisionNotifierConfig() {
+        return notifierConfig;
+    }
+
+    /**
+     * Returns the checkpoint configuration.
+     *
+     * @return checkpoint configuration, or <code>null</code>
+     */
+    public CheckpointConfig getCheckpointConfig() {
+        return checkpointConfig;
+    }
+
     /**
      * Returns an initialized journal instance.
      *
@@ -136,6 +136,12 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
     /** Name of the journal configuration element. */
     public static final String JOURNAL_ELEMENT = "Journal";
 
+    /** Name of the revision notifier configuration element. */
+    public static final String REVISION_NOTIFIER_ELEMENT = "RevisionNotifier";
+
+    /** Name of the cluster checkpoint configuration element. */
+    public static final String CHECKPOINT_ELEMENT = "Checkpoint";
+
     /** Name of the data store configuration element. */
     public static final String DATA_STORE_ELEMENT = "DataStore";
 
@@ -181,6 +187,12 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
     /** Name of the stopDelay configuration attribute. */
     public static final String STOP_DELAY_ATTRIBUTE = "stopDelay";
 
+    /** Name of the replayThreads configuration attribute. */
+    public static final String REPLAY_THREADS_ATTRIBUTE = "replayThreads";
+
+    /** Name of the checkpoint interval configuration attribute. */
+    public static final String INTERVAL_ATTRIBUTE = "interval";
+
     /** Name of the default search index implementation class. */
     public static final String DEFAULT_QUERY_HANDLER =
         "org.apache.jackrabbit.core.query.lucene.SearchIndex";
@@ -845,10 +857,20 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
      *   &lt;Cluster&gt;
      *     &lt;Journal ...&gt;
      *   &lt;/Journal&gt;
+     *     &lt;RevisionNotifier ...&gt;
+     *   &lt;/RevisionNotifier&gt;
+     *     &lt;Checkpoint interval="..."&gt;
+     *       &lt;FileSystem ...&gt;
+     *     &lt;/Checkpoint&gt;
      * </pre>
      * <p>
      * <code>Cluster</code> is a {@link #parseBeanConfig(Element,String) bean configuration}
-     * element.
+     * element. The <code>RevisionNotifier</code> element is an optional
+     * bean configuration of the channel that announces committed revisions
+     * to the other cluster nodes. The optional <code>Checkpoint</code>
+     * element configures the shared file system that stores snapshots of the
+     * search indexes, and the interval in milliseconds at which this cluster
+     * node writes them.
      * <p>
      * Clustering is an optional feature. If the cluster element is not found, then this
      * method returns <code>null</code>.
@@ -893,9 +915,28 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
                         element, SYNC_DELAY_ATTRIBUTE, DEFAULT_SYNC_DELAY)));
                 long stopDelay = Long.parseLong(replaceVariables(getAttribute(
                         element, STOP_DELAY_ATTRIBUTE, "-1")));
+                int replayThreads = Integer.parseInt(replaceVariables(getAttribute(
+                        element, REPLAY_THREADS_ATTRIBUTE, "1")));
 
                 JournalFactory jf = getJournalFactory(element, home, id);
-                return new ClusterConfig(id, syncDelay, stopDelay, jf);
+
+                BeanConfig notifierConfig = null;
+                if (getElement(element, REVISION_NOTIFIER_ELEMENT, false) != null) {
+                    notifierConfig = parseBeanConfig(
+                            element, REVISION_NOTIFIER_ELEMENT);
+                }
+
+                CheckpointConfig checkpointConfig = null;
+                Element checkpoint =
+                    getElement(element, CHECKPOINT_ELEMENT, false);
+                if (checkpoint != null) {
+                    long interval = Long.parseLong(replaceVariables(
+                            getAttribute(checkpoint, INTERVAL_ATTRIBUTE, "0")));
+                    checkpointConfig = new CheckpointConfig(interval,
+                            getFileSystemFactory(checkpoint, FILE_SYSTEM_ELEMENT));
+                }
+                return new ClusterConfig(id, syncDelay, stopDelay, jf,
+                        notifierConfig, replayThreads, checkpointConfig);
             }
         }
         return null;
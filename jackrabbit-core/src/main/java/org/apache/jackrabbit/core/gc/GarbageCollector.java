@@ -16,14 +16,23 @@
  */
 package org.apache.jackrabbit.core.gc;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -45,8 +54,10 @@ import javax.jcr.observation.ObservationManager;
 
 import org.apache.jackrabbit.api.management.DataStoreGarbageCollector;
 import org.apache.jackrabbit.api.management.MarkEventListener;
+import org.apache.jackrabbit.api.management.MarkProgressListener;
 import org.apache.jackrabbit.core.RepositoryContext;
 import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.data.DataIdentifier;
 import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
@@ -84,6 +95,14 @@ import org.slf4j.LoggerFactory;
  *     gc.close();
  * }
  * </pre>
+ * <p>
+ * If a {@link #setMarkStateDirectory(File) mark state directory} is set and
+ * the persistence managers can be iterated, the persistence managers of all
+ * workspaces are scanned concurrently, and the progress of the scan and the
+ * identifiers of the referenced binaries are written to the directory. An
+ * interrupted scan is then resumed by the next call of {@link #mark()} of
+ * the same garbage collector, and the referenced identifiers are available
+ * sorted in the file <code>references.txt</code> once the scan is done.
  */
 public class GarbageCollector implements DataStoreGarbageCollector {
     
@@ -108,6 +127,25 @@ public class GarbageCollector implements DataStoreGarbageCollector {
 
     }
 
+    private class ScanPersistenceManagerTask implements Callable<Void> {
+
+        private final IterablePersistenceManager pm;
+        private final String name;
+        private final MarkState state;
+
+        public ScanPersistenceManagerTask(IterablePersistenceManager pm, String name, MarkState state) {
+            this.pm = pm;
+            this.name = name;
+            this.state = state;
+        }
+
+        public Void call() throws Exception {
+            scanPersistenceManager(pm, name, state);
+            return null;
+        }
+
+    }
+
     /** logger instance */
     static final Logger LOG = LoggerFactory.getLogger(GarbageCollector.class);
 
@@ -150,6 +188,8 @@ public class GarbageCollector implements DataStoreGarbageCollector {
 
     private volatile RepositoryException observationException;
 
+    private File markStateDirectory;
+
     /**
      * Create a new garbage collector.
      * This method is usually not called by the application, it is called
@@ -208,10 +248,40 @@ public class GarbageCollector implements DataStoreGarbageCollector {
         this.callback = callback;
     }
 
+    public File getMarkStateDirectory() {
+        return markStateDirectory;
+    }
+
+    /**
+     * Set the directory to keep the state of the scan in, so that the scan
+     * can be resumed if it is interrupted. If set, the persistence managers
+     * are scanned concurrently by up to {@link #getConcurrentThreadSize()}
+     * threads. The state is deleted by {@link #sweep()}.
+     * <p>
+     * Only this garbage collector resumes the scan, as binaries are only
+     * marked on access while it runs: after a restart, binaries that became
+     * referenced by nodes that were already scanned would not be marked. The
+     * state of a scan of another garbage collector, complete or not, is
+     * discarded and the scan is started again.
+     * <p>
+     * Note that {@link MarkEventListener#beforeScanning(Node)} is called
+     * for every node, serialized across the scanning threads.
+     *
+     * @param markStateDirectory the directory, or <code>null</code> to keep
+     *                           no state
+     */
+    public void setMarkStateDirectory(File markStateDirectory) {
+        this.markStateDirectory = markStateDirectory;
+    }
+
     public void mark() throws RepositoryException {
         if (store == null) {
             throw new RepositoryException("No DataStore configured.");
         }
+        if (markStateDirectory != null && pmList != null && persistenceManagerScan) {
+            markPersistently();
+            return;
+        }
         long now = System.currentTimeMillis();
         if (startScanTimestamp == 0) {
             startScanTimestamp = now;
@@ -272,23 +342,7 @@ public class GarbageCollector implements DataStoreGarbageCollector {
                         callback.beforeScanning(null);
                     }
                     if (info.hasBlobsInDataStore()) {
-                        try {
-                            NodeState state = pm.load(info.getId());
-                            Set<Name> propertyNames = state.getPropertyNames();
-                            for (Name name : propertyNames) {
-                                PropertyId pid = new PropertyId(info.getId(), name);
-                                PropertyState ps = pm.load(pid);
-                                if (ps.getType() == PropertyType.BINARY) {
-                                    for (InternalValue v : ps.getValues()) {
-                                        // getLength will update the last modified date
-                                        // if the persistence manager scan is running
-                                        v.getLength();
-                                    }
-                                }
-                            }
-                        } catch (NoSuchItemStateException ignored) {
-                            // the node may have been deleted in the meantime
-                        }
+                        scanBinaries(pm, info.getId(), null);
                     }
                 }
                 batch = pm.getAllNodeInfos(lastId, NODESATONCE);
@@ -342,27 +396,200 @@ public class GarbageCollector implements DataStoreGarbageCollector {
             if (callback != null) {
                 callback.beforeScanning(null);
             }
-            try {
-                NodeState state = pm.load(id);
-                Set<Name> propertyNames = state.getPropertyNames();
-                for (Name name : propertyNames) {
-                    PropertyId pid = new PropertyId(id, name);
-                    PropertyState ps = pm.load(pid);
-                    if (ps.getType() == PropertyType.BINARY) {
-                        for (InternalValue v : ps.getValues()) {
-                            // getLength will update the last modified date
-                            // if the persistence manager scan is running
-                            v.getLength();
+            scanBinaries(pm, id, null);
+        }
+    }
+
+    /**
+     * Reads the binary properties of a node, which updates the last
+     * modified date of their records.
+     *
+     * @param pm the persistence manager
+     * @param id the node identifier
+     * @param references the identifiers of the referenced records are
+     *                   added to this collection, if not <code>null</code>
+     */
+    private void scanBinaries(PersistenceManager pm, NodeId id, Collection<String> references)
+            throws RepositoryException, ItemStateException {
+        try {
+            NodeState state = pm.load(id);
+            Set<Name> propertyNames = state.getPropertyNames();
+            for (Name name : propertyNames) {
+                PropertyId pid = new PropertyId(id, name);
+                PropertyState ps = pm.load(pid);
+                if (ps.getType() == PropertyType.BINARY) {
+                    for (InternalValue v : ps.getValues()) {
+                        // getLength will update the last modified date
+                        // if the persistence manager scan is running
+                        v.getLength();
+                        if (references != null && v.isInDataStore()) {
+                            references.add(v.getDataIdentifier().toString());
                         }
                     }
                 }
-            } catch (NoSuchItemStateException e) {
-                // the node may have been deleted or moved in the meantime
-                // ignore it
             }
+        } catch (NoSuchItemStateException e) {
+            // the node may have been deleted or moved in the meantime
+            // ignore it
         }
     }
 
+    /**
+     * Scans the persistence managers concurrently, and keeps the progress
+     * and the referenced identifiers in the mark state directory. Resumes
+     * the interrupted scan of a previous garbage collector if there is one.
+     */
+    private void markPersistently() throws RepositoryException {
+        MarkState state;
+        try {
+            state = new MarkState(markStateDirectory);
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to read the mark state", e);
+        }
+        try {
+            List<String> names = getPersistenceManagerNames();
+            long start = state.getStartTimestamp();
+            boolean resumed = start != 0 && start == startScanTimestamp;
+            if (start != 0 && !resumed) {
+                // binaries that were referenced since by scanned nodes
+                // have not been marked, as no garbage collector ran
+                LOG.info("Discarding the mark state of an earlier scan in {}",
+                        markStateDirectory);
+                state.clear();
+            }
+            if (!resumed) {
+                start = startScanTimestamp != 0 ? startScanTimestamp : System.currentTimeMillis();
+                state.start(start);
+            }
+            if (startScanTimestamp != start) {
+                startScanTimestamp = start;
+                store.updateModifiedDateOnAccess(startScanTimestamp);
+            }
+            if (state.isComplete()) {
+                LOG.info("Scan already done in {}", markStateDirectory);
+                return;
+            }
+            if (resumed) {
+                LOG.info("Resuming the scan in {}", markStateDirectory);
+                // the records found before the interruption are marked again,
+                // in case their modified date was not persisted
+                for (File file : state.getReferencesFiles(names)) {
+                    markReferences(file);
+                }
+            }
+
+            int threads = Math.max(1, Math.min(concurrentThreadSize, pmList.length));
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> futures = new ArrayList<Future<Void>>();
+                for (int i = 0; i < pmList.length; i++) {
+                    if (!state.isDone(names.get(i))) {
+                        futures.add(executorService.submit(new ScanPersistenceManagerTask(
+                                pmList[i], names.get(i), state)));
+                    }
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                throw new RepositoryException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RepositoryException) {
+                    throw (RepositoryException) e.getCause();
+                }
+                throw new RepositoryException(e.getCause());
+            } finally {
+                executorService.shutdownNow();
+            }
+            NodeInfo.clearPool();
+            long count = state.complete(names);
+            LOG.info("Scan done, {} binaries are referenced", count);
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to write the mark state", e);
+        } finally {
+            state.close();
+        }
+    }
+
+    private void markReferences(File file) throws IOException, RepositoryException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                store.getRecordIfStored(new DataIdentifier(line));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Scans the nodes of a persistence manager in batches, and records the
+     * progress after each batch.
+     */
+    private void scanPersistenceManager(
+            IterablePersistenceManager pm, String name, MarkState state)
+            throws RepositoryException, ItemStateException, IOException {
+        String last = state.getLastId(name);
+        NodeId lastId = last != null ? NodeId.valueOf(last) : null;
+        long count = state.getNodes(name);
+        long scanned = 0;
+        long references = 0;
+        long start = System.nanoTime();
+        Map<NodeId, NodeInfo> batch = pm.getAllNodeInfos(lastId, NODESATONCE);
+        if (batch.isEmpty()) {
+            state.commit(name, null, count, new ArrayList<String>(), true);
+        }
+        while (!batch.isEmpty()) {
+            Set<String> ids = new LinkedHashSet<String>();
+            for (NodeInfo info : batch.values()) {
+                lastId = info.getId();
+                if (callback != null) {
+                    synchronized (callback) {
+                        // the persistence managers are scanned concurrently
+                        callback.beforeScanning(null);
+                    }
+                }
+                if (info.hasBlobsInDataStore()) {
+                    scanBinaries(pm, info.getId(), ids);
+                }
+            }
+            count += batch.size();
+            scanned += batch.size();
+            references += ids.size();
+            batch = pm.getAllNodeInfos(lastId, NODESATONCE);
+            state.commit(name, lastId.toString(), count, ids, batch.isEmpty());
+            LOG.debug(name + ": analyzed " + count + " nodes...");
+            if (callback instanceof MarkProgressListener) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                synchronized (callback) {
+                    ((MarkProgressListener) callback).afterBatch(
+                            name, count, references, seconds > 0 ? scanned / seconds : 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the names under which the progress of the persistence managers
+     * is kept: "version" for the version storage, followed by the workspace
+     * names.
+     */
+    private List<String> getPersistenceManagerNames() {
+        List<String> names = new ArrayList<String>();
+        if (pmList.length == sessionList.length + 1) {
+            names.add("version");
+            for (SessionImpl s : sessionList) {
+                names.add(s.getWorkspace().getName());
+            }
+        } else {
+            for (int i = 0; i < pmList.length; i++) {
+                names.add("pm" + i);
+            }
+        }
+        return names;
+    }
+
     private <T> List<List<T>> splitIntoParts(List<T> ls, int parts) {
         final List<List<T>> listParts = new ArrayList<List<T>>();
         final int chunkSize = ls.size() / parts;
@@ -404,7 +631,15 @@ public class GarbageCollector implements DataStoreGarbageCollector {
             throw new RepositoryException("scan must be called first");
         }
         stopScan();
-        return store.deleteAllOlderThan(startScanTimestamp);
+        int count = store.deleteAllOlderThan(startScanTimestamp);
+        if (markStateDirectory != null && markStateDirectory.exists()) {
+            try {
+                new MarkState(markStateDirectory).clear();
+            } catch (IOException e) {
+                LOG.warn("Unable to delete the mark state in " + markStateDirectory, e);
+            }
+        }
+        return count;
     }
 
     /**
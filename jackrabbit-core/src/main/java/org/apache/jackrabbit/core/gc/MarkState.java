@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.gc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.util.Text;
+
+/**
+ * Persistent state of the mark phase of the data store garbage collection.
+ * The state is kept in a directory, so that an interrupted mark phase can
+ * be resumed by the garbage collector that started it, and monitored while
+ * it runs:
+ * <ul>
+ * <li><code>mark.properties</code> contains the time the scan started, and
+ * for each persistence manager the identifier of the last scanned node, the
+ * number of scanned nodes, and whether the scan is done.</li>
+ * <li>One file per persistence manager lists the identifiers of the
+ * referenced data records, in the order they were found.</li>
+ * <li><code>references.txt</code> lists the referenced identifiers of all
+ * persistence managers sorted and without duplicates, once all scans are
+ * done.</li>
+ * </ul>
+ * The identifiers found in a batch of nodes are written before the progress
+ * of the batch, so that no reference is lost if the scan is interrupted.
+ * This class is thread-safe.
+ */
+class MarkState {
+
+    /**
+     * Name of the file with the progress of the scan.
+     */
+    static final String PROGRESS_FILE = "mark.properties";
+
+    /**
+     * Name of the file with the sorted referenced identifiers.
+     */
+    static final String REFERENCES_FILE = "references.txt";
+
+    private static final String START = "start";
+
+    private static final String COMPLETE = "complete";
+
+    private static final String LAST_ID = ".lastId";
+
+    private static final String NODES = ".nodes";
+
+    private static final String DONE = ".done";
+
+    /**
+     * Maximum number of identifiers that are sorted in memory at once.
+     */
+    private static final int RUN_SIZE = 100000;
+
+    private final File directory;
+
+    private final Properties progress = new Properties();
+
+    /**
+     * Open writers of the referenced identifiers, by persistence manager.
+     */
+    private final Map<String, Writer> writers = new HashMap<String, Writer>();
+
+    /**
+     * Creates the state that is kept in the given directory, and loads the
+     * state of an interrupted scan if there is one.
+     *
+     * @param directory directory of the state
+     * @throws IOException if the state could not be read
+     */
+    MarkState(File directory) throws IOException {
+        this.directory = directory;
+        directory.mkdirs();
+        File file = new File(directory, PROGRESS_FILE);
+        File temp = new File(directory, PROGRESS_FILE + ".tmp");
+        if (!file.exists() && temp.exists()) {
+            // interrupted while replacing the file
+            file = temp;
+        }
+        if (file.exists()) {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                progress.load(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the time the scan started, or 0 if it has not started yet.
+     */
+    synchronized long getStartTimestamp() {
+        return Long.parseLong(progress.getProperty(START, "0"));
+    }
+
+    /**
+     * Sets the time the scan started.
+     */
+    synchronized void start(long timestamp) throws IOException {
+        progress.setProperty(START, Long.toString(timestamp));
+        save();
+    }
+
+    /**
+     * Returns <code>true</code> if all scans are done and the referenced
+     * identifiers are sorted.
+     */
+    synchronized boolean isComplete() {
+        return Boolean.parseBoolean(progress.getProperty(COMPLETE));
+    }
+
+    /**
+     * Returns the identifier of the last scanned node of the given
+     * persistence manager, or <code>null</code>.
+     */
+    synchronized String getLastId(String pm) {
+        return progress.getProperty(pm + LAST_ID);
+    }
+
+    /**
+     * Returns the number of scanned nodes of the given persistence manager.
+     */
+    synchronized long getNodes(String pm) {
+        return Long.parseLong(progress.getProperty(pm + NODES, "0"));
+    }
+
+    /**
+     * Returns <code>true</code> if the scan of the given persistence manager
+     * is done.
+     */
+    synchronized boolean isDone(String pm) {
+        return Boolean.parseBoolean(progress.getProperty(pm + DONE));
+    }
+
+    /**
+     * Records a scanned batch of nodes.
+     *
+     * @param pm persistence manager
+     * @param lastId identifier of the last node of the batch
+     * @param nodes total number of scanned nodes of the persistence manager
+     * @param references identifiers referenced by the nodes of the batch
+     * @param done <code>true</code> if this was the last batch
+     * @throws IOException if the state could not be written
+     */
+    synchronized void commit(
+            String pm, String lastId, long nodes,
+            Collection<String> references, boolean done)
+            throws IOException {
+        Writer writer = writers.get(pm);
+        if (writer == null) {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(getReferencesFile(pm), true),
+                    StandardCharsets.UTF_8));
+            writers.put(pm, writer);
+        }
+        for (String reference : references) {
+            writer.write(reference);
+            writer.write('\n');
+        }
+        writer.flush();
+        if (lastId != null) {
+            progress.setProperty(pm + LAST_ID, lastId);
+        }
+        progress.setProperty(pm + NODES, Long.toString(nodes));
+        if (done) {
+            progress.setProperty(pm + DONE, Boolean.TRUE.toString());
+            writers.remove(pm).close();
+        }
+        save();
+    }
+
+    /**
+     * Returns the files with the identifiers referenced by the nodes scanned
+     * so far, in the order they were found and possibly with duplicates.
+     *
+     * @param pms the persistence managers
+     * @return the existing files of the given persistence managers
+     */
+    synchronized List<File> getReferencesFiles(Collection<String> pms) {
+        List<File> files = new ArrayList<File>();
+        for (String pm : pms) {
+            File file = getReferencesFile(pm);
+            if (file.exists()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Sorts the identifiers referenced by all persistence managers into the
+     * references file, and marks the scan as complete.
+     *
+     * @param pms the persistence managers
+     * @return the number of distinct referenced identifiers
+     * @throws IOException if the identifiers could not be sorted
+     */
+    synchronized long complete(Collection<String> pms) throws IOException {
+        // sort runs of identifiers in memory
+        List<File> runs = new ArrayList<File>();
+        List<String> run = new ArrayList<String>();
+        for (File file : getReferencesFiles(pms)) {
+            BufferedReader reader = newReader(file);
+            try {
+                for (String line = reader.readLine(); line != null;
+                        line = reader.readLine()) {
+                    run.add(line);
+                    if (run.size() == RUN_SIZE) {
+                        runs.add(writeRun(run, runs.size()));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        runs.add(writeRun(run, runs.size()));
+
+        // merge the runs
+        long count = 0;
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        Writer writer = newWriter(new File(directory, REFERENCES_FILE));
+        try {
+            for (File file : runs) {
+                Run r = new Run(newReader(file));
+                if (r.next()) {
+                    queue.add(r);
+                } else {
+                    r.reader.close();
+                }
+            }
+            String last = null;
+            while (!queue.isEmpty()) {
+                Run r = queue.poll();
+                if (!r.current.equals(last)) {
+                    last = r.current;
+                    writer.write(last);
+                    writer.write('\n');
+                    count++;
+                }
+                if (r.next()) {
+                    queue.add(r);
+                } else {
+                    r.reader.close();
+                }
+            }
+        } finally {
+            for (Run r : queue) {
+                IOUtils.closeQuietly(r.reader);
+            }
+            writer.close();
+            for (File file : runs) {
+                file.delete();
+            }
+        }
+        progress.setProperty(COMPLETE, Boolean.TRUE.toString());
+        save();
+        return count;
+    }
+
+    /**
+     * Deletes the state.
+     */
+    synchronized void clear() throws IOException {
+        for (Writer writer : writers.values()) {
+            IOUtils.closeQuietly(writer);
+        }
+        writers.clear();
+        progress.clear();
+        FileUtils.cleanDirectory(directory);
+    }
+
+    /**
+     * Closes the open files. The state is kept.
+     */
+    synchronized void close() {
+        for (Writer writer : writers.values()) {
+            IOUtils.closeQuietly(writer);
+        }
+        writers.clear();
+    }
+
+    private File getReferencesFile(String pm) {
+        return new File(directory, "references-" + Text.escape(pm) + ".txt");
+    }
+
+    private File writeRun(List<String> run, int index) throws IOException {
+        Collections.sort(run);
+        File file = new File(directory, "run-" + index + ".tmp");
+        Writer writer = newWriter(file);
+        try {
+            String last = null;
+            for (String id : run) {
+                if (!id.equals(last)) {
+                    writer.write(id);
+                    writer.write('\n');
+                    last = id;
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        run.clear();
+        return file;
+    }
+
+    /**
+     * Writes the progress to a temporary file first, so that an interrupted
+     * write does not lose the previous progress.
+     */
+    private void save() throws IOException {
+        File file = new File(directory, PROGRESS_FILE);
+        File temp = new File(directory, PROGRESS_FILE + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            progress.store(out, "Data store garbage collection");
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+            throw new IOException("Can not rename " + temp + " to " + file);
+        }
+    }
+
+    private static BufferedReader newReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sorted run of identifiers that is merged.
+     */
+    private static class Run implements Comparable<Run> {
+
+        private final BufferedReader reader;
+
+        private String current;
+
+        Run(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        boolean next() throws IOException {
+            current = reader.readLine();
+            return current != null;
+        }
+
+        public int compareTo(Run other) {
+            return current.compareTo(other.current);
+        }
+
+    }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.id;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash map keyed by node identifiers. The two halves of the identifiers are
+ * stored in parallel <code>long</code> arrays, and collisions are resolved
+ * by linear probing, so apart from resizing the map does not allocate any
+ * objects, neither when adding nor when looking up entries. Lookups do not
+ * need a {@link NodeId} instance either.
+ * <p>
+ * <code>null</code> values are not supported. This class is not
+ * thread-safe.
+ *
+ * @param <V> value type
+ */
+public class NodeIdMap<V> {
+
+    /**
+     * Minimum capacity of the map. Must be a power of two.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Most significant bits of the keys.
+     */
+    private long[] msbs;
+
+    /**
+     * Least significant bits of the keys.
+     */
+    private long[] lsbs;
+
+    /**
+     * The values, <code>null</code> for free slots.
+     */
+    private Object[] values;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Number of entries at which the map is resized. Keeps the load factor
+     * at two thirds at most.
+     */
+    private int threshold;
+
+    public NodeIdMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expectedSize number of entries the map should be able to hold
+     *                     without being resized
+     */
+    public NodeIdMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 3 * 2 < expectedSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        values = new Object[capacity];
+        threshold = capacity / 3 * 2;
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the map is empty.
+     *
+     * @return <code>true</code> if the map contains no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether the map contains the identified entry.
+     *
+     * @param id node id
+     * @return <code>true</code> if the entry exists
+     */
+    public boolean containsKey(NodeId id) {
+        return get(id.getMostSignificantBits(), id.getLeastSignificantBits())
+            != null;
+    }
+
+    /**
+     * Returns the value of the identified entry.
+     *
+     * @param id node id
+     * @return value, or <code>null</code> if not found
+     */
+    public V get(NodeId id) {
+        return get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * Returns the value of the entry with the given node id bits.
+     *
+     * @param msb most significant bits of the node id
+     * @param lsb least significant bits of the node id
+     * @return value, or <code>null</code> if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long msb, long lsb) {
+        int index = find(msb, lsb);
+        return index >= 0 ? (V) values[index] : null;
+    }
+
+    /**
+     * Adds or replaces the identified entry.
+     *
+     * @param id node id
+     * @param value value, not <code>null</code>
+     * @return the previous value, or <code>null</code>
+     */
+    public V put(NodeId id, V value) {
+        return put(id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                value);
+    }
+
+    /**
+     * Adds or replaces the entry with the given node id bits.
+     *
+     * @param msb most significant bits of the node id
+     * @param lsb least significant bits of the node id
+     * @param value value, not <code>null</code>
+     * @return the previous value, or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long msb, long lsb, V value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not supported");
+        }
+        int mask = values.length - 1;
+        int index = hash(msb, lsb) & mask;
+        while (values[index] != null) {
+            if (msbs[index] == msb && lsbs[index] == lsb) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        msbs[index] = msb;
+        lsbs[index] = lsb;
+        values[index] = value;
+        if (++size > threshold) {
+            resize(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the identified entry.
+     *
+     * @param id node id
+     * @return the removed value, or <code>null</code> if not found
+     */
+    public V remove(NodeId id) {
+        return remove(id.getMostSignificantBits(),
+                id.getLeastSignificantBits());
+    }
+
+    /**
+     * Removes the entry with the given node id bits.
+     *
+     * @param msb most significant bits of the node id
+     * @param lsb least significant bits of the node id
+     * @return the removed value, or <code>null</code> if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long msb, long lsb) {
+        int index = find(msb, lsb);
+        if (index < 0) {
+            return null;
+        }
+        V previous = (V) values[index];
+        delete(index);
+        return previous;
+    }
+
+    /**
+     * Removes the entry with the given node id bits, but only if it maps to
+     * the given value instance.
+     *
+     * @param msb most significant bits of the node id
+     * @param lsb least significant bits of the node id
+     * @param value expected value
+     * @return <code>true</code> if the entry was removed
+     */
+    public boolean remove(long msb, long lsb, V value) {
+        int index = find(msb, lsb);
+        if (index >= 0 && values[index] == value) {
+            delete(index);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all entries. Also releases the memory of a map that has grown
+     * large.
+     */
+    public void clear() {
+        if (values.length > MIN_CAPACITY * 16) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(values, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the values of all entries, in no particular order.
+     *
+     * @return values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> list = new ArrayList<V>(size);
+        for (Object value : values) {
+            if (value != null) {
+                list.add((V) value);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the slot of the given key, or -1 if not found.
+     */
+    private int find(long msb, long lsb) {
+        int mask = values.length - 1;
+        int index = hash(msb, lsb) & mask;
+        while (values[index] != null) {
+            if (msbs[index] == msb && lsbs[index] == lsb) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Frees the given slot. Following entries of the same probe sequence
+     * are shifted back, so that lookups never need to skip deleted slots.
+     */
+    private void delete(int index) {
+        int mask = values.length - 1;
+        int free = index;
+        int next = (free + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(msbs[next], lsbs[next]) & mask;
+            // move the entry unless its home slot lies cyclically
+            // between the free slot (exclusive) and its current slot
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                msbs[free] = msbs[next];
+                lsbs[free] = lsbs[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = null;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldMsbs[i], oldLsbs[i]) & mask;
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                msbs[index] = oldMsbs[i];
+                lsbs[index] = oldLsbs[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Calculates the hash of a node id. Node ids are mostly random, but
+     * some well-known ids differ only in a few bits, so the bits are
+     * mixed before the low bits are used as slot index.
+     */
+    private static int hash(long msb, long lsb) {
+        long x = msb * 0x9e3779b97f4a7c15L + lsb;
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return (int) x;
+    }
+
+}
@@ -353,6 +353,31 @@ public abstract class AbstractJournal implements Journal {
     	}
     }
 
+    /**
+     * Defers the completion of the next {@link #unlock} of the current
+     * thread or transaction until {@link #awaitUnlock()} is called. This
+     * allows a caller to append its record while it still holds other
+     * locks, and to wait for the commit of the record after releasing them.
+     * The default implementation does not defer unlocks.
+     *
+     * @return <code>true</code> if the next unlock is deferred and
+     *         {@link #awaitUnlock()} must be called after it
+     */
+    public boolean deferUnlock() {
+        return false;
+    }
+
+    /**
+     * Completes an unlock that was deferred with {@link #deferUnlock()}.
+     * Does nothing if no unlock is pending. The default implementation does
+     * nothing.
+     *
+     * @throws JournalException if the appended record could not be committed
+     */
+    public void awaitUnlock() throws JournalException {
+        // nothing to be done here
+    }
+
     /**
      * Lock the journal revision. Subclass responsibility.
      *
@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.core.journal;
 
+import static org.apache.jackrabbit.data.core.TransactionContext.getCurrentThreadId;
+
 import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.core.util.db.CheckSchemaOperation;
 import org.apache.jackrabbit.core.util.db.ConnectionFactory;
@@ -31,10 +33,23 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.jcr.RepositoryException;
 import javax.sql.DataSource;
@@ -68,8 +83,23 @@ import javax.sql.DataSource;
  * thread initiates its first run (default = <code>3</code> which means 3:00 at night)</li>
  * <li><code>schemaCheckEnabled</code>:  whether the schema check during initialization is enabled
  * (default = <code>true</code>)</li>
+ * <li><code>groupCommitSize</code>: the maximum number of concurrent updates of this
+ * cluster node that share one lock of the global revision; values greater than
+ * <code>1</code> enable group commit (default = <code>1</code>)</li>
  * </ul>
  * <p>
+ * With group commit, the first of concurrent updates locks the global revision
+ * and synchronizes as usual, while the others join its group without further
+ * database round trips. Appending a record only adds it to the group and
+ * assigns its revision, so records get their revisions in the order they are
+ * appended. Once all updates of the group have ended, the update that locked
+ * the global revision inserts the records with a single batch, commits them
+ * together with one update of the global revision and releases the journal
+ * lock. The database transaction is owned by a dedicated writer thread.
+ * Callers that append while holding other locks, like the shared item state
+ * manager, defer their unlock with {@link #deferUnlock()} and wait for the
+ * commit with {@link #awaitUnlock()} after releasing those locks.
+ * <p>
  * JNDI can be used to get the connection. In this case, use the javax.naming.InitialContext as the driver,
  * and the JNDI name as the URL. If the user and password are configured in the JNDI resource,
  * they should not be configured here. Example JNDI settings:
@@ -173,6 +203,51 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
      */
     private boolean schemaCheckEnabled = true;
 
+    /**
+     * Maximum number of updates sharing one lock of the global revision,
+     * bean property. Values greater than one enable group commit.
+     */
+    private int groupCommitSize = 1;
+
+    /**
+     * Single thread that owns the database transaction of group commits,
+     * <code>null</code> if group commit is disabled.
+     */
+    private ExecutorService groupCommitExecutor;
+
+    /**
+     * Monitor guarding {@link #currentGroup}, {@link #heldGroups},
+     * {@link #deferredUnlocks}, {@link #unlockedGroups} and the group
+     * instances.
+     */
+    private final Object groupCommitLock = new Object();
+
+    /**
+     * The group of updates currently holding the lock of the global
+     * revision, or <code>null</code>.
+     */
+    private GroupCommit currentGroup;
+
+    /**
+     * Groups by the threads or transactions holding them. A group stays
+     * registered for an update until its unlock, which may come after the
+     * group has been committed and a new group has become current.
+     */
+    private final Map<Object, GroupCommit> heldGroups =
+        new HashMap<Object, GroupCommit>();
+
+    /**
+     * Threads or transactions whose next unlock is deferred.
+     */
+    private final Set<Object> deferredUnlocks = new HashSet<Object>();
+
+    /**
+     * Groups of deferred unlocks by the threads or transactions that still
+     * need to await them.
+     */
+    private final Map<Object, GroupCommit> unlockedGroups =
+        new HashMap<Object, GroupCommit>();
+
     /**
      * The instance that manages the local revision.
      */
@@ -193,6 +268,11 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
      */
     protected String selectGlobalStmtSQL;
 
+    /**
+     * SQL statement setting the global revision to a given value.
+     */
+    protected String setGlobalStmtSQL;
+
     /**
      * SQL statement appending a new record.
      */
@@ -273,6 +353,7 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
 
             buildSQLStatements();
             initInstanceRevisionAndJanitor();
+            initGroupCommit();
         } catch (Exception e) {
             String msg = "Unable to create connection.";
             throw new JournalException(msg, e);
@@ -384,6 +465,23 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
         }
     }
 
+    /**
+     * Starts the writer thread of group commits, if enabled.
+     */
+    private void initGroupCommit() {
+        if (groupCommitSize > 1) {
+            groupCommitExecutor = Executors.newSingleThreadExecutor(
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Jackrabbit-JournalGroupCommit");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            log.info("Journal group commit enabled, group size " + groupCommitSize);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.jackrabbit.core.journal.Journal#getInstanceRevision()
      */
@@ -464,6 +562,139 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With group commit enabled, only the first of concurrent updates locks
+     * the global revision and synchronizes, the others join its group.
+     */
+    @Override
+    public void lockAndSync() throws JournalException {
+        if (groupCommitExecutor == null) {
+            super.lockAndSync();
+            return;
+        }
+
+        Object id = getCurrentThreadId();
+        GroupCommit group;
+        synchronized (groupCommitLock) {
+            for (;;) {
+                group = currentGroup;
+                if (group == null) {
+                    group = new GroupCommit(id);
+                    currentGroup = group;
+                    group.hold(id);
+                    heldGroups.put(id, group);
+                    break;
+                }
+                if (group.join(id, groupCommitSize)) {
+                    heldGroups.put(id, group);
+                    return;
+                }
+                try {
+                    groupCommitLock.wait();
+                } catch (InterruptedException e) {
+                    String msg = "Interrupted while waiting for the journal lock.";
+                    throw new JournalException(msg, e);
+                }
+            }
+        }
+
+        boolean succeeded = false;
+        try {
+            super.lockAndSync();
+            succeeded = true;
+        } finally {
+            synchronized (groupCommitLock) {
+                if (succeeded) {
+                    group.locked(lockedRevision);
+                } else {
+                    currentGroup = null;
+                    heldGroups.remove(id);
+                }
+                groupCommitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With group commit enabled, the hold of the caller ends in the group it
+     * was admitted to. Unless the unlock was deferred, the caller then waits
+     * for the commit of the group, which the update that locked it performs
+     * once all updates of the group have ended.
+     */
+    @Override
+    public void unlock(boolean successful) {
+        if (groupCommitExecutor == null) {
+            super.unlock(successful);
+            return;
+        }
+
+        Object id = getCurrentThreadId();
+        GroupCommit group;
+        synchronized (groupCommitLock) {
+            group = heldGroups.get(id);
+            if (group == null) {
+                log.warn("Journal unlocked without a lock held by " + id);
+                return;
+            }
+            if (group.release(id)) {
+                groupCommitLock.notifyAll();
+            }
+            if (!group.contains(id)) {
+                heldGroups.remove(id);
+            }
+            if (deferredUnlocks.remove(id)) {
+                unlockedGroups.put(id, group);
+                return;
+            }
+        }
+        try {
+            complete(id, group);
+        } catch (JournalException e) {
+            // already logged by the update that committed the group
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With group commit enabled, the next unlock of the current thread or
+     * transaction only ends its hold of the group, and
+     * {@link #awaitUnlock()} waits for the commit of the group.
+     */
+    @Override
+    public boolean deferUnlock() {
+        if (groupCommitExecutor == null) {
+            return false;
+        }
+        synchronized (groupCommitLock) {
+            deferredUnlocks.add(getCurrentThreadId());
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void awaitUnlock() throws JournalException {
+        if (groupCommitExecutor == null) {
+            return;
+        }
+        Object id = getCurrentThreadId();
+        GroupCommit group;
+        synchronized (groupCommitLock) {
+            deferredUnlocks.remove(id);
+            group = unlockedGroups.remove(id);
+        }
+        if (group != null) {
+            complete(id, group);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -473,6 +704,22 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
      * appended record, because a save may entail multiple appends (JCR-884).
      */
     protected void doLock() throws JournalException {
+        if (groupCommitExecutor == null) {
+            lockGlobalRevision();
+        } else {
+            runInWriter(new Callable<Void>() {
+                public Void call() throws JournalException {
+                    lockGlobalRevision();
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Increments and locks the global revision.
+     */
+    private void lockGlobalRevision() throws JournalException {
         ResultSet rs = null;
         boolean succeeded = false;
 
@@ -496,7 +743,7 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
             DbUtility.close(rs);
             if (!succeeded) {
                 log.debug("doLock.doUnlock(false)");
-                doUnlock(false);
+                endBatch(false);
             }
         }
     }
@@ -505,7 +752,27 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
      * {@inheritDoc}
      */
     protected void doUnlock(boolean successful) {
-        endBatch(successful);
+        if (groupCommitExecutor == null) {
+            endBatch(successful);
+            return;
+        }
+
+        final GroupCommit group;
+        synchronized (groupCommitLock) {
+            group = currentGroup;
+        }
+        final boolean commit = successful && !group.appends.isEmpty();
+        try {
+            runInWriter(new Callable<Void>() {
+                public Void call() throws JournalException {
+                    commitGroup(group, commit);
+                    return null;
+                }
+            });
+        } catch (JournalException e) {
+            log.error(e.getMessage(), e);
+            group.failure = e;
+        }
     }
 
     private void startBatch() throws SQLException {
@@ -527,20 +794,32 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
     /**
      * {@inheritDoc}
      * <p>
-     * Save away the locked revision inside the newly appended record.
+     * Save away the locked revision inside the newly appended record. With
+     * group commit enabled, the revision is assigned when the record is
+     * added to its group.
      */
     protected void appending(AppendRecord record) {
-        record.setRevision(lockedRevision);
+        if (groupCommitExecutor == null) {
+            record.setRevision(lockedRevision);
+        }
     }
 
     /**
      * {@inheritDoc}
      * <p>
-     * We have already saved away the revision for this record.
+     * We have already saved away the revision for this record. With group
+     * commit enabled, a copy of the record is added to the group held by the
+     * caller, which assigns its revision. The group is committed when the
+     * caller unlocks the journal.
      */
     protected void append(AppendRecord record, InputStream in, int length)
             throws JournalException {
 
+        if (groupCommitExecutor != null) {
+            appendToGroup(record, in, length);
+            return;
+        }
+
         try {
             conHelper.exec(insertRevisionStmtSQL, record.getRevision(), getId(), record.getProducerId(),
                 new StreamWrapper(in, length));
@@ -551,6 +830,140 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
         }
     }
 
+    private void appendToGroup(AppendRecord record, InputStream in, int length)
+            throws JournalException {
+        byte[] data;
+        try {
+            data = IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            throw new JournalException("Unable to read record.", e);
+        }
+
+        Object id = getCurrentThreadId();
+        synchronized (groupCommitLock) {
+            GroupCommit group = heldGroups.get(id);
+            if (group == null) {
+                throw new JournalException("Journal not locked by " + id);
+            }
+            if (group.append(id, record, data)) {
+                groupCommitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Completes an unlock of the given thread or transaction. The update
+     * that locked the global revision waits until all updates of the group
+     * have ended, commits the group and releases the journal lock it owns.
+     * The other updates wait until the group has been committed. Nothing is
+     * done while the caller still holds the group with an enclosing update,
+     * whose unlock completes instead.
+     *
+     * @param id thread or transaction identifier
+     * @param group group of the unlock
+     * @throws JournalException if committing the group failed
+     */
+    private void complete(Object id, GroupCommit group)
+            throws JournalException {
+        boolean interrupted = false;
+        boolean owner;
+        synchronized (groupCommitLock) {
+            if (group.isHolding(id)) {
+                return;
+            }
+            owner = group.isOwner(id);
+            while (owner ? !group.isEnded() : !group.committed) {
+                try {
+                    groupCommitLock.wait();
+                } catch (InterruptedException e) {
+                    // the hold has been ended in the group already
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (owner) {
+            try {
+                super.unlock(true);
+            } finally {
+                synchronized (groupCommitLock) {
+                    currentGroup = null;
+                    group.committed = true;
+                    groupCommitLock.notifyAll();
+                }
+            }
+        }
+        if (group.failure != null) {
+            throw new JournalException(group.failure.getMessage(), group.failure);
+        }
+    }
+
+    /**
+     * Inserts the records of the given group and ends the transaction. Runs
+     * on the writer thread.
+     */
+    private void commitGroup(GroupCommit group, boolean commit)
+            throws JournalException {
+        if (commit) {
+            List<Object[]> params = new ArrayList<Object[]>();
+            long revision = lockedRevision;
+            for (GroupCommit.Append append : group.appends) {
+                revision = append.record.getRevision();
+                params.add(new Object[] {
+                        revision, getId(), append.record.getProducerId(),
+                        new StreamWrapper(new ByteArrayInputStream(append.data),
+                                append.data.length) });
+            }
+            try {
+                conHelper.updateBatch(insertRevisionStmtSQL, params);
+                if (revision > lockedRevision) {
+                    conHelper.exec(setGlobalStmtSQL, revision);
+                }
+            } catch (SQLException e) {
+                endBatch(false);
+                String msg = "Unable to append revisions " + lockedRevision
+                    + " to " + revision + ".";
+                throw new JournalException(msg, e);
+            }
+        }
+
+        lockLevel--;
+        try {
+            conHelper.endBatch(commit);
+        } catch (SQLException e) {
+            throw new JournalException("Unable to commit revisions.", e);
+        }
+    }
+
+    /**
+     * Runs the given task on the writer thread and waits for its completion.
+     */
+    private <T> T runInWriter(Callable<T> task) throws JournalException {
+        Future<T> future = groupCommitExecutor.submit(task);
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // the transaction must not be left behind
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof JournalException) {
+                        throw (JournalException) e.getCause();
+                    }
+                    throw new JournalException("Unexpected error in group commit.", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -558,6 +971,9 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
         if (janitorThread != null) {
             janitorThread.interrupt();
         }
+        if (groupCommitExecutor != null) {
+            groupCommitExecutor.shutdown();
+        }
     }
 
     /**
@@ -605,6 +1021,9 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
         selectGlobalStmtSQL =
             "select REVISION_ID from "
             + schemaObjectPrefix + "GLOBAL_REVISION";
+        setGlobalStmtSQL =
+            "update " + schemaObjectPrefix + "GLOBAL_REVISION"
+            + " set REVISION_ID = ?";
         insertRevisionStmtSQL =
             "insert into " + schemaObjectPrefix + "JOURNAL"
             + " (REVISION_ID, JOURNAL_ID, PRODUCER_ID, REVISION_DATA) "
@@ -741,6 +1160,14 @@ public class DatabaseJournal extends AbstractJournal implements DatabaseAware {
         janitorNextRun.set(Calendar.MILLISECOND, 0);
     }
 
+    public int getGroupCommitSize() {
+        return groupCommitSize;
+    }
+
+    public void setGroupCommitSize(int groupCommitSize) {
+        this.groupCommitSize = groupCommitSize;
+    }
+
     public String getDataSourceName() {
         return dataSourceName;
     }
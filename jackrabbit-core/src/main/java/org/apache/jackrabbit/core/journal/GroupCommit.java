@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.journal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group of updates that share one lock of the global revision of a
+ * {@link DatabaseJournal}. Each call to <code>lockAndSync()</code> adds a
+ * hold to the group, which ends with either the append of its record or an
+ * unlock. Appended records get consecutive revisions, starting at the locked
+ * global revision. The group is committed by its owner, the thread or
+ * transaction that locked the global revision, once all holds have ended.
+ * <p>
+ * Holds are counted per thread or transaction, so that nested updates of a
+ * thread that already holds the lock are admitted even if the group is full.
+ * This class is not thread-safe, the journal guards all instances with its
+ * group commit monitor.
+ */
+class GroupCommit {
+
+    /**
+     * Index of the number of holds in the per thread counters.
+     */
+    private static final int HOLDS = 0;
+
+    /**
+     * Index of the number of holds that ended with an append whose unlock
+     * is still pending.
+     */
+    private static final int APPENDED = 1;
+
+    /**
+     * The thread or transaction that locked the global revision.
+     */
+    private final Object owner;
+
+    /**
+     * Counters per thread or transaction identifier.
+     */
+    private final Map<Object, int[]> holders = new HashMap<Object, int[]>();
+
+    /**
+     * Records appended so far, in the order of their revisions.
+     */
+    final List<Append> appends = new ArrayList<Append>();
+
+    /**
+     * Number of holds that have not ended yet.
+     */
+    private int active;
+
+    /**
+     * Number of holds admitted so far.
+     */
+    private int size;
+
+    /**
+     * Revision of the next appended record.
+     */
+    private long revision;
+
+    /**
+     * Flag indicating whether the global revision is locked and the group
+     * accepts further holds.
+     */
+    private boolean locked;
+
+    /**
+     * Flag indicating whether the group has been committed or rolled back.
+     */
+    boolean committed;
+
+    /**
+     * Failure while committing the group, or <code>null</code>.
+     */
+    JournalException failure;
+
+    /**
+     * Creates a group owned by the given thread or transaction.
+     *
+     * @param owner thread or transaction identifier
+     */
+    GroupCommit(Object owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Marks the global revision as locked, and the group as accepting
+     * further holds.
+     *
+     * @param lockedRevision locked global revision
+     */
+    void locked(long lockedRevision) {
+        locked = true;
+        revision = lockedRevision;
+    }
+
+    /**
+     * Adds a hold of the given thread or transaction.
+     *
+     * @param id thread or transaction identifier
+     */
+    void hold(Object id) {
+        int[] counts = holders.get(id);
+        if (counts == null) {
+            counts = new int[2];
+            holders.put(id, counts);
+        }
+        counts[HOLDS]++;
+        active++;
+        size++;
+    }
+
+    /**
+     * Adds a hold if the group is locked and either not full, or the given
+     * thread or transaction already holds it.
+     *
+     * @param id thread or transaction identifier
+     * @param maxSize maximum number of holds
+     * @return <code>true</code> if the hold was added
+     */
+    boolean join(Object id, int maxSize) {
+        if (locked && (size < maxSize || isHolding(id))) {
+            hold(id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ends a hold of the given thread or transaction by appending a record,
+     * and assigns the record's revision.
+     *
+     * @param id thread or transaction identifier
+     * @param record record
+     * @param data record data
+     * @return <code>true</code> if this was the last hold of the group
+     */
+    boolean append(Object id, AppendRecord record, byte[] data) {
+        record.setRevision(revision++);
+        appends.add(new Append(record, data));
+        int[] counts = holders.get(id);
+        counts[HOLDS]--;
+        counts[APPENDED]++;
+        return end();
+    }
+
+    /**
+     * Ends a hold of the given thread or transaction, unless it has already
+     * been ended by an append.
+     *
+     * @param id thread or transaction identifier
+     * @return <code>true</code> if this was the last hold of the group
+     */
+    boolean release(Object id) {
+        int[] counts = holders.get(id);
+        if (counts[APPENDED] > 0) {
+            counts[APPENDED]--;
+            removeIfUnused(id, counts);
+            return false;
+        }
+        counts[HOLDS]--;
+        removeIfUnused(id, counts);
+        return end();
+    }
+
+    /**
+     * Returns whether the given thread or transaction has holds that have
+     * not ended yet.
+     *
+     * @param id thread or transaction identifier
+     * @return <code>true</code> if the group is held
+     */
+    boolean isHolding(Object id) {
+        int[] counts = holders.get(id);
+        return counts != null && counts[HOLDS] > 0;
+    }
+
+    /**
+     * Returns whether the given thread or transaction still has holds or
+     * appends whose unlock is pending.
+     *
+     * @param id thread or transaction identifier
+     * @return <code>true</code> if the group knows the identifier
+     */
+    boolean contains(Object id) {
+        return holders.containsKey(id);
+    }
+
+    /**
+     * Returns whether the given thread or transaction owns the group.
+     *
+     * @param id thread or transaction identifier
+     * @return <code>true</code> if the group has been locked by it
+     */
+    boolean isOwner(Object id) {
+        return owner.equals(id);
+    }
+
+    /**
+     * Returns whether all holds of the group have ended.
+     *
+     * @return <code>true</code> if no further records will be appended
+     */
+    boolean isEnded() {
+        return active == 0;
+    }
+
+    private void removeIfUnused(Object id, int[] counts) {
+        if (counts[HOLDS] == 0 && counts[APPENDED] == 0) {
+            holders.remove(id);
+        }
+    }
+
+    private boolean end() {
+        if (--active == 0) {
+            locked = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record appended to the group.
+     */
+    static class Append {
+
+        final AppendRecord record;
+
+        final byte[] data;
+
+        Append(AppendRecord record, byte[] data) {
+            this.record = record;
+            this.data = data;
+        }
+
+    }
+
+}
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.core.observation;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * The <code>DispatchAction</code> class is a simple struct that defines what
@@ -36,13 +37,31 @@ class DispatchAction {
      */
     private final Collection<EventConsumer> eventConsumers;
 
+    /**
+     * The events selected for each consumer, or <code>null</code> if all
+     * events are dispatched to every consumer.
+     */
+    private final EventFilterIndex.Selection selection;
+
     /**
      * Creates a new <code>DispatchAction</code> struct with
      * <code>eventStates</code> and <code>eventConsumers</code>.
      */
     DispatchAction(EventStateCollection eventStates, Collection<EventConsumer> eventConsumers) {
+        this(eventStates, eventConsumers, null);
+    }
+
+    /**
+     * Creates a new <code>DispatchAction</code> struct with
+     * <code>eventStates</code>, <code>eventConsumers</code> and the events
+     * selected for each consumer.
+     */
+    DispatchAction(EventStateCollection eventStates,
+                   Collection<EventConsumer> eventConsumers,
+                   EventFilterIndex.Selection selection) {
         this.eventStates = eventStates;
         this.eventConsumers = eventConsumers;
+        this.selection = selection;
     }
 
     /**
@@ -63,4 +82,17 @@ class DispatchAction {
     Collection<EventConsumer> getEventConsumers() {
         return eventConsumers;
     }
+
+    /**
+     * Returns the events to dispatch to the given consumer.
+     *
+     * @param consumer one of the consumers of this action.
+     * @return the events to dispatch to the consumer.
+     */
+    List<EventState> getEvents(EventConsumer consumer) {
+        if (selection == null) {
+            return eventStates.getEvents();
+        }
+        return selection.getEvents(consumer);
+    }
 }
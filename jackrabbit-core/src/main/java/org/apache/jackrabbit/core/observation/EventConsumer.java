@@ -19,16 +19,18 @@ package org.apache.jackrabbit.core.observation;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.observation.Event;
-import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.EventListener;
 
+import org.apache.jackrabbit.commons.observation.ListenerTracker;
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.security.authorization.Permission;
@@ -71,6 +73,11 @@ class EventConsumer {
      */
     private final EventFilter filter;
 
+    /**
+     * Tracker of the event deliveries to the listener, or <code>null</code>.
+     */
+    private final ListenerTracker tracker;
+
     /**
      * A map of <code>Set</code> objects that hold references to
      * <code>ItemId</code>s of denied <code>ItemState</code>s. The map uses the
@@ -97,6 +104,26 @@ class EventConsumer {
      */
     EventConsumer(SessionImpl session, EventListener listener, EventFilter filter)
             throws NullPointerException {
+        this(session, listener, filter, null);
+    }
+
+    /**
+     * An <code>EventConsumer</code> consists of a <code>Session</code>, the
+     * attached <code>EventListener</code> and an <code>EventFilter</code>.
+     * Event deliveries to the listener are recorded in the given tracker.
+     *
+     * @param session  the <code>Session</code> that created this
+     *                 <code>EventConsumer</code>.
+     * @param listener the actual <code>EventListener</code> to call back.
+     * @param filter   only pass an <code>Event</code> to the listener if the
+     *                 <code>EventFilter</code> allows the <code>Event</code>.
+     * @param tracker  tracker of the event deliveries, or <code>null</code>.
+     * @throws NullPointerException if <code>session</code>, <code>listener</code>
+     *                              or <code>filter</code> is<code>null</code>.
+     */
+    EventConsumer(SessionImpl session, EventListener listener,
+                  EventFilter filter, ListenerTracker tracker)
+            throws NullPointerException {
         if (session == null) {
             throw new NullPointerException("session");
         }
@@ -110,6 +137,16 @@ class EventConsumer {
         this.session = session;
         this.listener = listener;
         this.filter = filter;
+        this.tracker = tracker;
+    }
+
+    /**
+     * Returns the tracker of the event deliveries to the listener.
+     *
+     * @return the tracker, or <code>null</code>.
+     */
+    ListenerTracker getTracker() {
+        return tracker;
     }
 
     /**
@@ -132,14 +169,25 @@ class EventConsumer {
         return listener;
     }
 
+    /**
+     * Returns the <code>EventFilter</code> of this <code>EventConsumer</code>.
+     *
+     * @return the <code>EventFilter</code> of this <code>EventConsumer</code>.
+     */
+    EventFilter getFilter() {
+        return filter;
+    }
+
     /**
      * Checks for what {@link EventState}s this <code>EventConsumer</code> has
      * enough access rights to see the event.
      *
      * @param events the collection of {@link EventState}s.
+     * @param states the events of the collection to check, which are the
+     *               ones selected for this consumer.
      */
-    void prepareEvents(EventStateCollection events) {
-        Iterator<EventState> it = events.iterator();
+    void prepareEvents(EventStateCollection events, List<EventState> states) {
+        Iterator<EventState> it = states.iterator();
         Set<ItemId> denied = null;
         while (it.hasNext()) {
             EventState state = it.next();
@@ -178,16 +226,19 @@ class EventConsumer {
      * <code>EventConsumer</code> has enough access rights to see the event.
      *
      * @param events       the collection of {@link EventState}s.
+     * @param states       the events of the collection to check, which are
+     *                     the ones selected for this consumer.
      * @param deletedItems Iterator of deleted <code>ItemState</code>s.
      */
-    void prepareDeleted(EventStateCollection events, Iterable<ItemState> deletedItems) {
+    void prepareDeleted(EventStateCollection events, List<EventState> states,
+                        Iterable<ItemState> deletedItems) {
         Set<ItemId> denied = null;
         Set<ItemId> deletedIds = new HashSet<ItemId>();
         for (ItemState state : deletedItems) {
             deletedIds.add(state.getId());
         }
 
-        for (Iterator<EventState> it = events.iterator(); it.hasNext();) {
+        for (Iterator<EventState> it = states.iterator(); it.hasNext();) {
             EventState evState = it.next();
             ItemId targetId = evState.getTargetId();
             if (deletedIds.contains(targetId)) {
@@ -216,8 +267,11 @@ class EventConsumer {
      *
      * @param events a collection of {@link EventState}s
      *               to dispatch.
+     * @param states the events of the collection to dispatch, which are the
+     *               ones selected for this consumer.
      */
-    void consumeEvents(EventStateCollection events) throws RepositoryException {
+    void consumeEvents(EventStateCollection events, List<EventState> states)
+            throws RepositoryException {
         // Set of ItemIds of denied ItemStates
         Set<ItemId> denied = accessDenied.remove(events);
         if (denied == null) {
@@ -225,7 +279,7 @@ class EventConsumer {
         }
 
         // check permissions
-        for (Iterator<EventState> it = events.iterator(); it.hasNext() && session.isLive();) {
+        for (Iterator<EventState> it = states.iterator(); it.hasNext() && session.isLive();) {
             EventState state = it.next();
             if (state.getType() == Event.NODE_ADDED
                     || state.getType() == Event.PROPERTY_ADDED
@@ -241,16 +295,24 @@ class EventConsumer {
             return;
         }
         // check if filtered iterator has at least one event
-        EventIterator it = new FilteredEventIterator(
-                session, events.iterator(), events.getTimestamp(),
+        FilteredEventIterator it = new FilteredEventIterator(
+                session, states.iterator(), events.getTimestamp(),
                 events.getUserData(), filter, denied, false);
         if (it.hasNext()) {
-            long time = System.currentTimeMillis();
-            listener.onEvent(it);
-            time = System.currentTimeMillis() - time;
+            long time = System.nanoTime();
+            try {
+                listener.onEvent(it);
+            } finally {
+                time = System.nanoTime() - time;
+                if (tracker != null) {
+                    tracker.recordEventDelivery(
+                            it.getPosition(), time, TimeUnit.NANOSECONDS);
+                }
+            }
             if (log.isDebugEnabled()) {
                 log.debug("listener {} processed events in {} ms.",
-                        listener.getClass().getName(), time);
+                        listener.getClass().getName(),
+                        TimeUnit.NANOSECONDS.toMillis(time));
             }
         } else {
             // otherwise skip this listener
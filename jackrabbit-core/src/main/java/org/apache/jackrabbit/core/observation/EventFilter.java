@@ -131,6 +131,35 @@ public class EventFilter {
         this.nodeTypes = nodeTypes;
     }
 
+    /**
+     * Returns the event types this filter allows.
+     *
+     * @return the event types this filter allows.
+     */
+    long getEventTypes() {
+        return eventTypes;
+    }
+
+    /**
+     * Returns the paths this filter allows.
+     *
+     * @return the paths this filter allows.
+     */
+    List<Path> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Returns <code>true</code> if this filter also allows the items below
+     * its paths.
+     *
+     * @return <code>true</code> if this filter also allows the items below
+     *         its paths.
+     */
+    boolean isDeep() {
+        return isDeep;
+    }
+
     /**
      * Returns <code>true</code> if this <code>EventFilter</code> does not allow
      * the specified <code>EventState</code>; <code>false</code> otherwise.
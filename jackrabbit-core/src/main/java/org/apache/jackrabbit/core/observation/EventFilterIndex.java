@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.observation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+
+import org.apache.jackrabbit.spi.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the {@link EventFilter}s of a set of {@link EventConsumer}s by
+ * event type and path. The index selects the events each consumer may be
+ * interested in with a few lookups per event, instead of evaluating every
+ * event against every filter. It is a pre-filter only: the selected events
+ * are still checked against the filter and the access rights of the
+ * consumer. Instances are immutable and rebuilt whenever the set of
+ * consumers changes.
+ */
+final class EventFilterIndex {
+
+    /**
+     * Logger instance for this class
+     */
+    private static final Logger log = LoggerFactory.getLogger(EventFilterIndex.class);
+
+    /**
+     * The indexed consumers.
+     */
+    private final Map<EventConsumer, EventConsumer> consumers =
+        new HashMap<EventConsumer, EventConsumer>();
+
+    /**
+     * Consumers by the paths they listen to, without the items below.
+     */
+    private final Map<Path, List<EventConsumer>> exact =
+        new HashMap<Path, List<EventConsumer>>();
+
+    /**
+     * Consumers by the paths they listen to, including the items below.
+     */
+    private final Map<Path, List<EventConsumer>> deep =
+        new HashMap<Path, List<EventConsumer>>();
+
+    /**
+     * Consumers that listen to {@link Event#PERSIST} events, which do not
+     * depend on the path.
+     */
+    private final List<EventConsumer> persist = new ArrayList<EventConsumer>();
+
+    /**
+     * Creates an index of the filters of the given consumers.
+     *
+     * @param consumers the consumers to index.
+     */
+    EventFilterIndex(Collection<EventConsumer> consumers) {
+        for (EventConsumer c : consumers) {
+            this.consumers.put(c, c);
+            EventFilter filter = c.getFilter();
+            if ((filter.getEventTypes() & Event.PERSIST) != 0) {
+                persist.add(c);
+            }
+            Map<Path, List<EventConsumer>> map = filter.isDeep() ? deep : exact;
+            for (Path path : filter.getPaths()) {
+                List<EventConsumer> list = map.get(path);
+                if (list == null) {
+                    list = new ArrayList<EventConsumer>();
+                    map.put(path, list);
+                }
+                list.add(c);
+            }
+        }
+    }
+
+    /**
+     * Selects the events of the given collection that pass the type and
+     * path restrictions of the indexed consumers.
+     *
+     * @param events the events to select from.
+     * @return the selected events of each consumer.
+     */
+    Selection select(EventStateCollection events) {
+        Selection selection = new Selection(events.getEvents());
+        for (EventState state : events.getEvents()) {
+            if (state.getType() == Event.PERSIST) {
+                selection.add(persist, state);
+                continue;
+            }
+            Path path = state.getParentPath();
+            selection.add(exact.get(path), state);
+            selection.add(deep.get(path), state);
+            try {
+                for (int i = 1; i <= path.getDepth(); i++) {
+                    selection.add(deep.get(path.getAncestor(i)), state);
+                }
+            } catch (RepositoryException e) {
+                log.warn("Unable to select the listeners of event " + state, e);
+                selection.add(consumers.keySet(), state);
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * The events selected for each consumer of an index, in the order of
+     * the event collection.
+     */
+    final class Selection {
+
+        /**
+         * All events of the collection.
+         */
+        private final List<EventState> all;
+
+        /**
+         * The selected events of the consumers with at least one event.
+         */
+        private final Map<EventConsumer, List<EventState>> selected =
+            new HashMap<EventConsumer, List<EventState>>();
+
+        private Selection(List<EventState> all) {
+            this.all = all;
+        }
+
+        private void add(Collection<EventConsumer> candidates, EventState state) {
+            if (candidates == null) {
+                return;
+            }
+            for (EventConsumer c : candidates) {
+                if ((c.getFilter().getEventTypes() & state.getType()) == 0) {
+                    continue;
+                }
+                List<EventState> list = selected.get(c);
+                if (list == null) {
+                    list = new ArrayList<EventState>();
+                    selected.put(c, list);
+                } else if (list.get(list.size() - 1) == state) {
+                    // already selected through another path
+                    continue;
+                }
+                list.add(state);
+            }
+        }
+
+        /**
+         * Returns the selected events of the given consumer. A consumer that
+         * is not part of the index, because it was registered or
+         * re-registered after the index was built, gets all events.
+         *
+         * @param consumer the consumer.
+         * @return the selected events of the consumer.
+         */
+        List<EventState> getEvents(EventConsumer consumer) {
+            if (consumers.get(consumer) != consumer) {
+                return all;
+            }
+            List<EventState> list = selected.get(consumer);
+            if (list == null) {
+                return Collections.emptyList();
+            }
+            return list;
+        }
+
+    }
+
+}
@@ -19,18 +19,45 @@ package org.apache.jackrabbit.core.observation;
 import org.apache.commons.collections.Buffer;
 import org.apache.commons.collections.BufferUtils;
 import org.apache.commons.collections.buffer.UnboundedFifoBuffer;
+import org.apache.jackrabbit.api.jmx.EventListenerMBean;
 import org.apache.jackrabbit.core.state.ChangeLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 /**
  * Dispatcher for dispatching events to listeners within a single workspace.
+ * <p>
+ * By default, events are delivered to all asynchronous listeners by a single
+ * notification thread. If the dispatcher is created with a pool of worker
+ * threads, every asynchronous listener has a queue of its own instead, and
+ * the queues are drained by the worker threads. A slow listener then only
+ * delays the delivery of its own events. The event deliveries and the queue
+ * of every such listener are exposed as an {@link EventListenerMBean},
+ * registered with the platform MBean server under the domain
+ * {@link #MBEAN_DOMAIN} and the type <code>EventListener</code>.
  */
 public final class ObservationDispatcher extends EventDispatcher
         implements Runnable {
@@ -56,6 +83,33 @@ public final class ObservationDispatcher extends EventDispatcher
      */
     private static final int MAX_QUEUED_EVENTS = Integer.parseInt(System.getProperty("jackrabbit.maxQueuedEvents", "200000"));
 
+    /**
+     * The number of threads that deliver events to asynchronous listeners
+     * with a queue per listener. The default value 0 delivers the events of
+     * each workspace with a single notification thread instead. To change
+     * the default, set the system property jackrabbit.observationThreads to
+     * the required value. With per listener queues, the maximum number of
+     * queued events applies to each listener.
+     */
+    public static final int OBSERVATION_THREADS = Integer.getInteger("jackrabbit.observationThreads", 0);
+
+    /**
+     * Marks the threads that deliver events for a dispatcher with a worker
+     * pool.
+     */
+    private static final ThreadLocal<ObservationDispatcher> DELIVERING =
+        new ThreadLocal<ObservationDispatcher>();
+
+    /**
+     * The domain of the names of the listener MBeans.
+     */
+    public static final String MBEAN_DOMAIN = "org.apache.jackrabbit";
+
+    /**
+     * Counter that makes the names of the listener MBeans unique.
+     */
+    private static final AtomicLong MBEAN_COUNTER = new AtomicLong();
+
     /**
      * Currently active <code>EventConsumer</code>s for notification.
      */
@@ -76,6 +130,19 @@ public final class ObservationDispatcher extends EventDispatcher
      */
     private Set<EventConsumer> synchronousReadOnlyConsumers;
 
+    /**
+     * Index of the filters of all <code>EventConsumer</code>s, or
+     * <code>null</code> if it needs to be rebuilt.
+     */
+    private EventFilterIndex filterIndex;
+
+    /**
+     * The events selected for each consumer, by the prepared event
+     * collections that have not been dispatched yet.
+     */
+    private final Map<EventStateCollection, EventFilterIndex.Selection> selections =
+        Collections.synchronizedMap(new WeakHashMap<EventStateCollection, EventFilterIndex.Selection>());
+
     /**
      * synchronization monitor for listener changes
      */
@@ -94,6 +161,31 @@ public final class ObservationDispatcher extends EventDispatcher
      */
     private Thread notificationThread;
 
+    /**
+     * The worker threads that drain the per listener queues, or
+     * <code>null</code> if the notification thread delivers all events.
+     */
+    private final Executor workers;
+
+    /**
+     * The per listener queues of pending events. Only used with a worker
+     * pool.
+     */
+    private final Map<EventConsumer, ListenerQueue> listenerQueues =
+        new HashMap<EventConsumer, ListenerQueue>();
+
+    /**
+     * Number of listener queues with pending events. Guarded by
+     * {@link #listenerQueues}.
+     */
+    private int busyQueues;
+
+    /**
+     * Task that records the statistics of the listeners once per second, or
+     * <code>null</code>. Only used with a worker pool.
+     */
+    private final ScheduledFuture<?> statisticsTask;
+
     private long lastError;
 
     /**
@@ -101,16 +193,64 @@ public final class ObservationDispatcher extends EventDispatcher
      * and starts the notification thread daemon.
      */
     public ObservationDispatcher() {
-        notificationThread = new Thread(this, "ObservationManager");
-        notificationThread.setDaemon(true);
-        notificationThread.start();
+        this(null, null);
+    }
+
+    /**
+     * Creates a new <code>ObservationDispatcher</code> instance. If a worker
+     * pool is given, asynchronous listeners get a queue of their own that is
+     * drained by the workers, otherwise the notification thread daemon is
+     * started.
+     *
+     * @param workers the worker pool, or <code>null</code>.
+     * @param scheduler executor to record the statistics of the listeners
+     *                  once per second with, or <code>null</code>. Not used
+     *                  without a worker pool.
+     */
+    public ObservationDispatcher(
+            Executor workers, ScheduledExecutorService scheduler) {
+        this.workers = workers;
+        if (workers == null) {
+            notificationThread = new Thread(this, "ObservationManager");
+            notificationThread.setDaemon(true);
+            notificationThread.start();
+        }
+        if (workers != null && scheduler != null) {
+            statisticsTask = scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    recordOneSecond();
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        } else {
+            statisticsTask = null;
+        }
     }
 
     /**
      * Disposes this <code>ObservationManager</code>. This will
-     * effectively stop the background notification thread.
+     * effectively stop the background notification thread, or wait
+     * until the worker threads have delivered all pending events.
      */
     public void dispose() {
+        if (statisticsTask != null) {
+            statisticsTask.cancel(false);
+        }
+        if (workers != null) {
+            synchronized (listenerQueues) {
+                try {
+                    while (busyQueues > 0) {
+                        listenerQueues.wait();
+                    }
+                } catch (InterruptedException e) {
+                    log.warn("Interrupted while waiting for event delivery", e);
+                }
+                for (ListenerQueue queue : listenerQueues.values()) {
+                    unregisterMBean(queue);
+                }
+            }
+            log.info("Notification of EventListeners stopped.");
+            return;
+        }
         // dispatch dummy event to mark end of notification
         eventQueue.add(DISPOSE_MARKER);
         try {
@@ -121,6 +261,35 @@ public final class ObservationDispatcher extends EventDispatcher
         log.info("Notification of EventListeners stopped.");
     }
 
+    /**
+     * Returns whether the asynchronous listeners have a queue of their own.
+     * Only then the event deliveries to the listeners are tracked.
+     *
+     * @return <code>true</code> if this dispatcher has a worker pool.
+     */
+    boolean hasListenerQueues() {
+        return workers != null;
+    }
+
+    /**
+     * Records the statistics of the registered listeners over the past
+     * second.
+     */
+    private void recordOneSecond() {
+        for (EventConsumer c : getAllConsumers()) {
+            if (c.getTracker() != null) {
+                c.getTracker().recordOneSecond();
+            }
+        }
+    }
+
+    private Set<EventConsumer> getAllConsumers() {
+        Set<EventConsumer> consumers = new HashSet<EventConsumer>();
+        consumers.addAll(getSynchronousConsumers());
+        consumers.addAll(getAsynchronousConsumers());
+        return consumers;
+    }
+
     /**
      * Returns an unmodifiable <code>Set</code> of <code>EventConsumer</code>s.
      *
@@ -144,6 +313,37 @@ public final class ObservationDispatcher extends EventDispatcher
         }
     }
 
+    /**
+     * Returns the index of the filters of all <code>EventConsumer</code>s.
+     *
+     * @return the index of the filters of all <code>EventConsumer</code>s.
+     */
+    private EventFilterIndex getFilterIndex() {
+        synchronized (consumerChange) {
+            if (filterIndex == null) {
+                filterIndex = new EventFilterIndex(getAllConsumers());
+            }
+            return filterIndex;
+        }
+    }
+
+    /**
+     * Returns the events selected for each consumer. The selection is made
+     * once, when the events are prepared or else dispatched, so that the
+     * consumers only check the access rights on events they may receive.
+     *
+     * @param events the events.
+     * @return the events selected for each consumer.
+     */
+    private EventFilterIndex.Selection getSelection(EventStateCollection events) {
+        EventFilterIndex.Selection selection = selections.get(events);
+        if (selection == null) {
+            selection = getFilterIndex().select(events);
+            selections.put(events, selection);
+        }
+        return selection;
+    }
+
     /**
      * Implements the run method of the background notification
      * thread.
@@ -158,7 +358,7 @@ public final class ObservationDispatcher extends EventDispatcher
             for (Iterator<EventConsumer> it = action.getEventConsumers().iterator(); it.hasNext();) {
                 EventConsumer c = it.next();
                 try {
-                    c.consumeEvents(action.getEventStates());
+                    c.consumeEvents(action.getEventStates(), action.getEvents(c));
                 } catch (Throwable t) {
                     log.warn("EventConsumer " +
                             c.getEventListener().getClass().getName() +
@@ -178,11 +378,12 @@ public final class ObservationDispatcher extends EventDispatcher
      * prepare the events for dispatching.
      */
     void prepareEvents(EventStateCollection events) {
-        Set<EventConsumer> consumers = new HashSet<EventConsumer>();
-        consumers.addAll(getSynchronousConsumers());
-        consumers.addAll(getAsynchronousConsumers());
-        for (EventConsumer c : consumers) {
-            c.prepareEvents(events);
+        EventFilterIndex.Selection selection = getSelection(events);
+        for (EventConsumer c : getAllConsumers()) {
+            List<EventState> states = selection.getEvents(c);
+            if (!states.isEmpty()) {
+                c.prepareEvents(events, states);
+            }
         }
     }
 
@@ -190,11 +391,12 @@ public final class ObservationDispatcher extends EventDispatcher
      * {@inheritDoc}
      */
     void prepareDeleted(EventStateCollection events, ChangeLog changes) {
-        Set<EventConsumer> consumers = new HashSet<EventConsumer>();
-        consumers.addAll(getSynchronousConsumers());
-        consumers.addAll(getAsynchronousConsumers());
-        for (EventConsumer c : consumers) {
-            c.prepareDeleted(events, changes.deletedStates());
+        EventFilterIndex.Selection selection = getSelection(events);
+        for (EventConsumer c : getAllConsumers()) {
+            List<EventState> states = selection.getEvents(c);
+            if (!states.isEmpty()) {
+                c.prepareDeleted(events, states, changes.deletedStates());
+            }
         }
     }
 
@@ -207,7 +409,7 @@ public final class ObservationDispatcher extends EventDispatcher
     void dispatchEvents(EventStateCollection events) {
         // JCR-3426: log warning when changes are done
         // with the notification thread
-        if (Thread.currentThread() == notificationThread) {
+        if (isNotificationThread()) {
             log.warn("Save call with event notification thread detected. This " +
                     "may lead to a growing event queue. Enable debug log to " +
                     "see the stack trace with the class calling save().");
@@ -215,21 +417,154 @@ public final class ObservationDispatcher extends EventDispatcher
                 log.debug("Stack trace:", new Exception());
             }
         }
+        EventFilterIndex.Selection selection = getSelection(events);
+        selections.remove(events);
         // notify synchronous listeners
         Set<EventConsumer> synchronous = getSynchronousConsumers();
         if (log.isDebugEnabled()) {
             log.debug("notifying " + synchronous.size() + " synchronous listeners.");
         }
         for (EventConsumer c : synchronous) {
+            List<EventState> states = selection.getEvents(c);
+            if (states.isEmpty()) {
+                continue;
+            }
             try {
-                c.consumeEvents(events);
+                c.consumeEvents(events, states);
             } catch (Throwable t) {
                 log.error("Synchronous EventConsumer threw exception.", t);
                 // move on to next consumer
             }
         }
-        eventQueue.add(new DispatchAction(events, getAsynchronousConsumers()));
-        eventQueueSize.addAndGet(events.size());
+        // skip the asynchronous listeners without selected events
+        List<EventConsumer> consumers = new ArrayList<EventConsumer>();
+        for (EventConsumer c : getAsynchronousConsumers()) {
+            if (!selection.getEvents(c).isEmpty()) {
+                consumers.add(c);
+            }
+        }
+        if (consumers.isEmpty()) {
+            return;
+        }
+        if (workers != null) {
+            // submit the queues outside the lock, the workers may reject them
+            List<ListenerQueue> idle = new ArrayList<ListenerQueue>();
+            synchronized (listenerQueues) {
+                for (EventConsumer c : consumers) {
+                    ListenerQueue queue = listenerQueues.get(c);
+                    if (queue == null) {
+                        // the listener has been removed concurrently
+                        queue = new ListenerQueue();
+                    }
+                    if (queue.add(new DispatchAction(
+                            events, Collections.singleton(c), selection))) {
+                        idle.add(queue);
+                    }
+                }
+            }
+            for (ListenerQueue queue : idle) {
+                submit(queue);
+            }
+        } else {
+            eventQueue.add(new DispatchAction(events, consumers, selection));
+            eventQueueSize.addAndGet(events.size());
+        }
+    }
+
+    /**
+     * Submits a queue with pending events to the workers. If the workers
+     * reject it, for example because the repository is shutting down, the
+     * pending events of the queue are dropped.
+     *
+     * @param queue the queue.
+     */
+    private void submit(ListenerQueue queue) {
+        try {
+            workers.execute(queue);
+        } catch (RejectedExecutionException e) {
+            log.warn("Unable to deliver observation events, dropping the "
+                    + "pending events of a listener", e);
+            synchronized (listenerQueues) {
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Registers the management interface of a listener with the platform
+     * MBean server.
+     *
+     * @param consumer the consumer of the listener.
+     * @return the name of the MBean, or <code>null</code> if the listener is
+     *         not tracked or the MBean could not be registered.
+     */
+    private static ObjectName registerMBean(EventConsumer consumer) {
+        if (consumer.getTracker() == null) {
+            return null;
+        }
+        EventListenerMBean bean = consumer.getTracker().getListenerMBean();
+        try {
+            ObjectName name = new ObjectName(MBEAN_DOMAIN
+                    + ":type=EventListener,name="
+                    + ObjectName.quote(bean.getClassName())
+                    + ",id=" + MBEAN_COUNTER.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(bean, EventListenerMBean.class), name);
+            return name;
+        } catch (JMException e) {
+            log.warn("Unable to register the MBean of " + bean.getToString(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters the management interface of the listener of a queue.
+     *
+     * @param queue the queue.
+     */
+    private static void unregisterMBean(ListenerQueue queue) {
+        if (queue.mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                        queue.mbeanName);
+            } catch (JMException e) {
+                log.debug("Unable to unregister MBean " + queue.mbeanName, e);
+            }
+            queue.mbeanName = null;
+        }
+    }
+
+    /**
+     * Returns whether the current thread delivers events of this dispatcher.
+     *
+     * @return <code>true</code> if called from the notification thread or a
+     *         worker thread delivering events of this dispatcher.
+     */
+    private boolean isNotificationThread() {
+        if (workers != null) {
+            return DELIVERING.get() == this;
+        }
+        return Thread.currentThread() == notificationThread;
+    }
+
+    /**
+     * Returns whether too many events are queued, in total with a
+     * notification thread or for a single listener with a worker pool.
+     *
+     * @return <code>true</code> if the event queue is overloaded.
+     */
+    private boolean isEventQueueOverloaded() {
+        if (workers != null) {
+            synchronized (listenerQueues) {
+                for (ListenerQueue queue : listenerQueues.values()) {
+                    if (queue.size > MAX_QUEUED_EVENTS) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        return eventQueueSize.get() > MAX_QUEUED_EVENTS;
     }
 
     /**
@@ -243,7 +578,7 @@ public final class ObservationDispatcher extends EventDispatcher
      * repository access locks.
      */
     public void delayIfEventQueueOverloaded() {
-        if (eventQueueSize.get() > MAX_QUEUED_EVENTS) {
+        if (isEventQueueOverloaded()) {
             boolean logWarning = false;
             long now = System.currentTimeMillis();
             // log a warning at most every 5 seconds (to avoid filling the log file)
@@ -252,7 +587,7 @@ public final class ObservationDispatcher extends EventDispatcher
                 log.warn("More than " + MAX_QUEUED_EVENTS + " events in the queue", new Exception("Stack Trace"));
                 lastError = now;
             }
-            if (Thread.currentThread() == notificationThread) {
+            if (isNotificationThread()) {
                 if (logWarning) {
                     log.warn("Recursive notification?");
                 }
@@ -275,6 +610,8 @@ public final class ObservationDispatcher extends EventDispatcher
      */
     void addConsumer(EventConsumer consumer) {
         synchronized (consumerChange) {
+            // reset filter index
+            filterIndex = null;
             if (consumer.getEventListener() instanceof SynchronousEventListener) {
                 // remove existing if any
                 synchronousConsumers.remove(consumer);
@@ -289,6 +626,20 @@ public final class ObservationDispatcher extends EventDispatcher
                 activeConsumers.add(consumer);
                 // reset read only consumer set
                 readOnlyConsumers = null;
+                if (workers != null) {
+                    synchronized (listenerQueues) {
+                        // keep the queue of a re-added listener, so that
+                        // its events are delivered in order
+                        ListenerQueue queue = listenerQueues.remove(consumer);
+                        if (queue == null) {
+                            queue = new ListenerQueue();
+                        } else {
+                            unregisterMBean(queue);
+                        }
+                        listenerQueues.put(consumer, queue);
+                        queue.mbeanName = registerMBean(consumer);
+                    }
+                }
             }
         }
     }
@@ -299,6 +650,8 @@ public final class ObservationDispatcher extends EventDispatcher
      */
     void removeConsumer(EventConsumer consumer) {
         synchronized (consumerChange) {
+            // reset filter index
+            filterIndex = null;
             if (consumer.getEventListener() instanceof SynchronousEventListener) {
                 synchronousConsumers.remove(consumer);
                 // reset read only listener set
@@ -307,8 +660,120 @@ public final class ObservationDispatcher extends EventDispatcher
                 activeConsumers.remove(consumer);
                 // reset read only listener set
                 readOnlyConsumers = null;
+                if (workers != null) {
+                    synchronized (listenerQueues) {
+                        // pending events are still delivered
+                        ListenerQueue queue = listenerQueues.remove(consumer);
+                        if (queue != null) {
+                            unregisterMBean(queue);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue of the pending events of a single asynchronous listener. At most
+     * one worker thread drains the queue at a time, so that the listener
+     * receives its events in order. The worker delivers a single event
+     * collection and then re-submits the queue, which lets the workers
+     * alternate between the listeners. Guarded by {@link #listenerQueues}.
+     */
+    private final class ListenerQueue implements Runnable {
+
+        /**
+         * The pending deliveries.
+         */
+        private final LinkedList<DispatchAction> actions =
+            new LinkedList<DispatchAction>();
+
+        /**
+         * The times the pending deliveries were queued.
+         */
+        private final LinkedList<Long> times = new LinkedList<Long>();
+
+        /**
+         * The number of pending events.
+         */
+        private int size;
+
+        /**
+         * The name of the MBean of the listener, or <code>null</code>.
+         */
+        private ObjectName mbeanName;
+
+        /**
+         * Queues a delivery.
+         *
+         * @return <code>true</code> if the queue had no pending deliveries
+         *         and needs to be submitted to the workers.
+         */
+        boolean add(DispatchAction action) {
+            actions.add(action);
+            times.add(System.currentTimeMillis());
+            size += action.getEventStates().size();
+            recordQueueLength(action);
+            if (actions.size() == 1) {
+                busyQueues++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Drops the pending deliveries of a queue that is not submitted.
+         */
+        void clear() {
+            DispatchAction action = actions.isEmpty() ? null : actions.getLast();
+            actions.clear();
+            times.clear();
+            size = 0;
+            if (action != null) {
+                recordQueueLength(action);
+                busyQueues--;
+                listenerQueues.notifyAll();
+            }
+        }
+
+        public void run() {
+            DispatchAction action;
+            synchronized (listenerQueues) {
+                action = actions.getFirst();
+            }
+            DELIVERING.set(ObservationDispatcher.this);
+            try {
+                for (EventConsumer c : action.getEventConsumers()) {
+                    c.consumeEvents(action.getEventStates(), action.getEvents(c));
+                }
+            } catch (Throwable t) {
+                log.warn("EventConsumer threw exception", t);
+            } finally {
+                DELIVERING.remove();
+            }
+            synchronized (listenerQueues) {
+                actions.removeFirst();
+                times.removeFirst();
+                size -= action.getEventStates().size();
+                recordQueueLength(action);
+                if (actions.isEmpty()) {
+                    busyQueues--;
+                    listenerQueues.notifyAll();
+                    return;
+                }
             }
+            submit(this);
         }
+
+        private void recordQueueLength(DispatchAction action) {
+            for (EventConsumer c : action.getEventConsumers()) {
+                if (c.getTracker() != null) {
+                    c.getTracker().recordQueueLength(
+                            size, times.isEmpty() ? 0 : times.getFirst());
+                }
+            }
+        }
+
     }
 
 }
@@ -31,6 +31,7 @@ import javax.jcr.observation.ObservationManager;
 
 import org.apache.jackrabbit.api.observation.JackrabbitEventFilter;
 import org.apache.jackrabbit.api.observation.JackrabbitObservationManager;
+import org.apache.jackrabbit.commons.observation.ListenerTracker;
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.cluster.ClusterNode;
 import org.apache.jackrabbit.core.id.NodeId;
@@ -121,7 +122,13 @@ public class ObservationManagerImpl implements EventStateCollectionFactory,
         EventFilter filter = createEventFilter(eventTypes, Collections.singletonList(absPath),
                 isDeep, uuid, nodeTypeName, noLocal, false, false);
 
-        dispatcher.addConsumer(new EventConsumer(session, listener, filter));
+        ListenerTracker tracker = null;
+        if (dispatcher.hasListenerQueues()) {
+            tracker = new ListenerTracker(listener, eventTypes, absPath,
+                    isDeep, uuid, nodeTypeName, noLocal);
+        }
+        dispatcher.addConsumer(
+                new EventConsumer(session, listener, filter, tracker));
     }
 
     @Override
@@ -143,7 +150,15 @@ public class ObservationManagerImpl implements EventStateCollectionFactory,
                 filter.getIsDeep(), filter.getIdentifiers(), filter.getNodeTypes(),
                 filter.getNoLocal(), filter.getNoExternal(), filter.getNoInternal());
 
-        dispatcher.addConsumer(new EventConsumer(session, listener, f));
+        ListenerTracker tracker = null;
+        if (dispatcher.hasListenerQueues()) {
+            tracker = new ListenerTracker(listener, filter.getEventTypes(),
+                    filter.getAbsPath(), filter.getIsDeep(),
+                    filter.getIdentifiers(), filter.getNodeTypes(),
+                    filter.getNoLocal());
+        }
+        dispatcher.addConsumer(
+                new EventConsumer(session, listener, f, tracker));
     }
 
     /**
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence;
+
+import java.util.Collection;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemStateException;
+
+/**
+ * Optional interface for persistence managers that can load many node states
+ * with fewer round trips to the underlying storage than loading them one by
+ * one. Used by the shared item state manager to prefetch the children of a
+ * node before they are accessed.
+ */
+public interface BatchLoadingPersistenceManager extends PersistenceManager {
+
+    /**
+     * Loads the given nodes into the cache of this persistence manager, so
+     * that subsequent calls to {@link #load(NodeId)} and
+     * {@link #exists(NodeId)} for these nodes can be answered without
+     * accessing the storage. Node ids that do not exist are ignored.
+     *
+     * @param ids the ids of the nodes to load
+     * @throws ItemStateException if an error occurs while loading
+     */
+    void prefetch(Collection<NodeId> ids) throws ItemStateException;
+
+}
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.core.persistence;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 
 import javax.jcr.NamespaceRegistry;
 
@@ -67,6 +68,16 @@ public class PMContext {
     /** Repository statistics collector. */
     private final RepositoryStatisticsImpl stats;
 
+    /**
+     * Whether the persistent storage is shared with other cluster nodes.
+     */
+    private final boolean clustered;
+
+    /**
+     * Executor for background tasks, or <code>null</code>.
+     */
+    private final Executor executor;
+
     /**
      * Creates a new <code>PMContext</code>.
      *
@@ -83,6 +94,32 @@ public class PMContext {
             NodeTypeRegistry ntReg,
             DataStore dataStore,
             RepositoryStatisticsImpl stats) {
+        this(homeDir, fs, rootNodeId, nsReg, ntReg, dataStore, stats, false,
+                null);
+    }
+
+    /**
+     * Creates a new <code>PMContext</code>.
+     *
+     * @param homeDir the physical home directory
+     * @param fs the virtual jackrabbit filesystem
+     * @param rootNodeId id of the root node
+     * @param nsReg        namespace registry
+     * @param ntReg        node type registry
+     * @param clustered    whether the persistent storage is shared with
+     *                     other cluster nodes
+     * @param executor     executor for background tasks of the persistence
+     *                     manager, or <code>null</code>
+     */
+    public PMContext(File homeDir,
+            FileSystem fs,
+            NodeId rootNodeId,
+            NamespaceRegistry nsReg,
+            NodeTypeRegistry ntReg,
+            DataStore dataStore,
+            RepositoryStatisticsImpl stats,
+            boolean clustered,
+            Executor executor) {
         this.physicalHomeDir = homeDir;
         this.fs = fs;
         this.rootNodeId = rootNodeId;
@@ -90,6 +127,8 @@ public class PMContext {
         this.ntReg = ntReg;
         this.dataStore = dataStore;
         this.stats = stats;
+        this.clustered = clustered;
+        this.executor = executor;
     }
 
 
@@ -154,4 +193,25 @@ public class PMContext {
         return stats;
     }
 
+    /**
+     * Returns whether the persistent storage is shared with other cluster
+     * nodes, which may change it without this persistence manager noticing
+     * until their changes are synchronized.
+     *
+     * @return <code>true</code> if the repository is clustered
+     */
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    /**
+     * Returns the executor of the repository, which runs background tasks
+     * of the persistence manager.
+     *
+     * @return the executor, or <code>null</code> if none is available
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
 }
@@ -20,11 +20,21 @@ import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_MIXINTYPE
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_UUID;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.PropertyType;
@@ -34,12 +44,15 @@ import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.cache.Cache;
 import org.apache.jackrabbit.core.cache.CacheAccessListener;
 import org.apache.jackrabbit.core.cache.ConcurrentCache;
+import org.apache.jackrabbit.core.cache.KeyValueCache;
+import org.apache.jackrabbit.core.cache.NodeIdCache;
 import org.apache.jackrabbit.core.cluster.UpdateEventChannel;
 import org.apache.jackrabbit.core.fs.FileSystem;
 import org.apache.jackrabbit.core.fs.FileSystemResource;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.BatchLoadingPersistenceManager;
 import org.apache.jackrabbit.core.persistence.CachingPersistenceManager;
 import org.apache.jackrabbit.core.persistence.IterablePersistenceManager;
 import org.apache.jackrabbit.core.persistence.PMContext;
@@ -48,10 +61,13 @@ import org.apache.jackrabbit.core.persistence.check.ConsistencyCheckListener;
 import org.apache.jackrabbit.core.persistence.check.ConsistencyChecker;
 import org.apache.jackrabbit.core.persistence.check.ConsistencyReport;
 import org.apache.jackrabbit.core.persistence.util.BLOBStore;
+import org.apache.jackrabbit.core.persistence.util.BundleBinding;
 import org.apache.jackrabbit.core.persistence.util.FileBasedIndex;
+import org.apache.jackrabbit.core.persistence.util.NodeIdBloomFilter;
 import org.apache.jackrabbit.core.persistence.util.NodeInfo;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
+import org.apache.jackrabbit.core.persistence.util.OffHeapBundleCache;
 import org.apache.jackrabbit.core.state.ChangeLog;
 import org.apache.jackrabbit.core.state.ItemState;
 import org.apache.jackrabbit.core.state.ItemStateException;
@@ -89,13 +105,38 @@ import org.slf4j.LoggerFactory;
  * because a lot of {@link #exists(NodeId)} calls are issued that would result
  * in a useless persistence lookup if the desired bundle does not exist.
  * <p>
+ * Optionally, a bloom filter of all node ids is maintained as well. It
+ * answers lookups of bundles and node references for ids that have never
+ * been stored without accessing the persistent storage, even if the ids are
+ * not in the bundle cache. The filter is built from {@link #getAllNodeIds}
+ * on the repository executor after startup, see
+ * {@link #startNodeIdFilterBuild()}, and not used when the persistent
+ * storage is shared by a cluster, as other cluster nodes add nodes that
+ * the filter would not know about until their changes are synchronized.
+ * <p>
+ * The child node entries of nodes with many children can be stored in
+ * separate pages in the blob store, see {@link #setChildNodePageSize(String)}.
+ * Adding or removing a child then only writes the affected page and the
+ * page list in the bundle, and the pages are only loaded when the child
+ * node entries are accessed. When the persistent storage is shared by a
+ * cluster, the pages are loaded together with the bundle instead, as
+ * another cluster node removes the pages a bundle no longer uses as soon
+ * as it has stored the bundle, before this cluster node evicts the bundle
+ * from its caches. The child node entries of a node are still kept in a
+ * single list in memory, so changing them copies all entries.
+ * <p>
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/&gt;
+ * <li>&lt;param name="{@link #setBundleCachePolicy(String) bundleCachePolicy}" value="lru"/&gt;
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/&gt;
+ * <li>&lt;param name="{@link #setNodeIdFilterSize(String) nodeIdFilterSize}" value="0"/&gt;
+ * <li>&lt;param name="{@link #setChildNodePageSize(String) childNodePageSize}" value="0"/&gt;
  * </ul>
  */
 public abstract class AbstractBundlePersistenceManager implements
-    PersistenceManager, CachingPersistenceManager, IterablePersistenceManager, CacheAccessListener, ConsistencyChecker {
+    PersistenceManager, CachingPersistenceManager, IterablePersistenceManager,
+    BatchLoadingPersistenceManager, CacheAccessListener, ConsistencyChecker {
 
     /** the audit logger */
     private static Logger auditLogger = LoggerFactory.getLogger("org.apache.jackrabbit.core.audit");
@@ -115,12 +156,19 @@ public abstract class AbstractBundlePersistenceManager implements
     /** the name of the namespace-index resource */
     protected static final String RES_NS_INDEX = "/namespaces.properties";
 
+    /** number of node ids read at once when building the node id filter */
+    private static final int NODE_ID_FILTER_BATCH_SIZE = 10000;
+
+    /** number of attempts to load a bundle whose pages are being replaced */
+    private static final int MAX_PAGE_LOAD_ATTEMPTS = 3;
+
     /** Sentinel instance used to mark a non-existent bundle in the cache */
     private static final NodePropBundle MISSING =
         new NodePropBundle(NodeId.randomId());
 
     /**
-     * The size estimate for the MISSING NodePropBundle. The sum of:
+     * The size estimate for the MISSING NodePropBundle. An upper bound for
+     * all bundle cache policies, based on the sum of:
      * - ConcurrentCache.E: 32 bytes
      * - LinkedHashMap.Entry: 64 bytes
      * - NodeId: 32 bytes
@@ -134,7 +182,31 @@ public abstract class AbstractBundlePersistenceManager implements
     private StringIndex nameIndex;
 
     /** the cache of loaded bundles */
-    private ConcurrentCache<NodeId, NodePropBundle> bundles;
+    private KeyValueCache<NodeId, NodePropBundle> bundles;
+
+    /** the second level cache of serialized bundles, or <code>null</code> */
+    private OffHeapBundleCache offHeapBundles;
+
+    /**
+     * Number of changes made by {@link #store(ChangeLog)} and
+     * {@link #onExternalUpdate(ChangeLog)}. Used to detect concurrent
+     * modifications while bundles are being prefetched. Guarded by the
+     * monitor of this persistence manager.
+     */
+    private long modificationCount;
+
+    /**
+     * Bloom filter of the ids of all stored nodes and reference targets, or
+     * <code>null</code> if disabled. Only used for lookups once
+     * {@link #nodeIdFilterComplete} is set.
+     */
+    private volatile NodeIdBloomFilter nodeIdFilter;
+
+    /** whether the node id filter contains all stored node ids */
+    private volatile boolean nodeIdFilterComplete;
+
+    /** whether the node id filter is being built */
+    private final AtomicBoolean nodeIdFilterBuilding = new AtomicBoolean();
 
     /** The default minimum stats logging interval (in ms). */
     private static final int DEFAULT_LOG_STATS_INTERVAL = 60 * 1000;
@@ -154,6 +226,24 @@ public abstract class AbstractBundlePersistenceManager implements
     /** default size of the bundle cache */
     private long bundleCacheSize = 8 * 1024 * 1024;
 
+    /** eviction policy of the bundle cache */
+    private String bundleCachePolicy = ConcurrentCache.getDefaultPolicy();
+
+    /** size of the off-heap bundle cache, disabled by default */
+    private long offHeapBundleCacheSize = 0;
+
+    /** size of the node id filter, disabled by default */
+    private long nodeIdFilterSize = 0;
+
+    /** maximum number of child node entries per page, disabled by default */
+    private int childNodePageSize = 0;
+
+    /**
+     * Blob ids of the child node pages no longer used by the bundles that
+     * have been stored, removed once the bundles have been committed
+     */
+    private final List<String> obsoleteChildNodePages = new ArrayList<String>();
+
     /** Counter of read operations. */
     private AtomicLong readCounter;
 
@@ -175,6 +265,12 @@ public abstract class AbstractBundlePersistenceManager implements
     /** Counter of bundle cache size. */
     private AtomicLong cacheSizeCounter;
 
+    /** Counter of lookups answered by the node id filter. */
+    private AtomicLong nodeIdFilterHitCounter;
+
+    /** Counter of lookups that passed the node id filter but found nothing. */
+    private AtomicLong nodeIdFilterFalsePositiveCounter;
+
     /** The update event channel to use by the consistency checker when fixing inconsistencies */
     private UpdateEventChannel eventChannel;
 
@@ -196,6 +292,93 @@ public abstract class AbstractBundlePersistenceManager implements
         this.bundleCacheSize = Long.parseLong(bundleCacheSize) * 1024 * 1024;
     }
 
+    /**
+     * Returns the eviction policy of the bundle cache.
+     * @return "lru" or "clock"
+     */
+    public String getBundleCachePolicy() {
+        return bundleCachePolicy;
+    }
+
+    /**
+     * Sets the eviction policy of the bundle cache. The default is the
+     * segmented LRU cache ("lru"), unless overridden with the
+     * <code>org.apache.jackrabbit.cachePolicy</code> system property. Its
+     * segments are keyed by the bits of the node ids, see
+     * {@link NodeIdCache}. The "clock" policy uses a cache with lock-free reads which scales better
+     * with many concurrent readers.
+     *
+     * @param bundleCachePolicy "lru" or "clock"
+     */
+    public void setBundleCachePolicy(String bundleCachePolicy) {
+        this.bundleCachePolicy = bundleCachePolicy;
+    }
+
+    /**
+     * Returns the size of the off-heap bundle cache in megabytes.
+     * @return the size of the off-heap bundle cache in megabytes.
+     */
+    public String getOffHeapBundleCacheSize() {
+        return String.valueOf(offHeapBundleCacheSize / (1024 * 1024));
+    }
+
+    /**
+     * Sets the size of the off-heap bundle cache in megabytes. This second
+     * level cache keeps serialized bundles in direct memory, and is consulted
+     * before a bundle is loaded from the persistent storage. The default is
+     * 0, which disables the cache.
+     *
+     * @param offHeapBundleCacheSize the cache size in megabytes.
+     */
+    public void setOffHeapBundleCacheSize(String offHeapBundleCacheSize) {
+        this.offHeapBundleCacheSize =
+            Long.parseLong(offHeapBundleCacheSize) * 1024 * 1024;
+    }
+
+    /**
+     * Returns the size of the node id filter in kilobytes.
+     * @return the size of the node id filter in kilobytes.
+     */
+    public String getNodeIdFilterSize() {
+        return String.valueOf(nodeIdFilterSize / 1024);
+    }
+
+    /**
+     * Sets the size of the node id filter in kilobytes. The filter is a
+     * bloom filter of all stored node ids, which is used to answer lookups
+     * of non-existent bundles and node references without accessing the
+     * persistent storage. About one kilobyte per thousand nodes keeps the
+     * false positive rate below 3%. The default is 0, which disables the
+     * filter. The filter is always disabled in a cluster.
+     *
+     * @param nodeIdFilterSize the filter size in kilobytes.
+     */
+    public void setNodeIdFilterSize(String nodeIdFilterSize) {
+        this.nodeIdFilterSize = Long.parseLong(nodeIdFilterSize) * 1024;
+    }
+
+    /**
+     * Returns the maximum number of child node entries per page.
+     * @return the maximum number of child node entries per page.
+     */
+    public String getChildNodePageSize() {
+        return String.valueOf(childNodePageSize);
+    }
+
+    /**
+     * Sets the maximum number of child node entries per page. The child
+     * node entries of bundles with more entries are stored in separate
+     * pages in the blob store, and only changed pages are written when the
+     * bundle is stored. The default is 0, which stores all child node
+     * entries in the bundle. Existing pages are moved back into the bundle
+     * the next time the child node entries of the bundle change.
+     *
+     * @param childNodePageSize the maximum number of entries per page.
+     */
+    public void setChildNodePageSize(String childNodePageSize) {
+        this.childNodePageSize = Integer.parseInt(childNodePageSize);
+    }
+
     /**
      * Creates the folder path for the given node id that is suitable for
      * storing states in a filesystem.
@@ -350,15 +533,17 @@ public abstract class AbstractBundlePersistenceManager implements
      * {@inheritDoc}
      */
     public synchronized void onExternalUpdate(ChangeLog changes) {
+        modificationCount++;
+        addToNodeIdFilter(changes);
         for (ItemState state : changes.modifiedStates()) {
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
         }
         for (ItemState state : changes.deletedStates()) {
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
         }
         for (ItemState state : changes.addedStates()) {
             // There may have been a cache miss entry
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
         }
     }
 
@@ -395,6 +580,29 @@ public abstract class AbstractBundlePersistenceManager implements
     protected abstract NodePropBundle loadBundle(NodeId id)
             throws ItemStateException;
 
+    /**
+     * Loads the bundles with the given ids from the underlying system. The
+     * default implementation loads the bundles one by one, subclasses should
+     * override this method if they can load multiple bundles at once.
+     *
+     * @param ids the node ids of the bundles
+     * @return the loaded bundles, keyed by node id. Bundles that do not
+     *         exist are not included.
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    protected Map<NodeId, NodePropBundle> loadBundles(Collection<NodeId> ids)
+            throws ItemStateException {
+        Map<NodeId, NodePropBundle> result =
+            new HashMap<NodeId, NodePropBundle>(ids.size());
+        for (NodeId id : ids) {
+            NodePropBundle bundle = loadBundle(id);
+            if (bundle != null) {
+                result.put(id, bundle);
+            }
+        }
+        return result;
+    }
+
     /**
      * Stores a bundle to the underlying system.
      *
@@ -439,6 +647,17 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     protected abstract BLOBStore getBlobStore();
 
+    /**
+     * Returns the binding used to serialize bundles. Subclasses that use a
+     * {@link BundleBinding} should override this method to allow bundles to
+     * be kept in the off-heap bundle cache.
+     *
+     * @return bundle binding, or <code>null</code> if not available
+     */
+    protected BundleBinding getBundleBinding() {
+        return null;
+    }
+
     //-------------------------------------------------< PersistenceManager >---
 
     /**
@@ -449,9 +668,30 @@ public abstract class AbstractBundlePersistenceManager implements
     public void init(PMContext context) throws Exception {
         this.context = context;
         // init bundle cache
-        bundles = new ConcurrentCache<NodeId, NodePropBundle>(context.getHomeDir().getName() + "BundleCache");
+        String bundleCacheName =
+            context.getHomeDir().getName() + "BundleCache";
+        if (ConcurrentCache.POLICY_LRU.equalsIgnoreCase(bundleCachePolicy)) {
+            bundles = new NodeIdCache<NodePropBundle>(bundleCacheName);
+        } else {
+            bundles = ConcurrentCache.newInstance(
+                    bundleCacheName, bundleCachePolicy);
+        }
         bundles.setMaxMemorySize(bundleCacheSize);
         bundles.setAccessListener(this);
+        if (offHeapBundleCacheSize > 0) {
+            offHeapBundles = new OffHeapBundleCache(
+                    context.getHomeDir().getName() + "OffHeapBundleCache",
+                    offHeapBundleCacheSize);
+        }
+
+        if (nodeIdFilterSize > 0) {
+            if (context.isClustered()) {
+                log.info("Node id filter disabled, the persistent storage"
+                        + " is shared by a cluster");
+            } else {
+                nodeIdFilter = new NodeIdBloomFilter(nodeIdFilterSize);
+            }
+        }
 
         // statistics
         RepositoryStatisticsImpl stats = context.getRepositoryStatistics();
@@ -469,6 +709,10 @@ public abstract class AbstractBundlePersistenceManager implements
                 RepositoryStatistics.Type.BUNDLE_CACHE_MISS_COUNTER);
         cacheMissDuration = stats.getCounter(
                 RepositoryStatistics.Type.BUNDLE_CACHE_MISS_DURATION);
+        nodeIdFilterHitCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_NODE_ID_FILTER_HIT_COUNTER);
+        nodeIdFilterFalsePositiveCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_NODE_ID_FILTER_FALSE_POSITIVE_COUNTER);
     }
 
     /**
@@ -479,6 +723,141 @@ public abstract class AbstractBundlePersistenceManager implements
     public void close() throws Exception {
         // clear caches
         bundles.clear();
+        if (offHeapBundles != null) {
+            offHeapBundles.clear();
+            offHeapBundles = null;
+        }
+        // also stops a concurrent build
+        nodeIdFilter = null;
+        nodeIdFilterComplete = false;
+    }
+
+    /**
+     * Starts building the node id filter on the executor of the repository,
+     * or builds it right away if no executor is available. Subclasses call
+     * this method at the end of their initialization, once
+     * {@link #getAllNodeIds} can be used. Does nothing if the filter is
+     * disabled or already being built.
+     */
+    protected void startNodeIdFilterBuild() {
+        NodeIdBloomFilter filter = nodeIdFilter;
+        if (filter == null || !nodeIdFilterBuilding.compareAndSet(false, true)) {
+            return;
+        }
+        NodeIdFilterBuilder builder = new NodeIdFilterBuilder(filter);
+        Executor executor = context.getExecutor();
+        if (executor == null) {
+            builder.run();
+            return;
+        }
+        try {
+            executor.execute(builder);
+        } catch (RejectedExecutionException e) {
+            log.warn("Unable to build the node id filter,"
+                    + " node id lookups will not be filtered", e);
+            nodeIdFilter = null;
+        }
+    }
+
+    /**
+     * Returns the node id filter, if it contains all stored node ids.
+     * Starts building the filter if a subclass did not do so.
+     *
+     * @return the complete node id filter, or <code>null</code>
+     */
+    private NodeIdBloomFilter getCompleteNodeIdFilter() {
+        NodeIdBloomFilter filter = nodeIdFilter;
+        if (filter == null || nodeIdFilterComplete) {
+            return filter;
+        }
+        startNodeIdFilterBuild();
+        return nodeIdFilterComplete ? nodeIdFilter : null;
+    }
+
+    /**
+     * Adds the ids of the nodes and reference targets stored by the given
+     * changes to the node id filter. Ids need to be added before they are
+     * stored, as a filter that misses an id would hide the stored data.
+     *
+     * @param changes the changes
+     */
+    private void addToNodeIdFilter(ChangeLog changes) {
+        NodeIdBloomFilter filter = nodeIdFilter;
+        if (filter != null) {
+            for (ItemState state : changes.addedStates()) {
+                if (state.isNode()) {
+                    filter.add((NodeId) state.getId());
+                }
+            }
+            for (NodeReferences refs : changes.modifiedRefs()) {
+                filter.add(refs.getTargetId());
+            }
+        }
+    }
+
+    /**
+     * Checks whether the node id filter proves that neither a bundle nor
+     * node references are stored for the given id. Subclasses can use
+     * this method to avoid accessing the persistent storage for ids that
+     * do not exist.
+     *
+     * @param id node id
+     * @return <code>true</code> if nothing is stored for the given id,
+     *         <code>false</code> if something may be stored
+     */
+    protected boolean isKnownToBeMissing(NodeId id) {
+        NodeIdBloomFilter filter = getCompleteNodeIdFilter();
+        if (filter != null && !filter.mightContain(id)) {
+            nodeIdFilterHitCounter.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds all stored node ids to the node id filter, and marks the filter
+     * as complete. Nodes stored concurrently are added by
+     * {@link #store(ChangeLog)}, so they are never missed.
+     */
+    private class NodeIdFilterBuilder implements Runnable {
+
+        private final NodeIdBloomFilter filter;
+
+        public NodeIdFilterBuilder(NodeIdBloomFilter filter) {
+            this.filter = filter;
+        }
+
+        public void run() {
+            long time = System.currentTimeMillis();
+            long count = 0;
+            try {
+                NodeId after = null;
+                while (filter == nodeIdFilter) {
+                    List<NodeId> ids =
+                        getAllNodeIds(after, NODE_ID_FILTER_BATCH_SIZE);
+                    for (NodeId id : ids) {
+                        filter.add(id);
+                    }
+                    count += ids.size();
+                    if (ids.size() < NODE_ID_FILTER_BATCH_SIZE) {
+                        if (filter == nodeIdFilter) {
+                            nodeIdFilterComplete = true;
+                            log.info("Built node id filter with {} ids in {}ms",
+                                    count, System.currentTimeMillis() - time);
+                        }
+                        return;
+                    }
+                    after = ids.get(ids.size() - 1);
+                }
+            } catch (Exception e) {
+                if (filter == nodeIdFilter) {
+                    log.warn("Failed to build the node id filter,"
+                            + " node id lookups will not be filtered", e);
+                    nodeIdFilter = null;
+                }
+            }
+        }
+
     }
 
     /**
@@ -491,6 +870,13 @@ public abstract class AbstractBundlePersistenceManager implements
         if (bundle == null) {
             throw new NoSuchItemStateException(id.toString());
         }
+        try {
+            bundle.loadChildNodeEntries();
+        } catch (IOException e) {
+            String msg = "Failed to load the child node entries of " + id;
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        }
         return bundle.createNodeState(this);
     }
 
@@ -563,6 +949,83 @@ public abstract class AbstractBundlePersistenceManager implements
         return getBundle(id) != null;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Loads the bundles that are not yet in the bundle cache with a single
+     * call to {@link #loadBundles(Collection)} and adds them to the bundle
+     * cache and the off-heap bundle cache, unless the persistence manager
+     * has been modified in the meantime.
+     */
+    public void prefetch(Collection<NodeId> ids) throws ItemStateException {
+        long count;
+        synchronized (this) {
+            count = modificationCount;
+        }
+
+        Map<NodeId, NodePropBundle> loaded =
+            new HashMap<NodeId, NodePropBundle>(ids.size());
+        List<NodeId> missing = new ArrayList<NodeId>(ids.size());
+        for (NodeId id : ids) {
+            if (!bundles.containsKey(id)) {
+                NodePropBundle bundle = getOffHeapBundle(id);
+                if (bundle != null) {
+                    loaded.put(id, bundle);
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        if (loaded.isEmpty() && missing.isEmpty()) {
+            return;
+        }
+
+        List<NodeId> toLoad = new ArrayList<NodeId>(missing.size());
+        for (NodeId id : missing) {
+            if (!isKnownToBeMissing(id)) {
+                toLoad.add(id);
+            }
+        }
+
+        long time = System.nanoTime();
+        Map<NodeId, NodePropBundle> fromStorage = Collections.emptyMap();
+        if (!toLoad.isEmpty()) {
+            fromStorage = loadBundles(toLoad);
+            for (Map.Entry<NodeId, NodePropBundle> entry : fromStorage.entrySet()) {
+                // bundles with pages removed concurrently are loaded again
+                // on their next access
+                if (loadChildNodePages(entry.getValue())) {
+                    loaded.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        time = System.nanoTime() - time;
+        cacheMissDuration.addAndGet(time);
+        log.debug("Prefetched {} bundles in {}ms", loaded.size(), time / 1000000);
+
+        synchronized (this) {
+            if (count != modificationCount) {
+                // the loaded bundles may be stale
+                return;
+            }
+            for (Map.Entry<NodeId, NodePropBundle> entry : loaded.entrySet()) {
+                if (!bundles.containsKey(entry.getKey())) {
+                    NodePropBundle bundle = entry.getValue();
+                    if (fromStorage.containsKey(entry.getKey())) {
+                        putOffHeapBundle(bundle);
+                    }
+                    bundle.markOld();
+                    bundles.put(entry.getKey(), bundle, bundle.getSize());
+                }
+            }
+            for (NodeId id : missing) {
+                if (!fromStorage.containsKey(id) && !bundles.containsKey(id)) {
+                    bundles.put(id, MISSING, MISSING_SIZE_ESTIMATE);
+                }
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -588,6 +1051,24 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     public synchronized void store(ChangeLog changeLog)
             throws ItemStateException {
+        storeBundles(changeLog);
+        removeObsoleteChildNodePages();
+    }
+
+    /**
+     * Stores the given changelog, but keeps the child node pages that are
+     * no longer used by the stored bundles. Subclasses that store the
+     * changelog in a transaction call this method within the transaction,
+     * and {@link #removeObsoleteChildNodePages()} once it is committed or
+     * {@link #retainObsoleteChildNodePages()} if it is rolled back.
+     *
+     * @param changeLog the changelog to store
+     * @throws ItemStateException on failure
+     */
+    protected synchronized void storeBundles(ChangeLog changeLog)
+            throws ItemStateException {
+        modificationCount++;
+        addToNodeIdFilter(changeLog);
         boolean success = false;
         try {
             storeInternal(changeLog);
@@ -595,10 +1076,35 @@ public abstract class AbstractBundlePersistenceManager implements
         } finally {
             if (!success) {
                 bundles.clear();
+                if (offHeapBundles != null) {
+                    offHeapBundles.clear();
+                }
+                obsoleteChildNodePages.clear();
             }
         }
     }
 
+    /**
+     * Removes the child node pages that are no longer used by the bundles
+     * stored so far.
+     */
+    protected synchronized void removeObsoleteChildNodePages() {
+        BundleBinding binding = getBundleBinding();
+        if (binding != null) {
+            binding.removeChildNodePages(obsoleteChildNodePages);
+        }
+        obsoleteChildNodePages.clear();
+    }
+
+    /**
+     * Keeps the child node pages that are no longer used by the bundles
+     * stored so far, because storing them has been rolled back and the
+     * previous bundles still use the pages.
+     */
+    protected synchronized void retainObsoleteChildNodePages() {
+        obsoleteChildNodePages.clear();
+    }
+
     /**
      * Stores the given changelog and updates the bundle cache.
      *
@@ -762,8 +1268,26 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     private NodePropBundle getBundleCacheMiss(NodeId id)
             throws ItemStateException {
+        long count;
+        synchronized (this) {
+            count = modificationCount;
+        }
+
         long time = System.nanoTime();
-        NodePropBundle bundle = loadBundle(id);
+        boolean fromStorage = false;
+        NodePropBundle bundle = getOffHeapBundle(id);
+        if (bundle == null) {
+            NodeIdBloomFilter filter = getCompleteNodeIdFilter();
+            if (filter == null || filter.mightContain(id)) {
+                bundle = loadBundleAndPages(id);
+                fromStorage = true;
+                if (bundle == null && filter != null) {
+                    nodeIdFilterFalsePositiveCounter.incrementAndGet();
+                }
+            } else {
+                nodeIdFilterHitCounter.incrementAndGet();
+            }
+        }
         time = System.nanoTime() - time;
         cacheMissDuration.addAndGet(time);
         final long timeMs = time / 1000000;
@@ -771,13 +1295,117 @@ public abstract class AbstractBundlePersistenceManager implements
         cacheMissCounter.incrementAndGet();
         if (bundle != null) {
             bundle.markOld();
-            bundles.put(id, bundle, bundle.getSize());
-        } else {
-            bundles.put(id, MISSING, MISSING_SIZE_ESTIMATE);
+        }
+        synchronized (this) {
+            if (count != modificationCount) {
+                // the loaded bundle may be stale
+                return bundle;
+            }
+            if (bundle != null) {
+                if (fromStorage) {
+                    putOffHeapBundle(bundle);
+                }
+                bundles.put(id, bundle, bundle.getSize());
+            } else {
+                bundles.put(id, MISSING, MISSING_SIZE_ESTIMATE);
+            }
         }
         return bundle;
     }
 
+    /**
+     * Loads the bundle with the given id from the persistent storage. If
+     * the storage is shared by a cluster, the child node pages of the
+     * bundle are loaded as well, and the bundle is loaded again if another
+     * cluster node removed them in the meantime.
+     *
+     * @param id the id of the bundle
+     * @return the bundle, or <code>null</code> if it does not exist
+     * @throws ItemStateException if the bundle or its pages can not be loaded
+     */
+    private NodePropBundle loadBundleAndPages(NodeId id)
+            throws ItemStateException {
+        for (int i = 1; ; i++) {
+            NodePropBundle bundle = loadBundle(id);
+            if (loadChildNodePages(bundle)) {
+                return bundle;
+            } else if (i == MAX_PAGE_LOAD_ATTEMPTS) {
+                throw new ItemStateException(
+                        "Failed to load the child node pages of " + id);
+            }
+        }
+    }
+
+    /**
+     * Loads the child node pages of a bundle right away if the persistent
+     * storage is shared by a cluster, so that the bundle can be cached.
+     *
+     * @param bundle the bundle, or <code>null</code>
+     * @return <code>false</code> if a page has been removed by another
+     *         cluster node, <code>true</code> otherwise
+     */
+    private boolean loadChildNodePages(NodePropBundle bundle) {
+        if (bundle != null && context.isClustered()) {
+            try {
+                bundle.loadChildNodeEntries();
+            } catch (IOException e) {
+                log.debug("Child node pages of " + bundle.getId()
+                        + " have been replaced", e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the bundle with the given id from the off-heap bundle cache.
+     *
+     * @param id the id of the bundle
+     * @return the bundle, or <code>null</code> if it is not cached
+     */
+    private NodePropBundle getOffHeapBundle(NodeId id) {
+        BundleBinding binding = getBundleBinding();
+        if (offHeapBundles != null && binding != null) {
+            byte[] data = offHeapBundles.get(id);
+            if (data != null) {
+                try {
+                    NodePropBundle bundle =
+                        binding.readBundle(new ByteArrayInputStream(data), id);
+                    if (loadChildNodePages(bundle)) {
+                        return bundle;
+                    }
+                    offHeapBundles.remove(id);
+                } catch (IOException e) {
+                    log.warn("Failed to read bundle " + id
+                            + " from the off-heap cache", e);
+                    offHeapBundles.remove(id);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the serialized form of the given bundle to the off-heap bundle
+     * cache, if enabled.
+     *
+     * @param bundle the bundle to cache
+     */
+    private void putOffHeapBundle(NodePropBundle bundle) {
+        BundleBinding binding = getBundleBinding();
+        if (offHeapBundles != null && binding != null) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                binding.writeBundle(out, bundle);
+                offHeapBundles.put(bundle.getId(), out.toByteArray());
+            } catch (IOException e) {
+                log.warn("Failed to add bundle " + bundle.getId()
+                        + " to the off-heap cache", e);
+                offHeapBundles.remove(bundle.getId());
+            }
+        }
+    }
+
     /**
      * Deletes the bundle
      *
@@ -787,7 +1415,14 @@ public abstract class AbstractBundlePersistenceManager implements
     private void deleteBundle(NodePropBundle bundle) throws ItemStateException {
         destroyBundle(bundle);
         bundle.removeAllProperties(getBlobStore());
+        BundleBinding binding = getBundleBinding();
+        if (binding != null) {
+            obsoleteChildNodePages.addAll(binding.getChildNodePageIds(bundle));
+        }
         bundles.put(bundle.getId(), MISSING, MISSING_SIZE_ESTIMATE);
+        if (offHeapBundles != null) {
+            offHeapBundles.remove(bundle.getId());
+        }
     }
 
     /**
@@ -798,7 +1433,7 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     private void putBundle(NodePropBundle bundle) throws ItemStateException {
         long time = System.nanoTime();
-        storeBundle(bundle);
+        writeBundle(bundle);
         time = System.nanoTime() - time;
         if (auditLogger.isDebugEnabled()) {
             auditLogger.debug("{} ({})", bundle.getId(), bundle.getSize());
@@ -810,6 +1445,10 @@ public abstract class AbstractBundlePersistenceManager implements
 
         bundle.markOld();
 
+        if (offHeapBundles != null) {
+            offHeapBundles.remove(bundle.getId());
+        }
+
         // only put to cache if already exists. this is to ensure proper
         // overwrite and not creating big contention during bulk loads
         if (bundles.containsKey(bundle.getId())) {
@@ -817,6 +1456,36 @@ public abstract class AbstractBundlePersistenceManager implements
         }
     }
 
+    /**
+     * Stores the bundle with {@link #storeBundle(NodePropBundle)}. If the
+     * bundle has more child node entries than the configured page size, the
+     * changed pages of entries are written to the blob store first. The
+     * pages that are no longer used are only removed by
+     * {@link #removeObsoleteChildNodePages()}, once the bundle has been
+     * committed.
+     *
+     * @param bundle the bundle to store
+     * @throws ItemStateException if an error occurs
+     */
+    void writeBundle(NodePropBundle bundle) throws ItemStateException {
+        BundleBinding binding = getBundleBinding();
+        if (binding == null) {
+            storeBundle(bundle);
+            return;
+        }
+        List<String> obsolete;
+        try {
+            obsolete = binding.storeChildNodePages(bundle, childNodePageSize);
+        } catch (IOException e) {
+            String msg = "Failed to store the child node pages of "
+                + bundle.getId();
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        }
+        storeBundle(bundle);
+        obsoleteChildNodePages.addAll(obsolete);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -859,6 +1528,9 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     protected void evictBundle(NodeId id) {
         bundles.remove(id);
+        if (offHeapBundles != null) {
+            offHeapBundles.remove(id);
+        }
     }
 
     public void cacheAccessed(long accessCount) {
@@ -874,6 +1546,9 @@ public abstract class AbstractBundlePersistenceManager implements
                 return;
             }
             log.info(bundles.getCacheInfoAsString());
+            if (offHeapBundles != null) {
+                log.info(offHeapBundles.getCacheInfoAsString());
+            }
             nextLogStats = now + minLogStatsInterval;
         }
     }
@@ -198,6 +198,7 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
         binding.setMinBlobSize(minBlobSize);
 
         initialized = true;
+        startNodeIdFilterBuild();
     }
 
     /**
@@ -208,6 +209,14 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
         return blobStore;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BundleBinding getBundleBinding() {
+        return binding;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -338,6 +347,9 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
         if (!initialized) {
             throw new IllegalStateException("not initialized");
         }
+        if (isKnownToBeMissing(targetId)) {
+            throw new NoSuchItemStateException(targetId.toString());
+        }
         InputStream in = null;
         try {
             String path = buildNodeReferencesFilePath(null, targetId).toString();
@@ -414,6 +426,9 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
         if (!initialized) {
             throw new IllegalStateException("not initialized");
         }
+        if (isKnownToBeMissing(targetId)) {
+            return false;
+        }
         try {
             StringBuffer buf = buildNodeReferencesFilePath(null, targetId);
             return itemFs.exists(buf.toString());
@@ -176,6 +176,7 @@ public class ConsistencyCheckerImpl {
                 } else {
                     eventChannel.updateCancelled(update);
                 }
+                eventChannel.updateFinished(update);
             }
         }
     }
@@ -413,7 +414,8 @@ public class ConsistencyCheckerImpl {
         try {
             bundle.markOld();
             bundle.setModCount((short) (bundle.getModCount()+1));
-            pm.storeBundle(bundle);
+            pm.writeBundle(bundle);
+            pm.removeObsoleteChildNodePages();
             pm.evictBundle(bundle.getId());
         } catch (ItemStateException e) {
             log.error(pm + ": Error storing fixed bundle: " + e);
@@ -408,6 +408,7 @@ public class InMemBundlePersistenceManager extends AbstractBundlePersistenceMana
             loadContents();
         }
         initialized = true;
+        startNodeIdFilterBuild();
     }
 
     /**
@@ -559,6 +560,14 @@ public class InMemBundlePersistenceManager extends AbstractBundlePersistenceMana
         return blobStore;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BundleBinding getBundleBinding() {
+        return binding;
+    }
+
     /**
      * Helper interface for closeable stores
      */
@@ -26,9 +26,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.jcr.RepositoryException;
 import javax.sql.DataSource;
@@ -49,6 +53,7 @@ import org.apache.jackrabbit.core.persistence.util.NodeInfo;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
 import org.apache.jackrabbit.core.persistence.util.Serializer;
 import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ItemState;
 import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.NoSuchItemStateException;
 import org.apache.jackrabbit.core.state.NodeReferences;
@@ -80,6 +85,8 @@ import org.slf4j.LoggerFactory;
  * <li>&lt;param name="{@link #setSchemaObjectPrefix(String) schemaObjectPrefix}" value=""/&gt;
  * <li>&lt;param name="{@link #setErrorHandling(String) errorHandling}" value=""/&gt;
  * <li>&lt;param name="{@link #setBlockOnConnectionLoss(String) blockOnConnectionLoss}" value="false"/&gt;
+ * <li>&lt;param name="{@link #setConcurrentReads(String) concurrentReads}" value="false"/&gt;
+ * <li>&lt;param name="{@link #setBatchSize(String) batchSize}" value="0"/&gt;
  * <li>&lt;param name="{@link #setSchemaCheckEnabled(boolean) schemaCheckEnabled}" value="true"/&gt;
  * </ul>
  */
@@ -95,6 +102,9 @@ public class BundleDbPersistenceManager
     /** storage model modifier: longlong keys */
     public static final int SM_LONGLONG_KEYS = 2;
 
+    /** the maximum number of bundles loaded with a single select statement */
+    protected static final int MAX_BUNDLES_PER_SELECT = 100;
+
     /** flag indicating if this manager was initialized */
     protected boolean initialized;
 
@@ -137,6 +147,37 @@ public class BundleDbPersistenceManager
     /** indicates whether to block if the database connection is lost */
     protected boolean blockOnConnectionLoss;
 
+    /**
+     * Whether reads are allowed to run without synchronizing on this
+     * persistence manager.
+     */
+    protected boolean concurrentReads;
+
+    /** maximum number of statements per JDBC batch, 0 or 1 to disable */
+    protected int batchSize = 0;
+
+    /**
+     * The bundle and node reference writes of the change log that is being
+     * stored and that have not been executed yet, keyed by SQL statement in
+     * execution order, or <code>null</code> if writes are executed
+     * immediately.
+     */
+    private Map<String, List<Object[]>> pendingWrites;
+
+    /** number of pending writes */
+    private int pendingWriteCount;
+
+    /**
+     * The ids of the bundles and node references that are written by the
+     * change log that is being stored in concurrent reads mode. Reads of
+     * these ids wait until the change log is committed or rolled back.
+     * Guarded by itself.
+     */
+    private final Set<NodeId> writtenIds = new HashSet<NodeId>();
+
+    /** the thread that is storing a change log in concurrent reads mode */
+    private Thread writer;
+
     // SQL statements for bundle management
     protected String bundleInsertSQL;
     protected String bundleUpdateSQL;
@@ -435,6 +476,47 @@ public class BundleDbPersistenceManager
         return Boolean.toString(blockOnConnectionLoss);
     }
 
+    /**
+     * Enables or disables concurrent reads. By default, the node reference
+     * lookups and the node id and node info iteration methods synchronize on
+     * this persistence manager, so they wait until a concurrent
+     * {@link #store(ChangeLog)} has completed. When concurrent reads are
+     * enabled, these methods use their own pooled connection without holding
+     * the persistence manager monitor. Instead, a change log that is being
+     * stored only blocks the bundle loads and node reference lookups of the
+     * nodes it writes, until it is committed or rolled back, so reads of
+     * other nodes proceed concurrently and no read sees an uncommitted or
+     * outdated row of a node that is being written. The node id and node
+     * info iteration methods do not wait for writes and only see committed
+     * data.
+     *
+     * @param concurrentReads "true" to enable concurrent reads
+     */
+    public void setConcurrentReads(String concurrentReads) {
+        this.concurrentReads = Boolean.valueOf(concurrentReads).booleanValue();
+    }
+
+    public String getConcurrentReads() {
+        return Boolean.toString(concurrentReads);
+    }
+
+    /**
+     * Sets the maximum number of bundle and node reference writes that are
+     * sent to the database as a single JDBC batch. The writes of a change
+     * log are collected while it is stored, and executed in batches grouped
+     * by statement, within the transaction of the change log. The default is
+     * 0, which like 1 executes every write immediately.
+     *
+     * @param batchSize the maximum number of statements per batch
+     */
+    public void setBatchSize(String batchSize) {
+        this.batchSize = Integer.parseInt(batchSize);
+    }
+
+    public String getBatchSize() {
+        return Integer.toString(batchSize);
+    }
+
     /**
      * Returns <code>true</code> if the blobs are stored in the DB.
      * @return <code>true</code> if the blobs are stored in the DB.
@@ -468,19 +550,54 @@ public class BundleDbPersistenceManager
     /**
      * {@inheritDoc}
      *
-     * Basically wraps a JDBC transaction around super.store().
+     * Basically wraps a JDBC transaction around storeBundles(). Child node
+     * pages that are no longer used are only removed once the transaction
+     * is committed, as the blob store may not take part in it.
      * 
      * FIXME: the retry logic is almost a duplicate of {@code ConnectionHelper.RetryManager}.
      */
     public synchronized void store(final ChangeLog changeLog) throws ItemStateException {
+        if (concurrentReads) {
+            startWrites(changeLog);
+            try {
+                internalStore(changeLog);
+            } finally {
+                endWrites();
+            }
+        } else {
+            internalStore(changeLog);
+        }
+    }
+
+    /**
+     * Implementation of {@link #store(ChangeLog)}.
+     */
+    private void internalStore(ChangeLog changeLog) throws ItemStateException {
         int failures = 0;
         ItemStateException lastException = null;
         boolean sleepInterrupted = false;
         while (!sleepInterrupted && (blockOnConnectionLoss || failures <= 1)) {
             try {
                 conHelper.startBatch();
-                super.store(changeLog);
-                conHelper.endBatch(true);
+                boolean cached = false;
+                try {
+                    startPendingWrites();
+                    storeBundles(changeLog);
+                    cached = true;
+                    executePendingWrites();
+                    conHelper.endBatch(true);
+                    cached = false;
+                } finally {
+                    pendingWrites = null;
+                    if (cached) {
+                        // the bundle caches already hold the bundles of
+                        // the change log, which were not committed: evict
+                        // them as if they had been changed externally
+                        onExternalUpdate(changeLog);
+                        retainObsoleteChildNodePages();
+                    }
+                }
+                removeObsoleteChildNodePages();
                 return;
             } catch (SQLException e) {
                 // Either startBatch or stopBatch threw it: either way the
@@ -516,6 +633,146 @@ public class BundleDbPersistenceManager
         throw lastException;
     }
 
+    /**
+     * Marks the nodes whose bundles or node references are written by the
+     * given change log, so that concurrent reads of these nodes wait until
+     * {@link #endWrites()} is called.
+     *
+     * @param changeLog the change log that is about to be stored
+     */
+    private void startWrites(ChangeLog changeLog) {
+        Set<NodeId> ids = new HashSet<NodeId>();
+        addWrittenIds(changeLog.addedStates(), ids);
+        addWrittenIds(changeLog.modifiedStates(), ids);
+        addWrittenIds(changeLog.deletedStates(), ids);
+        for (NodeReferences refs : changeLog.modifiedRefs()) {
+            ids.add(refs.getTargetId());
+        }
+        synchronized (writtenIds) {
+            writtenIds.addAll(ids);
+            writer = Thread.currentThread();
+        }
+    }
+
+    private static void addWrittenIds(Iterable<ItemState> states, Set<NodeId> ids) {
+        for (ItemState state : states) {
+            if (state.isNode()) {
+                ids.add((NodeId) state.getId());
+            } else {
+                ids.add(state.getParentId());
+            }
+        }
+    }
+
+    /**
+     * Releases the nodes marked by {@link #startWrites(ChangeLog)} and wakes
+     * up the reads that wait for them.
+     */
+    private void endWrites() {
+        synchronized (writtenIds) {
+            writtenIds.clear();
+            writer = null;
+            writtenIds.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the given node is no longer written by a change log that
+     * is being stored by another thread. Returns immediately unless
+     * concurrent reads are enabled.
+     *
+     * @param id the node id
+     * @throws ItemStateException if the thread is interrupted while waiting
+     */
+    private void awaitWrite(NodeId id) throws ItemStateException {
+        if (!concurrentReads) {
+            return;
+        }
+        synchronized (writtenIds) {
+            while (writer != null && writer != Thread.currentThread()
+                    && writtenIds.contains(id)) {
+                try {
+                    writtenIds.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ItemStateException(
+                            "interrupted while waiting for a write of " + id, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts collecting the bundle and node reference writes, if batching
+     * is enabled. The statements are executed in the order of the map,
+     * which is the order in which {@link #store(ChangeLog)} issues them:
+     * bundles are deleted before new bundles are inserted.
+     */
+    private void startPendingWrites() {
+        if (batchSize > 1) {
+            pendingWrites = new LinkedHashMap<String, List<Object[]>>();
+            for (String sql : new String[] {
+                    bundleDeleteSQL, bundleInsertSQL, bundleUpdateSQL,
+                    nodeReferenceDeleteSQL, nodeReferenceInsertSQL,
+                    nodeReferenceUpdateSQL }) {
+                pendingWrites.put(sql, new ArrayList<Object[]>());
+            }
+            pendingWriteCount = 0;
+        }
+    }
+
+    /**
+     * Executes the given write, or adds it to the pending writes if the
+     * writes of a change log are being collected.
+     *
+     * @param sql the SQL statement
+     * @param params the parameters
+     * @throws Exception if the statement can not be executed
+     */
+    private void write(String sql, Object[] params) throws Exception {
+        if (pendingWrites == null) {
+            conHelper.update(sql, params);
+        } else {
+            pendingWrites.get(sql).add(params);
+            if (++pendingWriteCount >= batchSize) {
+                executePendingWrites();
+            }
+        }
+    }
+
+    /**
+     * Executes the pending writes, one batch per statement.
+     *
+     * @throws ItemStateException if a batch fails
+     */
+    private void executePendingWrites() throws ItemStateException {
+        if (pendingWrites == null || pendingWriteCount == 0) {
+            return;
+        }
+        for (Map.Entry<String, List<Object[]>> entry : pendingWrites.entrySet()) {
+            List<Object[]> params = entry.getValue();
+            if (!params.isEmpty()) {
+                try {
+                    conHelper.updateBatch(entry.getKey(), params);
+                } catch (SQLException e) {
+                    String msg;
+                    if (isIntegrityConstraintViolation(e)) {
+                        // see storeBundle()
+                        msg = "FATAL error while writing a batch of "
+                            + params.size() + " records";
+                    } else {
+                        msg = "failed to write a batch of "
+                            + params.size() + " records";
+                    }
+                    log.error(msg, e);
+                    throw new ItemStateException(msg, e);
+                }
+                params.clear();
+            }
+        }
+        pendingWriteCount = 0;
+    }
+
     private boolean isIntegrityConstraintViolation(Throwable t) {
         if (t instanceof SQLException) {
             String state = ((SQLException) t).getSQLState();
@@ -561,6 +818,8 @@ public class BundleDbPersistenceManager
             // check all bundles
             checkConsistency(null, true, consistencyFix);
         }
+
+        startNodeIdFilterBuild();
                 
     }
 
@@ -612,6 +871,14 @@ public class BundleDbPersistenceManager
         return blobStore;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BundleBinding getBundleBinding() {
+        return binding;
+    }
+
     /**
      * Creates a suitable blobstore
      * @return a blobstore
@@ -774,7 +1041,20 @@ public class BundleDbPersistenceManager
     /**
      * {@inheritDoc}
      */
-    public synchronized List<NodeId> getAllNodeIds(NodeId bigger, int maxCount)
+    public List<NodeId> getAllNodeIds(NodeId bigger, int maxCount)
+            throws ItemStateException, RepositoryException {
+        if (concurrentReads) {
+            return internalGetAllNodeIds(bigger, maxCount);
+        }
+        synchronized (this) {
+            return internalGetAllNodeIds(bigger, maxCount);
+        }
+    }
+
+    /**
+     * Implementation of {@link #getAllNodeIds(NodeId, int)}.
+     */
+    private List<NodeId> internalGetAllNodeIds(NodeId bigger, int maxCount)
             throws ItemStateException, RepositoryException {
         ResultSet rs = null;
         try {
@@ -827,7 +1107,20 @@ public class BundleDbPersistenceManager
      * {@inheritDoc}
      */
     @Override
-    public synchronized Map<NodeId, NodeInfo> getAllNodeInfos(NodeId bigger, int maxCount) throws ItemStateException {
+    public Map<NodeId, NodeInfo> getAllNodeInfos(NodeId bigger, int maxCount)
+            throws ItemStateException {
+        if (concurrentReads) {
+            return internalGetAllNodeInfos(bigger, maxCount);
+        }
+        synchronized (this) {
+            return internalGetAllNodeInfos(bigger, maxCount);
+        }
+    }
+
+    /**
+     * Implementation of {@link #getAllNodeInfos(NodeId, int)}.
+     */
+    private Map<NodeId, NodeInfo> internalGetAllNodeInfos(NodeId bigger, int maxCount) throws ItemStateException {
         ResultSet rs = null;
         try {
             String sql = bundleSelectAllBundlesSQL;
@@ -881,6 +1174,7 @@ public class BundleDbPersistenceManager
      */
     @Override
     protected NodePropBundle loadBundle(NodeId id) throws ItemStateException {
+        awaitWrite(id);
         try {
             ResultSet rs =
                 conHelper.exec(bundleSelectSQL, getKey(id), false, 0);
@@ -903,6 +1197,111 @@ public class BundleDbPersistenceManager
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Loads the bundles with select statements that each return up to
+     * {@link #MAX_BUNDLES_PER_SELECT} bundles.
+     */
+    @Override
+    protected Map<NodeId, NodePropBundle> loadBundles(Collection<NodeId> ids)
+            throws ItemStateException {
+        Map<NodeId, NodePropBundle> result =
+            new HashMap<NodeId, NodePropBundle>(ids.size());
+        List<NodeId> chunk = new ArrayList<NodeId>(MAX_BUNDLES_PER_SELECT);
+        for (NodeId id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_BUNDLES_PER_SELECT) {
+                loadBundles(chunk, result);
+                chunk.clear();
+            }
+        }
+        if (chunk.size() == 1) {
+            NodePropBundle bundle = loadBundle(chunk.get(0));
+            if (bundle != null) {
+                result.put(bundle.getId(), bundle);
+            }
+        } else if (!chunk.isEmpty()) {
+            loadBundles(chunk, result);
+        }
+        return result;
+    }
+
+    /**
+     * Loads the given bundles with a single select statement.
+     *
+     * @param ids the node ids of the bundles
+     * @param result map to which the loaded bundles are added
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    private void loadBundles(List<NodeId> ids, Map<NodeId, NodePropBundle> result)
+            throws ItemStateException {
+        List<Object> params = new ArrayList<Object>();
+        for (NodeId id : ids) {
+            awaitWrite(id);
+            for (Object key : getKey(id)) {
+                params.add(key);
+            }
+        }
+        ResultSet rs = null;
+        try {
+            rs = conHelper.exec(
+                    buildBundleSelectMultipleSQL(ids.size()),
+                    params.toArray(), false, 0);
+            while (rs.next()) {
+                NodeId id;
+                int column;
+                if (getStorageModel() == SM_BINARY_KEYS) {
+                    id = new NodeId(rs.getBytes(1));
+                    column = 2;
+                } else {
+                    id = new NodeId(rs.getLong(1), rs.getLong(2));
+                    column = 3;
+                }
+                result.put(id, readBundle(id, rs, column));
+            }
+        } catch (SQLException e) {
+            String msg = "failed to read " + ids.size()
+                + " bundles (stacktrace on DEBUG log level): " + e;
+            log.error(msg);
+            log.debug("failed to read bundles: " + ids, e);
+            throw new ItemStateException(msg, e);
+        } finally {
+            DbUtility.close(rs);
+        }
+    }
+
+    /**
+     * Creates a select statement that loads the given number of bundles,
+     * along with their node ids.
+     *
+     * @param count the number of bundles
+     * @return the SQL statement
+     */
+    protected String buildBundleSelectMultipleSQL(int count) {
+        StringBuilder sql = new StringBuilder();
+        if (getStorageModel() == SM_BINARY_KEYS) {
+            sql.append("select NODE_ID, BUNDLE_DATA from ");
+            sql.append(schemaObjectPrefix);
+            sql.append("BUNDLE where NODE_ID in (");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+        } else {
+            sql.append("select NODE_ID_HI, NODE_ID_LO, BUNDLE_DATA from ");
+            sql.append(schemaObjectPrefix);
+            sql.append("BUNDLE where ");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sql.append(" or ");
+                }
+                sql.append("(NODE_ID_HI = ? and NODE_ID_LO = ?)");
+            }
+        }
+        return sql.toString();
+    }
+
     /**
      * Reads and parses a bundle from the BLOB in the given column of the
      * current row of the given result set. This is a helper method to
@@ -947,7 +1346,7 @@ public class BundleDbPersistenceManager
 
             String sql = bundle.isNew() ? bundleInsertSQL : bundleUpdateSQL;
             Object[] params = createParams(bundle.getId(), out.toByteArray(), true);
-            conHelper.update(sql, params);
+            write(sql, params);
         } catch (Exception e) {
             String msg;
 
@@ -970,7 +1369,7 @@ public class BundleDbPersistenceManager
      */
     protected synchronized void destroyBundle(NodePropBundle bundle) throws ItemStateException {
         try {
-            conHelper.update(bundleDeleteSQL, getKey(bundle.getId()));
+            write(bundleDeleteSQL, getKey(bundle.getId()));
         } catch (Exception e) {
             if (e instanceof NoSuchItemStateException) {
                 throw (NoSuchItemStateException) e;
@@ -984,7 +1383,24 @@ public class BundleDbPersistenceManager
     /**
      * {@inheritDoc}
      */
-    public synchronized NodeReferences loadReferencesTo(NodeId targetId)
+    public NodeReferences loadReferencesTo(NodeId targetId)
+            throws NoSuchItemStateException, ItemStateException {
+        if (isKnownToBeMissing(targetId)) {
+            throw new NoSuchItemStateException(targetId.toString());
+        }
+        if (concurrentReads) {
+            awaitWrite(targetId);
+            return internalLoadReferencesTo(targetId);
+        }
+        synchronized (this) {
+            return internalLoadReferencesTo(targetId);
+        }
+    }
+
+    /**
+     * Implementation of {@link #loadReferencesTo(NodeId)}.
+     */
+    private NodeReferences internalLoadReferencesTo(NodeId targetId)
             throws NoSuchItemStateException, ItemStateException {
         if (!initialized) {
             throw new IllegalStateException("not initialized");
@@ -1018,12 +1434,6 @@ public class BundleDbPersistenceManager
 
     /**
      * {@inheritDoc}
-     *
-     * This method uses shared <code>PreparedStatements</code>, which must
-     * be used strictly sequentially. Because this method synchronizes on the
-     * persistence manager instance, there is no need to synchronize on the
-     * shared statement. If the method would not be synchronized, the shared
-     * statement must be synchronized.
      */
     public synchronized void store(NodeReferences refs) throws ItemStateException {
         if (!initialized) {
@@ -1041,7 +1451,7 @@ public class BundleDbPersistenceManager
             Serializer.serialize(refs, out);
 
             Object[] params = createParams(refs.getTargetId(), out.toByteArray(), true);
-            conHelper.exec(sql, params);
+            write(sql, params);
             
             // there's no need to close a ByteArrayOutputStream
             //out.close();
@@ -1061,7 +1471,7 @@ public class BundleDbPersistenceManager
         }
 
         try {
-            conHelper.exec(nodeReferenceDeleteSQL, getKey(refs.getTargetId()));
+            write(nodeReferenceDeleteSQL, getKey(refs.getTargetId()));
         } catch (Exception e) {
             if (e instanceof NoSuchItemStateException) {
                 throw (NoSuchItemStateException) e;
@@ -1075,7 +1485,24 @@ public class BundleDbPersistenceManager
     /**
      * {@inheritDoc}
      */
-    public synchronized boolean existsReferencesTo(NodeId targetId) throws ItemStateException {
+    public boolean existsReferencesTo(NodeId targetId)
+            throws ItemStateException {
+        if (isKnownToBeMissing(targetId)) {
+            return false;
+        }
+        if (concurrentReads) {
+            awaitWrite(targetId);
+            return internalExistsReferencesTo(targetId);
+        }
+        synchronized (this) {
+            return internalExistsReferencesTo(targetId);
+        }
+    }
+
+    /**
+     * Implementation of {@link #existsReferencesTo(NodeId)}.
+     */
+    private boolean internalExistsReferencesTo(NodeId targetId) throws ItemStateException {
         if (!initialized) {
             throw new IllegalStateException("not initialized");
         }
@@ -16,19 +16,40 @@
  */
 package org.apache.jackrabbit.core.persistence.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.io.IOExceptionWithCause;
 import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodePage;
 import org.apache.jackrabbit.core.util.StringIndex;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This Class implements efficient serialization methods for item states.
  */
 public class BundleBinding {
 
+    /** Logger instance */
+    private static Logger log = LoggerFactory.getLogger(BundleBinding.class);
+
     static final int BINARY_IN_BLOB_STORE = -1;
 
     static final int BINARY_IN_DATA_STORE = -2;
@@ -57,11 +78,26 @@ public class BundleBinding {
      */
     static final int VERSION_3 = 3;
 
+    /**
+     * serialization version 4, which adds the child node pages. Only used
+     * for bundles that have child node pages, all other bundles are still
+     * written in version 3.
+     */
+    static final int VERSION_4 = 4;
+
     /**
      * current version
      */
     static final int VERSION_CURRENT = VERSION_3;
 
+    /**
+     * Name of the pseudo property under which the child node pages of a
+     * bundle are kept in the blob store. The page number is used as the
+     * value index.
+     */
+    static final Name CHILD_NODE_PAGE = NameFactoryImpl.getInstance().create(
+            Name.NS_REP_URI, "childNodePage");
+
     /**
      * the namespace index
      */
@@ -161,7 +197,227 @@ public class BundleBinding {
      */
     public void writeBundle(OutputStream out, NodePropBundle bundle)
             throws IOException {
-        new BundleWriter(this, out).writeBundle(bundle);
+        int version = VERSION_CURRENT;
+        if (bundle.getChildNodePages() != null) {
+            version = VERSION_4;
+        }
+        new BundleWriter(this, out, version).writeBundle(bundle);
+    }
+
+    /**
+     * Stores the child node entries of the given bundle in separate pages
+     * in the blob store if there are more than <code>pageSize</code>
+     * entries. Only pages whose entries have changed are written, so adding
+     * or removing a child of a large node writes a single page instead of
+     * all entries. Changed entries are always written to new pages, so that
+     * the pages referenced by the previously stored bundle stay intact
+     * until the bundle has been stored. The pages that are no longer used
+     * are returned and should be removed with
+     * {@link #removeChildNodePages(Collection)} after that.
+     * <p>
+     * The entries are moved back into the bundle when their number drops
+     * to half the page size, or when paging is disabled.
+     *
+     * @param bundle the bundle
+     * @param pageSize the maximum number of entries per page, or 0 to
+     *                 store all entries in the bundle
+     * @return the blob ids of the pages that are no longer used
+     * @throws IOException if a page can not be written
+     */
+    public List<String> storeChildNodePages(
+            NodePropBundle bundle, int pageSize) throws IOException {
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (!bundle.isChildNodeEntriesLoaded()) {
+            // the entries have not been accessed, so they are unchanged
+            return Collections.emptyList();
+        }
+        List<ChildNodeEntry> entries = bundle.getChildNodeEntries();
+        if (pages == null && (pageSize <= 0 || entries.size() <= pageSize)) {
+            return Collections.emptyList();
+        }
+
+        List<ChildNodePage> result = new ArrayList<ChildNodePage>();
+        if (pageSize > 0 && entries.size() > pageSize / 2) {
+            if (pages == null) {
+                pages = Collections.emptyList();
+            }
+            // the page in which each entry was stored
+            Map<NodeId, ChildNodePage> index =
+                new HashMap<NodeId, ChildNodePage>();
+            for (ChildNodePage page : pages) {
+                for (ChildNodeEntry entry : page.getEntries()) {
+                    index.put(entry.getId(), page);
+                }
+            }
+            // split the entries into runs that start with an entry of a
+            // page not seen before; new and moved entries join the run
+            // of the preceding entry
+            Set<ChildNodePage> seen = new HashSet<ChildNodePage>();
+            ChildNodePage current = null;
+            List<ChildNodeEntry> run = new ArrayList<ChildNodeEntry>();
+            for (ChildNodeEntry entry : entries) {
+                ChildNodePage page = index.get(entry.getId());
+                if (page != null && page != current && seen.add(page)) {
+                    if (current != null) {
+                        addChildNodePages(result, current, run, pageSize);
+                        run = new ArrayList<ChildNodeEntry>();
+                    }
+                    current = page;
+                }
+                run.add(entry);
+            }
+            addChildNodePages(result, current, run, pageSize);
+
+            int next = bundle.getNextChildNodePage();
+            for (int i = 0; i < result.size(); i++) {
+                ChildNodePage page = result.get(i);
+                if (page.getNumber() < 0) {
+                    page = new ChildNodePage(next++, page.getEntries());
+                    writeChildNodePage(bundle.getId(), page);
+                    result.set(i, page);
+                }
+            }
+            bundle.setChildNodePages(result, next, null);
+        } else {
+            bundle.setChildNodePages(null, 0, null);
+        }
+
+        List<String> obsolete = new ArrayList<String>();
+        if (pages != null) {
+            Set<ChildNodePage> used = new HashSet<ChildNodePage>(result);
+            for (ChildNodePage page : pages) {
+                if (!used.contains(page)) {
+                    obsolete.add(getChildNodePageId(
+                            bundle.getId(), page.getNumber()));
+                }
+            }
+        }
+        return obsolete;
+    }
+
+    /**
+     * Adds the pages for a run of entries that starts with an entry of
+     * the given previous page. The previous page is kept if its entries are
+     * unchanged, otherwise the run is split into new pages (with a negative
+     * number until written). Small new pages are merged into the preceding
+     * page, so that removals do not leave many tiny pages behind.
+     */
+    private static void addChildNodePages(
+            List<ChildNodePage> result, ChildNodePage previous,
+            List<ChildNodeEntry> run, int pageSize) {
+        for (int i = 0; i < run.size(); i += pageSize) {
+            List<ChildNodeEntry> chunk = new ArrayList<ChildNodeEntry>(
+                    run.subList(i, Math.min(run.size(), i + pageSize)));
+            if (previous != null && chunk.equals(previous.getEntries())) {
+                result.add(previous);
+                continue;
+            }
+            if (chunk.size() < pageSize / 4 && !result.isEmpty()) {
+                ChildNodePage last = result.get(result.size() - 1);
+                if (last.getSize() + chunk.size() <= pageSize) {
+                    List<ChildNodeEntry> merged =
+                        new ArrayList<ChildNodeEntry>(last.getEntries());
+                    merged.addAll(chunk);
+                    result.set(result.size() - 1,
+                            new ChildNodePage(-1, merged));
+                    continue;
+                }
+            }
+            result.add(new ChildNodePage(-1, chunk));
+        }
+    }
+
+    /**
+     * Returns the blob ids of all child node pages of the given bundle.
+     *
+     * @param bundle the bundle
+     * @return the blob ids, empty if the entries are stored in the bundle
+     */
+    public List<String> getChildNodePageIds(NodePropBundle bundle) {
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (pages == null) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<String>(pages.size());
+        for (ChildNodePage page : pages) {
+            ids.add(getChildNodePageId(bundle.getId(), page.getNumber()));
+        }
+        return ids;
+    }
+
+    /**
+     * Removes the given child node pages from the blob store. Errors are
+     * logged and ignored, as a left over page does not affect the bundle.
+     *
+     * @param blobIds the blob ids of the pages
+     */
+    public void removeChildNodePages(Collection<String> blobIds) {
+        for (String blobId : blobIds) {
+            try {
+                blobStore.remove(blobId);
+            } catch (Exception e) {
+                log.warn("Ignoring error while removing child node page "
+                        + blobId, e);
+            }
+        }
+    }
+
+    /**
+     * Reads a page of child node entries from the blob store.
+     *
+     * @param id the node id of the bundle
+     * @param number the page number
+     * @return the child node entries of the page
+     * @throws IOException if the page can not be read
+     */
+    List<ChildNodeEntry> readChildNodePage(NodeId id, int number)
+            throws IOException {
+        String blobId = getChildNodePageId(id, number);
+        InputStream in;
+        try {
+            in = blobStore.get(blobId);
+        } catch (Exception e) {
+            throw new IOExceptionWithCause(
+                    "Failed to read child node page " + blobId, e);
+        }
+        try {
+            return new BundleReader(this, in).readChildNodePage();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a page of child node entries to the blob store.
+     *
+     * @param id the node id of the bundle
+     * @param page the page
+     * @throws IOException if the page can not be written
+     */
+    private void writeChildNodePage(NodeId id, ChildNodePage page)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BundleWriter(this, out, VERSION_4).writeChildNodePage(
+                page.getEntries());
+        byte[] data = out.toByteArray();
+        String blobId = getChildNodePageId(id, page.getNumber());
+        try {
+            blobStore.put(blobId, new ByteArrayInputStream(data), data.length);
+        } catch (Exception e) {
+            throw new IOExceptionWithCause(
+                    "Failed to write child node page " + blobId, e);
+        }
+    }
+
+    /**
+     * Returns the blob id of a child node page.
+     *
+     * @param id the node id of the bundle
+     * @param number the page number
+     * @return the blob id
+     */
+    private String getChildNodePageId(NodeId id, int number) {
+        return blobStore.createId(new PropertyId(id, CHILD_NODE_PAGE), number);
     }
 
 }
@@ -22,6 +22,8 @@ import org.apache.commons.io.IOExceptionWithCause;
 import org.apache.commons.io.input.CountingInputStream;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodePage;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
@@ -31,10 +33,12 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TimeZone;
 import java.math.BigDecimal;
@@ -198,6 +202,17 @@ class BundleReader {
             bundle.addChildNodeEntry(name, id);
         }
 
+        // child node pages (list of number/size pairs)
+        if (version >= BundleBinding.VERSION_4) {
+            int count = readVarInt();
+            List<ChildNodePage> pages = new ArrayList<ChildNodePage>(count);
+            for (int i = 0; i < count; i++) {
+                int number = readVarInt();
+                pages.add(new ChildNodePage(number, readVarInt()));
+            }
+            bundle.setChildNodePages(pages, readVarInt(), binding);
+        }
+
         // read shared set
         int sn = readVarInt((b >> 1) & 1, 1);
         if (sn == 0) {
@@ -213,6 +228,22 @@ class BundleReader {
         }
     }
 
+    /**
+     * Deserializes a page of child node entries.
+     *
+     * @return the child node entries
+     * @throws IOException if an I/O error occurs.
+     */
+    public List<ChildNodeEntry> readChildNodePage() throws IOException {
+        int count = readVarInt();
+        List<ChildNodeEntry> entries = new ArrayList<ChildNodeEntry>(count);
+        for (int i = 0; i < count; i++) {
+            Name name = readName();
+            entries.add(new ChildNodeEntry(name, readNodeId()));
+        }
+        return entries;
+    }
+
     private void readBundleOld(NodePropBundle bundle) throws IOException {
         // read primary type...special handling
         int a = in.readUnsignedByte();
@@ -25,7 +25,9 @@ import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -35,6 +37,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodePage;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
 import org.apache.jackrabbit.spi.Name;
 import org.slf4j.Logger;
@@ -54,6 +57,11 @@ class BundleWriter {
 
     private final DataOutputStream out;
 
+    /**
+     * The serialization version.
+     */
+    private final int version;
+
     /**
      * The default namespace and the first six other namespaces used in this
      * bundle. Used by the {@link #writeName(Name)} method to keep track of
@@ -72,10 +80,27 @@ class BundleWriter {
      */
     public BundleWriter(BundleBinding binding, OutputStream stream)
             throws IOException {
+        this(binding, stream, BundleBinding.VERSION_CURRENT);
+    }
+
+    /**
+     * Creates a new bundle serializer that uses the given serialization
+     * version. Version 4 is only needed for bundles whose child node entries
+     * are stored in separate pages, and for the pages themselves.
+     *
+     * @param binding bundle binding
+     * @param stream stream to which the bundle will be written
+     * @param version serialization version, 3 or 4
+     * @throws IOException if an I/O error occurs.
+     */
+    public BundleWriter(BundleBinding binding, OutputStream stream, int version)
+            throws IOException {
         assert namespaces.length == 7;
+        assert version >= BundleBinding.VERSION_3;
         this.binding = binding;
         this.out = new DataOutputStream(stream);
-        this.out.writeByte(BundleBinding.VERSION_CURRENT);
+        this.version = version;
+        this.out.writeByte(version);
     }
 
     /**
@@ -103,7 +128,17 @@ class BundleWriter {
 
         Collection<Name> mixins = bundle.getMixinTypeNames();
         Collection<PropertyEntry> properties = bundle.getPropertyEntries();
-        Collection<ChildNodeEntry> nodes = bundle.getChildNodeEntries();
+        // the entries of paged bundles are only written to the pages
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        Collection<ChildNodeEntry> nodes;
+        if (pages == null) {
+            nodes = bundle.getChildNodeEntries();
+        } else if (version >= BundleBinding.VERSION_4) {
+            nodes = Collections.emptyList();
+        } else {
+            throw new IOException(
+                    "Child node pages require serialization version 4");
+        }
         Collection<NodeId> shared = bundle.getSharedSet();
 
         int mn = mixins.size();
@@ -140,6 +175,19 @@ class BundleWriter {
             writeNodeId(child.getId());   // uuid
         }
 
+        // child node pages (list of number/size pairs)
+        if (version >= BundleBinding.VERSION_4) {
+            if (pages == null) {
+                pages = Collections.emptyList();
+            }
+            writeVarInt(pages.size());
+            for (ChildNodePage page : pages) {
+                writeVarInt(page.getNumber());
+                writeVarInt(page.getSize());
+            }
+            writeVarInt(bundle.getNextChildNodePage());
+        }
+
         // write shared set
         writeVarInt(sn, 1);
         for (NodeId nodeId: shared) {
@@ -150,6 +198,22 @@ class BundleWriter {
         bundle.setSize(out.size() - size);
     }
 
+    /**
+     * Serializes a page of child node entries: the number of entries
+     * followed by the name/uuid pairs.
+     *
+     * @param entries the child node entries
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeChildNodePage(List<ChildNodeEntry> entries)
+            throws IOException {
+        writeVarInt(entries.size());
+        for (ChildNodeEntry entry : entries) {
+            writeName(entry.getName());
+            writeNodeId(entry.getId());
+        }
+    }
+
     /**
      * Serializes a property entry. The serialization begins with the
      * property name followed by a single byte that encodes the type and
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * Bloom filter of node ids. Answers whether a node id has possibly been
+ * added to the filter, without false negatives. Ids can not be removed, so
+ * ids of deleted nodes keep answering "possibly contained".
+ * <p>
+ * The filter uses a fixed number of bits and hash functions. Adding and
+ * checking ids is thread-safe and lock-free.
+ */
+public class NodeIdBloomFilter {
+
+    /**
+     * Number of hash functions. Gives a false positive rate of about 2.5%
+     * with 8 bits per id, and 0.2% with 16 bits per id.
+     */
+    private static final int HASH_COUNT = 4;
+
+    private final AtomicLongArray bits;
+
+    private final long bitCount;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param size memory size of the filter, in bytes
+     */
+    public NodeIdBloomFilter(long size) {
+        this.bits = new AtomicLongArray((int) Math.max(1, Math.min(
+                size / 8, Integer.MAX_VALUE)));
+        this.bitCount = (long) bits.length() * 64;
+    }
+
+    /**
+     * Returns the memory size of the filter.
+     *
+     * @return size in bytes
+     */
+    public long getSize() {
+        return (long) bits.length() * 8;
+    }
+
+    /**
+     * Adds the given id to the filter.
+     *
+     * @param id node id
+     */
+    public void add(NodeId id) {
+        long h1 = mix(id.getMostSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits() ^ h1);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long value = bits.get(index);
+            while ((value & mask) == 0
+                    && !bits.compareAndSet(index, value, value | mask)) {
+                value = bits.get(index);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given id may have been added to the filter.
+     *
+     * @param id node id
+     * @return <code>false</code> if the id has definitely not been added,
+     *         <code>true</code> otherwise
+     */
+    public boolean mightContain(NodeId id) {
+        long h1 = mix(id.getMostSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits() ^ h1);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the bits of the given value. Node ids are mostly random, but
+     * some well-known ids are not.
+     */
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.core.persistence.util;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -73,6 +74,28 @@ public class NodePropBundle {
      */
     private LinkedList<NodePropBundle.ChildNodeEntry> childNodeEntries = new LinkedList<NodePropBundle.ChildNodeEntry>();
 
+    /**
+     * the pages the child node entries are stored in, or <code>null</code>
+     * if the entries are stored in the bundle itself
+     */
+    private List<ChildNodePage> childNodePages;
+
+    /**
+     * the number of the next child node page to be written
+     */
+    private int nextChildNodePage;
+
+    /**
+     * the binding used to load the child node pages
+     */
+    private BundleBinding childNodePageBinding;
+
+    /**
+     * flag that indicates if the child node entries of all pages have
+     * been loaded
+     */
+    private volatile boolean childNodeEntriesLoaded = true;
+
     /**
      * the properties
      */
@@ -138,6 +161,8 @@ public class NodePropBundle {
         isReferenceable = state.hasPropertyName(NameConstants.JCR_UUID);
         modCount = state.getModCount();
         List<org.apache.jackrabbit.core.state.ChildNodeEntry> list = state.getChildNodeEntries();
+        // the contents of the pages are needed to find the changed pages
+        getChildNodeEntries();
         childNodeEntries.clear();
         for (org.apache.jackrabbit.core.state.ChildNodeEntry cne : list) {
             addChildNodeEntry(cne.getName(), cne.getId());
@@ -156,7 +181,7 @@ public class NodePropBundle {
         state.setNodeTypeName(nodeTypeName);
         state.setMixinTypeNames(mixinTypeNames);
         state.setModCount(modCount);
-        for (ChildNodeEntry e : childNodeEntries) {
+        for (ChildNodeEntry e : getChildNodeEntries()) {
             state.addChildNodeEntry(e.getName(), e.getId());
         }
         state.setPropertyNames(properties.keySet());
@@ -284,20 +309,94 @@ public class NodePropBundle {
     }
 
     /**
-     * Returns the list of the child node entries.
+     * Returns the list of the child node entries. If the entries are stored
+     * in separate pages, the pages are loaded on the first call.
      * @return the list of the child node entries.
+     * @throws IllegalStateException if a child node page can not be loaded
      */
     public List<NodePropBundle.ChildNodeEntry> getChildNodeEntries() {
+        if (!childNodeEntriesLoaded) {
+            try {
+                loadChildNodeEntries();
+            } catch (IOException e) {
+                throw new IllegalStateException(
+                        "Failed to load the child node entries of " + id, e);
+            }
+        }
         return childNodeEntries;
     }
 
+    /**
+     * Loads the child node entries from the pages they are stored in, unless
+     * they have already been loaded.
+     * @throws IOException if a child node page can not be loaded
+     */
+    public synchronized void loadChildNodeEntries() throws IOException {
+        if (!childNodeEntriesLoaded) {
+            LinkedList<ChildNodeEntry> entries = new LinkedList<ChildNodeEntry>();
+            for (ChildNodePage page : childNodePages) {
+                if (page.entries == null) {
+                    page.entries =
+                        childNodePageBinding.readChildNodePage(id, page.number);
+                }
+                entries.addAll(page.entries);
+            }
+            childNodeEntries = entries;
+            childNodeEntriesLoaded = true;
+        }
+    }
+
+    /**
+     * Checks if the child node entries are loaded. This is always the case
+     * unless the entries are stored in separate pages.
+     * @return <code>true</code> if the child node entries are loaded
+     */
+    public boolean isChildNodeEntriesLoaded() {
+        return childNodeEntriesLoaded;
+    }
+
+    /**
+     * Returns the pages the child node entries are stored in.
+     * @return the pages, or <code>null</code> if the entries are stored in
+     *         the bundle itself
+     */
+    List<ChildNodePage> getChildNodePages() {
+        return childNodePages;
+    }
+
+    /**
+     * Sets the pages the child node entries are stored in. The entries of
+     * pages read from a serialized bundle are loaded with the given binding
+     * when they are first accessed.
+     * @param pages the pages, or <code>null</code> to store the entries in
+     *              the bundle itself
+     * @param next the number of the next page to be written
+     * @param binding the binding to load the pages with, or
+     *                <code>null</code> if the entries are loaded
+     */
+    void setChildNodePages(
+            List<ChildNodePage> pages, int next, BundleBinding binding) {
+        this.childNodePages = pages;
+        this.nextChildNodePage = next;
+        this.childNodePageBinding = binding;
+        this.childNodeEntriesLoaded = binding == null;
+    }
+
+    /**
+     * Returns the number of the next page to be written.
+     * @return the page number
+     */
+    int getNextChildNodePage() {
+        return nextChildNodePage;
+    }
+
     /**
      * Adds a child node entry.
      * @param name the name of the entry.
      * @param id the id of the entry
      */
     public void addChildNodeEntry(Name name, NodeId id) {
-        childNodeEntries.add(new ChildNodeEntry(name, id));
+        getChildNodeEntries().add(new ChildNodeEntry(name, id));
     }
 
     /**
@@ -455,7 +554,12 @@ public class NodePropBundle {
         }
         builder.append(properties.values());
         builder.append(" ");
-        builder.append(childNodeEntries);
+        if (childNodeEntriesLoaded) {
+            builder.append(childNodeEntries);
+        } else {
+            builder.append(childNodePages.size());
+            builder.append(" child node pages");
+        }
         return builder.toString();
     }
 
@@ -470,7 +574,7 @@ public class NodePropBundle {
                 && isReferenceable == that.isReferenceable
                 && equalNullSafe(sharedSet, that.sharedSet)
                 && equalNullSafe(properties, that.properties)
-                && equalNullSafe(childNodeEntries, that.childNodeEntries);
+                && equalNullSafe(getChildNodeEntries(), that.getChildNodeEntries());
         }
         return false;
     }
@@ -540,6 +644,81 @@ public class NodePropBundle {
             }
         }
 
+        public int hashCode() {
+            return id.hashCode();
+        }
+
+    }
+
+    //------------------------------------------------------< ChildNodePage >---
+
+    /**
+     * A page of child node entries that is stored separately from the
+     * bundle. Pages are never modified once written: changed entries are
+     * written to a new page with a new number.
+     */
+    static class ChildNodePage {
+
+        /**
+         * the number of the page, unique within the bundle
+         */
+        private final int number;
+
+        /**
+         * the number of entries in the page
+         */
+        private final int size;
+
+        /**
+         * the entries, or <code>null</code> if not loaded yet
+         */
+        private List<ChildNodeEntry> entries;
+
+        /**
+         * Creates a page that is not loaded yet.
+         * @param number the page number
+         * @param size the number of entries
+         */
+        ChildNodePage(int number, int size) {
+            this.number = number;
+            this.size = size;
+        }
+
+        /**
+         * Creates a page with the given entries.
+         * @param number the page number
+         * @param entries the entries
+         */
+        ChildNodePage(int number, List<ChildNodeEntry> entries) {
+            this.number = number;
+            this.size = entries.size();
+            this.entries = entries;
+        }
+
+        /**
+         * Returns the number of the page.
+         * @return the page number
+         */
+        int getNumber() {
+            return number;
+        }
+
+        /**
+         * Returns the number of entries in the page.
+         * @return the number of entries
+         */
+        int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the entries of the page.
+         * @return the entries, or <code>null</code> if not loaded yet
+         */
+        List<ChildNodeEntry> getEntries() {
+            return entries;
+        }
+
     }
 
     //------------------------------------------------------< PropertyEntry >---
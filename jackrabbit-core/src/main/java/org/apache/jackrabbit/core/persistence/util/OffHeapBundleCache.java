@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.jackrabbit.core.cache.AbstractCache;
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * Second level bundle cache that keeps serialized bundles outside of the
+ * Java heap. The memory is allocated as a fixed number of direct byte
+ * buffers (slabs) that are used as a circular log: new records are appended
+ * to the current slab, and once all slabs are full the oldest slab is
+ * recycled, evicting all records it contains. This makes the eviction
+ * policy FIFO, which is good enough for a cache that sits behind the
+ * regular (LRU) bundle cache.
+ * <p>
+ * Only the index that maps node ids to record locations is kept on the
+ * heap. Each record starts with the node id it belongs to, so that the
+ * index entries of a recycled slab can be cleaned up without keeping a
+ * separate list of keys.
+ * <p>
+ * Appending records and recycling slabs is synchronized on the cache
+ * instance, and both take the write lock of the slab they change. Reads
+ * only take the read lock of the slab that contains the record, so they
+ * never block each other.
+ */
+public class OffHeapBundleCache extends AbstractCache {
+
+    /**
+     * Default size of a single slab.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Size of the record header: node id (two longs) and data length.
+     */
+    private static final int HEADER_SIZE = 8 + 8 + 4;
+
+    /**
+     * Estimated heap memory used by an index entry.
+     */
+    private static final int INDEX_ENTRY_SIZE = 100;
+
+    private final String name;
+
+    private final int slabSize;
+
+    private final ByteBuffer[] slabs;
+
+    private final ReadWriteLock[] locks;
+
+    /**
+     * Maps node ids to record locations, encoded as
+     * <code>slab * slabSize + offset</code>.
+     */
+    private final ConcurrentHashMap<NodeId, Long> index =
+        new ConcurrentHashMap<NodeId, Long>();
+
+    /**
+     * The slab new records are appended to.
+     */
+    private int currentSlab;
+
+    /**
+     * The append position within the current slab.
+     */
+    private int position;
+
+    /**
+     * Creates a new off-heap cache.
+     *
+     * @param name cache name, used for logging
+     * @param maxSize maximum amount of off-heap memory to use, in bytes
+     * @param slabSize size of a single slab, in bytes
+     */
+    public OffHeapBundleCache(String name, long maxSize, int slabSize) {
+        this.name = name;
+        this.slabSize = Math.max(slabSize, HEADER_SIZE);
+        int count = (int) Math.max(2, maxSize / this.slabSize);
+        this.slabs = new ByteBuffer[count];
+        this.locks = new ReadWriteLock[count];
+        for (int i = 0; i < count; i++) {
+            slabs[i] = ByteBuffer.allocateDirect(this.slabSize);
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        setMaxMemorySize((long) count * this.slabSize);
+    }
+
+    public OffHeapBundleCache(String name, long maxSize) {
+        this(name, maxSize, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Returns the serialized bundle with the given id.
+     *
+     * @param id node id
+     * @return serialized bundle, or <code>null</code> if not cached
+     */
+    public byte[] get(NodeId id) {
+        recordCacheAccess();
+        Long location = index.get(id);
+        if (location != null) {
+            int slab = (int) (location / slabSize);
+            int offset = (int) (location % slabSize);
+            locks[slab].readLock().lock();
+            try {
+                ByteBuffer buffer = slabs[slab].duplicate();
+                buffer.position(offset);
+                // the slab may have been recycled since the index lookup
+                if (buffer.getLong() == id.getMostSignificantBits()
+                        && buffer.getLong() == id.getLeastSignificantBits()) {
+                    int length = buffer.getInt();
+                    if (length >= 0 && length <= buffer.remaining()) {
+                        byte[] data = new byte[length];
+                        buffer.get(data);
+                        return data;
+                    }
+                }
+            } finally {
+                locks[slab].readLock().unlock();
+            }
+        }
+        recordCacheMiss();
+        return null;
+    }
+
+    /**
+     * Adds the given serialized bundle to the cache. Records that do not
+     * fit in a single slab are not cached.
+     *
+     * @param id node id
+     * @param data serialized bundle
+     */
+    public synchronized void put(NodeId id, byte[] data) {
+        int length = HEADER_SIZE + data.length;
+        if (length > slabSize) {
+            remove(id);
+            return;
+        }
+        if (position + length > slabSize) {
+            currentSlab = (currentSlab + 1) % slabs.length;
+            position = 0;
+            recycle(currentSlab);
+        }
+
+        // readers may still hold locations of records that were in this
+        // slab before it was recycled
+        locks[currentSlab].writeLock().lock();
+        try {
+            ByteBuffer buffer = slabs[currentSlab].duplicate();
+            buffer.position(position);
+            buffer.putLong(id.getMostSignificantBits());
+            buffer.putLong(id.getLeastSignificantBits());
+            buffer.putInt(data.length);
+            buffer.put(data);
+            if (buffer.remaining() >= HEADER_SIZE) {
+                // terminate the list of records for recycle()
+                buffer.put(new byte[HEADER_SIZE]);
+            }
+        } finally {
+            locks[currentSlab].writeLock().unlock();
+        }
+
+        Long previous = index.put(
+                id, Long.valueOf((long) currentSlab * slabSize + position));
+        if (previous == null) {
+            recordSizeChange(INDEX_ENTRY_SIZE);
+        }
+        recordSizeChange(length);
+        position += length;
+    }
+
+    /**
+     * Removes the identified bundle from the cache. The record itself stays
+     * in its slab until the slab is recycled.
+     *
+     * @param id node id
+     */
+    public void remove(NodeId id) {
+        if (index.remove(id) != null) {
+            recordSizeChange(-INDEX_ENTRY_SIZE);
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < slabs.length; i++) {
+            recycle(i);
+        }
+        currentSlab = 0;
+        position = 0;
+    }
+
+    /**
+     * Drops the index entries of all records in the given slab, which is
+     * about to be overwritten.
+     *
+     * @param slab slab index
+     */
+    private void recycle(int slab) {
+        locks[slab].writeLock().lock();
+        try {
+            ByteBuffer buffer = slabs[slab].duplicate();
+            long base = (long) slab * slabSize;
+            int offset = 0;
+            while (offset + HEADER_SIZE <= slabSize) {
+                buffer.position(offset);
+                long msb = buffer.getLong();
+                long lsb = buffer.getLong();
+                int length = buffer.getInt();
+                if (length == 0 && msb == 0 && lsb == 0) {
+                    break;
+                }
+                if (index.remove(new NodeId(msb, lsb), Long.valueOf(base + offset))) {
+                    recordSizeChange(-INDEX_ENTRY_SIZE);
+                }
+                recordSizeChange(-(HEADER_SIZE + length));
+                offset += HEADER_SIZE + length;
+            }
+            // mark the slab as empty
+            buffer.position(0);
+            buffer.put(new byte[HEADER_SIZE]);
+        } finally {
+            locks[slab].writeLock().unlock();
+        }
+    }
+
+    public long getElementCount() {
+        return index.size();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + getClass().getSimpleName() + "@"
+                + Integer.toHexString(hashCode()) + "]";
+    }
+
+}
@@ -36,4 +36,20 @@ public interface ExecutableQuery {
      */
     QueryResult execute(long offset, long limit) throws RepositoryException;
 
+    /**
+     * Executes this query and returns a <code>{@link QueryResult}</code>
+     * that continues a previous result of the same query.
+     * @param offset the offset in the total result set, relative to the
+     *               position of the continuation token
+     * @param limit the maximum result size
+     * @param continuationToken the continuation token of a previous result,
+     *                          or <code>null</code> to start at the first
+     *                          result
+     *
+     * @return a <code>QueryResult</code>
+     * @throws RepositoryException if an error occurs
+     */
+    QueryResult execute(long offset, long limit, String continuationToken)
+            throws RepositoryException;
+
 }
@@ -33,6 +33,7 @@ import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
 import javax.jcr.version.VersionException;
 
+import org.apache.jackrabbit.api.query.JackrabbitQuery;
 import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.session.SessionOperation;
@@ -45,7 +46,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Provides the default implementation for a JCR query.
  */
-public class QueryImpl extends AbstractQueryImpl {
+public class QueryImpl extends AbstractQueryImpl implements JackrabbitQuery {
 
     /**
      * The logger instance for this class
@@ -98,6 +99,11 @@ public class QueryImpl extends AbstractQueryImpl {
      */
     protected long offset = 0;
 
+    /**
+     * The continuation token of a previous result
+     */
+    protected String continuationToken;
+
     /**
      * {@inheritDoc}
      */
@@ -129,7 +135,7 @@ public class QueryImpl extends AbstractQueryImpl {
                 new SessionOperation<QueryResult>() {
                     public QueryResult perform(SessionContext context)
                             throws RepositoryException {
-                        return query.execute(offset, limit);
+                        return query.execute(offset, limit, continuationToken);
                     }
 
                     public String toString() {
@@ -251,6 +257,16 @@ public class QueryImpl extends AbstractQueryImpl {
         this.offset = offset;
     }
 
+    /**
+     * Sets the continuation token of a previous result of this query.
+     *
+     * @param token the continuation token or <code>null</code>
+     * @throws RepositoryException if the query does not support continuation
+     */
+    public void setContinuationToken(String token) throws RepositoryException {
+        this.continuationToken = token;
+    }
+
     //-----------------------------< internal >---------------------------------
 
     /**
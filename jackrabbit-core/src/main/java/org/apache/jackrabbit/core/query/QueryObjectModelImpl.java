@@ -21,6 +21,7 @@ import java.util.Map;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.Value;
 import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
@@ -146,6 +147,30 @@ public class QueryObjectModelImpl extends QueryImpl implements QueryObjectModel
         return result;
     }
 
+    /**
+     * Returns a description of how this query would be evaluated, including
+     * the execution order and estimated sizes of the join sources and the
+     * join strategies. The query is not executed.
+     *
+     * @return the query plan
+     * @throws RepositoryException if the plan can not be computed
+     */
+    public String explain() throws RepositoryException {
+        return sessionContext.getSessionState().perform(
+                new SessionOperation<String>() {
+                    public String perform(SessionContext context)
+                            throws RepositoryException {
+                        final QueryEngine engine = new QueryEngine(
+                                sessionContext.getSessionImpl(), lqf, variables);
+                        return engine.explain(getSource(), getConstraint());
+                    }
+
+                    public String toString() {
+                        return "query.explain(" + statement + ")";
+                    }
+                });
+    }
+
     @Override
     public String[] getBindVariableNames() {
         return variables.keySet().toArray(new String[variables.size()]);
@@ -162,6 +187,19 @@ public class QueryObjectModelImpl extends QueryImpl implements QueryObjectModel
         }
     }
 
+    /**
+     * Throws an {@link UnsupportedRepositoryOperationException} as query
+     * object model results cannot be continued.
+     *
+     * @throws UnsupportedRepositoryOperationException always thrown
+     */
+    @Override
+    public void setContinuationToken(String token)
+            throws UnsupportedRepositoryOperationException {
+        throw new UnsupportedRepositoryOperationException(
+                "Continuation is not supported for query object models");
+    }
+
     //-------------------------< QueryObjectModel >-----------------------------
 
     /**
@@ -18,6 +18,7 @@ package org.apache.jackrabbit.core.query.lucene;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Workspace;
+import javax.jcr.query.QueryResult;
 import javax.jcr.query.qom.QueryObjectModelFactory;
 
 import org.apache.jackrabbit.core.query.ExecutableQuery;
@@ -95,6 +96,31 @@ public abstract class AbstractQueryImpl implements ExecutableQuery {
         this.documentOrder = documentOrder;
     }
 
+    /**
+     * Executes this query and returns a <code>{@link QueryResult}</code>.
+     *
+     * @param offset the offset in the total result set
+     * @param limit the maximum result size
+     * @return a <code>QueryResult</code>
+     * @throws RepositoryException if an error occurs
+     */
+    public QueryResult execute(long offset, long limit)
+            throws RepositoryException {
+        return execute(offset, limit, null);
+    }
+
+    /**
+     * Returns a key that identifies the statement of this query. Results of
+     * queries with the same statement key can be continued with each other's
+     * continuation token.
+     *
+     * @return the statement key or <code>null</code> if results of this query
+     *         cannot be continued by other queries.
+     */
+    protected Object getStatementKey() {
+        return null;
+    }
+
     /**
      * @return the query object model factory.
      * @throws RepositoryException if an error occurs.
@@ -16,10 +16,8 @@
  */
 package org.apache.jackrabbit.core.query.lucene;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.NumberFormat;
-import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
@@ -37,8 +35,6 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
-import org.apache.lucene.store.IndexInput;
-import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.ReaderUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,7 +75,13 @@ class CachingIndexReader extends FilterIndexReader {
      * then that means the node with the document number = array-index has the
      * node with the value at that position as parent.
      */
-    private final int[] inSegmentParents;
+    private final ParentArray inSegmentParents;
+
+    /**
+     * <code>true</code> if {@link #inSegmentParents} was loaded from the
+     * index directory.
+     */
+    private final boolean parentsLoaded;
 
     /**
      * Cache of nodes parent relation that point to a foreign index segment.
@@ -112,6 +114,12 @@ class CachingIndexReader extends FilterIndexReader {
      */
     private final TermDocsCache termDocsCache;
 
+    /**
+     * The sort columns of properties by term prefix. A <code>null</code>
+     * value indicates that the property cannot be represented by a column.
+     */
+    private final Map<String, SortColumn> sortColumns = new HashMap<String, SortColumn>();
+
     /**
      * Creates a new <code>CachingIndexReader</code> based on
      * <code>delegatee</code>
@@ -120,7 +128,8 @@ class CachingIndexReader extends FilterIndexReader {
      * @param cache     a document number cache, or <code>null</code> if not
      *                  available to this reader.
      * @param initCache if the parent caches should be initialized
-     *                  when this index reader is constructed.
+     *                  when this index reader is constructed and cannot be
+     *                  loaded from the index directory.
      * @throws IOException if an error occurs while reading from the index.
      */
     @SuppressWarnings("unchecked")
@@ -130,8 +139,12 @@ class CachingIndexReader extends FilterIndexReader {
             throws IOException {
         super(delegatee);
         this.cache = cache;
-        this.inSegmentParents = new int[delegatee.maxDoc()];
-        Arrays.fill(this.inSegmentParents, -1);
+        ParentArray parents = ParentArray.load(delegatee);
+        this.parentsLoaded = parents != null;
+        if (parents == null) {
+            parents = ParentArray.create(delegatee.maxDoc());
+        }
+        this.inSegmentParents = parents;
         this.shareableNodes = initShareableNodes(delegatee);
         this.cacheInitializer = new CacheInitializer(delegatee);
         if (initCache) {
@@ -170,7 +183,7 @@ class CachingIndexReader extends FilterIndexReader {
     DocId getParent(int n, BitSet deleted) throws IOException {
         DocId parent;
         boolean existing = false;
-        int parentDocNum = inSegmentParents[n];
+        int parentDocNum = inSegmentParents.get(n);
         if (parentDocNum != -1) {
             parent = DocId.create(parentDocNum);
         } else {
@@ -226,7 +239,7 @@ class CachingIndexReader extends FilterIndexReader {
             // finally put to cache
             if (plainDocId != -1) {
                 // PlainDocId
-                inSegmentParents[n] = plainDocId;
+                inSegmentParents.set(n, plainDocId);
             } else {
                 // UUIDDocId
                 foreignParentDocIds.put(n, parent);
@@ -235,13 +248,40 @@ class CachingIndexReader extends FilterIndexReader {
                     // inSegmentParents, which was invalid and is replaced
                     // with a UUIDDocId (points to a foreign segment).
                     // mark as unknown
-                    inSegmentParents[n] = -1;
+                    inSegmentParents.set(n, -1);
                 }
             }
         }
         return parent;
     }
 
+    /**
+     * Returns the cache of the parents that are in this index.
+     *
+     * @return the parents of the documents in this index.
+     */
+    ParentArray getParents() {
+        return inSegmentParents;
+    }
+
+    /**
+     * Returns the sort column of a property in this index.
+     *
+     * @param field  the name of the shared field.
+     * @param prefix the term prefix of the property.
+     * @return the sort column, or <code>null</code> if the property cannot
+     *         be represented by a column.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    SortColumn getSortColumn(String field, String prefix) throws IOException {
+        synchronized (sortColumns) {
+            if (!sortColumns.containsKey(prefix)) {
+                sortColumns.put(prefix, SortColumn.get(in, field, prefix));
+            }
+            return sortColumns.get(prefix);
+        }
+    }
+
     /**
      * Returns the tick value when this reader was created.
      *
@@ -373,11 +413,6 @@ class CachingIndexReader extends FilterIndexReader {
      */
     private class CacheInitializer implements Runnable {
 
-        /**
-         * The {@link #inSegmentParents} is persisted using this filename.
-         */
-        private static final String FILE_CACHE_NAME_ARRAY = "cache.inSegmentParents";
-
         /**
          * From where to read.
          */
@@ -414,8 +449,7 @@ class CachingIndexReader extends FilterIndexReader {
                     // immediately return when stop is requested
                     return;
                 }
-                boolean initCacheFromFile = loadCacheFromFile();
-                if (!initCacheFromFile) {
+                if (!parentsLoaded) {
                     // file-based cache is not available, load from the
                     // repository
                     log.debug("persisted cache is not available, will load directly from the repository.");
@@ -549,7 +583,7 @@ class CachingIndexReader extends FilterIndexReader {
                         }
                     }
                     if (parentDocId != -1) {
-                        inSegmentParents[info.docId] = parentDocId;
+                        inSegmentParents.set(info.docId, parentDocId);
                     } else if (info.parent != null) {
                         foreignParents++;
                         foreignParentDocIds.put(info.docId, DocId.create(info.parent));
@@ -567,12 +601,12 @@ class CachingIndexReader extends FilterIndexReader {
                 NumberFormat nf = NumberFormat.getPercentInstance();
                 nf.setMaximumFractionDigits(1);
                 time = System.currentTimeMillis() - time;
-                if (inSegmentParents.length > 0) {
-                    foreignParents /= inSegmentParents.length;
+                if (inSegmentParents.size() > 0) {
+                    foreignParents /= inSegmentParents.size();
                 }
                 log.debug("initialized {} DocIds in {} ms, {} foreign parents",
                         new Object[]{
-                            inSegmentParents.length,
+                            inSegmentParents.size(),
                             time,
                             nf.format(foreignParents)
                         });
@@ -624,68 +658,19 @@ class CachingIndexReader extends FilterIndexReader {
         }
 
         /**
-         * Persists the cache info {@link #inSegmentParents} to a file:
-         * {@link #FILE_CACHE_NAME_ARRAY}, for faster init times on startup.
+         * Persists the cache info {@link #inSegmentParents} to the index
+         * directory, for faster init times on startup.
          * 
          * see https://issues.apache.org/jira/browse/JCR-3107
          */
-        public void saveCacheToFile() throws IOException {
-            IndexOutput io = null;
+        public void saveCacheToFile() {
             try {
-                io = reader.directory().createOutput(FILE_CACHE_NAME_ARRAY);
-                for (int parent : inSegmentParents) {
-                    io.writeInt(parent);
-                }
+                inSegmentParents.save(reader);
             } catch (Exception e) {
                 log.error(
-                        "Error saving " + FILE_CACHE_NAME_ARRAY + ": "
+                        "Error saving " + ParentArray.FILE_NAME + ": "
                                 + e.getMessage(), e);
-            } finally {
-                if (io != null) {
-                    io.close();
-                }
-            }
-        }
-
-        /**
-         * Loads the cache info {@link #inSegmentParents} from the file
-         * {@link #FILE_CACHE_NAME_ARRAY}.
-         * 
-         * see https://issues.apache.org/jira/browse/JCR-3107
-         * 
-         * @return true if the cache has been initialized of false if the cache
-         *         file does not exist yet, or an error happened
-         */
-        private boolean loadCacheFromFile() throws IOException {
-            IndexInput ii = null;
-            try {
-                long time = System.currentTimeMillis();
-                ii = reader.directory().openInput(FILE_CACHE_NAME_ARRAY);
-                for (int i = 0; i < inSegmentParents.length; i++) {
-                    inSegmentParents[i] = ii.readInt();
-                }
-                log.debug(
-                        "persisted cache initialized {} DocIds in {} ms",
-                        new Object[] { inSegmentParents.length,
-                                System.currentTimeMillis() - time });
-                return true;
-            } catch (FileNotFoundException ignore) {
-                // expected in the case where the file-based cache has not been
-                // initialized yet
-            } catch (IOException ignore) {
-                log.warn(
-                        "Saved state of CachingIndexReader is corrupt, will try to remove offending file "
-                                + FILE_CACHE_NAME_ARRAY, ignore);
-                // In the case where is a read error, the cache file is removed
-                // so it can be recreated after
-                // the cache loads the data from the repository directly
-                reader.directory().deleteFile(FILE_CACHE_NAME_ARRAY);
-            } finally {
-                if (ii != null) {
-                    ii.close();
-                }
             }
-            return false;
         }
     }
 
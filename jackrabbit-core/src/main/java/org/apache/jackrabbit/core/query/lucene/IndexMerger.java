@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -34,7 +35,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Merges indexes in a separate daemon thread.
+ * Merges indexes in a separate daemon thread. At most
+ * {@link #setMaxConcurrentMerges(int) maxConcurrentMerges} merges run at the
+ * same time, further merge tasks are queued until a running merge finishes.
  */
 class IndexMerger implements IndexListener {
 
@@ -58,6 +61,11 @@ class IndexMerger implements IndexListener {
      */
     private int mergeFactor = SearchIndex.DEFAULT_MERGE_FACTOR;
 
+    /**
+     * maxConcurrentMerges config parameter
+     */
+    private int maxConcurrentMerges = SearchIndex.DEFAULT_MAX_CONCURRENT_MERGES;
+
     /**
      * List of <code>IndexBucket</code>s in ascending document limit.
      */
@@ -73,6 +81,11 @@ class IndexMerger implements IndexListener {
      */
     private final Executor executor;
 
+    /**
+     * The statistics to record the merge throughput in.
+     */
+    private final IndexingStatistics statistics;
+
     /**
      * Flag that indicates that this index merger is shuting down and should
      * quit. 
@@ -99,19 +112,29 @@ class IndexMerger implements IndexListener {
     private final ReadWriteLock indexReplacement = new ReentrantReadWriteLock();
 
     /**
-     * List of merger threads that are currently busy.
+     * List of merger threads that are currently busy, including the ones
+     * that are queued.
      */
     private final List<Worker> busyMergers = new ArrayList<Worker>();
 
+    /**
+     * Merger threads that wait for one of the running mergers to finish.
+     * Guarded by {@link #busyMergers}.
+     */
+    private final LinkedList<Worker> queuedMergers = new LinkedList<Worker>();
+
     /**
      * Creates an <code>IndexMerger</code>.
      *
      * @param multiIndex the <code>MultiIndex</code>.
      * @param executor   the executor of the repository.
+     * @param statistics the statistics to record the merge throughput in.
      */
-    IndexMerger(MultiIndex multiIndex, Executor executor) {
+    IndexMerger(MultiIndex multiIndex, Executor executor,
+                IndexingStatistics statistics) {
         this.multiIndex = multiIndex;
         this.executor = executor;
+        this.statistics = statistics;
     }
 
     /**
@@ -228,13 +251,35 @@ class IndexMerger implements IndexListener {
      *                              for the worker threads to become idle.
      */
     void waitUntilIdle() throws InterruptedException {
+        waitUntilPending(0);
+    }
+
+    /**
+     * Waits until there are no more than <code>maxPending</code> merge tasks
+     * pending, or this index merger is shutting down. Must only be called
+     * by threads that do not hold the lock of the {@link MultiIndex}.
+     *
+     * @param maxPending the maximum number of pending merge tasks.
+     * @throws InterruptedException if this thread is interrupted while waiting
+     *                              for the worker threads.
+     */
+    void waitUntilPending(int maxPending) throws InterruptedException {
         synchronized (busyMergers) {
-            while (!busyMergers.isEmpty()) {
+            while (busyMergers.size() > maxPending && !quit.get()) {
                 busyMergers.wait();
             }
         }
     }
 
+    /**
+     * @return the number of merge tasks that are running or queued.
+     */
+    int getPendingMerges() {
+        synchronized (busyMergers) {
+            return busyMergers.size();
+        }
+    }
+
     /**
      * Signals this <code>IndexMerger</code> to stop and waits until it
      * has terminated.
@@ -253,6 +298,16 @@ class IndexMerger implements IndexListener {
         quit.set(true);
         log.debug("quit flag set");
 
+        // queued workers will never run
+        synchronized (busyMergers) {
+            for (Worker w : queuedMergers) {
+                busyMergers.remove(w);
+                w.terminate();
+            }
+            queuedMergers.clear();
+            busyMergers.notifyAll();
+        }
+
         try {
             // give the merger threads some time to quit,
             // it is possible that the mergers are busy working on a large index.
@@ -307,6 +362,15 @@ class IndexMerger implements IndexListener {
         this.maxMergeDocs = maxMergeDocs;
     }
 
+    /**
+     * The maximum number of merges that run at the same time.
+     *
+     * @param maxConcurrentMerges the max number of concurrent merges.
+     */
+    public void setMaxConcurrentMerges(int maxConcurrentMerges) {
+        this.maxConcurrentMerges = Math.max(1, maxConcurrentMerges);
+    }
+
     //------------------------------< internal >--------------------------------
 
     private void addMergeTask(Merge task) {
@@ -319,11 +383,34 @@ class IndexMerger implements IndexListener {
             }
             synchronized (busyMergers) {
                 busyMergers.add(worker);
+                if (busyMergers.size() - queuedMergers.size() > maxConcurrentMerges) {
+                    queuedMergers.add(worker);
+                    return;
+                }
             }
             executor.execute(worker);
         }
     }
 
+    /**
+     * Removes a finished worker and starts the next queued worker, if any.
+     *
+     * @param worker the finished worker.
+     */
+    private void workerFinished(Worker worker) {
+        Worker next = null;
+        synchronized (busyMergers) {
+            busyMergers.remove(worker);
+            if (!quit.get()) {
+                next = queuedMergers.poll();
+            }
+            busyMergers.notifyAll();
+        }
+        if (next != null) {
+            executor.execute(next);
+        }
+    }
+
     /**
      * Implements a simple struct that holds the name of an index and how
      * many document it contains. <code>Index</code> is comparable using the
@@ -529,6 +616,7 @@ class IndexMerger implements IndexListener {
                             for (IndexReader reader : readers) {
                                 docCount += reader.numDocs();
                             }
+                            statistics.getMerge().record(docCount, time * 1000000);
                             log.info("merged " + docCount + " documents in " + time + " ms into " + index.getName() + ".");
                         } finally {
                             for (IndexReader reader : readers) {
@@ -569,18 +657,22 @@ class IndexMerger implements IndexListener {
                     log.error("Error while merging indexes: ", e);
                 }
             } finally {
-                synchronized (terminated) {
-                    terminated.set(true);
-                    terminated.notifyAll();
-                }
-                synchronized (busyMergers) {
-                    busyMergers.remove(this);
-                    busyMergers.notifyAll();
-                }
+                terminate();
+                workerFinished(this);
                 log.debug("Worker finished");
             }
         }
 
+        /**
+         * Marks this worker as terminated.
+         */
+        void terminate() {
+            synchronized (terminated) {
+                terminated.set(true);
+                terminated.notifyAll();
+            }
+        }
+
         /**
          * @inheritDoc
          */
@@ -121,4 +121,17 @@ public interface IndexingConfiguration {
      */
     Analyzer getPropertyAnalyzer(String fieldName);
 
+    /**
+     * Returns the names of the properties for which a sort column is kept in
+     * the index. Queries that order by one of these properties read its
+     * values from the column instead of creating a value for every document
+     * in the index.
+     *
+     * @return the names of the properties with a sort column; an empty array
+     *         if there are none.
+     */
+    default Name[] getSortColumns() {
+        return new Name[0];
+    }
+
 }
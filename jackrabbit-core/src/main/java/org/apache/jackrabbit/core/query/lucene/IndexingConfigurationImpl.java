@@ -135,6 +135,11 @@ public class IndexingConfigurationImpl
      */
     private Map<String, Analyzer> analyzers = new HashMap<String, Analyzer>();
 
+    /**
+     * The names of the properties with a sort column.
+     */
+    private Name[] sortColumns = new Name[0];
+
     /**
      * {@inheritDoc}
      */
@@ -151,6 +156,7 @@ public class IndexingConfigurationImpl
 
         refreshIndexRules();
         List<AggregateRule> idxAggregates = new ArrayList<AggregateRule>();
+        List<Name> sortColumnNames = new ArrayList<Name>();
         NodeList indexingConfigs = config.getChildNodes();
         for (int i = 0; i < indexingConfigs.getLength(); i++) {
             Node configNode = indexingConfigs.item(i);
@@ -185,9 +191,19 @@ public class IndexingConfigurationImpl
                         }
                     }
                 }
+            } else if (configNode.getNodeName().equals("sort-columns")) {
+                NodeList childNodes = configNode.getChildNodes();
+                for (int j = 0; j < childNodes.getLength(); j++) {
+                    Node propertyNode = childNodes.item(j);
+                    if (propertyNode.getNodeName().equals("property")) {
+                        sortColumnNames.add(resolver.getQName(
+                                getTextContent(propertyNode)));
+                    }
+                }
             }
 
         }
+        sortColumns = sortColumnNames.toArray(new Name[sortColumnNames.size()]);
         if (idxAggregates.isEmpty()) {
             aggregateRules = null;
         } else {
@@ -312,6 +328,16 @@ public class IndexingConfigurationImpl
         return null;
     }
 
+    /**
+     * Returns the names of the properties listed in the
+     * <code>sort-columns</code> element of this configuration.
+     *
+     * @return the names of the properties with a sort column.
+     */
+    public Name[] getSortColumns() {
+        return sortColumns;
+    }
+
     //--------------------------< NodeTypeRegistryListener >--------------------
 
     public void nodeTypeRegistered(Name ntName) {
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>IndexingStatistics</code> keeps track of the throughput of the
+ * stages of the indexing pipeline of a {@link SearchIndex}: the creation of
+ * documents, the commit of the volatile index to a persistent index and the
+ * merge of persistent indexes.
+ */
+public class IndexingStatistics {
+
+    /**
+     * Throughput counters of a single indexing stage.
+     */
+    public static final class Stage {
+
+        private final String name;
+
+        private final AtomicLong operations = new AtomicLong();
+
+        private final AtomicLong documents = new AtomicLong();
+
+        private final AtomicLong time = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records a completed operation of this stage.
+         *
+         * @param numDocs the number of documents processed.
+         * @param nanos   the time spent in nanoseconds.
+         */
+        void record(long numDocs, long nanos) {
+            operations.incrementAndGet();
+            documents.addAndGet(numDocs);
+            time.addAndGet(nanos);
+        }
+
+        /**
+         * @return the name of this stage.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of operations completed by this stage.
+         */
+        public long getOperations() {
+            return operations.get();
+        }
+
+        /**
+         * @return the number of documents processed by this stage.
+         */
+        public long getDocuments() {
+            return documents.get();
+        }
+
+        /**
+         * @return the time spent in this stage in milliseconds. Stages that
+         *         run in multiple threads may report more than the elapsed
+         *         time.
+         */
+        public long getTime() {
+            return time.get() / 1000000;
+        }
+
+        /**
+         * @return the number of documents processed per second spent in
+         *         this stage.
+         */
+        public double getDocumentsPerSecond() {
+            long nanos = time.get();
+            return nanos > 0 ? documents.get() * 1000000000.0 / nanos : 0;
+        }
+
+        public String toString() {
+            return name + ": " + getDocuments() + " documents in "
+                    + getOperations() + " operations, " + getTime() + "ms ("
+                    + Math.round(getDocumentsPerSecond()) + " documents/s)";
+        }
+    }
+
+    private final Stage documentCreation = new Stage("document creation");
+
+    private final Stage volatileCommit = new Stage("volatile index commit");
+
+    private final Stage merge = new Stage("index merge");
+
+    /**
+     * @return the counters for the creation of documents from node states.
+     */
+    public Stage getDocumentCreation() {
+        return documentCreation;
+    }
+
+    /**
+     * @return the counters for the commits of the volatile index to a new
+     *         persistent index.
+     */
+    public Stage getVolatileCommit() {
+        return volatileCommit;
+    }
+
+    /**
+     * @return the counters for the merges of persistent indexes.
+     */
+    public Stage getMerge() {
+        return merge;
+    }
+
+    public String toString() {
+        return documentCreation + ", " + volatileCommit + ", " + merge;
+    }
+}
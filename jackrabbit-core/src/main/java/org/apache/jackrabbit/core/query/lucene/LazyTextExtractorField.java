@@ -34,6 +34,7 @@ import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.WriteOutContentHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
 
 /**
  * <code>LazyTextExtractorField</code> implements a Lucene field with a String
@@ -58,6 +59,11 @@ public class LazyTextExtractorField extends AbstractField {
      */
     private volatile String extract = null;
 
+    /**
+     * The text extraction task.
+     */
+    private final ParsingTask task;
+
     /**
      * Creates a new <code>LazyTextExtractorField</code>.
      * 
@@ -78,12 +84,12 @@ public class LazyTextExtractorField extends AbstractField {
                 highlighting ? Store.YES : Store.NO,
                 withNorms ? Field.Index.ANALYZED : Field.Index.ANALYZED_NO_NORMS,
                 highlighting ? TermVector.WITH_OFFSETS : TermVector.NO);
-        executor.execute(new ParsingTask(parser, value, metadata,
-                maxFieldLength) {
+        task = new ParsingTask(parser, value, metadata, maxFieldLength) {
             public void setExtractedText(String value) {
                 LazyTextExtractorField.this.setExtractedText(value);
             }
-        });
+        };
+        executor.execute(task);
     }
 
     /**
@@ -143,7 +149,7 @@ public class LazyTextExtractorField extends AbstractField {
      * Releases all resources associated with this field.
      */
     public void dispose() {
-        // TODO: Cause the ContentHandler below to throw an exception
+        task.cancel();
     }
 
     /**
@@ -151,30 +157,145 @@ public class LazyTextExtractorField extends AbstractField {
      */
     abstract static class ParsingTask extends BodyContentHandler implements LowPriorityTask {
 
+        /**
+         * Text used for values that could not be extracted.
+         */
+        static final String EXTRACTION_ERROR = "TextExtractionError";
+
         private final Parser parser;
 
         private final InternalValue value;
 
         private final Metadata metadata;
 
+        private final int maxFieldLength;
+
         private final WriteOutContentHandler writeOutContentHandler;
 
+        /**
+         * Time in milliseconds after which the extraction is aborted, or
+         * zero if there is no deadline.
+         */
+        private volatile long deadline = 0;
+
+        /**
+         * Set when the extraction should be aborted as soon as possible.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Set when the text has been extracted completely, or up to the
+         * maximum field length.
+         */
+        private volatile boolean complete = false;
+
         public ParsingTask(Parser parser, InternalValue value,
                 Metadata metadata, int maxFieldLength) {
             this(new WriteOutContentHandler(maxFieldLength), parser, value,
-                    metadata);
+                    metadata, maxFieldLength);
         }
 
         private ParsingTask(WriteOutContentHandler writeOutContentHandler,
-                Parser parser, InternalValue value, Metadata metadata) {
+                Parser parser, InternalValue value, Metadata metadata,
+                int maxFieldLength) {
             super(writeOutContentHandler);
             this.writeOutContentHandler = writeOutContentHandler;
             this.parser = parser;
             this.value = value;
             this.metadata = metadata;
+            this.maxFieldLength = maxFieldLength;
+        }
+
+        /**
+         * @return the binary value to extract text from.
+         */
+        InternalValue getValue() {
+            return value;
+        }
+
+        /**
+         * @return the declared media type of the binary value, or
+         *         <code>null</code> if unknown.
+         */
+        String getMediaType() {
+            return metadata.get(Metadata.CONTENT_TYPE);
+        }
+
+        /**
+         * @return the maximum number of characters to extract.
+         */
+        int getMaxFieldLength() {
+            return maxFieldLength;
+        }
+
+        /**
+         * Sets the time after which the extraction is aborted. The text
+         * extracted up to that point is used as the value of the field.
+         *
+         * @param deadline time in milliseconds, or zero for no deadline.
+         */
+        void setDeadline(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Aborts the extraction as soon as possible.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * @return <code>true</code> if the text has been extracted
+         *         completely or up to the maximum field length, and the
+         *         extraction did neither fail nor time out.
+         */
+        boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Releases the binary value without extracting its text, for
+         * example because the text is already known.
+         */
+        void discard() {
+            value.discard();
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+                throws SAXException {
+            checkAborted();
+            super.characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length)
+                throws SAXException {
+            checkAborted();
+            super.ignorableWhitespace(ch, start, length);
+        }
+
+        private void checkAborted() throws SAXException {
+            if (cancelled) {
+                throw new AbortedException("Text extraction cancelled");
+            }
+            if (deadline > 0 && System.currentTimeMillis() > deadline) {
+                throw new AbortedException(
+                        "Text extraction deadline exceeded");
+            }
         }
 
         public void run() {
+            setExtractedText(extractText());
+        }
+
+        /**
+         * Extracts the text from the binary value and releases the value.
+         *
+         * @return the extracted text
+         */
+        String extractText() {
             try {
                 InputStream stream = value.getStream();
                 try {
@@ -192,10 +313,15 @@ public class LazyTextExtractorField extends AbstractField {
                             + " This is a fairly common case, and nothing to"
                             + " worry about. The stack trace is included to"
                             + " help improve the text extraction feature.", e);
-                    setExtractedText("TextExtractionError");
-                    return;
+                    return EXTRACTION_ERROR;
                 }
             } catch (Throwable t) {
+                if (isAborted(t)) {
+                    // index the text extracted so far
+                    log.info("Text extraction of a {} binary aborted: {}",
+                            getMediaType(), t.getMessage());
+                    return writeOutContentHandler.toString();
+                }
                 // Capture and report any other full text extraction problems.
                 // The special STOP exception is used for normal termination.
                 if (!writeOutContentHandler.isWriteLimitReached(t)) {
@@ -203,15 +329,37 @@ public class LazyTextExtractorField extends AbstractField {
                             + " This is a fairly common case, and nothing to"
                             + " worry about. The stack trace is included to"
                             + " help improve the text extraction feature.", t);
-                    setExtractedText("TextExtractionError");
-                    return;
+                    return EXTRACTION_ERROR;
                 }
             } finally {
                 value.discard();
             }
-            setExtractedText(writeOutContentHandler.toString());
+            complete = true;
+            return writeOutContentHandler.toString();
+        }
+
+        private static boolean isAborted(Throwable t) {
+            while (t != null) {
+                if (t instanceof AbortedException) {
+                    return true;
+                }
+                t = t.getCause();
+            }
+            return false;
         }
 
         protected abstract void setExtractedText(String value);
     }
+
+    /**
+     * Thrown by the content handler of a {@link ParsingTask} to abort the
+     * extraction.
+     */
+    private static class AbortedException extends SAXException {
+
+        public AbortedException(String message) {
+            super(message);
+        }
+
+    }
 }
@@ -104,10 +104,12 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
 
 /**
  * Factory that creates Lucene queries from QOM elements.
@@ -260,6 +262,113 @@ public class LuceneQueryFactory {
         }
     }
 
+    /**
+     * Estimates the number of nodes matched by the given selector and
+     * constraint. The estimate is derived from the document frequencies of
+     * the index terms the selector and the constraint map to and does not
+     * execute a query. Constraints that cannot be mapped to terms are
+     * assumed to match every node, so the result is an upper bound.
+     *
+     * @param selector   the selector.
+     * @param constraint the constraint on the selector or <code>null</code>.
+     * @return the estimated number of matching nodes.
+     * @throws RepositoryException if the query cannot be created.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    public int estimate(Selector selector, Constraint constraint)
+            throws RepositoryException, IOException {
+        final IndexReader reader = index.getIndexReader(true);
+        try {
+            int count = estimate(create(selector), reader);
+            if (constraint != null) {
+                String name = selector.getSelectorName();
+                NodeType type =
+                    ntManager.getNodeType(selector.getNodeTypeName());
+                count = Math.min(count, estimate(constraint,
+                        Collections.singletonMap(name, type), reader));
+            }
+            return count;
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    protected int estimate(
+            Constraint constraint, Map<String, NodeType> selectorMap,
+            IndexReader reader) throws RepositoryException, IOException {
+        if (constraint instanceof And) {
+            And and = (And) constraint;
+            return Math.min(
+                    estimate(and.getConstraint1(), selectorMap, reader),
+                    estimate(and.getConstraint2(), selectorMap, reader));
+        } else if (constraint instanceof Or) {
+            Or or = (Or) constraint;
+            long count =
+                (long) estimate(or.getConstraint1(), selectorMap, reader)
+                + estimate(or.getConstraint2(), selectorMap, reader);
+            return (int) Math.min(count, reader.maxDoc());
+        } else if (constraint instanceof PropertyExistence) {
+            return estimate(getPropertyExistenceQuery(
+                    (PropertyExistence) constraint), reader);
+        } else if (constraint instanceof Comparison) {
+            Comparison c = (Comparison) constraint;
+            Transform left = new Transform(c.getOperand1());
+            if (JCR_OPERATOR_EQUAL_TO.equals(c.getOperator())
+                    && left.transform == TRANSFORM_NONE
+                    && (left.operand instanceof PropertyValue
+                            || left.operand instanceof NodeName
+                            || left.operand instanceof NodeLocalName)) {
+                return estimate(getComparisonQuery(
+                        left.operand, left.transform, c.getOperator(),
+                        c.getOperand2(), selectorMap), reader);
+            }
+        } else if (constraint instanceof SameNode) {
+            SameNode sn = (SameNode) constraint;
+            return estimate(getNodeIdQuery(UUID, sn.getPath()), reader);
+        } else if (constraint instanceof ChildNode) {
+            ChildNode cn = (ChildNode) constraint;
+            return estimate(getNodeIdQuery(PARENT, cn.getParentPath()), reader);
+        }
+        return reader.maxDoc();
+    }
+
+    /**
+     * Estimates the number of documents matched by a lucene query from the
+     * document frequencies of its terms: required clauses of a boolean
+     * query match at most as many documents as the most selective of them,
+     * optional clauses at most as many as all of them together.
+     *
+     * @param query  the lucene query.
+     * @param reader the index reader.
+     * @return the estimated number of matching documents.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    protected int estimate(Query query, IndexReader reader)
+            throws IOException {
+        if (query instanceof TermQuery) {
+            return reader.docFreq(((TermQuery) query).getTerm());
+        } else if (query instanceof BooleanQuery) {
+            int required = Integer.MAX_VALUE;
+            long optional = 0;
+            boolean hasOptional = false;
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (clause.isRequired()) {
+                    required = Math.min(
+                            required, estimate(clause.getQuery(), reader));
+                } else if (!clause.isProhibited()) {
+                    optional += estimate(clause.getQuery(), reader);
+                    hasOptional = true;
+                }
+            }
+            if (required != Integer.MAX_VALUE) {
+                return required;
+            } else if (hasOptional) {
+                return (int) Math.min(optional, reader.maxDoc());
+            }
+        }
+        return reader.maxDoc();
+    }
+
     /**
      * Creates a lucene query for the given QOM selector.
      *
@@ -16,7 +16,11 @@
  */
 package org.apache.jackrabbit.core.query.lucene;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -35,8 +39,10 @@ import java.util.concurrent.TimeUnit;
 
 import javax.jcr.RepositoryException;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.query.lucene.directory.DirectoryManager;
+import org.apache.jackrabbit.core.query.lucene.directory.IndexInputStream;
 import org.apache.jackrabbit.core.state.ChildNodeEntry;
 import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.ItemStateManager;
@@ -49,6 +55,7 @@ import org.apache.jackrabbit.spi.commons.conversion.PathResolver;
 import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
 import org.slf4j.Logger;
@@ -261,10 +268,12 @@ public class MultiIndex {
         this.redoLog = redoLogFactory.createRedoLog(this);
 
         // initialize IndexMerger
-        merger = new IndexMerger(this, handler.getContext().getExecutor());
+        merger = new IndexMerger(this, handler.getContext().getExecutor(),
+                handler.getIndexingStatistics());
         merger.setMaxMergeDocs(handler.getMaxMergeDocs());
         merger.setMergeFactor(handler.getMergeFactor());
         merger.setMinMergeDocs(handler.getMinMergeDocs());
+        merger.setMaxConcurrentMerges(handler.getMaxConcurrentMerges());
 
         // initialize indexing queue
         this.indexingQueue = new IndexingQueue(new IndexingQueueStore(indexDir));
@@ -289,6 +298,7 @@ public class MultiIndex {
                     handler.getMaxHistoryAge());
             index.setUseCompoundFile(handler.getUseCompoundFile());
             index.setTermInfosIndexDivisor(handler.getTermInfosIndexDivisor());
+            index.setSortColumns(handler.getSortColumns());
             indexes.add(index);
             merger.indexAdded(index.getName(), index.getNumDocuments());
         }
@@ -462,6 +472,27 @@ public class MultiIndex {
         }
     }
 
+    /**
+     * Blocks the calling thread while more than
+     * {@link SearchIndex#getMaxPendingMerges()} index merges are pending.
+     * This slows down updates when documents are added faster than the
+     * index merger is able to merge the resulting indexes. Must not be called
+     * while holding the lock of this multi index.
+     */
+    void waitForPendingMerges() {
+        int maxPending = handler.getMaxPendingMerges();
+        if (merger.getPendingMerges() > maxPending) {
+            long time = System.currentTimeMillis();
+            try {
+                merger.waitUntilPending(maxPending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            time = System.currentTimeMillis() - time;
+            log.debug("Waited {}ms for pending index merges", time);
+        }
+    }
+
     /**
      * Adds a document to the index.
      *
@@ -608,6 +639,7 @@ public class MultiIndex {
         }
         index.setUseCompoundFile(handler.getUseCompoundFile());
         index.setTermInfosIndexDivisor(handler.getTermInfosIndexDivisor());
+        index.setSortColumns(handler.getSortColumns());
 
         // add to list of open indexes and return it
         indexes.add(index);
@@ -1177,7 +1209,7 @@ public class MultiIndex {
         int volatileIndexDocuments = volatileIndex.getNumDocuments();
         if (volatileIndexDocuments > 0) {
 
-            long time = System.currentTimeMillis();
+            long time = System.nanoTime();
             // create index
             CreateIndex create = new CreateIndex(getTransactionId(), null);
             executeAndLog(create);
@@ -1192,8 +1224,10 @@ public class MultiIndex {
             // create new volatile index
             resetVolatileIndex();
 
-            time = System.currentTimeMillis() - time;
-            log.debug("Committed in-memory index containing {} documents in {}ms.", volatileIndexDocuments, time);
+            time = System.nanoTime() - time;
+            handler.getIndexingStatistics().getVolatileCommit().record(
+                    volatileIndexDocuments, time);
+            log.debug("Committed in-memory index containing {} documents in {}ms.", volatileIndexDocuments, time / 1000000);
         }
     }
 
@@ -1329,6 +1363,57 @@ public class MultiIndex {
         }
     }
 
+    /**
+     * Flushes this <code>MultiIndex</code> and copies the files of all its
+     * indexes to the given local directory. The index info and the other
+     * files of the index directory are copied to the directory itself, and
+     * each persistent index to a sub directory of the same name. Updates
+     * of this index are blocked while the files are copied.
+     *
+     * @param dir the directory to copy the files to.
+     * @throws IOException if the index can not be flushed or copied.
+     */
+    void snapshot(File dir) throws IOException {
+        synchronized (this) {
+            safeFlush();
+            copy(indexDir, dir);
+            for (PersistentIndex index : indexes) {
+                copy(index.getDirectory(), new File(dir, index.getName()));
+            }
+        }
+    }
+
+    /**
+     * Copies all files except the write lock from a lucene directory to a
+     * local directory.
+     *
+     * @param source the directory to copy from.
+     * @param target the local directory to copy to.
+     * @throws IOException if a file can not be copied.
+     */
+    private static void copy(Directory source, File target)
+            throws IOException {
+        if (!target.isDirectory() && !target.mkdirs()) {
+            throw new IOException("Unable to create directory " + target);
+        }
+        for (String name : source.listAll()) {
+            if (IndexWriter.WRITE_LOCK_NAME.equals(name)) {
+                continue;
+            }
+            InputStream in = new IndexInputStream(source.openInput(name));
+            try {
+                OutputStream out = new FileOutputStream(new File(target, name));
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
     /**
      * Checks the indexing queue for finished text extrator jobs and updates the
      * index accordingly if there are any new ones.
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.jackrabbit.core.query.lucene.directory.FSDirectoryManager;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>ParentArray</code> holds the document number of the parent of each
+ * document in an index, or <code>-1</code> if the parent is unknown or not in
+ * the index. The array is persisted in the index directory together with the
+ * names and sizes of the index segments it was computed for, and is only
+ * loaded again if the index still consists of exactly these segments. On a
+ * file system the persisted array is memory mapped privately: loading it does
+ * not copy it and updates are not written back to the file.
+ */
+final class ParentArray {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ParentArray.class);
+
+    /**
+     * The name of the file with the persisted array.
+     */
+    static final String FILE_NAME = "cache.parents";
+
+    /**
+     * The name of the file written by previous versions, which does not
+     * identify the segments it was computed for.
+     */
+    private static final String LEGACY_FILE_NAME = "cache.inSegmentParents";
+
+    /**
+     * Identifies the file format.
+     */
+    private static final int MAGIC = 0x4A525041;
+
+    /**
+     * The parent document numbers.
+     */
+    private final IntBuffer parents;
+
+    private ParentArray(IntBuffer parents) {
+        this.parents = parents;
+    }
+
+    /**
+     * Creates an array where all parents are unknown.
+     *
+     * @param maxDoc the number of documents.
+     * @return the array.
+     */
+    static ParentArray create(int maxDoc) {
+        IntBuffer parents = IntBuffer.allocate(maxDoc);
+        for (int i = 0; i < maxDoc; i++) {
+            parents.put(i, -1);
+        }
+        return new ParentArray(parents);
+    }
+
+    /**
+     * @param n the document number.
+     * @return the parent of document <code>n</code> or <code>-1</code>.
+     */
+    int get(int n) {
+        return parents.get(n);
+    }
+
+    /**
+     * @param n      the document number.
+     * @param parent the parent of document <code>n</code> or <code>-1</code>.
+     */
+    void set(int n, int parent) {
+        parents.put(n, parent);
+    }
+
+    /**
+     * @return the number of documents.
+     */
+    int size() {
+        return parents.capacity();
+    }
+
+    /**
+     * Loads the persisted array of the index read by <code>reader</code>.
+     *
+     * @param reader the index reader.
+     * @return the array, or <code>null</code> if there is none for the
+     *         current segments of the index.
+     * @throws IOException if an error occurs while deleting a corrupt file.
+     */
+    static ParentArray load(IndexReader reader) throws IOException {
+        String segments = Util.getSegments(reader);
+        if (segments == null) {
+            return null;
+        }
+        Directory directory = reader.directory();
+        try {
+            File dir = FSDirectoryManager.getFile(directory);
+            if (dir != null) {
+                return map(directory, new File(dir, FILE_NAME),
+                        segments, reader.maxDoc());
+            } else {
+                return read(directory, segments, reader.maxDoc());
+            }
+        } catch (FileNotFoundException e) {
+            // not yet persisted
+        } catch (IOException e) {
+            log.warn("Persisted parent cache is corrupt, removing " + FILE_NAME, e);
+            directory.deleteFile(FILE_NAME);
+        }
+        return null;
+    }
+
+    /**
+     * Persists this array for the current segments of the index read by
+     * <code>reader</code>.
+     *
+     * @param reader the index reader.
+     * @throws IOException if an error occurs while writing.
+     */
+    void save(IndexReader reader) throws IOException {
+        String segments = Util.getSegments(reader);
+        if (segments != null) {
+            save(reader.directory(), segments);
+        }
+    }
+
+    /**
+     * Persists this array for the last committed segments in
+     * <code>directory</code>.
+     *
+     * @param directory the index directory.
+     * @throws IOException if an error occurs while writing.
+     */
+    void save(Directory directory) throws IOException {
+        SegmentInfos infos = new SegmentInfos();
+        infos.read(directory);
+        StringBuilder segments = new StringBuilder();
+        for (int i = 0; i < infos.size(); i++) {
+            SegmentInfo info = infos.info(i);
+            segments.append(info.name).append(':').append(info.docCount).append(' ');
+        }
+        save(directory, segments.toString());
+    }
+
+    /**
+     * Creates the array of an index that is merged from <code>readers</code>
+     * in the given order. The parents that are in the same reader as their
+     * child are remapped to the document numbers of the merged index, all
+     * other parents are unknown.
+     *
+     * @param readers the readers of the merged indexes.
+     * @return the array of the merged index, or <code>null</code> if one of
+     *         the readers does not have a parent array.
+     */
+    static ParentArray merge(IndexReader[] readers) {
+        int numDocs = 0;
+        ParentArray[] sources = new ParentArray[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            if (!(readers[i] instanceof ReadOnlyIndexReader)) {
+                return null;
+            }
+            sources[i] = ((ReadOnlyIndexReader) readers[i]).getBase().getBase().getParents();
+            numDocs += readers[i].numDocs();
+        }
+        ParentArray merged = create(numDocs);
+        int base = 0;
+        for (int i = 0; i < readers.length; i++) {
+            IndexReader reader = readers[i];
+            int[] docMap = new int[reader.maxDoc()];
+            for (int doc = 0; doc < docMap.length; doc++) {
+                docMap[doc] = reader.isDeleted(doc) ? -1 : base++;
+            }
+            for (int doc = 0; doc < docMap.length; doc++) {
+                int parent = sources[i].get(doc);
+                if (docMap[doc] != -1 && parent != -1 && docMap[parent] != -1) {
+                    merged.set(docMap[doc], docMap[parent]);
+                }
+            }
+        }
+        return merged;
+    }
+
+    //--------------------------------< internal >------------------------------
+
+    private void save(Directory directory, String segments) throws IOException {
+        byte[] header = segments.getBytes("UTF-8");
+        IndexOutput out = directory.createOutput(FILE_NAME);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(header.length);
+            out.writeBytes(header, header.length);
+            // align parents
+            for (int i = header.length; i % 4 != 0; i++) {
+                out.writeByte((byte) 0);
+            }
+            out.writeInt(size());
+            for (int i = 0; i < size(); i++) {
+                out.writeInt(get(i));
+            }
+        } finally {
+            out.close();
+        }
+        if (directory.fileExists(LEGACY_FILE_NAME)) {
+            directory.deleteFile(LEGACY_FILE_NAME);
+        }
+    }
+
+    /**
+     * Memory maps the persisted array in <code>file</code>, or reads it if the
+     * file cannot be mapped privately because it is not writable.
+     */
+    private static ParentArray map(Directory directory, File file,
+                                   String segments, int maxDoc)
+            throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+        } catch (FileNotFoundException e) {
+            return read(directory, segments, maxDoc);
+        }
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.PRIVATE, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("Invalid header: " + file);
+            }
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Invalid header: " + file);
+            }
+            byte[] header = new byte[length];
+            buffer.get(header);
+            if (!segments.equals(new String(header, "UTF-8"))) {
+                // persisted for other segments
+                return null;
+            }
+            buffer.position(buffer.position() + (4 - length % 4) % 4);
+            if (buffer.remaining() < 4 || buffer.getInt() != maxDoc
+                    || buffer.remaining() != maxDoc * 4L) {
+                throw new IOException("Invalid size: " + file);
+            }
+            return new ParentArray(buffer.slice().asIntBuffer());
+        } finally {
+            // the mapping remains valid
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the persisted array from <code>directory</code>.
+     */
+    private static ParentArray read(Directory directory, String segments, int maxDoc)
+            throws IOException {
+        IndexInput in = directory.openInput(FILE_NAME);
+        try {
+            if (in.length() < 8 || in.readInt() != MAGIC) {
+                throw new IOException("Invalid header: " + FILE_NAME);
+            }
+            int length = in.readInt();
+            if (length < 0 || length > in.length() - in.getFilePointer()) {
+                throw new IOException("Invalid header: " + FILE_NAME);
+            }
+            byte[] header = new byte[length];
+            in.readBytes(header, 0, length);
+            if (!segments.equals(new String(header, "UTF-8"))) {
+                return null;
+            }
+            in.seek(in.getFilePointer() + (4 - length % 4) % 4);
+            if (in.readInt() != maxDoc
+                    || in.length() - in.getFilePointer() != maxDoc * 4L) {
+                throw new IOException("Invalid size: " + FILE_NAME);
+            }
+            ParentArray parents = create(maxDoc);
+            for (int i = 0; i < maxDoc; i++) {
+                parents.set(i, in.readInt());
+            }
+            return parents;
+        } finally {
+            in.close();
+        }
+    }
+}
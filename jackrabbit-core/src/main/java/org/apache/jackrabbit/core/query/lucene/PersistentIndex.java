@@ -17,6 +17,8 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 
 import org.apache.jackrabbit.core.query.lucene.directory.DirectoryManager;
 import org.apache.lucene.analysis.Analyzer;
@@ -27,6 +29,8 @@ import org.apache.lucene.search.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Implements a lucene index which is based on a
@@ -34,6 +38,9 @@ import org.apache.lucene.store.IndexOutput;
  */
 class PersistentIndex extends AbstractIndex {
 
+    /** The logger instance for this class */
+    private static final Logger log = LoggerFactory.getLogger(PersistentIndex.class);
+
     /** The name of this persistent index */
     private final String name;
 
@@ -54,6 +61,11 @@ class PersistentIndex extends AbstractIndex {
      */
     private long generation;
 
+    /**
+     * The index internal names of the properties with a sort column.
+     */
+    private Set<String> sortColumns = Collections.emptySet();
+
     /**
      * Creates a new <code>PersistentIndex</code>.
      *
@@ -101,9 +113,23 @@ class PersistentIndex extends AbstractIndex {
         return indexDelPolicy;
     }
 
+    /**
+     * Sets the properties for which sort columns are written when indexes
+     * are merged into this index.
+     *
+     * @param sortColumns the index internal names of the properties.
+     */
+    void setSortColumns(Set<String> sortColumns) {
+        this.sortColumns = sortColumns;
+    }
+
     /**
      * Merges the provided indexes into this index. After this completes, the
-     * index is optimized.
+     * index is optimized and the parent caches of the provided readers are
+     * remapped and persisted for this index, which saves a scan of the index
+     * when a reader is opened on it. The sort columns of the configured
+     * properties are written as well, so that the first sorted query on the
+     * merged index does not have to create them.
      * <p>
      * The provided IndexReaders are not closed.
      *
@@ -113,6 +139,28 @@ class PersistentIndex extends AbstractIndex {
     void addIndexes(IndexReader[] readers) throws IOException {
         getIndexWriter().addIndexes(readers);
         getIndexWriter().optimize();
+        ParentArray parents = ParentArray.merge(readers);
+        if (parents != null) {
+            commit();
+            try {
+                parents.save(getDirectory());
+            } catch (IOException e) {
+                log.warn("Unable to save parent cache of " + name + ": " + e);
+            }
+        }
+        if (!sortColumns.isEmpty()) {
+            commit();
+            ReadOnlyIndexReader reader = getReadOnlyIndexReader();
+            try {
+                CachingIndexReader base = reader.getBase().getBase();
+                for (String property : sortColumns) {
+                    base.getSortColumn(FieldNames.PROPERTIES,
+                            FieldNames.createNamedValue(property, ""));
+                }
+            } finally {
+                Util.closeOrRelease(reader);
+            }
+        }
     }
 
     /**
@@ -69,6 +69,11 @@ public class QueryImpl extends AbstractQueryImpl {
      */
     protected final QueryRootNode root;
 
+    /**
+     * The language and statement of this query.
+     */
+    private final String statementKey;
+
     /**
      * Creates a new query instance from a query string.
      *
@@ -90,6 +95,7 @@ public class QueryImpl extends AbstractQueryImpl {
         // build query tree using the passed factory
         this.root = QueryParser.parse(
                 statement, language, sessionContext, factory);
+        this.statementKey = language + ":" + statement;
     }
 
     /**
@@ -97,10 +103,13 @@ public class QueryImpl extends AbstractQueryImpl {
      *
      * @param offset the offset in the total result set
      * @param limit the maximum result size
+     * @param continuationToken the continuation token of a previous result
+     *                          or <code>null</code>
      * @return a <code>QueryResult</code>
      * @throws RepositoryException if an error occurs
      */
-    public QueryResult execute(long offset, long limit) throws RepositoryException {
+    public QueryResult execute(long offset, long limit, String continuationToken)
+            throws RepositoryException {
         if (log.isDebugEnabled()) {
             log.debug("Executing query: \n" + root.dump());
         }
@@ -136,7 +145,14 @@ public class QueryImpl extends AbstractQueryImpl {
                 new SpellSuggestion(index.getSpellChecker(), root),
                 getColumns(), orderProperties, ascSpecs, orderFuncs,
                 orderProperties.length == 0 && getRespectDocumentOrder(),
-                offset, limit);
+                offset, limit, continuationToken);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected Object getStatementKey() {
+        return statementKey;
     }
 
     /**
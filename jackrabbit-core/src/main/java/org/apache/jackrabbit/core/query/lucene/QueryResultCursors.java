@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.jackrabbit.core.SessionImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>QueryResultCursors</code> keeps the hits of query results open, so
+ * that further results can be read without executing the query again and
+ * skipping the results read so far. The number of open cursors is limited
+ * and cursors that are not used within a timeout are closed, because each
+ * of them holds on to an index reader.
+ * <p>
+ * A cursor is bound to the session and query statement it was opened with.
+ * While a cursor is in use it is taken out of the registry, hence it is never
+ * read from and closed concurrently.
+ */
+class QueryResultCursors {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCursors.class);
+
+    /**
+     * The open cursors in the order they were registered.
+     */
+    private final Map<String, Cursor> cursors = new LinkedHashMap<String, Cursor>();
+
+    /**
+     * The maximum number of open cursors.
+     */
+    private final int maxCursors;
+
+    /**
+     * The time in milliseconds after which an unused cursor is closed.
+     */
+    private final long timeout;
+
+    /**
+     * Set when the search index is closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates a new cursor registry.
+     *
+     * @param maxCursors the maximum number of open cursors. If
+     *                   <code>0</code> no cursors are kept open.
+     * @param timeout    the time in milliseconds after which an unused
+     *                   cursor is closed.
+     */
+    QueryResultCursors(int maxCursors, long timeout) {
+        this.maxCursors = maxCursors;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Registers an open cursor. The oldest cursor is closed if the maximum
+     * number of cursors is reached.
+     *
+     * @param cursor the cursor.
+     * @return the id of the cursor, or <code>null</code> if it was closed
+     *         right away because cursors are disabled.
+     */
+    synchronized String register(Cursor cursor) {
+        if (closed || maxCursors <= 0) {
+            cursor.close();
+            return null;
+        }
+        purge();
+        Iterator<Cursor> it = cursors.values().iterator();
+        while (cursors.size() >= maxCursors && it.hasNext()) {
+            Cursor oldest = it.next();
+            it.remove();
+            oldest.close();
+        }
+        String id = UUID.randomUUID().toString();
+        cursor.lastAccess = System.currentTimeMillis();
+        cursors.put(id, cursor);
+        return id;
+    }
+
+    /**
+     * Takes the cursor with the given id out of the registry.
+     *
+     * @param id        the id of the cursor.
+     * @param session   the session that continues the cursor.
+     * @param statement the statement of the query that continues the cursor.
+     * @return the cursor, or <code>null</code> if there is no such cursor or
+     *         it belongs to another session or statement.
+     */
+    synchronized Cursor take(String id, SessionImpl session, Object statement) {
+        purge();
+        Cursor cursor = cursors.get(id);
+        if (cursor == null
+                || cursor.session != session
+                || !cursor.statement.equals(statement)) {
+            return null;
+        }
+        cursors.remove(id);
+        if (!session.isLive()) {
+            cursor.close();
+            return null;
+        }
+        return cursor;
+    }
+
+    /**
+     * Closes the cursors that were not used within the timeout.
+     */
+    synchronized void purge() {
+        long expired = System.currentTimeMillis() - timeout;
+        for (Iterator<Cursor> it = cursors.values().iterator(); it.hasNext(); ) {
+            Cursor cursor = it.next();
+            if (cursor.lastAccess < expired || !cursor.session.isLive()) {
+                it.remove();
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Closes all cursors. Cursors registered afterwards are closed right away.
+     */
+    synchronized void close() {
+        closed = true;
+        for (Cursor cursor : cursors.values()) {
+            cursor.close();
+        }
+        cursors.clear();
+    }
+
+    /**
+     * @return the number of open cursors.
+     */
+    synchronized int size() {
+        return cursors.size();
+    }
+
+    /**
+     * The open hits of a query result and the number of hits read from them.
+     */
+    static final class Cursor {
+
+        /**
+         * The open hits.
+         */
+        final MultiColumnQueryHits hits;
+
+        /**
+         * The number of hits read from {@link #hits}.
+         */
+        final long position;
+
+        /**
+         * The session that executed the query.
+         */
+        final SessionImpl session;
+
+        /**
+         * Identifies the statement of the query.
+         */
+        final Object statement;
+
+        /**
+         * Time when the cursor was registered.
+         */
+        long lastAccess;
+
+        Cursor(MultiColumnQueryHits hits, long position,
+               SessionImpl session, Object statement) {
+            this.hits = hits;
+            this.position = position;
+            this.session = session;
+            this.statement = statement;
+        }
+
+        /**
+         * Closes the hits of this cursor.
+         */
+        void close() {
+            try {
+                hits.close();
+            } catch (IOException e) {
+                log.warn("Unable to close query result cursor: " + e);
+            }
+        }
+    }
+}
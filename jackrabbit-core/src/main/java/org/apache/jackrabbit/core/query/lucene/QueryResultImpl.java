@@ -122,6 +122,24 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
     
     private final boolean sizeEstimate;
 
+    /**
+     * The number of hits that precede this result because it continues a
+     * previous result.
+     */
+    private final long base;
+
+    /**
+     * The id of the cursor with the open hits of this result, or
+     * <code>null</code> if the hits are not kept open.
+     */
+    private String cursorId;
+
+    /**
+     * The number of hits read from the query hits so far, including
+     * {@link #base}.
+     */
+    private long position;
+
     /**
      * Creates a new query result. The concrete sub class is responsible for
      * calling {@link #getResults(long)} after this constructor had been called.
@@ -147,6 +165,41 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
             AbstractQueryImpl queryImpl, SpellSuggestion spellSuggestion,
             ColumnImpl[] columns, boolean documentOrder,
             long offset, long limit) throws RepositoryException {
+        this(index, sessionContext, queryImpl, spellSuggestion, columns,
+                documentOrder, offset, limit, null);
+    }
+
+    /**
+     * Creates a new query result that continues a previous result. The
+     * concrete sub class is responsible for calling {@link #getResults(long)}
+     * after this constructor had been called.
+     *
+     * @param index           the search index where the query is executed.
+     * @param sessionContext component context of the current session
+     * @param queryImpl       the query instance which created this query
+     *                        result.
+     * @param spellSuggestion the spell suggestion or <code>null</code> if none
+     *                        is available.
+     * @param columns         the select properties of the query.
+     * @param documentOrder   if <code>true</code> the result is returned in
+     *                        document order.
+     * @param limit           the maximum result size
+     * @param offset          the offset in the total result set, relative to
+     *                        the continuation token
+     * @param continuationToken the continuation token of the previous result
+     *                        or <code>null</code> to start at the first result.
+     * @throws RepositoryException if the continuation token is invalid or an
+     *                             error occurs while reading from the
+     *                             repository.
+     * @throws IllegalArgumentException if any of the columns does not have a
+     *                                  column name.
+     */
+    public QueryResultImpl(
+            SearchIndex index, SessionContext sessionContext,
+            AbstractQueryImpl queryImpl, SpellSuggestion spellSuggestion,
+            ColumnImpl[] columns, boolean documentOrder,
+            long offset, long limit, String continuationToken)
+            throws RepositoryException {
         this.index = index;
         this.sizeEstimate = index.getSizeEstimate();
         this.sessionContext = sessionContext;
@@ -163,6 +216,25 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
             }
             this.columns.put(cn, column);
         }
+        if (continuationToken == null) {
+            this.base = 0;
+        } else {
+            int idx = continuationToken.lastIndexOf('.');
+            try {
+                this.base = Long.parseLong(continuationToken.substring(idx + 1));
+            } catch (NumberFormatException e) {
+                throw new RepositoryException(
+                        "Invalid continuation token: " + continuationToken);
+            }
+            if (base < 0) {
+                throw new RepositoryException(
+                        "Invalid continuation token: " + continuationToken);
+            }
+            if (idx > 0) {
+                this.cursorId = continuationToken.substring(0, idx);
+            }
+        }
+        this.position = base;
     }
 
     /**
@@ -281,33 +353,47 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
             return;
         }
 
-        // execute it
+        // number of hits to skip before collecting
+        long start = base;
+        if (!resultNodes.isEmpty() || offset == 0) {
+            start += resultNodes.size() + invalid + offset;
+        }
+
+        // continue reading from the cursor or execute it
         MultiColumnQueryHits result = null;
         try {
             long time = System.currentTimeMillis();
             long r1 = IOCounters.getReads();
-            result = executeQuery(maxResultSize);
+            QueryResultCursors.Cursor cursor = takeCursor(start);
+            if (cursor != null) {
+                result = cursor.hits;
+                position = cursor.position;
+                log.debug("continuing query at {}", position);
+            } else {
+                result = executeQuery(maxResultSize);
+                position = 0;
+            }
             long r2 = IOCounters.getReads();
             log.debug("query executed in {} ms ({})",
                     System.currentTimeMillis() - time, r2 - r1);
             // set selector names
             selectorNames = result.getSelectorNames();
 
+            result.skip((int) (start - position));
+            position = start;
+
             List<ScoreNode[]> offsetNodes = new ArrayList<ScoreNode[]>();
             if (resultNodes.isEmpty() && offset > 0) {
                 // collect result offset into dummy list
                 if (sizeEstimate) {
-                    collectScoreNodes(result, new ArrayList<ScoreNode[]>(), offset);                    
+                    position += collectScoreNodes(result, new ArrayList<ScoreNode[]>(), offset);
                 } else {
-                    collectScoreNodes(result, offsetNodes, offset);
+                    position += collectScoreNodes(result, offsetNodes, offset);
                 }
-            } else {
-                int start = resultNodes.size() + invalid + (int) offset;
-                result.skip(start);
             }
 
             time = System.currentTimeMillis();
-            collectScoreNodes(result, resultNodes, maxResultSize);
+            position += collectScoreNodes(result, resultNodes, maxResultSize);
             long r3 = IOCounters.getReads();
             log.debug("retrieved ScoreNodes in {} ms ({})",
                     System.currentTimeMillis() - time, r3 - r2);
@@ -335,6 +421,14 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
                     numResults = (int) limit;
                 }
             }
+
+            if (resultNodes.size() >= maxResultSize) {
+                // there may be more results, keep the hits open
+                cursorId = index.getQueryResultCursors().register(
+                        new QueryResultCursors.Cursor(result, position,
+                                sessionContext.getSessionImpl(), getStatementKey()));
+                result = null;
+            }
         } catch (IOException e) {
             throw new RepositoryException(e);
         } finally {
@@ -356,19 +450,22 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
      * @param hits the raw hits.
      * @param collector where the access checked score nodes are collected.
      * @param maxResults the maximum number of results in the collector.
+     * @return the number of hits read.
      * @throws IOException if an error occurs while reading from hits.
      * @throws RepositoryException if an error occurs while checking access rights.
      */
-    private void collectScoreNodes(MultiColumnQueryHits hits,
-                                   List<ScoreNode[]> collector,
-                                   long maxResults)
+    private int collectScoreNodes(MultiColumnQueryHits hits,
+                                  List<ScoreNode[]> collector,
+                                  long maxResults)
             throws IOException, RepositoryException {
+        int read = 0;
         while (collector.size() < maxResults) {
             ScoreNode[] sn = hits.nextScoreNodes();
             if (sn == null) {
                 // no more results
                 break;
             }
+            read++;
             // check access
             if (isAccessGranted(sn)) {
                 collector.add(sn);
@@ -376,6 +473,37 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
                 invalid++;
             }
         }
+        return read;
+    }
+
+    /**
+     * Takes the cursor of this result out of the cursor registry if it can be
+     * continued at <code>start</code>.
+     *
+     * @param start the number of hits to skip before collecting.
+     * @return the cursor or <code>null</code> if the query must be executed.
+     */
+    private QueryResultCursors.Cursor takeCursor(long start) {
+        if (cursorId == null) {
+            return null;
+        }
+        QueryResultCursors.Cursor cursor = index.getQueryResultCursors().take(
+                cursorId, sessionContext.getSessionImpl(), getStatementKey());
+        cursorId = null;
+        if (cursor != null && cursor.position > start) {
+            cursor.close();
+            return null;
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the key that identifies the statement of the query that
+     *         created this result.
+     */
+    private Object getStatementKey() {
+        Object key = queryImpl.getStatementKey();
+        return key != null ? key : queryImpl;
     }
 
     /**
@@ -426,6 +554,19 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The token contains the position after the last result of this query
+     * result and, if the hits are kept open, the id of their cursor.
+     */
+    public String getContinuationToken() {
+        if (limit <= 0 || resultNodes.size() < limit) {
+            return null;
+        }
+        return (cursorId != null ? cursorId : "") + "." + position;
+    }
+
     private final class LazyScoreNodeIteratorImpl implements ScoreNodeIterator {
 
         private int position = -1;
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>ReadPermissionQueryHits</code> leaves out the hits that the session
+ * cannot read, as far as this can be decided without loading the nodes: the
+ * parents of a hit are followed in the index up to the nearest node with the
+ * mixin <code>rep:AccessControllable</code>, and the read permission of the
+ * subtree of that node is evaluated once per query. Hits below access control
+ * content or <code>jcr:system</code>, shared nodes and hits where entries
+ * with restrictions apply are passed on, and their read permission is checked
+ * on its own when the results are collected.
+ */
+class ReadPermissionQueryHits extends FilterMultiColumnQueryHits {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ReadPermissionQueryHits.class);
+
+    private static final Integer GRANTED = 1;
+
+    private static final Integer DENIED = 2;
+
+    private static final Integer UNDECIDED = 3;
+
+    /**
+     * The index reader the hits were created with.
+     */
+    private final IndexReader reader;
+
+    /**
+     * The hierarchy of the documents in the index reader.
+     */
+    private final HierarchyResolver resolver;
+
+    /**
+     * The read permissions of the session that executes the query.
+     */
+    private final SubtreeReadPermissions permissions;
+
+    /**
+     * The namespace mappings of the index.
+     */
+    private final NamespaceMappings nsMappings;
+
+    /**
+     * The read permission of the documents evaluated so far.
+     */
+    private final Map<Integer, Integer> decisions = new HashMap<Integer, Integer>();
+
+    /**
+     * The documents of access controlled nodes, or <code>null</code> if not
+     * yet read.
+     */
+    private BitSet accessControlled;
+
+    /**
+     * The documents of access control lists and of <code>jcr:system</code>,
+     * below which the read permission is not decided.
+     */
+    private BitSet undecided;
+
+    /**
+     * Array for reuse with the parents of a document.
+     */
+    private int[] parents = new int[1];
+
+    /**
+     * The number of hits that were left out.
+     */
+    private int denied;
+
+    /**
+     * Creates new read permission query hits.
+     *
+     * @param hits        the hits to filter.
+     * @param reader      the index reader of the hits, which must implement
+     *                    {@link HierarchyResolver}.
+     * @param permissions the read permissions of the session.
+     * @param nsMappings  the namespace mappings of the index.
+     */
+    ReadPermissionQueryHits(MultiColumnQueryHits hits,
+                            IndexReader reader,
+                            SubtreeReadPermissions permissions,
+                            NamespaceMappings nsMappings) {
+        super(hits);
+        this.reader = reader;
+        this.resolver = (HierarchyResolver) reader;
+        this.permissions = permissions;
+        this.nsMappings = nsMappings;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ScoreNode[] nextScoreNodes() throws IOException {
+        ScoreNode[] nodes = super.nextScoreNodes();
+        while (nodes != null && isDenied(nodes)) {
+            denied++;
+            nodes = super.nextScoreNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * Skips <code>n</code> hits that are not left out.
+     *
+     * @param n the number of hits to skip.
+     * @throws IOException if an error occurs while skipping.
+     */
+    public void skip(int n) throws IOException {
+        for (int i = 0; i < n && nextScoreNodes() != null; i++) {
+            // skip
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        log.debug("left out {} hits", denied);
+        super.close();
+    }
+
+    //--------------------------------< internal >------------------------------
+
+    /**
+     * Returns <code>true</code> if the session cannot read one of the
+     * <code>nodes</code>.
+     */
+    private boolean isDenied(ScoreNode[] nodes) throws IOException {
+        for (ScoreNode node : nodes) {
+            if (node != null) {
+                int doc;
+                try {
+                    doc = node.getDoc(reader);
+                } catch (IOException e) {
+                    // not in the index, leave it to the regular check
+                    continue;
+                }
+                if (getReadPermission(doc) == DENIED) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the read permission of the document <code>doc</code>, which is
+     * the read permission of the subtree of its nearest access controlled
+     * ancestor-or-self.
+     */
+    private Integer getReadPermission(int doc) throws IOException {
+        Integer decision = decisions.get(doc);
+        if (decision != null) {
+            return decision;
+        }
+        if (accessControlled == null) {
+            readAccessControlled();
+        }
+        List<Integer> path = new ArrayList<Integer>();
+        int current = doc;
+        for (;;) {
+            decision = decisions.get(current);
+            if (decision != null) {
+                break;
+            }
+            path.add(current);
+            if (undecided.get(current)) {
+                decision = UNDECIDED;
+                break;
+            } else if (accessControlled.get(current)) {
+                decision = evaluate(current);
+                break;
+            }
+            parents = resolver.getParents(current, parents);
+            if (parents.length != 1) {
+                // root node without access control or shared node
+                decision = UNDECIDED;
+                break;
+            }
+            current = parents[0];
+        }
+        for (Integer n : path) {
+            decisions.put(n, decision);
+        }
+        return decision;
+    }
+
+    /**
+     * Evaluates the read permission of the subtree of the access controlled
+     * node with the document number <code>doc</code>.
+     */
+    private Integer evaluate(int doc) throws IOException {
+        Document d = reader.document(doc, FieldSelectors.UUID);
+        NodeId id = new NodeId(d.get(FieldNames.UUID));
+        try {
+            Boolean canRead = permissions.canReadSubtree(id);
+            if (canRead == null) {
+                return UNDECIDED;
+            }
+            return canRead ? GRANTED : DENIED;
+        } catch (ItemNotFoundException e) {
+            // removed in the meantime
+            return UNDECIDED;
+        } catch (RepositoryException e) {
+            log.warn("Unable to evaluate the read permission of " + id, e);
+            return UNDECIDED;
+        }
+    }
+
+    /**
+     * Reads the documents of the access controlled nodes, access control
+     * lists and <code>jcr:system</code>.
+     */
+    private void readAccessControlled() throws IOException {
+        String mixinTypes;
+        String primaryType;
+        String accessControllable;
+        String acl;
+        try {
+            mixinTypes = nsMappings.translateName(NameConstants.JCR_MIXINTYPES);
+            primaryType = nsMappings.translateName(NameConstants.JCR_PRIMARYTYPE);
+            accessControllable = nsMappings.translateName(NameConstants.REP_ACCESS_CONTROLLABLE);
+            acl = nsMappings.translateName(NameConstants.REP_ACL);
+        } catch (RepositoryException e) {
+            throw Util.createIOException(e);
+        }
+        accessControlled = getDocs(new Term(FieldNames.PROPERTIES,
+                FieldNames.createNamedValue(mixinTypes, accessControllable)));
+        undecided = getDocs(new Term(FieldNames.PROPERTIES,
+                FieldNames.createNamedValue(primaryType, acl)));
+        undecided.or(getDocs(TermFactory.createUUIDTerm(
+                RepositoryImpl.SYSTEM_ROOT_NODE_ID.toString())));
+    }
+
+    private BitSet getDocs(Term term) throws IOException {
+        BitSet docs = new BitSet();
+        TermDocs termDocs = reader.termDocs(term);
+        try {
+            while (termDocs.next()) {
+                docs.set(termDocs.doc());
+            }
+        } finally {
+            termDocs.close();
+        }
+        return docs;
+    }
+
+}
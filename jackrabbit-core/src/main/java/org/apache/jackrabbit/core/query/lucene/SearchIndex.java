@@ -32,6 +32,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -40,9 +45,13 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.core.HierarchyManager;
 import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
 import org.apache.jackrabbit.core.cluster.ChangeLogRecord;
+import org.apache.jackrabbit.core.cluster.Checkpoint;
 import org.apache.jackrabbit.core.cluster.ClusterNode;
 import org.apache.jackrabbit.core.cluster.ClusterRecord;
 import org.apache.jackrabbit.core.cluster.ClusterRecordDeserializer;
@@ -78,6 +87,7 @@ import org.apache.jackrabbit.core.state.PropertyState;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.conversion.IllegalNameException;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
 import org.apache.jackrabbit.spi.commons.query.DefaultQueryNodeFactory;
@@ -196,6 +206,23 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     public static final int DEFAULT_TERM_INFOS_INDEX_DIVISOR = 1;
 
+    /**
+     * The default value for property {@link #indexingConcurrency}.
+     */
+    public static final int DEFAULT_INDEXING_CONCURRENCY = 1;
+
+    /**
+     * The default value for property {@link #maxConcurrentMerges}.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_MERGES =
+        Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default value for property {@link #maxPendingMerges}. Disables
+     * the throttling of updates.
+     */
+    public static final int DEFAULT_MAX_PENDING_MERGES = Integer.MAX_VALUE;
+
     /**
      * The path factory.
      */
@@ -248,6 +275,37 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private Parser parser = null;
 
+    /**
+     * The Tika configuration the parser was created from, or
+     * <code>null</code> if the default configuration is used.
+     */
+    private URL parserConfig = null;
+
+    /**
+     * Concurrency limits of the text extraction per media type, for example
+     * <code>application/pdf=2,*=8</code>, or <code>null</code> (the
+     * default) for no limits.
+     */
+    private String extractorConcurrency = null;
+
+    /**
+     * Maximum durations of the text extraction in milliseconds per media
+     * type, for example <code>application/pdf=60000</code>, or
+     * <code>null</code> (the default) for no limits.
+     */
+    private String extractorDeadlines = null;
+
+    /**
+     * Maximum size of the on-disk cache of extracted text in megabytes.
+     * Zero (the default) disables the cache.
+     */
+    private int extractorCacheSize = 0;
+
+    /**
+     * Schedules the text extraction of binary properties.
+     */
+    private TextExtractionScheduler extractionScheduler;
+
     /**
      * The namespace mappings used internally.
      */
@@ -293,6 +351,27 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private int mergeFactor = DEFAULT_MERGE_FACTOR;
 
+    /**
+     * The maximum number of index merges that run at the same time.
+     */
+    private int maxConcurrentMerges = DEFAULT_MAX_CONCURRENT_MERGES;
+
+    /**
+     * The maximum number of pending index merges until updates are blocked.
+     */
+    private int maxPendingMerges = DEFAULT_MAX_PENDING_MERGES;
+
+    /**
+     * The number of threads that create documents for a single update.
+     */
+    private int indexingConcurrency = DEFAULT_INDEXING_CONCURRENCY;
+
+    /**
+     * The throughput statistics of the indexing stages.
+     */
+    private final IndexingStatistics indexingStatistics =
+        new IndexingStatistics();
+
     /**
      * maxFieldLength config parameter
      */
@@ -395,6 +474,43 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private boolean sizeEstimate = false;
 
+    /**
+     * If set to <code>true</code>, query hits that the session cannot read
+     * are left out based on the read permission of their nearest access
+     * controlled ancestor, before the read permission of each result node is
+     * checked.
+     * <p>
+     * Default value is: <code>true</code>.
+     */
+    private boolean readPermissionFilter = true;
+
+    /**
+     * The maximum number of query result cursors that are kept open to read
+     * further results without executing the query again. A value of
+     * <code>0</code> disables cursors.
+     * <p>
+     * Default value is: <code>64</code>.
+     */
+    private int maxQueryResultCursors = 64;
+
+    /**
+     * The time in milliseconds after which an unused query result cursor is
+     * closed.
+     * <p>
+     * Default value is: <code>30000</code>.
+     */
+    private long queryResultCursorTimeout = 30 * 1000;
+
+    /**
+     * The open query result cursors.
+     */
+    private QueryResultCursors queryResultCursors;
+
+    /**
+     * The background task that closes expired query result cursors.
+     */
+    private ScheduledFuture<?> cursorPurgeTask;
+
     /**
      * The excerpt provider class. Implements {@link ExcerptProvider}.
      */
@@ -417,6 +533,11 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private IndexingConfiguration indexingConfig;
 
+    /**
+     * The index internal names of the properties with a sort column.
+     */
+    private Set<String> sortColumns = Collections.emptySet();
+
     /**
      * The indexing configuration class.
      * Implements {@link IndexingConfiguration}.
@@ -538,6 +659,8 @@ public class SearchIndex extends AbstractQueryHandler {
             excludedIDs.add(context.getExcludedNodeId());
         }
 
+        restoreCheckpoint(context);
+
         synProvider = createSynonymProvider();
         directoryManager = createDirectoryManager();
         redoLogFactory = createRedoLogFactory();
@@ -561,14 +684,25 @@ public class SearchIndex extends AbstractQueryHandler {
             }
         }
 
-        scs = new SharedFieldComparatorSource(
-                FieldNames.PROPERTIES, context.getItemStateManager(),
-                context.getHierarchyManager(), nsMappings);
         indexingConfig = createIndexingConfiguration(nsMappings);
         analyzer.setIndexingConfig(indexingConfig);
+        if (indexingConfig != null) {
+            sortColumns = new HashSet<String>();
+            for (Name name : indexingConfig.getSortColumns()) {
+                try {
+                    sortColumns.add(nsMappings.translateName(name));
+                } catch (IllegalNameException e) {
+                    throw Util.createIOException(e);
+                }
+            }
+        }
+        scs = new SharedFieldComparatorSource(
+                FieldNames.PROPERTIES, context.getItemStateManager(),
+                context.getHierarchyManager(), nsMappings, sortColumns);
 
         // initialize the Tika parser
         parser = createParser();
+        extractionScheduler = createTextExtractionScheduler();
 
         index = new MultiIndex(this, excludedIDs);
         if (index.numDocs() == 0) {
@@ -607,6 +741,18 @@ public class SearchIndex extends AbstractQueryHandler {
         // initialize spell checker
         spellChecker = createSpellChecker();
 
+        queryResultCursors = new QueryResultCursors(
+                maxQueryResultCursors, queryResultCursorTimeout);
+        if (maxQueryResultCursors > 0) {
+            long delay = Math.max(queryResultCursorTimeout / 2, 1000);
+            cursorPurgeTask = context.getExecutor().scheduleWithFixedDelay(
+                    new Runnable() {
+                        public void run() {
+                            queryResultCursors.purge();
+                        }
+                    }, delay, delay, TimeUnit.MILLISECONDS);
+        }
+
         log.info("Index initialized: {} Version: {}",
                 new Object[]{path, index.getIndexFormatVersion()});
         if (!index.getIndexFormatVersion().equals(getIndexFormatVersion())) {
@@ -664,27 +810,21 @@ public class SearchIndex extends AbstractQueryHandler {
             removedIds.add(id);
         }
         
-        Collection<Document> addCollection = new ArrayList<Document>();
+        List<NodeState> addStates = new ArrayList<NodeState>();
         while (add.hasNext()) {
             NodeState state = add.next();
             if (state != null) {
                 NodeId id = state.getNodeId();
                 addedIds.add(id);
                 retrieveAggregateRoot(state, aggregateRoots);
-
-                try {
-                    addCollection.add(createDocument(
-                            state, getNamespaceMappings(),
-                            index.getIndexFormatVersion()));
-                } catch (RepositoryException e) {
-                    log.warn("Exception while creating document for node: "
-                            + state.getNodeId() + ": " + e.toString());
-                }
+                addStates.add(state);
             }
         }
+        Collection<Document> addCollection = createDocuments(addStates);
         time = System.currentTimeMillis() - time;
         log.debug("created the removeCollection {} and addCollection {} in {}ms", new Object[] {removeCollection.size(), addCollection.size(), time});
 
+        index.waitForPendingMerges();
         index.update(removeCollection, addCollection);
 
         // remove any aggregateRoot nodes that are new
@@ -714,6 +854,92 @@ public class SearchIndex extends AbstractQueryHandler {
         }
     }
 
+    /**
+     * Creates the documents for the given node states. If
+     * {@link #getIndexingConcurrency() indexingConcurrency} is greater than
+     * one, the node states are split into that many parts and the documents
+     * of all but the first part are created using the executor of the
+     * repository. The calling thread creates the documents of the first part
+     * and then helps with the parts that have not yet been started, so that
+     * this method never waits for an idle thread in the executor.
+     *
+     * @param states the node states to index.
+     * @return the documents, in the order of the node states. Node states
+     *         that could not be indexed are skipped.
+     * @throws RepositoryException if document creation fails unexpectedly.
+     */
+    private Collection<Document> createDocuments(List<NodeState> states)
+            throws RepositoryException {
+        long time = System.nanoTime();
+        List<Document> documents = new ArrayList<Document>(states.size());
+        int parts = Math.min(indexingConcurrency, states.size());
+        if (parts <= 1) {
+            documents.addAll(createDocumentsSequentially(states));
+        } else {
+            List<FutureTask<List<Document>>> tasks =
+                new ArrayList<FutureTask<List<Document>>>(parts - 1);
+            for (int i = 1; i < parts; i++) {
+                final List<NodeState> part = states.subList(
+                        i * states.size() / parts,
+                        (i + 1) * states.size() / parts);
+                FutureTask<List<Document>> task = new FutureTask<List<Document>>(
+                        new Callable<List<Document>>() {
+                            public List<Document> call() {
+                                return createDocumentsSequentially(part);
+                            }
+                        });
+                tasks.add(task);
+                getContext().getExecutor().execute(task);
+            }
+            documents.addAll(createDocumentsSequentially(
+                    states.subList(0, states.size() / parts)));
+            try {
+                for (FutureTask<List<Document>> task : tasks) {
+                    // runs the task in this thread if not yet started
+                    task.run();
+                    documents.addAll(task.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RepositoryException(
+                        "Interrupted while creating documents", e);
+            } catch (ExecutionException e) {
+                throw new RepositoryException(
+                        "Failed to create documents", e.getCause());
+            } finally {
+                for (FutureTask<List<Document>> task : tasks) {
+                    task.cancel(false);
+                }
+            }
+        }
+        indexingStatistics.getDocumentCreation().record(
+                documents.size(), System.nanoTime() - time);
+        return documents;
+    }
+
+    /**
+     * Creates the documents for the given node states in the calling
+     * thread.
+     *
+     * @param states the node states to index.
+     * @return the documents. Node states that could not be indexed are
+     *         skipped.
+     */
+    private List<Document> createDocumentsSequentially(List<NodeState> states) {
+        List<Document> documents = new ArrayList<Document>(states.size());
+        for (NodeState state : states) {
+            try {
+                documents.add(createDocument(
+                        state, getNamespaceMappings(),
+                        index.getIndexFormatVersion()));
+            } catch (RepositoryException e) {
+                log.warn("Exception while creating document for node: "
+                        + state.getNodeId() + ": " + e.toString());
+            }
+        }
+        return documents;
+    }
+
     /**
      * Creates a new query by specifying the query statement itself and the
      * language in which the query is stated.  If the query statement is
@@ -824,11 +1050,29 @@ public class SearchIndex extends AbstractQueryHandler {
         }
     }
 
+    /**
+     * Flushes the pending changes and copies the files of this index to a
+     * local directory, for a checkpoint of the cluster.
+     *
+     * @param dir the local directory to copy the files to.
+     * @throws IOException if the index can not be copied.
+     */
+    public void snapshot(File dir) throws IOException {
+        checkOpen();
+        index.snapshot(dir);
+    }
+
     /**
      * Closes this <code>QueryHandler</code> and frees resources attached
      * to this handler.
      */
     public void close() throws IOException {
+        if (cursorPurgeTask != null) {
+            cursorPurgeTask.cancel(false);
+        }
+        if (queryResultCursors != null) {
+            queryResultCursors.close();
+        }
         if (synonymProviderConfigFs != null) {
             try {
                 synonymProviderConfigFs.close();
@@ -843,6 +1087,7 @@ public class SearchIndex extends AbstractQueryHandler {
         getContext().destroy();
         super.close();
         closed = true;
+        log.debug("Indexing statistics: {}", indexingStatistics);
         log.info("Index closed: " + path);
     }
 
@@ -875,9 +1120,9 @@ public class SearchIndex extends AbstractQueryHandler {
         JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
                 session, reader, getContext().getItemStateManager());
         searcher.setSimilarity(getSimilarity());
-        return new FilterMultiColumnQueryHits(
+        return new FilterMultiColumnQueryHits(filterReadPermission(session, reader,
                 searcher.execute(query, sort, resultFetchHint,
-                        QueryImpl.DEFAULT_SELECTOR_NAME)) {
+                        QueryImpl.DEFAULT_SELECTOR_NAME))) {
             public void close() throws IOException {
                 try {
                     super.close();
@@ -909,8 +1154,8 @@ public class SearchIndex extends AbstractQueryHandler {
         JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
                 session, reader, getContext().getItemStateManager());
         searcher.setSimilarity(getSimilarity());
-        return new FilterMultiColumnQueryHits(
-                query.execute(searcher, orderings, resultFetchHint)) {
+        return new FilterMultiColumnQueryHits(filterReadPermission(session, reader,
+                query.execute(searcher, orderings, resultFetchHint))) {
             public void close() throws IOException {
                 try {
                     super.close();
@@ -921,6 +1166,30 @@ public class SearchIndex extends AbstractQueryHandler {
         };
     }
 
+    /**
+     * Leaves out the hits that the session cannot read, if enabled and
+     * supported by the access manager of the session.
+     *
+     * @param session the session that executes the query.
+     * @param reader  the index reader of the hits.
+     * @param hits    the query hits.
+     * @return the filtered query hits.
+     */
+    private MultiColumnQueryHits filterReadPermission(SessionImpl session,
+                                                      IndexReader reader,
+                                                      MultiColumnQueryHits hits) {
+        AccessManager accessManager = session.getAccessManager();
+        if (readPermissionFilter
+                && !session.isSystem() && !session.isAdmin()
+                && reader instanceof HierarchyResolver
+                && accessManager instanceof SubtreeReadPermissions) {
+            return new ReadPermissionQueryHits(hits, reader,
+                    (SubtreeReadPermissions) accessManager,
+                    getNamespaceMappings());
+        }
+        return hits;
+    }
+
     /**
      * Creates an excerpt provider for the given <code>query</code>.
      *
@@ -1022,6 +1291,7 @@ public class SearchIndex extends AbstractQueryHandler {
         if (url != null) {
             try {
                 config = new TikaConfig(url);
+                parserConfig = url;
             } catch (Exception e) {
                 log.warn("Tika configuration not available: " + url, e);
             }
@@ -1042,6 +1312,25 @@ public class SearchIndex extends AbstractQueryHandler {
         }
     }
 
+    /**
+     * Creates the scheduler for text extraction tasks, based on the
+     * extractor concurrency, deadline and cache parameters.
+     *
+     * @return the text extraction scheduler.
+     * @throws IOException if the text extraction cache cannot be created.
+     */
+    private TextExtractionScheduler createTextExtractionScheduler()
+            throws IOException {
+        TextExtractionCache cache = null;
+        if (extractorCacheSize > 0) {
+            cache = new TextExtractionCache(new File(path, "textcache"),
+                    extractorCacheSize * 1024L * 1024L,
+                    TextExtractionCache.getFingerprint(parserConfig));
+        }
+        return new TextExtractionScheduler(getContext().getExecutor(),
+                extractorConcurrency, extractorDeadlines, cache);
+    }
+
     /**
      * Returns the namespace mappings for the internal representation.
      * @return the namespace mappings for the internal representation.
@@ -1058,6 +1347,13 @@ public class SearchIndex extends AbstractQueryHandler {
         return indexingConfig;
     }
 
+    /**
+     * @return the index internal names of the properties with a sort column.
+     */
+    public Set<String> getSortColumns() {
+        return sortColumns;
+    }
+
     /**
      * @return the synonym provider of this search index. If none is set for
      *         this search index the synonym provider of the parent handler is
@@ -1249,7 +1545,7 @@ public class SearchIndex extends AbstractQueryHandler {
             throws RepositoryException {
         NodeIndexer indexer = new NodeIndexer(
                 node, getContext().getItemStateManager(), nsMappings,
-                getContext().getExecutor(), parser);
+                extractionScheduler, parser);
         indexer.setSupportHighlighting(supportHighlighting);
         indexer.setIndexingConfiguration(indexingConfig);
         indexer.setIndexFormatVersion(indexFormatVersion);
@@ -2189,6 +2485,66 @@ public class SearchIndex extends AbstractQueryHandler {
     public long getExtractorTimeout() {
         return extractorTimeout;
     }
+
+    /**
+     * Sets the maximum number of concurrent text extractions per media
+     * type, as a comma separated list of <code>mediaType=count</code>
+     * pairs, for example <code>application/pdf=2,image/*=1,*=8</code>.
+     * Binaries of media types without a matching entry are extracted
+     * without limit.
+     *
+     * @param concurrency the concurrency limits.
+     */
+    public void setExtractorConcurrency(String concurrency) {
+        TextExtractionScheduler.parseLimits(concurrency);
+        this.extractorConcurrency = concurrency;
+    }
+
+    /**
+     * @return the concurrency limits of the text extraction.
+     */
+    public String getExtractorConcurrency() {
+        return extractorConcurrency;
+    }
+
+    /**
+     * Sets the maximum time the text extraction of a binary may take per
+     * media type, as a comma separated list of
+     * <code>mediaType=milliseconds</code> pairs. When the time is
+     * exceeded, the text extracted so far is indexed.
+     *
+     * @param deadlines the extraction deadlines.
+     */
+    public void setExtractorDeadlines(String deadlines) {
+        TextExtractionScheduler.parseLimits(deadlines);
+        this.extractorDeadlines = deadlines;
+    }
+
+    /**
+     * @return the text extraction deadlines.
+     */
+    public String getExtractorDeadlines() {
+        return extractorDeadlines;
+    }
+
+    /**
+     * Sets the maximum size of the on-disk cache of extracted text in
+     * megabytes. The cache is located in the <code>textcache</code>
+     * directory of the index. Only binaries stored in a data store are
+     * cached. Zero disables the cache.
+     *
+     * @param size the cache size in megabytes.
+     */
+    public void setExtractorCacheSize(int size) {
+        this.extractorCacheSize = Math.max(0, size);
+    }
+
+    /**
+     * @return the maximum size of the text extraction cache in megabytes.
+     */
+    public int getExtractorCacheSize() {
+        return extractorCacheSize;
+    }
     
     /**
      * If enabled, NodeIterator.getSize() may report a larger value than the
@@ -2214,6 +2570,69 @@ public class SearchIndex extends AbstractQueryHandler {
         return sizeEstimate;
     }
 
+    /**
+     * If enabled, query hits that the session cannot read are left out
+     * based on the read permission of their nearest access controlled
+     * ancestor, which is evaluated once per query, instead of loading and
+     * checking each of them.
+     *
+     * @param b <code>true</code> to enable
+     */
+    public void setReadPermissionFilter(boolean b) {
+        this.readPermissionFilter = b;
+    }
+
+    /**
+     * @return <code>true</code> if query hits are filtered by the read
+     *         permission of their nearest access controlled ancestor.
+     */
+    public boolean getReadPermissionFilter() {
+        return readPermissionFilter;
+    }
+
+    /**
+     * Sets the maximum number of query result cursors that are kept open to
+     * read further results of a query without executing it again.
+     *
+     * @param max the maximum number of cursors, <code>0</code> to disable
+     *            cursors.
+     */
+    public void setMaxQueryResultCursors(int max) {
+        this.maxQueryResultCursors = max;
+    }
+
+    /**
+     * @return the maximum number of open query result cursors.
+     */
+    public int getMaxQueryResultCursors() {
+        return maxQueryResultCursors;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an unused query result cursor
+     * is closed.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setQueryResultCursorTimeout(long timeout) {
+        this.queryResultCursorTimeout = timeout;
+    }
+
+    /**
+     * @return the time in milliseconds after which an unused query result
+     *         cursor is closed.
+     */
+    public long getQueryResultCursorTimeout() {
+        return queryResultCursorTimeout;
+    }
+
+    /**
+     * @return the open query result cursors of this search index.
+     */
+    QueryResultCursors getQueryResultCursors() {
+        return queryResultCursors;
+    }
+
     /**
      * If set to <code>true</code> additional information is stored in the index
      * to support highlighting using the rep:excerpt pseudo property.
@@ -2448,6 +2867,72 @@ public class SearchIndex extends AbstractQueryHandler {
         return maxVolatileIndexSize;
     }
 
+    /**
+     * Sets the number of threads that create the documents of a single
+     * update. The default value is 1, which creates all documents in the
+     * thread that performs the update. Larger values use the executor of
+     * the repository, and should only be used if
+     * {@link #createDocument(NodeState, NamespaceMappings, IndexFormatVersion)}
+     * is thread-safe, which is the case unless it is overridden.
+     *
+     * @param indexingConcurrency the number of threads.
+     */
+    public void setIndexingConcurrency(int indexingConcurrency) {
+        this.indexingConcurrency = Math.max(1, indexingConcurrency);
+    }
+
+    /**
+     * @return the number of threads that create the documents of a single
+     *         update.
+     */
+    public int getIndexingConcurrency() {
+        return indexingConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of index merges that run at the same time.
+     * Further merges are queued until a running merge finishes. The default
+     * value is the number of available processors.
+     *
+     * @param maxConcurrentMerges the maximum number of concurrent merges.
+     */
+    public void setMaxConcurrentMerges(int maxConcurrentMerges) {
+        this.maxConcurrentMerges = Math.max(1, maxConcurrentMerges);
+    }
+
+    /**
+     * @return the maximum number of index merges that run at the same time.
+     */
+    public int getMaxConcurrentMerges() {
+        return maxConcurrentMerges;
+    }
+
+    /**
+     * Sets the maximum number of pending index merges, either running or
+     * queued. Updates of the index wait while more merges are pending, which
+     * keeps the number of index segments bounded during bulk updates. By
+     * default updates never wait.
+     *
+     * @param maxPendingMerges the maximum number of pending merges.
+     */
+    public void setMaxPendingMerges(int maxPendingMerges) {
+        this.maxPendingMerges = Math.max(0, maxPendingMerges);
+    }
+
+    /**
+     * @return the maximum number of pending index merges.
+     */
+    public int getMaxPendingMerges() {
+        return maxPendingMerges;
+    }
+
+    /**
+     * @return the throughput statistics of the indexing stages.
+     */
+    public IndexingStatistics getIndexingStatistics() {
+        return indexingStatistics;
+    }
+
     /**
      * @return the name of the directory manager class.
      */
@@ -2595,6 +3080,38 @@ public class SearchIndex extends AbstractQueryHandler {
         }
     }
 
+    /**
+     * Replaces the index directory with the snapshot of the checkpoint that
+     * the cluster node restored when joining the cluster. If the checkpoint
+     * has no usable snapshot of this index, the index directory is cleared,
+     * so that the index is created from the current workspace content.
+     *
+     * @param context the query handler context.
+     * @throws IOException if the index directory can not be cleared.
+     */
+    private void restoreCheckpoint(QueryHandlerContext context)
+            throws IOException {
+        ClusterNode cn = context.getClusterNode();
+        Checkpoint checkpoint = cn != null ? cn.getRestoredCheckpoint() : null;
+        if (checkpoint == null) {
+            return;
+        }
+        File dir = new File(path);
+        try {
+            if (checkpoint.restoreIndex(context.getWorkspace(), dir)) {
+                log.info("Restored index of checkpoint at revision {}",
+                        checkpoint.getRevision());
+                return;
+            }
+        } catch (IOException e) {
+            log.warn("Unable to restore index of checkpoint, "
+                    + "index will be re-created", e);
+        }
+        if (dir.exists()) {
+            FileUtils.cleanDirectory(dir);
+        }
+    }
+
     //----------------------------< internal >----------------------------------
 
     /**
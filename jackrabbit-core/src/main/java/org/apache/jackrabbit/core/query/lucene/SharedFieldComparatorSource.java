@@ -18,6 +18,8 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 
 import org.apache.jackrabbit.core.HierarchyManager;
 import org.apache.jackrabbit.core.id.NodeId;
@@ -63,6 +65,11 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
      */
     private final NamespaceMappings nsMappings;
 
+    /**
+     * The index internal names of the properties with a sort column.
+     */
+    private final Set<String> sortColumns;
+
     /**
      * Create a new <code>SharedFieldComparatorSource</code> for a given shared field.
      *
@@ -73,10 +80,29 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
      */
     public SharedFieldComparatorSource(String fieldname, ItemStateManager ism,
                                        HierarchyManager hmgr, NamespaceMappings nsMappings) {
+        this(fieldname, ism, hmgr, nsMappings, Collections.<String>emptySet());
+    }
+
+    /**
+     * Create a new <code>SharedFieldComparatorSource</code> for a given shared
+     * field, which sorts on the given properties using their
+     * {@link SortColumn}s.
+     *
+     * @param fieldname the shared field.
+     * @param ism       the item state manager of this workspace.
+     * @param hmgr      the hierarchy manager of this workspace.
+     * @param nsMappings the index internal namespace mappings.
+     * @param sortColumns the index internal names of the properties with a
+     *          sort column.
+     */
+    public SharedFieldComparatorSource(String fieldname, ItemStateManager ism,
+                                       HierarchyManager hmgr, NamespaceMappings nsMappings,
+                                       Set<String> sortColumns) {
         this.field = fieldname;
         this.ism = ism;
         this.hmgr = hmgr;
         this.nsMappings = nsMappings;
+        this.sortColumns = sortColumns;
     }
 
     /**
@@ -96,7 +122,9 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
         Path path = factory.create(propertyName);
 
         try {
-            SimpleFieldComparator simple = new SimpleFieldComparator(nsMappings.translatePath(path), field, numHits);
+            String name = nsMappings.translatePath(path);
+            SimpleFieldComparator simple = new SimpleFieldComparator(
+                    name, field, numHits, sortColumns.contains(name));
 
             return path.getLength() == 1
                 ? simple
@@ -120,6 +148,11 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
          */
         protected SharedFieldCache.ValueIndex[] indexes;
 
+        /**
+         * The sort columns of the index segments, if available.
+         */
+        protected SortColumn[] columns;
+
         /**
          * The name of the property
          */
@@ -130,6 +163,11 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
          */
         private final String fieldName;
 
+        /**
+         * Whether the property has a sort column
+         */
+        private final boolean useSortColumn;
+
         /**
          * Create a new instance of the <code>FieldComparator</code>.
          *
@@ -138,9 +176,23 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
          * @param numHits       the number of values 
          */
         public SimpleFieldComparator(String propertyName, String fieldName, int numHits) {
+            this(propertyName, fieldName, numHits, false);
+        }
+
+        /**
+         * Create a new instance of the <code>FieldComparator</code>.
+         *
+         * @param propertyName  the name of the property
+         * @param fieldName     the name of the field in the index
+         * @param numHits       the number of values
+         * @param useSortColumn whether the property has a sort column
+         */
+        public SimpleFieldComparator(String propertyName, String fieldName,
+                                     int numHits, boolean useSortColumn) {
             super(numHits);
             this.propertyName = propertyName;
             this.fieldName = fieldName;
+            this.useSortColumn = useSortColumn;
         }
 
         @Override
@@ -148,18 +200,29 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
             super.setNextReader(reader, docBase);
 
             indexes = new SharedFieldCache.ValueIndex[readers.size()];
+            columns = new SortColumn[readers.size()];
 
             String namedValue = FieldNames.createNamedValue(propertyName, "");
             for (int i = 0; i < readers.size(); i++) {
                 IndexReader r = readers.get(i);
-                indexes[i] = SharedFieldCache.INSTANCE.getValueIndex(r,
-                        fieldName, namedValue);
+                if (useSortColumn && r instanceof ReadOnlyIndexReader) {
+                    CachingIndexReader base =
+                        ((ReadOnlyIndexReader) r).getBase().getBase();
+                    columns[i] = base.getSortColumn(fieldName, namedValue);
+                }
+                if (columns[i] == null) {
+                    indexes[i] = SharedFieldCache.INSTANCE.getValueIndex(r,
+                            fieldName, namedValue);
+                }
             }
         }
 
         @Override
         protected Comparable<?> sortValue(int doc) {
             int idx = readerIndex(doc);
+            if (columns[idx] != null) {
+                return columns[idx].getValue(doc - starts[idx]);
+            }
             return indexes[idx].getValue(doc - starts[idx]);
         }
 
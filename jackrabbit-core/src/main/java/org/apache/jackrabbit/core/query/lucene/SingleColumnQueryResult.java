@@ -56,8 +56,20 @@ public class SingleColumnQueryResult extends QueryResultImpl {
             SpellSuggestion spellSuggestion, ColumnImpl[] columns,
             Path[] orderProps, boolean[] orderSpecs, String[] orderFuncs, boolean documentOrder,
             long offset, long limit) throws RepositoryException {
+        this(index, sessionContext, queryImpl, query, spellSuggestion,
+                columns, orderProps, orderSpecs, orderFuncs, documentOrder,
+                offset, limit, null);
+    }
+
+    public SingleColumnQueryResult(
+            SearchIndex index, SessionContext sessionContext,
+            AbstractQueryImpl queryImpl, Query query,
+            SpellSuggestion spellSuggestion, ColumnImpl[] columns,
+            Path[] orderProps, boolean[] orderSpecs, String[] orderFuncs, boolean documentOrder,
+            long offset, long limit, String continuationToken)
+            throws RepositoryException {
         super(index, sessionContext, queryImpl, spellSuggestion,
-                columns, documentOrder, offset, limit);
+                columns, documentOrder, offset, limit, continuationToken);
         this.query = query;
         this.orderProps = orderProps;
         this.orderSpecs = orderSpecs;
@@ -0,0 +1,503 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.core.query.lucene.directory.FSDirectoryManager;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>SortColumn</code> holds the values of a single valued property for
+ * all documents of an index in a compact form, which allows to sort on the
+ * property without creating a {@link Comparable} for each document. The
+ * distinct values are kept in a typed dictionary of longs, doubles or
+ * strings, and each document refers to its value by the ordinal of the value
+ * in the dictionary, or <code>-1</code> if it does not have the property.
+ * <p>
+ * A column is persisted in the index directory together with the names and
+ * sizes of the index segments it was computed for, like the
+ * {@link ParentArray}, and is memory mapped when it is loaded from a file
+ * system.
+ */
+final class SortColumn {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(SortColumn.class);
+
+    /**
+     * The prefix of the names of the files with persisted columns.
+     */
+    static final String FILE_PREFIX = "cache.sort-";
+
+    /**
+     * Identifies the file format.
+     */
+    private static final int MAGIC = 0x4A52534F;
+
+    /**
+     * The ordinals of the values of the documents.
+     */
+    private final IntBuffer ordinals;
+
+    /**
+     * The property type of the values, either {@link PropertyType#LONG},
+     * {@link PropertyType#DATE}, {@link PropertyType#DOUBLE} or
+     * {@link PropertyType#STRING}.
+     */
+    private final int type;
+
+    /**
+     * The dictionary of long and date values.
+     */
+    private final LongBuffer longs;
+
+    /**
+     * The dictionary of double values.
+     */
+    private final DoubleBuffer doubles;
+
+    /**
+     * The start offsets of the string values in {@link #chars}, followed by
+     * the end offset of the last value.
+     */
+    private final IntBuffer offsets;
+
+    /**
+     * The characters of the string values.
+     */
+    private final CharBuffer chars;
+
+    private SortColumn(IntBuffer ordinals, int type, ByteBuffer dictionary,
+                       int numValues) {
+        this.ordinals = ordinals;
+        this.type = type;
+        if (type == PropertyType.STRING) {
+            this.longs = null;
+            this.doubles = null;
+            this.offsets = dictionary.asIntBuffer();
+            this.offsets.limit(numValues + 1);
+            dictionary.position(dictionary.position() + (numValues + 1) * 4);
+            this.chars = dictionary.slice().asCharBuffer();
+        } else if (type == PropertyType.DOUBLE) {
+            this.longs = null;
+            this.doubles = dictionary.asDoubleBuffer();
+            this.offsets = null;
+            this.chars = null;
+        } else {
+            this.longs = dictionary.asLongBuffer();
+            this.doubles = null;
+            this.offsets = null;
+            this.chars = null;
+        }
+    }
+
+    /**
+     * Returns the sort value of a document. The returned value is equal to
+     * the one in the {@link SharedFieldCache.ValueIndex} of the property.
+     *
+     * @param n the document number.
+     * @return the value of the property, or <code>null</code> if document
+     *         <code>n</code> does not have the property.
+     */
+    Comparable<?> getValue(int n) {
+        int ordinal = ordinals.get(n);
+        if (ordinal == -1) {
+            return null;
+        } else if (longs != null) {
+            return longs.get(ordinal);
+        } else if (doubles != null) {
+            return doubles.get(ordinal);
+        } else {
+            int start = offsets.get(ordinal);
+            int end = offsets.get(ordinal + 1);
+            char[] value = new char[end - start];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = chars.get(start + i);
+            }
+            return new String(value);
+        }
+    }
+
+    /**
+     * @return the number of documents.
+     */
+    int size() {
+        return ordinals.capacity();
+    }
+
+    /**
+     * Returns the name of the file with the column of a property.
+     *
+     * @param prefix the term prefix of the property.
+     * @return the file name.
+     */
+    static String getFileName(String prefix) {
+        return FILE_PREFIX + Integer.toHexString(prefix.hashCode());
+    }
+
+    /**
+     * Returns the column of a property for the index read by
+     * <code>reader</code>. The column is loaded from the index directory if
+     * it was persisted for the current segments of the index, and otherwise
+     * created from the terms of the property and persisted.
+     *
+     * @param reader the index reader.
+     * @param field  the name of the shared field.
+     * @param prefix the term prefix of the property.
+     * @return the column, or <code>null</code> if the property has multiple
+     *         values or values of different or unsupported types in the
+     *         index.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    static SortColumn get(IndexReader reader, String field, String prefix)
+            throws IOException {
+        String segments = Util.getSegments(reader);
+        SortColumn column = null;
+        if (segments != null) {
+            column = load(reader, segments, prefix);
+        }
+        if (column == null) {
+            column = create(reader, field, prefix);
+            if (column != null && segments != null) {
+                try {
+                    column.save(reader.directory(), segments, prefix);
+                } catch (IOException e) {
+                    log.warn("Unable to save sort column of " + prefix
+                            + ": " + e);
+                }
+            }
+        }
+        return column;
+    }
+
+    //--------------------------------< internal >------------------------------
+
+    /**
+     * Creates the column of a property from its terms, or returns
+     * <code>null</code> if the property cannot be represented by a column.
+     */
+    private static SortColumn create(IndexReader reader, String field,
+                                     String prefix) throws IOException {
+        int maxDoc = reader.maxDoc();
+        IntBuffer ordinals = IntBuffer.allocate(maxDoc);
+        for (int i = 0; i < maxDoc; i++) {
+            ordinals.put(i, -1);
+        }
+        int type = PropertyType.UNDEFINED;
+        List<String> values = new ArrayList<String>();
+
+        field = field.intern();
+        boolean hasPayloads = IndexFormatVersion.getVersion(reader).isAtLeast(
+                IndexFormatVersion.V3);
+        byte[] payload = new byte[1];
+        TermDocs termDocs;
+        if (hasPayloads) {
+            termDocs = reader.termPositions();
+        } else {
+            termDocs = reader.termDocs();
+        }
+        TermEnum terms = reader.terms(new Term(field, prefix));
+        try {
+            do {
+                Term term = terms.term();
+                if (term == null || term.field() != field
+                        || !term.text().startsWith(prefix)) {
+                    break;
+                }
+                int ordinal = values.size();
+                boolean used = false;
+                termDocs.seek(term);
+                while (termDocs.next()) {
+                    int valueType = PropertyType.UNDEFINED;
+                    if (hasPayloads) {
+                        TermPositions termPos = (TermPositions) termDocs;
+                        termPos.nextPosition();
+                        if (termPos.isPayloadAvailable()) {
+                            payload = termPos.getPayload(payload, 0);
+                            valueType = PropertyMetaData.fromByteArray(
+                                    payload).getPropertyType();
+                        }
+                    }
+                    valueType = getColumnType(valueType);
+                    if (valueType == PropertyType.UNDEFINED
+                            || (type != PropertyType.UNDEFINED
+                                    && type != valueType)) {
+                        return null;
+                    }
+                    type = valueType;
+                    int doc = termDocs.doc();
+                    if (ordinals.get(doc) != -1) {
+                        // multiple values
+                        return null;
+                    }
+                    ordinals.put(doc, ordinal);
+                    used = true;
+                }
+                if (used) {
+                    values.add(term.text().substring(prefix.length()));
+                }
+            } while (terms.next());
+        } finally {
+            termDocs.close();
+            terms.close();
+        }
+        if (type == PropertyType.UNDEFINED) {
+            type = PropertyType.STRING;
+        }
+        return new SortColumn(ordinals, type,
+                createDictionary(type, values), values.size());
+    }
+
+    /**
+     * Returns the type of the column for values of the given property type,
+     * or {@link PropertyType#UNDEFINED} if the values are not supported.
+     */
+    private static int getColumnType(int type) {
+        switch (type) {
+            case PropertyType.LONG:
+            case PropertyType.DATE:
+            case PropertyType.DOUBLE:
+                return type;
+            case PropertyType.BOOLEAN:
+            case PropertyType.DECIMAL:
+                return PropertyType.UNDEFINED;
+            default:
+                return PropertyType.STRING;
+        }
+    }
+
+    private static ByteBuffer createDictionary(int type, List<String> values) {
+        ByteBuffer dictionary;
+        if (type == PropertyType.STRING) {
+            int length = 0;
+            for (String value : values) {
+                length += value.length();
+            }
+            dictionary = ByteBuffer.allocate(
+                    (values.size() + 1) * 4 + length * 2);
+            int offset = 0;
+            for (String value : values) {
+                dictionary.putInt(offset);
+                offset += value.length();
+            }
+            dictionary.putInt(offset);
+            for (String value : values) {
+                for (int i = 0; i < value.length(); i++) {
+                    dictionary.putChar(value.charAt(i));
+                }
+            }
+        } else {
+            dictionary = ByteBuffer.allocate(values.size() * 8);
+            for (String value : values) {
+                if (type == PropertyType.LONG) {
+                    dictionary.putLong(LongField.stringToLong(value));
+                } else if (type == PropertyType.DATE) {
+                    dictionary.putLong(DateField.stringToTime(value));
+                } else {
+                    dictionary.putDouble(DoubleField.stringToDouble(value));
+                }
+            }
+        }
+        dictionary.flip();
+        return dictionary;
+    }
+
+    private void save(Directory directory, String segments, String prefix)
+            throws IOException {
+        IndexOutput out = directory.createOutput(getFileName(prefix));
+        try {
+            out.writeInt(MAGIC);
+            writeString(out, segments);
+            writeString(out, prefix);
+            out.writeInt(type);
+            out.writeInt(size());
+            for (int i = 0; i < size(); i++) {
+                out.writeInt(ordinals.get(i));
+            }
+            if (longs != null) {
+                out.writeInt(longs.capacity());
+                for (int i = 0; i < longs.capacity(); i++) {
+                    out.writeLong(longs.get(i));
+                }
+            } else if (doubles != null) {
+                out.writeInt(doubles.capacity());
+                for (int i = 0; i < doubles.capacity(); i++) {
+                    out.writeLong(Double.doubleToLongBits(doubles.get(i)));
+                }
+            } else {
+                out.writeInt(offsets.limit() - 1);
+                for (int i = 0; i < offsets.limit(); i++) {
+                    out.writeInt(offsets.get(i));
+                }
+                for (int i = 0; i < chars.capacity(); i++) {
+                    char c = chars.get(i);
+                    out.writeByte((byte) (c >> 8));
+                    out.writeByte((byte) c);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a string as UTF-8 bytes padded to a multiple of four bytes, so
+     * that the ordinals that follow the header are aligned.
+     */
+    private static void writeString(IndexOutput out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.writeBytes(bytes, bytes.length);
+        for (int i = bytes.length; i % 4 != 0; i++) {
+            out.writeByte((byte) 0);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid header");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        buffer.position(buffer.position() + (4 - length % 4) % 4);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Loads the persisted column of a property, or returns <code>null</code>
+     * if there is none for the given segments.
+     */
+    private static SortColumn load(IndexReader reader, String segments,
+                                   String prefix) throws IOException {
+        Directory directory = reader.directory();
+        String name = getFileName(prefix);
+        try {
+            ByteBuffer buffer;
+            File dir = FSDirectoryManager.getFile(directory);
+            if (dir != null) {
+                buffer = map(new File(dir, name));
+            } else {
+                buffer = read(directory, name);
+            }
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("Invalid header: " + name);
+            }
+            if (!segments.equals(readString(buffer))
+                    || !prefix.equals(readString(buffer))) {
+                // persisted for other segments or another property
+                return null;
+            }
+            int type = buffer.getInt();
+            int maxDoc = buffer.getInt();
+            if (maxDoc != reader.maxDoc()
+                    || buffer.remaining() < maxDoc * 4L + 4) {
+                throw new IOException("Invalid size: " + name);
+            }
+            ByteBuffer ordinals = buffer.slice();
+            ordinals.limit(maxDoc * 4);
+            buffer.position(buffer.position() + maxDoc * 4);
+            int numValues = buffer.getInt();
+            if (numValues < 0 || numValues > maxDoc) {
+                throw new IOException("Invalid size: " + name);
+            }
+            long length;
+            if (type == PropertyType.STRING) {
+                length = (numValues + 1) * 4L + 2L * buffer.getInt(
+                        buffer.position() + numValues * 4);
+            } else if (type == PropertyType.LONG
+                    || type == PropertyType.DATE
+                    || type == PropertyType.DOUBLE) {
+                length = numValues * 8L;
+            } else {
+                throw new IOException("Invalid type: " + name);
+            }
+            if (buffer.remaining() != length) {
+                throw new IOException("Invalid size: " + name);
+            }
+            return new SortColumn(ordinals.asIntBuffer(), type,
+                    buffer.slice(), numValues);
+        } catch (FileNotFoundException e) {
+            // not yet persisted
+        } catch (IOException e) {
+            log.warn("Persisted sort column is corrupt, removing " + name, e);
+            directory.deleteFile(name);
+        } catch (RuntimeException e) {
+            log.warn("Persisted sort column is corrupt, removing " + name, e);
+            directory.deleteFile(name);
+        }
+        return null;
+    }
+
+    /**
+     * Memory maps <code>file</code> read-only.
+     */
+    private static ByteBuffer map(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // the mapping remains valid
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the file <code>name</code> from <code>directory</code>.
+     */
+    private static ByteBuffer read(Directory directory, String name)
+            throws IOException {
+        IndexInput in = directory.openInput(name);
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readBytes(bytes, 0, bytes.length);
+            return ByteBuffer.wrap(bytes);
+        } finally {
+            in.close();
+        }
+    }
+}
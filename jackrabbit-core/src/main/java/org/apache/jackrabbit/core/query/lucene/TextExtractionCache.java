@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.Tika;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>TextExtractionCache</code> keeps the text extracted from binary
+ * values in files on disk, so that re-indexing a binary, or indexing a copy
+ * of a binary, does not run the text extractor again.
+ * <p>
+ * Entries are keyed by the data store identifier of the binary, the media
+ * type used for the extraction, the maximum extracted length and a
+ * fingerprint of the parser configuration (see {@link #getFingerprint(URL)}),
+ * so that entries extracted with a different configuration are not used.
+ * Binaries that are not stored in a data store are not cached, as their
+ * content would have to be read to identify them. When the cache grows
+ * beyond its maximum size, the least recently used files are deleted.
+ */
+class TextExtractionCache {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log =
+        LoggerFactory.getLogger(TextExtractionCache.class);
+
+    /**
+     * Suffix of the temporary files an entry is written to before it is
+     * renamed to its final name.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The cache directory.
+     */
+    private final File directory;
+
+    /**
+     * The maximum size of the cache in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * The fingerprint of the parser configuration.
+     */
+    private final String fingerprint;
+
+    /**
+     * The approximate current size of the cache in bytes.
+     */
+    private long size;
+
+    /**
+     * Creates a new cache in the given directory. Existing entries are
+     * kept.
+     *
+     * @param directory   the cache directory.
+     * @param maxSize     the maximum size of the cache in bytes.
+     * @param fingerprint the fingerprint of the parser configuration.
+     * @throws IOException if the directory cannot be created.
+     */
+    TextExtractionCache(File directory, long maxSize, String fingerprint)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create text extraction cache: "
+                    + directory.getAbsolutePath());
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.fingerprint = fingerprint;
+        for (File file : listFiles()) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // left over from a crash
+                file.delete();
+            } else {
+                size += file.length();
+            }
+        }
+    }
+
+    /**
+     * Calculates the fingerprint of a parser configuration from the Tika
+     * version and the content of the Tika configuration file.
+     *
+     * @param config the Tika configuration file, or <code>null</code> if
+     *               the default configuration is used.
+     * @return the hex encoded SHA-1 hash of the configuration.
+     * @throws IOException if the configuration file cannot be read.
+     */
+    static String getFingerprint(URL config) throws IOException {
+        MessageDigest digest = createDigest();
+        String version = Tika.class.getPackage().getImplementationVersion();
+        digest.update(String.valueOf(version).getBytes("UTF-8"));
+        if (config != null) {
+            InputStream stream = config.openStream();
+            try {
+                digest.update(IOUtils.toByteArray(stream));
+            } finally {
+                stream.close();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the cache key for the given binary.
+     *
+     * @param contentId      the data store identifier of the binary.
+     * @param mediaType      the media type used for the extraction, or
+     *                       <code>null</code> if unknown.
+     * @param maxFieldLength the maximum number of characters extracted.
+     * @return the cache key.
+     */
+    String getKey(String contentId, String mediaType, int maxFieldLength) {
+        MessageDigest digest = createDigest();
+        try {
+            digest.update((contentId + "|" + mediaType + "|"
+                    + maxFieldLength + "|" + fingerprint).getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached text for the given key.
+     *
+     * @param key the cache key.
+     * @return the cached text or <code>null</code> if there is none.
+     */
+    String get(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                String text = IOUtils.toString(in, "UTF-8");
+                // remember the access for pruning
+                file.setLastModified(System.currentTimeMillis());
+                return text;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read cached text: " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the text for the given key in the cache.
+     *
+     * @param key  the cache key.
+     * @param text the extracted text.
+     */
+    void put(String key, String text) {
+        File file = getFile(key);
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            log.warn("Unable to create cache directory: " + parent);
+            return;
+        }
+        File temp = new File(parent, file.getName() + "."
+                + Thread.currentThread().getId() + TEMP_SUFFIX);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(text.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            long length = temp.length();
+            long previous = file.length();
+            if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+                log.debug("Unable to store cached text: {}", file);
+                temp.delete();
+                return;
+            }
+            boolean prune;
+            synchronized (this) {
+                size += length - previous;
+                prune = size > maxSize;
+            }
+            if (prune) {
+                prune();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write cached text: " + file, e);
+            temp.delete();
+        }
+    }
+
+    /**
+     * @return the approximate size of the cache in bytes.
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache uses at most
+     * three quarters of its maximum size.
+     */
+    synchronized void prune() {
+        if (size <= maxSize) {
+            return;
+        }
+        List<File> files = listFiles();
+        final long[] modified = new long[files.size()];
+        List<Integer> order = new ArrayList<Integer>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            // snapshot, lastModified may change while sorting
+            modified[i] = files.get(i).lastModified();
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+        long current = 0;
+        for (File file : files) {
+            current += file.length();
+        }
+        long target = maxSize / 4 * 3;
+        for (int i = 0; i < order.size() && current > target; i++) {
+            File file = files.get(order.get(i));
+            long length = file.length();
+            if (file.delete()) {
+                current -= length;
+            }
+        }
+        size = current;
+        log.debug("Pruned text extraction cache to {} bytes", size);
+    }
+
+    /**
+     * Deletes all entries of the cache.
+     *
+     * @throws IOException if the entries cannot be deleted.
+     */
+    synchronized void clear() throws IOException {
+        FileUtils.cleanDirectory(directory);
+        size = 0;
+    }
+
+    /**
+     * Returns the file of the given cache entry. Entries are spread over
+     * sub directories named after the first characters of the key.
+     */
+    private File getFile(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    /**
+     * @return all files in the cache directory.
+     */
+    private List<File> listFiles() {
+        List<File> files = new ArrayList<File>();
+        File[] dirs = directory.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] entries = dir.listFiles();
+                if (entries != null) {
+                    Collections.addAll(files, entries);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder buffer = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            buffer.append(Character.forDigit((b >> 4) & 0xf, 16));
+            buffer.append(Character.forDigit(b & 0xf, 16));
+        }
+        return buffer.toString();
+    }
+}
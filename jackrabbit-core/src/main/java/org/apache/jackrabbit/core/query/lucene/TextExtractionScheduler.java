@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.apache.jackrabbit.core.LowPriorityTask;
+import org.apache.jackrabbit.core.data.DataIdentifier;
+import org.apache.jackrabbit.core.query.lucene.LazyTextExtractorField.ParsingTask;
+
+/**
+ * <code>TextExtractionScheduler</code> runs the text extraction tasks of
+ * {@link LazyTextExtractorField}s on the repository executor, limiting the
+ * number of concurrent extractions per media type and aborting extractions
+ * that take too long. This way a few large documents of an expensive type,
+ * for example PDF, cannot occupy all threads of the executor and delay the
+ * extraction of all other binaries.
+ * <p>
+ * Limits are configured as comma separated lists of
+ * <code>mediaType=value</code> pairs, for example
+ * <code>application/pdf=2,image/*=1,*=8</code>. A media type is matched
+ * first exactly, then by its top level type (<code>image/*</code>), then
+ * by the wildcard <code>*</code>. Media types without a matching entry are
+ * not limited.
+ * <p>
+ * If a {@link TextExtractionCache} is set, the text of data store binaries
+ * that have already been extracted is taken from the cache instead of
+ * running the extractor again.
+ */
+class TextExtractionScheduler implements Executor {
+
+    /**
+     * Key of the wildcard entry of a limit specification.
+     */
+    private static final String ANY = "*";
+
+    /**
+     * The executor the extractions are run on.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of concurrent extractions per media type.
+     */
+    private final Map<String, Long> concurrency;
+
+    /**
+     * The maximum duration of an extraction per media type, in
+     * milliseconds.
+     */
+    private final Map<String, Long> deadlines;
+
+    /**
+     * The cache of extracted text or <code>null</code> if there is none.
+     */
+    private final TextExtractionCache cache;
+
+    /**
+     * The number of running extractions per concurrency limit key.
+     */
+    private final Map<String, Integer> running = new HashMap<String, Integer>();
+
+    /**
+     * The extractions waiting for a free slot, per concurrency limit key.
+     */
+    private final Map<String, LinkedList<Job>> waiting =
+        new HashMap<String, LinkedList<Job>>();
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param executor    the executor to run the extractions on.
+     * @param concurrency the concurrency limits, or <code>null</code>.
+     * @param deadlines   the deadlines in milliseconds, or <code>null</code>.
+     * @param cache       the text extraction cache, or <code>null</code>.
+     */
+    TextExtractionScheduler(Executor executor, String concurrency,
+                            String deadlines, TextExtractionCache cache) {
+        this.executor = executor;
+        this.concurrency = parseLimits(concurrency);
+        this.deadlines = parseLimits(deadlines);
+        this.cache = cache;
+    }
+
+    /**
+     * Parses a limit specification.
+     *
+     * @param spec comma separated <code>mediaType=value</code> pairs.
+     * @return the limits, keyed by media type.
+     * @throws IllegalArgumentException if <code>spec</code> is malformed.
+     */
+    static Map<String, Long> parseLimits(String spec) {
+        Map<String, Long> limits = new HashMap<String, Long>();
+        if (spec == null) {
+            return limits;
+        }
+        for (String entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.length() == 0) {
+                continue;
+            }
+            int index = entry.lastIndexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException(
+                        "Invalid media type limit: " + entry);
+            }
+            String type = entry.substring(0, index).trim().toLowerCase();
+            try {
+                limits.put(type,
+                        Long.valueOf(entry.substring(index + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                        "Invalid media type limit: " + entry, e);
+            }
+        }
+        return limits;
+    }
+
+    /**
+     * Returns the limit key that applies to the given media type.
+     *
+     * @param limits    the limits.
+     * @param mediaType the media type, or <code>null</code>.
+     * @return the matching key, or <code>null</code> if there is none.
+     */
+    static String getLimitKey(Map<String, Long> limits, String mediaType) {
+        if (mediaType != null) {
+            int index = mediaType.indexOf(';');
+            if (index != -1) {
+                mediaType = mediaType.substring(0, index);
+            }
+            mediaType = mediaType.trim().toLowerCase();
+            if (limits.containsKey(mediaType)) {
+                return mediaType;
+            }
+            index = mediaType.indexOf('/');
+            if (index != -1) {
+                String wildcard = mediaType.substring(0, index) + "/*";
+                if (limits.containsKey(wildcard)) {
+                    return wildcard;
+                }
+            }
+        }
+        if (limits.containsKey(ANY)) {
+            return ANY;
+        }
+        return null;
+    }
+
+    /**
+     * Runs the given command. Text extraction tasks are taken from the
+     * cache or scheduled according to the concurrency limits; all other
+     * commands are passed to the underlying executor.
+     *
+     * @param command the command to run.
+     */
+    public void execute(Runnable command) {
+        if (!(command instanceof ParsingTask)) {
+            executor.execute(command);
+            return;
+        }
+        ParsingTask task = (ParsingTask) command;
+        String key = null;
+        if (cache != null) {
+            DataIdentifier identifier = task.getValue().getDataIdentifier();
+            if (identifier != null) {
+                key = cache.getKey(identifier.toString(),
+                        task.getMediaType(), task.getMaxFieldLength());
+                String text = cache.get(key);
+                if (text != null) {
+                    task.discard();
+                    task.setExtractedText(text);
+                    return;
+                }
+            }
+        }
+
+        Job job = new Job(task, key);
+        String limitKey = getLimitKey(concurrency, task.getMediaType());
+        if (limitKey == null) {
+            executor.execute(job);
+            return;
+        }
+        job.limitKey = limitKey;
+        synchronized (this) {
+            int count = getRunning(limitKey);
+            if (count >= Math.max(1, concurrency.get(limitKey))) {
+                LinkedList<Job> queue = waiting.get(limitKey);
+                if (queue == null) {
+                    queue = new LinkedList<Job>();
+                    waiting.put(limitKey, queue);
+                }
+                queue.add(job);
+                return;
+            }
+            running.put(limitKey, count + 1);
+        }
+        executor.execute(job);
+    }
+
+    /**
+     * @param limitKey the concurrency limit key.
+     * @return the number of running extractions for the given key.
+     */
+    synchronized int getRunning(String limitKey) {
+        Integer count = running.get(limitKey);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * @param limitKey the concurrency limit key.
+     * @return the number of extractions waiting for the given key.
+     */
+    synchronized int getWaiting(String limitKey) {
+        LinkedList<Job> queue = waiting.get(limitKey);
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Releases the slot of a finished extraction and starts the next
+     * waiting extraction of the same limit key, if any.
+     *
+     * @param limitKey the concurrency limit key.
+     */
+    private void finished(String limitKey) {
+        Job next;
+        synchronized (this) {
+            LinkedList<Job> queue = waiting.get(limitKey);
+            if (queue != null && !queue.isEmpty()) {
+                // hand the slot over to the next job
+                next = queue.removeFirst();
+            } else {
+                running.put(limitKey, getRunning(limitKey) - 1);
+                return;
+            }
+        }
+        executor.execute(next);
+    }
+
+    /**
+     * Wraps a text extraction task to apply the deadline, use the cache
+     * and release the concurrency slot.
+     */
+    private class Job implements LowPriorityTask {
+
+        private final ParsingTask task;
+
+        /**
+         * The cache key, or <code>null</code> if the text is not cached.
+         */
+        private final String key;
+
+        /**
+         * The concurrency limit key, or <code>null</code> if not limited.
+         */
+        private String limitKey;
+
+        Job(ParsingTask task, String key) {
+            this.task = task;
+            this.key = key;
+        }
+
+        public void run() {
+            try {
+                String deadlineKey = getLimitKey(deadlines, task.getMediaType());
+                if (deadlineKey != null && deadlines.get(deadlineKey) > 0) {
+                    task.setDeadline(System.currentTimeMillis()
+                            + deadlines.get(deadlineKey));
+                }
+                String text = task.extractText();
+                if (key != null && task.isComplete()) {
+                    cache.put(key, text);
+                }
+                task.setExtractedText(text);
+            } finally {
+                if (limitKey != null) {
+                    finished(limitKey);
+                }
+            }
+        }
+    }
+}
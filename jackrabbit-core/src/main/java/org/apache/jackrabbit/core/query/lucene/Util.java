@@ -19,6 +19,8 @@ package org.apache.jackrabbit.core.query.lucene;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import javax.jcr.PropertyType;
@@ -30,8 +32,10 @@ import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.ReaderUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -141,6 +145,28 @@ public class Util {
         }
     }
 
+    /**
+     * Returns the names and sizes of the segments read by <code>reader</code>,
+     * or <code>null</code> if the reader does not read segments.
+     *
+     * @param reader
+     *            an index reader.
+     * @return the segments read by the reader, or <code>null</code>.
+     */
+    public static String getSegments(IndexReader reader) {
+        List<IndexReader> subReaders = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders(subReaders, reader);
+        StringBuilder segments = new StringBuilder();
+        for (IndexReader subReader : subReaders) {
+            if (!(subReader instanceof SegmentReader)) {
+                return null;
+            }
+            segments.append(((SegmentReader) subReader).getSegmentName());
+            segments.append(':').append(subReader.maxDoc()).append(' ');
+        }
+        return segments.toString();
+    }
+
     /**
      * Returns a comparable for the internal <code>value</code>.
      * 
@@ -132,6 +132,24 @@ public class FSDirectoryManager implements DirectoryManager {
     public void dispose() {
     }
 
+    /**
+     * Returns the file system directory of <code>directory</code>.
+     *
+     * @param directory a directory created by this manager or a lucene
+     *                  {@link FSDirectory}.
+     * @return the file system directory or <code>null</code> if
+     *         <code>directory</code> is not stored in the file system.
+     */
+    public static File getFile(Directory directory) {
+        if (directory instanceof FSDir) {
+            return ((FSDir) directory).directory.getDirectory();
+        } else if (directory instanceof FSDirectory) {
+            return ((FSDirectory) directory).getDirectory();
+        } else {
+            return null;
+        }
+    }
+
     //-----------------------< internal >---------------------------------------
 
     private static final class FSDir extends Directory {
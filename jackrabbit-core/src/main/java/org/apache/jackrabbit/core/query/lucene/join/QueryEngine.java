@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.core.query.lucene.join;
 
+import static javax.jcr.query.qom.QueryObjectModelConstants.JCR_JOIN_TYPE_INNER;
 import static javax.jcr.query.qom.QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER;
 import static javax.jcr.query.qom.QueryObjectModelConstants.JCR_JOIN_TYPE_RIGHT_OUTER;
 
@@ -134,6 +135,23 @@ public class QueryEngine {
                 "Unknown source type: " + source);
     }
 
+    /**
+     * Describes how the given query source would be evaluated: the order in
+     * which the sides of each join are executed, the constraints pushed down
+     * to them, their estimated sizes and the expected join strategy.
+     *
+     * @param source query source
+     * @param constraint query constraint, or <code>null</code>
+     * @return the query plan
+     * @throws RepositoryException if the plan can not be computed
+     */
+    public String explain(Source source, Constraint constraint)
+            throws RepositoryException {
+        StringBuilder sb = new StringBuilder();
+        explain(sb, source, constraint, 0);
+        return sb.toString();
+    }
+
     protected QueryResult execute(Column[] columns, Join join,
             Constraint constraint, Ordering[] orderings, long offset,
             long limit, int printIndentation) throws RepositoryException {
@@ -147,9 +165,10 @@ public class QueryEngine {
             return execute(columns, betterJoin, constraint, orderings, offset,
                     limit, printIndentation);
         }
-        JoinMerger merger = JoinMerger.getJoinMerger(join,
-                getColumnMap(columns, getSelectorNames(join)), evaluator,
-                qomFactory);
+        Map<String, PropertyValue> columnMap =
+            getColumnMap(columns, getSelectorNames(join));
+        JoinMerger merger = JoinMerger.getJoinMerger(join, columnMap,
+                evaluator, qomFactory);
         ConstraintSplitter splitter = new ConstraintSplitter(constraint,
                 qomFactory, merger.getLeftSelectors(),
                 merger.getRightSelectors(), join);
@@ -159,8 +178,26 @@ public class QueryEngine {
 
         boolean isOuterJoin = JCR_JOIN_TYPE_LEFT_OUTER.equalsIgnoreCase(join
                 .getJoinType());
-        QueryResult result = execute(merger, csInfo, isOuterJoin,
-                printIndentation);
+        QueryResult result;
+        if (isSwapped(join, csInfo)) {
+            // Drive an inner join from its smaller side, but keep the
+            // selector and column order of the original join
+            log.debug("{} SQL2 JOIN sides swapped to execute {} first.",
+                    genString(printIndentation), join.getRight());
+            Join swapped = qomFactory.join(join.getRight(), join.getLeft(),
+                    join.getJoinType(), join.getJoinCondition());
+            JoinMerger swappedMerger = JoinMerger.getJoinMerger(swapped,
+                    columnMap, evaluator, qomFactory);
+            ConstraintSplitInfo swappedInfo = new ConstraintSplitter(
+                    constraint, qomFactory, swappedMerger.getLeftSelectors(),
+                    swappedMerger.getRightSelectors(), swapped)
+                    .getConstraintSplitInfo();
+            result = new SimpleQueryResult(merger.getColumnNames(),
+                    merger.getSelectorNames(), execute(swappedMerger,
+                            swappedInfo, false, printIndentation).getRows());
+        } else {
+            result = execute(merger, csInfo, isOuterJoin, printIndentation);
+        }
 
         long sort = System.currentTimeMillis();
         QueryResult sortedResult = sort(result, orderings, evaluator, offset,
@@ -250,6 +287,17 @@ public class QueryEngine {
                     new RowIteratorAdapter(new TreeSet<Row>()), null, rightCo);
         }
 
+        // Looking up the right side by the join values of the left rows
+        // (index nested loop) costs a query per batch of values. When there
+        // are more values than the right side has rows, it is cheaper to
+        // read the right side once and let the merger match the rows by
+        // their join values (hash join).
+        if (isHashJoin(rightConstraints.size(), csInfo)) {
+            log.debug("{} SQL2 JOIN RIGHT SIDE uses a hash join for {} values.",
+                    genString(printIndentation), rightConstraints.size());
+            rightConstraints = null;
+        }
+
         Set<Row> rightRows = buildRightRowsJoin(csInfo, rightConstraints,
                 isOuterJoin, rightCo, printIndentation + printIndentStep);
 
@@ -304,7 +352,8 @@ public class QueryEngine {
      * @param csi
      *            contains 'WHERE' constraints and the source information
      * @param rightConstraints
-     *            contains 'ON' constraints
+     *            contains 'ON' constraints, or <code>null</code> to read the
+     *            whole right side for a hash join
      * @param ignoreWhereConstraints
      * @param comparator
      *            used to merge similar rows together
@@ -333,6 +382,20 @@ public class QueryEngine {
             return rightRows;
         }
 
+        if (rightConstraints == null) {
+            Set<Row> rightRows = new TreeSet<Row>(comparator);
+            Constraint rightConstraint = csi.getRightConstraint();
+            if (ignoreWhereConstraints) {
+                rightConstraint = null;
+            }
+            QueryResult rightResult = execute(null, csi.getSource().getRight(),
+                    rightConstraint, null, 0, -1, printIndentation);
+            for (Row row : JcrUtils.getRows(rightResult)) {
+                rightRows.add(row);
+            }
+            return rightRows;
+        }
+
         if (rightConstraints.size() < 500) {
             Set<Row> rightRows = new TreeSet<Row>(comparator);
             List<Constraint> localRightContraints = rightConstraints;
@@ -377,6 +440,152 @@ public class QueryEngine {
         return rightRows;
     }
 
+    /**
+     * Checks whether the sides of the given join should be executed in
+     * reverse order. Only inner joins are commutative, and the side with
+     * the lower estimated number of rows is executed first so that it
+     * drives the lookups on the other side.
+     */
+    private boolean isSwapped(Join join, ConstraintSplitInfo csInfo)
+            throws RepositoryException {
+        if (!JCR_JOIN_TYPE_INNER.equalsIgnoreCase(join.getJoinType())
+                || csInfo.isMultiple()) {
+            return false;
+        }
+        return estimate(join.getRight(), csInfo.getRightConstraint())
+            < estimate(join.getLeft(), csInfo.getLeftConstraint());
+    }
+
+    /**
+     * Checks whether the right side of a join should be read as a whole
+     * instead of being looked up by the given number of join values.
+     */
+    private boolean isHashJoin(int values, ConstraintSplitInfo csInfo)
+            throws RepositoryException {
+        return values > estimate(
+                csInfo.getSource().getRight(), csInfo.getRightConstraint());
+    }
+
+    /**
+     * Estimates the number of rows of the given source from the index
+     * statistics. A join is estimated by the size of its smaller side, or
+     * by the size of its outer side for outer joins.
+     */
+    private int estimate(Source source, Constraint constraint)
+            throws RepositoryException {
+        if (source instanceof Selector) {
+            try {
+                return lqf.estimate((Selector) source, constraint);
+            } catch (IOException e) {
+                throw new RepositoryException(
+                        "Failed to access the query index", e);
+            }
+        } else if (source instanceof Join) {
+            Join join = (Join) source;
+            ConstraintSplitInfo csi = new ConstraintSplitter(constraint,
+                    qomFactory, getSelectorNames(join.getLeft()).keySet(),
+                    getSelectorNames(join.getRight()).keySet(), join)
+                    .getConstraintSplitInfo();
+            int left;
+            int right;
+            if (csi.isMultiple()) {
+                left = estimate(join.getLeft(), null);
+                right = estimate(join.getRight(), null);
+            } else {
+                left = estimate(join.getLeft(), csi.getLeftConstraint());
+                right = estimate(join.getRight(), csi.getRightConstraint());
+            }
+            String type = join.getJoinType();
+            if (JCR_JOIN_TYPE_LEFT_OUTER.equalsIgnoreCase(type)) {
+                return left;
+            } else if (JCR_JOIN_TYPE_RIGHT_OUTER.equalsIgnoreCase(type)) {
+                return right;
+            } else {
+                return Math.min(left, right);
+            }
+        }
+        throw new UnsupportedRepositoryOperationException(
+                "Unknown source type: " + source);
+    }
+
+    private void explain(StringBuilder sb, Source source,
+            Constraint constraint, int printIndentation)
+            throws RepositoryException {
+        if (source instanceof Selector) {
+            sb.append(genString(printIndentation));
+            sb.append("SELECTOR ");
+            sb.append(source);
+            if (constraint != null) {
+                sb.append(" WHERE ");
+                sb.append(constraint);
+            }
+            sb.append(" (estimated ");
+            sb.append(estimate(source, constraint));
+            sb.append(" rows)");
+            sb.append(IOUtils.LINE_SEPARATOR);
+            return;
+        }
+        if (!(source instanceof Join)) {
+            throw new UnsupportedRepositoryOperationException(
+                    "Unknown source type: " + source);
+        }
+        Join join = (Join) source;
+        if (JCR_JOIN_TYPE_RIGHT_OUTER.equalsIgnoreCase(join.getJoinType())) {
+            join = qomFactory.join(join.getRight(), join.getLeft(),
+                    JCR_JOIN_TYPE_LEFT_OUTER, join.getJoinCondition());
+        }
+        ConstraintSplitInfo csInfo = new ConstraintSplitter(constraint,
+                qomFactory, getSelectorNames(join.getLeft()).keySet(),
+                getSelectorNames(join.getRight()).keySet(), join)
+                .getConstraintSplitInfo();
+        boolean swapped = isSwapped(join, csInfo);
+        if (swapped) {
+            join = qomFactory.join(join.getRight(), join.getLeft(),
+                    join.getJoinType(), join.getJoinCondition());
+            csInfo = new ConstraintSplitter(constraint, qomFactory,
+                    getSelectorNames(join.getLeft()).keySet(),
+                    getSelectorNames(join.getRight()).keySet(), join)
+                    .getConstraintSplitInfo();
+        }
+        explain(sb, csInfo, swapped, printIndentation);
+    }
+
+    private void explain(StringBuilder sb, ConstraintSplitInfo csInfo,
+            boolean swapped, int printIndentation)
+            throws RepositoryException {
+        if (csInfo.isMultiple()) {
+            sb.append(genString(printIndentation));
+            sb.append("UNION");
+            sb.append(IOUtils.LINE_SEPARATOR);
+            explain(sb, csInfo.getLeftInnerConstraints(), swapped,
+                    printIndentation + printIndentStep);
+            explain(sb, csInfo.getRightInnerConstraints(), swapped,
+                    printIndentation + printIndentStep);
+            return;
+        }
+        Join join = csInfo.getSource();
+        int left = estimate(join.getLeft(), csInfo.getLeftConstraint());
+        sb.append(genString(printIndentation));
+        sb.append(join.getJoinType());
+        sb.append(" ON ");
+        sb.append(join.getJoinCondition());
+        // every left row yields at least one join value
+        if (isHashJoin(left, csInfo)) {
+            sb.append(" (hash join");
+        } else {
+            sb.append(" (index nested loop join");
+        }
+        if (swapped) {
+            sb.append(", sides swapped");
+        }
+        sb.append(")");
+        sb.append(IOUtils.LINE_SEPARATOR);
+        explain(sb, join.getLeft(), csInfo.getLeftConstraint(),
+                printIndentation + printIndentStep);
+        explain(sb, join.getRight(), csInfo.getRightConstraint(),
+                printIndentation + printIndentStep);
+    }
+
     private static String genString(int len) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < len; i++) {
@@ -22,10 +22,12 @@ import org.apache.jackrabbit.commons.iterator.AccessControlPolicyIteratorAdapter
 import org.apache.jackrabbit.core.HierarchyManager;
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.security.authorization.AccessControlEditor;
 import org.apache.jackrabbit.core.security.authorization.AccessControlProvider;
 import org.apache.jackrabbit.core.security.authorization.CompiledPermissions;
 import org.apache.jackrabbit.core.security.authorization.Permission;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
 import org.apache.jackrabbit.core.security.authorization.WorkspaceAccessManager;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
@@ -74,7 +76,8 @@ import java.util.Set;
  * @see AccessManager
  * @see javax.jcr.security.AccessControlManager
  */
-public class DefaultAccessManager extends AbstractAccessControlManager implements AccessManager {
+public class DefaultAccessManager extends AbstractAccessControlManager
+        implements AccessManager, SubtreeReadPermissions {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultAccessManager.class);
 
@@ -266,6 +269,20 @@ public class DefaultAccessManager extends AbstractAccessControlManager implement
         }
     }
 
+    /**
+     * @see SubtreeReadPermissions#canReadSubtree(NodeId)
+     */
+    public Boolean canReadSubtree(NodeId id) throws RepositoryException {
+        checkInitialized();
+        if (compiledPermissions.canReadAll()) {
+            return Boolean.TRUE;
+        } else if (compiledPermissions instanceof SubtreeReadPermissions) {
+            return ((SubtreeReadPermissions) compiledPermissions).canReadSubtree(id);
+        } else {
+            return null;
+        }
+    }
+
     /**
      * @see AccessManager#canAccess(String)
      */
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * <code>SubtreeReadPermissions</code> evaluates the read permission for a
+ * node and the descendants that inherit its access control entries at once.
+ * This allows to filter query results by the nearest access controlled
+ * ancestor of each result instead of evaluating every result on its own.
+ */
+public interface SubtreeReadPermissions {
+
+    /**
+     * Returns whether the node identified by the given <code>id</code> and
+     * its descendants can be read, excluding the descendants that are below
+     * another access controlled node and access control content.
+     *
+     * @param id The id of a node.
+     * @return <code>true</code> if the subtree can be read, <code>false</code>
+     * if it cannot be read or <code>null</code> if the read permission
+     * varies within the subtree, e.g. because entries with restrictions
+     * apply, and must be evaluated for each item.
+     * @throws RepositoryException if an error occurs.
+     */
+    Boolean canReadSubtree(NodeId id) throws RepositoryException;
+
+}
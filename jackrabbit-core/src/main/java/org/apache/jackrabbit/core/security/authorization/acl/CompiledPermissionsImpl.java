@@ -33,6 +33,7 @@ import org.apache.jackrabbit.core.security.authorization.Permission;
 import org.apache.jackrabbit.core.security.authorization.PrivilegeBits;
 import org.apache.jackrabbit.core.security.authorization.PrivilegeManagerImpl;
 import org.apache.jackrabbit.core.security.authorization.PrivilegeRegistry;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.util.Text;
@@ -51,7 +52,8 @@ import java.util.Set;
 /**
  * <code>CompiledPermissionsImpl</code>...
  */
-class CompiledPermissionsImpl extends AbstractCompiledPermissions implements AccessControlListener {
+class CompiledPermissionsImpl extends AbstractCompiledPermissions
+        implements AccessControlListener, SubtreeReadPermissions {
 
     private static final Logger LOG = LoggerFactory.getLogger(CompiledPermissionsImpl.class);
 
@@ -74,6 +76,12 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
     @SuppressWarnings("unchecked")
     private final Map<ItemId, Boolean> readCache = new GrowingLRUMap(1024, MAX_CACHE_SIZE);
 
+    /*
+     * Read permissions of subtrees, null if they vary within the subtree.
+     */
+    @SuppressWarnings("unchecked")
+    private final Map<NodeId, Boolean> subtreeReadCache = new GrowingLRUMap(128, MAX_CACHE_SIZE);
+
     private final Object monitor = new Object();
 
     CompiledPermissionsImpl(Set<Principal> principals, SessionImpl session,
@@ -222,6 +230,7 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
     protected void clearCache() {
         synchronized (monitor) {
             readCache.clear();
+            subtreeReadCache.clear();
         }
         super.clearCache();
     }
@@ -286,6 +295,38 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
         return canRead;
     }
 
+    //-----------------------------------------< SubtreeReadPermissions >---
+    /**
+     * Evaluates the entries that apply to the node regardless of their
+     * restrictions: the first entry with read privileges decides, unless it
+     * has restrictions, in which case the read permission may vary within
+     * the subtree.
+     *
+     * @see SubtreeReadPermissions#canReadSubtree(NodeId)
+     */
+    public Boolean canReadSubtree(NodeId id) throws RepositoryException {
+        synchronized (monitor) {
+            if (subtreeReadCache.containsKey(id)) {
+                return subtreeReadCache.get(id);
+            }
+            Boolean canRead = Boolean.FALSE;
+            NodeImpl node = (NodeImpl) session.getItemManager().getItem(id);
+            if (util.isAcItem(node)) {
+                canRead = null;
+            } else {
+                EntryFilterImpl filter = new EntryFilterImpl(principalNames);
+                for (Entry ace : entryCollector.collectEntries(node, filter)) {
+                    if (ace.getPrivilegeBits().includesRead()) {
+                        canRead = ace.hasRestrictions() ? null : ace.isAllow();
+                        break;
+                    }
+                }
+            }
+            subtreeReadCache.put(id, canRead);
+            return canRead;
+        }
+    }
+
     //----------------------------------------< ACLModificationListener >---
     /**
      * @see org.apache.jackrabbit.core.security.authorization.AccessControlListener#acModified(org.apache.jackrabbit.core.security.authorization.AccessControlModifications)
@@ -34,6 +34,8 @@ public class DummyUpdateEventChannel implements UpdateEventChannel {
 
     public void updateCancelled(Update update) {}
 
+    public void updateFinished(Update update) {}
+
     public void setListener(UpdateEventListener listener) {}
 
 }
\ No newline at end of file
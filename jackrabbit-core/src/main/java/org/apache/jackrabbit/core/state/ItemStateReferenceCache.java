@@ -18,9 +18,14 @@ package org.apache.jackrabbit.core.state;
 
 import org.apache.commons.collections.map.ReferenceMap;
 import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.NodeIdMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +47,11 @@ import java.util.Map;
  * </li>
  * </ul>
  * <p>
+ * Node states, which make up most of the primary cache, are kept in a
+ * {@link NodeIdMap} keyed directly by the bits of the node id, so that only
+ * the weak reference itself is allocated per entry. Property states are kept
+ * in a regular reference map.
+ * <p>
  * This implementation of ItemStateCache is thread-safe.
  */
 public class ItemStateReferenceCache implements ItemStateCache {
@@ -74,7 +84,7 @@ public class ItemStateReferenceCache implements ItemStateCache {
     /**
      * Segments of the weak reference map used to keep track of item states.
      */
-    private final Map<ItemId, ItemState>[] segments;
+    private final Segment[] segments;
 
     /**
      * Creates a new <code>ItemStateReferenceCache</code> that uses a
@@ -91,18 +101,16 @@ public class ItemStateReferenceCache implements ItemStateCache {
      *
      * @param cache secondary cache implementing a custom eviction policy
      */
-    @SuppressWarnings("unchecked")
     public ItemStateReferenceCache(ItemStateCache cache) {
         this.cache = cache;
-        this.segments = new Map[NUMBER_OF_SEGMENTS];
+        this.segments = new Segment[NUMBER_OF_SEGMENTS];
         for (int i = 0; i < segments.length; i++) {
             // I tried using soft instead of weak references here, but that
             // seems to have some unexpected performance consequences (notable
             // increase in the JCR TCK run time). So even though soft references
             // are generally recommended over weak references for caching
             // purposes, it seems that using weak references is safer here.
-            segments[i] =
-                new ReferenceMap(ReferenceMap.HARD, ReferenceMap.WEAK);
+            segments[i] = new Segment();
         }
     }
 
@@ -115,7 +123,7 @@ public class ItemStateReferenceCache implements ItemStateCache {
      * @param id item identifier
      * @return reference map segment
      */
-    private Map<ItemId, ItemState> getSegment(ItemId id) {
+    private Segment getSegment(ItemId id) {
         // Unsigned shift right to prevent negative indexes and to
         // prevent too similar keys to all get stored in the same segment
         return segments[(id.hashCode() >>> 1) % segments.length];
@@ -126,9 +134,9 @@ public class ItemStateReferenceCache implements ItemStateCache {
      * {@inheritDoc}
      */
     public boolean isCached(ItemId id) {
-        Map<ItemId, ItemState> segment = getSegment(id);
+        Segment segment = getSegment(id);
         synchronized (segment) {
-            return segment.containsKey(id);
+            return segment.get(id) != null;
         }
     }
 
@@ -143,7 +151,7 @@ public class ItemStateReferenceCache implements ItemStateCache {
             return state;
         }
 
-        Map<ItemId, ItemState> segment = getSegment(id);
+        Segment segment = getSegment(id);
         synchronized (segment) {
             return segment.get(id);
         }
@@ -156,7 +164,7 @@ public class ItemStateReferenceCache implements ItemStateCache {
         List<ItemState> states = new ArrayList<ItemState>();
         for (int i = 0; i < segments.length; i++) {
             synchronized (segments[i]) {
-                states.addAll(segments[i].values());
+                segments[i].addAll(states);
             }
         }
         return states.toArray(new ItemState[states.size()]);
@@ -171,7 +179,7 @@ public class ItemStateReferenceCache implements ItemStateCache {
 
         // Store a weak reference in the reference map
         ItemId id = state.getId();
-        Map<ItemId, ItemState> segment = getSegment(id);
+        Segment segment = getSegment(id);
         synchronized (segment) {
             ItemState s = segment.put(id, state);
             // overwriting the same instance is OK
@@ -189,7 +197,7 @@ public class ItemStateReferenceCache implements ItemStateCache {
         cache.evict(id);
         // Remove from reference map
         // TODO: Allow the weak reference to be cleared automatically?
-        Map<ItemId, ItemState> segment = getSegment(id);
+        Segment segment = getSegment(id);
         synchronized (segment) {
             segment.remove(id);
         }
@@ -231,4 +239,118 @@ public class ItemStateReferenceCache implements ItemStateCache {
         return true;
     }
 
+    //--------------------------------------------------------< inner classes >
+
+    /**
+     * Weak reference to a cached node state that remembers the node id, so
+     * that the entry can be removed once the state has been collected.
+     */
+    private static final class NodeStateReference
+            extends WeakReference<ItemState> {
+
+        private final long msb;
+
+        private final long lsb;
+
+        NodeStateReference(NodeId id, ItemState state,
+                           ReferenceQueue<ItemState> queue) {
+            super(state, queue);
+            this.msb = id.getMostSignificantBits();
+            this.lsb = id.getLeastSignificantBits();
+        }
+
+    }
+
+    /**
+     * A segment of the reference map. Not thread-safe, callers synchronize
+     * on the segment.
+     */
+    private static final class Segment {
+
+        /**
+         * Weak references to node states.
+         */
+        private final NodeIdMap<NodeStateReference> nodes =
+            new NodeIdMap<NodeStateReference>();
+
+        /**
+         * Queue of the node state references that have been cleared.
+         */
+        private final ReferenceQueue<ItemState> queue =
+            new ReferenceQueue<ItemState>();
+
+        /**
+         * Weak references to property states.
+         */
+        @SuppressWarnings("unchecked")
+        private final Map<ItemId, ItemState> properties =
+            new ReferenceMap(ReferenceMap.HARD, ReferenceMap.WEAK);
+
+        ItemState get(ItemId id) {
+            if (id.denotesNode()) {
+                NodeStateReference reference = nodes.get((NodeId) id);
+                return reference != null ? reference.get() : null;
+            } else {
+                return properties.get(id);
+            }
+        }
+
+        ItemState put(ItemId id, ItemState state) {
+            if (id.denotesNode()) {
+                purge();
+                NodeStateReference previous = nodes.put((NodeId) id,
+                        new NodeStateReference((NodeId) id, state, queue));
+                return previous != null ? previous.get() : null;
+            } else {
+                return properties.put(id, state);
+            }
+        }
+
+        void remove(ItemId id) {
+            if (id.denotesNode()) {
+                nodes.remove((NodeId) id);
+                purge();
+            } else {
+                properties.remove(id);
+            }
+        }
+
+        void addAll(List<ItemState> states) {
+            for (NodeStateReference reference : nodes.values()) {
+                ItemState state = reference.get();
+                if (state != null) {
+                    states.add(state);
+                }
+            }
+            states.addAll(properties.values());
+        }
+
+        void clear() {
+            nodes.clear();
+            properties.clear();
+            while (queue.poll() != null) {
+                // already removed from the map
+            }
+        }
+
+        boolean isEmpty() {
+            purge();
+            return nodes.isEmpty() && properties.isEmpty();
+        }
+
+        /**
+         * Removes the entries of node states that have been collected.
+         */
+        private void purge() {
+            Reference<? extends ItemState> reference = queue.poll();
+            while (reference != null) {
+                NodeStateReference r = (NodeStateReference) reference;
+                // the entry may have been replaced in the meantime
+                nodes.remove(r.msb, r.lsb, r);
+                reference = queue.poll();
+            }
+        }
+
+    }
+
 }
@@ -16,6 +16,10 @@
  */
 package org.apache.jackrabbit.core.state;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import javax.jcr.InvalidItemStateException;
 import javax.jcr.ReferentialIntegrityException;
 import javax.jcr.RepositoryException;
@@ -205,6 +209,23 @@ public class LocalItemStateManager
         return sharedStateMgr.hasItemState(id);
     }
 
+    /**
+     * Prefetches the given node states that are neither cached locally nor
+     * part of the local change log.
+     *
+     * @param ids the ids of the node states that are likely to be accessed
+     * @see SharedItemStateManager#prefetch(Collection)
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        List<NodeId> missing = new ArrayList<NodeId>();
+        for (NodeId id : ids) {
+            if (!cache.isCached(id) && !changeLog.has(id)) {
+                missing.add(id);
+            }
+        }
+        sharedStateMgr.prefetch(missing);
+    }
+
     /**
      * {@inheritDoc}
      */
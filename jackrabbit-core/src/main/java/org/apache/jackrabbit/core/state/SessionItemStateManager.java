@@ -182,6 +182,16 @@ public class SessionItemStateManager
         return stateMgr.hasItemState(id);
     }
 
+    /**
+     * Prefetches the given node states from the persistent storage.
+     *
+     * @param ids the ids of the node states that are likely to be accessed
+     * @see SharedItemStateManager#prefetch(Collection)
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        stateMgr.prefetch(ids);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -16,6 +16,9 @@
  */
 package org.apache.jackrabbit.core.state;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -40,6 +43,7 @@ import org.apache.jackrabbit.core.nodetype.NodeTypeRegistry;
 import org.apache.jackrabbit.core.observation.EventState;
 import org.apache.jackrabbit.core.observation.EventStateCollection;
 import org.apache.jackrabbit.core.observation.EventStateCollectionFactory;
+import org.apache.jackrabbit.core.persistence.BatchLoadingPersistenceManager;
 import org.apache.jackrabbit.core.persistence.CachingPersistenceManager;
 import org.apache.jackrabbit.core.persistence.PersistenceManager;
 import org.apache.jackrabbit.core.value.InternalValue;
@@ -290,6 +294,32 @@ public class SharedItemStateManager
         throw ex == null ? new NoSuchItemStateException(message) : new NoSuchItemStateException(message, ex);
     }
 
+    /**
+     * Loads the given node states into the persistence manager cache with as
+     * few storage round trips as possible, if the persistence manager
+     * supports it. States that are already cached are skipped. This is only
+     * an optimization, so failures are logged and otherwise ignored.
+     *
+     * @param ids the ids of the node states that are likely to be accessed
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        if (persistMgr instanceof BatchLoadingPersistenceManager) {
+            List<NodeId> missing = new ArrayList<NodeId>();
+            for (NodeId id : ids) {
+                if (!cache.isCached(id)) {
+                    missing.add(id);
+                }
+            }
+            if (missing.size() > 1) {
+                try {
+                    ((BatchLoadingPersistenceManager) persistMgr).prefetch(missing);
+                } catch (ItemStateException e) {
+                    log.debug("Unable to prefetch node states", e);
+                }
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -584,6 +614,7 @@ public class SharedItemStateManager
             } finally {
                 if (writeLock == null) {
                     eventChannel.updateCancelled(this);
+                    eventChannel.updateFinished(this);
                 }
             }
 
@@ -853,21 +884,26 @@ public class SharedItemStateManager
                 eventChannel.updateCommitted(this, path);
                 setAttribute(ATTRIBUTE_UPDATE_SIZE, null);
 
-                if (writeLock != null) {
-                    // exception occurred before downgrading lock
-                    writeLock.release();
-                    writeLock = null;
-                } else if (readLock != null) {
-                    try {
-                        if (succeeded) {
-                            /* dispatch the events */
-                            events.dispatch();
+                try {
+                    if (writeLock != null) {
+                        // exception occurred before downgrading lock
+                        writeLock.release();
+                        writeLock = null;
+                    } else if (readLock != null) {
+                        try {
+                            if (succeeded) {
+                                /* dispatch the events */
+                                events.dispatch();
+                            }
+                        } finally {
+                            readLock.release();
                         }
-                    } finally {
-                        readLock.release();
                     }
+                } finally {
+                    // A journal group commit waits here for the other
+                    // updates of its group, which may need the lock
+                    eventChannel.updateFinished(this);
                 }
-
             }
         }
 
@@ -900,9 +936,13 @@ public class SharedItemStateManager
                     state.discard();
                 }
             } finally {
-                if (writeLock != null) {
-                    writeLock.release();
-                    writeLock = null;
+                try {
+                    if (writeLock != null) {
+                        writeLock.release();
+                        writeLock = null;
+                    }
+                } finally {
+                    eventChannel.updateFinished(this);
                 }
             }
         }
@@ -1553,6 +1593,20 @@ public class SharedItemStateManager
      * @param events events to deliver
      */
     public void externalUpdate(ChangeLog external, EventStateCollection events) {
+        externalUpdate(external, Collections.singletonList(events));
+    }
+
+    /**
+     * Handle a batch of consecutive external updates. The write lock is
+     * acquired once for the merged changes, and the events of every update
+     * are dispatched in order.
+     *
+     * @param external merged external changes containing only node and
+     *                 property ids.
+     * @param events events of each update to deliver
+     */
+    public void externalUpdate(
+            ChangeLog external, List<EventStateCollection> events) {
         boolean holdingWriteLock = false;
 
         ISMLocking.WriteLock wLock = null;
@@ -1571,7 +1625,9 @@ public class SharedItemStateManager
             if (wLock != null) {
                 rLock = wLock.downgrade();
                 holdingWriteLock = false;
-                events.dispatch();
+                for (EventStateCollection esc : events) {
+                    esc.dispatch();
+                }
             }
         } finally {
             if (holdingWriteLock) {
@@ -1910,6 +1966,16 @@ public class SharedItemStateManager
         }
     }
 
+    /**
+     * Waits until all updates that are in progress have completed, including
+     * the dispatch of their events.
+     *
+     * @throws ItemStateException if interrupted while waiting
+     */
+    public void waitForUpdates() throws ItemStateException {
+        acquireWriteLock(new ChangeLog()).release();
+    }
+
     public NodeIdFactory getNodeIdFactory() {
         return this.nodeIdFactory;
     }
@@ -641,6 +641,20 @@ public class InternalValue extends AbstractQValue {
         return val instanceof BLOBInDataStore;
     }
 
+    /**
+     * Returns the data store identifier of a binary value.
+     *
+     * @return the data identifier, or <code>null</code> if this is not a
+     *         binary value or the value is not stored in a data store
+     */
+    public DataIdentifier getDataIdentifier() {
+        if (type == PropertyType.BINARY) {
+            return ((BLOBFileValue) val).getDataIdentifier();
+        } else {
+            return null;
+        }
+    }
+
     //-------------------------------------------------------------< QValue >---
     /**
      * @see org.apache.jackrabbit.spi.QValue#getLength()
@@ -32,7 +32,8 @@ import javax.jcr.version.VersionException;
 import org.apache.commons.collections.map.ReferenceMap;
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.cluster.UpdateEventChannel;
-import org.apache.jackrabbit.core.cluster.UpdateEventListener;
+import org.apache.jackrabbit.core.cluster.BatchUpdateEventListener;
+import org.apache.jackrabbit.core.cluster.ChangeLogRecord;
 import org.apache.jackrabbit.core.fs.FileSystem;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
@@ -69,7 +70,7 @@ import org.slf4j.LoggerFactory;
  * This Class implements a VersionManager.
  */
 public class InternalVersionManagerImpl extends InternalVersionManagerBase
-        implements ItemStateListener, UpdateEventListener {
+        implements ItemStateListener, BatchUpdateEventListener {
 
     /**
      * the default logger
@@ -583,6 +584,16 @@ public class InternalVersionManagerImpl extends InternalVersionManagerBase
         return sharedStateMgr;
     }
 
+    /**
+     * Waits until all updates of the version storage that are in progress
+     * have completed, including the dispatch of their events.
+     *
+     * @throws ItemStateException if interrupted while waiting
+     */
+    public void waitForUpdates() throws ItemStateException {
+        sharedStateMgr.waitForUpdates();
+    }
+
     /**
      * Creates a <code>VersionItemStateManager</code> or derivative.
      *
@@ -643,7 +654,7 @@ public class InternalVersionManagerImpl extends InternalVersionManagerBase
     public void stateDiscarded(ItemState discarded) {
     }
 
-    //--------------------------------------------------< UpdateEventListener >
+    //---------------------------------------------< BatchUpdateEventListener >
 
     /**
      * {@inheritDoc}
@@ -651,13 +662,42 @@ public class InternalVersionManagerImpl extends InternalVersionManagerBase
     public void externalUpdate(ChangeLog changes, List<EventState> events,
                                long timestamp, String userData)
             throws RepositoryException {
+        sharedStateMgr.externalUpdate(changes,
+                createEventStateCollection(events, timestamp, userData));
+        externalItemsUpdated(changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void externalUpdate(ChangeLog changes, List<ChangeLogRecord> records)
+            throws RepositoryException {
+        List<EventStateCollection> events =
+            new ArrayList<EventStateCollection>(records.size());
+        for (ChangeLogRecord record : records) {
+            events.add(createEventStateCollection(record.getEvents(),
+                    record.getTimestamp(), record.getUserData()));
+        }
+        sharedStateMgr.externalUpdate(changes, events);
+        externalItemsUpdated(changes);
+    }
+
+    private EventStateCollection createEventStateCollection(
+            List<EventState> events, long timestamp, String userData)
+            throws RepositoryException {
         EventStateCollection esc = getEscFactory().createEventStateCollection(null);
         esc.addAll(events);
         esc.setTimestamp(timestamp);
         esc.setUserData(userData);
+        return esc;
+    }
 
-        sharedStateMgr.externalUpdate(changes, esc);
-
+    /**
+     * Informs the cached version items that have been changed externally.
+     *
+     * @param changes external changes
+     */
+    private void externalItemsUpdated(ChangeLog changes) {
         Collection<InternalVersionItem> items =
             new ArrayList<InternalVersionItem>();
         synchronized (versionItems) {
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link ClockCache} class.
+ */
+public class ClockCacheTest extends TestCase {
+
+    /**
+     * Tests the cache by adding lots of random items to it and checking
+     * that the excess items have automatically been evicted while
+     * frequently accessed items are still present.
+     */
+    public void testClockCache() {
+        NodeId[] ids = new NodeId[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+        }
+
+        KeyValueCache<NodeId, NodeId> cache =
+            new ClockCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(ids.length / 2);
+
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = 0; j < i; j += 3) {
+                cache.get(ids[j]);
+            }
+            cache.put(ids[i], ids[i], 1);
+        }
+
+        assertTrue(cache.getMemoryUsed() <= ids.length / 2);
+        assertEquals(cache.getMemoryUsed(), cache.getElementCount());
+
+        int n = 0;
+        for (int i = 0; i < ids.length; i += 3) {
+            if (cache.containsKey(ids[i])) {
+                n++;
+            }
+        }
+
+        // most of the frequently accessed items must have survived
+        assertTrue(n > ids.length / 4);
+    }
+
+    /**
+     * Checks that a scan over items that are read only once does not
+     * evict items that are used frequently.
+     */
+    public void testScanResistance() {
+        KeyValueCache<NodeId, NodeId> cache =
+            new ClockCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(100);
+
+        NodeId[] hot = new NodeId[50];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = NodeId.randomId();
+            cache.put(hot[i], hot[i], 1);
+            cache.get(hot[i]);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            NodeId id = NodeId.randomId();
+            cache.put(id, id, 1);
+        }
+
+        for (NodeId id : hot) {
+            assertTrue(cache.containsKey(id));
+        }
+    }
+
+    /**
+     * Checks the memory accounting when entries are replaced, removed
+     * and cleared.
+     */
+    public void testSizeAccounting() {
+        KeyValueCache<NodeId, NodeId> cache =
+            new ClockCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(1000);
+
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        assertNull(cache.put(a, a, 10));
+        assertEquals(a, cache.put(a, b, 20));
+        assertEquals(20, cache.getMemoryUsed());
+        assertEquals(b, cache.get(a));
+
+        cache.put(b, b, 5);
+        assertEquals(25, cache.getMemoryUsed());
+        assertEquals(b, cache.remove(a));
+        assertNull(cache.remove(a));
+        assertEquals(5, cache.getMemoryUsed());
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertEquals(0, cache.getElementCount());
+    }
+
+    /**
+     * Checks that the cache policy can be selected by name.
+     */
+    public void testNewInstance() {
+        assertTrue(ConcurrentCache.newInstance(
+                "test", ConcurrentCache.POLICY_CLOCK) instanceof ClockCache);
+        assertFalse(ConcurrentCache.newInstance(
+                "test", ConcurrentCache.POLICY_LRU) instanceof ClockCache);
+        try {
+            ConcurrentCache.newInstance("test", "unknown");
+            fail("unknown cache policy");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+}
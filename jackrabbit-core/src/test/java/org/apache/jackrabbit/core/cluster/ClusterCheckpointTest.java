@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.apache.jackrabbit.core.fs.local.LocalFileSystem;
+import org.apache.jackrabbit.test.JUnitTest;
+
+/**
+ * Tests cluster nodes that restore a checkpoint when joining the cluster.
+ */
+public class ClusterCheckpointTest extends JUnitTest {
+
+    private static final String BASE = "./target/clusterCheckpointTest";
+
+    public void setUp() throws Exception {
+        deleteAll();
+
+        String xml = FileUtils.readFileToString(new File(
+                "./src/test/resources/org/apache/jackrabbit/core/cluster/repository-h2.xml"));
+        xml = xml.replace("</Journal>", "</Journal>"
+                + "<Checkpoint>"
+                + "<FileSystem class=\"org.apache.jackrabbit.core.fs.local.LocalFileSystem\">"
+                + "<param name=\"path\" value=\"${rep.home}/../checkpoint\"/>"
+                + "</FileSystem>"
+                + "</Checkpoint>");
+        FileUtils.writeStringToFile(new File(BASE + "/node1/repository.xml"), xml);
+        FileUtils.writeStringToFile(new File(BASE + "/node2/repository.xml"), xml);
+    }
+
+    public void tearDown() throws Exception {
+        deleteAll();
+    }
+
+    private static void deleteAll() throws IOException {
+        FileUtils.deleteDirectory(new File(BASE));
+    }
+
+    public void testRestoreCheckpoint() throws Exception {
+        CheckpointRepository rep1 = new CheckpointRepository("node1");
+        try {
+            Session s1 = login(rep1);
+            Node test = s1.getRootNode().addNode("test");
+            test.addNode("before").setProperty("text", "checkpoint");
+            s1.save();
+
+            Checkpoint checkpoint = rep1.getClusterNode().checkpoint();
+            assertTrue(checkpoint.getRevision() > 0);
+
+            test.addNode("after").setProperty("text", "checkpoint");
+            s1.save();
+            s1.logout();
+
+            CheckpointRepository rep2 = new CheckpointRepository("node2");
+            try {
+                Checkpoint restored =
+                    rep2.getClusterNode().getRestoredCheckpoint();
+                assertNotNull(restored);
+                assertEquals(checkpoint.getRevision(), restored.getRevision());
+                assertEquals(rep1.getClusterNode().getRevision(),
+                        rep2.getClusterNode().getRevision());
+
+                // the index contains the nodes of the snapshot and the tail
+                Session s2 = login(rep2);
+                QueryManager qm = s2.getWorkspace().getQueryManager();
+                Query q = qm.createQuery(
+                        "//test/*[jcr:contains(., 'checkpoint')]", Query.XPATH);
+                assertEquals(2, q.execute().getNodes().getSize());
+                s2.logout();
+            } finally {
+                rep2.shutdown();
+            }
+        } finally {
+            rep1.shutdown();
+        }
+    }
+
+    public void testPreviousCheckpointIsKept() throws Exception {
+        File snapshots = new File(BASE, "snapshots");
+        FileUtils.writeStringToFile(
+                new File(snapshots, Checkpoint.getIndexName("default") + "/a"), "a");
+        LocalFileSystem fs = new LocalFileSystem();
+        fs.setPath(BASE + "/checkpoint");
+        fs.init();
+        try {
+            assertNull(Checkpoint.read(fs));
+            for (long revision = 1; revision <= 3; revision++) {
+                Checkpoint.write(fs, revision, snapshots);
+                assertEquals(revision, Checkpoint.read(fs).getRevision());
+            }
+            assertFalse(fs.exists("/" + Checkpoint.FOLDER_PREFIX + 1));
+            assertTrue(fs.exists("/" + Checkpoint.FOLDER_PREFIX + 2));
+            assertTrue(fs.exists("/" + Checkpoint.FOLDER_PREFIX + 3));
+
+            File dir = new File(BASE, "restored");
+            Checkpoint checkpoint = Checkpoint.read(fs);
+            assertTrue(checkpoint.restoreIndex("default", dir));
+            assertEquals("a", FileUtils.readFileToString(new File(dir, "a")));
+            // every snapshot is restored only once
+            assertFalse(checkpoint.restoreIndex("default", dir));
+            assertFalse(checkpoint.restoreIndex("other", dir));
+        } finally {
+            fs.close();
+        }
+    }
+
+    private static Session login(RepositoryImpl repository) throws Exception {
+        return repository.login(
+                new SimpleCredentials("admin", "admin".toCharArray()));
+    }
+
+    /**
+     * Repository that gives access to its cluster node.
+     */
+    private static class CheckpointRepository extends RepositoryImpl {
+
+        CheckpointRepository(String node) throws RepositoryException {
+            super(RepositoryConfig.create(new File(BASE, node)));
+        }
+
+        ClusterNode getClusterNode() {
+            return context.getClusterNode();
+        }
+
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
+import org.apache.jackrabbit.core.config.BeanConfig;
+import org.apache.jackrabbit.core.config.ClusterConfig;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.journal.Journal;
+import org.apache.jackrabbit.core.journal.JournalFactory;
+import org.apache.jackrabbit.core.journal.MemoryJournal;
+import org.apache.jackrabbit.core.journal.MemoryJournal.MemoryRecord;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceResolver;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+import org.apache.jackrabbit.test.JUnitTest;
+
+/**
+ * Test cases for the synchronization of cluster nodes that announce their
+ * revisions with a {@link UDPRevisionNotifier}.
+ */
+public class ClusterNotificationTest extends JUnitTest {
+
+    /** Default workspace name. */
+    private static final String DEFAULT_WORKSPACE = "default";
+
+    /** Sync delay: long enough to never sync periodically in this test. */
+    private static final long SYNC_DELAY = 600000;
+
+    /** Time to wait for a cluster node to pick up an announced revision. */
+    private static final long TIMEOUT = 10000;
+
+    /** Master node. */
+    private ClusterNode master;
+
+    /** Slave node. */
+    private ClusterNode slave;
+
+    /** Statistics of the slave node. */
+    private final RepositoryStatisticsImpl statistics =
+        new RepositoryStatisticsImpl();
+
+    /** Records shared among multiple memory journals. */
+    private final ArrayList<MemoryRecord> records = new ArrayList<MemoryRecord>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        int masterPort = getFreePort();
+        int slavePort = getFreePort();
+        String members = "localhost:" + masterPort + ",localhost:" + slavePort;
+
+        master = createClusterNode("master", masterPort, members,
+                new RepositoryStatisticsImpl());
+        master.start();
+
+        slave = createClusterNode("slave", slavePort, members, statistics);
+        slave.start();
+
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        if (slave != null) {
+            slave.stop();
+        }
+        if (master != null) {
+            master.stop();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Verify that a cluster node synchronizes as soon as another cluster
+     * node announces a new revision, without waiting for the sync delay.
+     */
+    public void testSyncOnNotification() throws Exception {
+        LockEventChannel channel = master.createLockChannel(DEFAULT_WORKSPACE);
+        SimpleEventListener listener = new SimpleEventListener();
+        slave.createLockChannel(DEFAULT_WORKSPACE).setListener(listener);
+
+        for (int i = 0; i < 3; i++) {
+            channel.create(NodeId.randomId(), true, "admin").ended(true);
+            waitForRevision(slave, master.getRevision());
+        }
+        assertEquals(3, listener.clusterEvents.size());
+
+        assertTrue(getCounter(RepositoryStatistics.Type.CLUSTER_SYNC_COUNTER) > 1);
+        assertEquals(0, getCounter(RepositoryStatistics.Type.CLUSTER_REVISION_LAG));
+    }
+
+    /**
+     * Verify that revisions announced by a cluster node are not processed
+     * by itself again.
+     */
+    public void testOwnRevisionsAreIgnored() throws Exception {
+        final ArrayList<Long> announced = new ArrayList<Long>();
+        master.getRevisionNotifier().setListener(new RevisionListener() {
+            public void externalRevision(
+                    String clusterNodeId, long revision, long timestamp) {
+                synchronized (announced) {
+                    announced.add(revision);
+                }
+            }
+        });
+        LockEventChannel channel = master.createLockChannel(DEFAULT_WORKSPACE);
+        channel.create(NodeId.randomId(), true, "admin").ended(true);
+        channel = slave.createLockChannel(DEFAULT_WORKSPACE);
+        channel.create(NodeId.randomId(), true, "admin").ended(true);
+
+        long end = System.currentTimeMillis() + TIMEOUT;
+        synchronized (announced) {
+            while (announced.isEmpty() && System.currentTimeMillis() < end) {
+                announced.wait(100);
+            }
+            assertEquals(1, announced.size());
+            assertEquals(slave.getRevision(), announced.get(0).longValue());
+        }
+    }
+
+    private long getCounter(RepositoryStatistics.Type type) {
+        return statistics.getCounter(type).get();
+    }
+
+    private static void waitForRevision(ClusterNode node, long revision)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (node.getRevision() < revision) {
+            if (System.currentTimeMillis() > end) {
+                fail("Revision " + revision + " not synchronized");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static int getFreePort() throws Exception {
+        DatagramSocket socket = new DatagramSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Create a cluster node, with a memory journal referencing the shared
+     * list of records and a UDP revision notifier.
+     *
+     * @param id cluster node id
+     * @param port local port of the revision notifier
+     * @param members addresses of the cluster members
+     * @param statistics repository statistics
+     */
+    private ClusterNode createClusterNode(String id, int port, String members,
+            RepositoryStatisticsImpl statistics) throws Exception {
+        final MemoryJournal journal = new MemoryJournal() {
+            protected boolean syncAgainOnNewRecords() {
+                return true;
+            }
+        };
+        JournalFactory jf = new JournalFactory() {
+            public Journal getJournal(NamespaceResolver resolver)
+                    throws RepositoryException {
+                return journal;
+            }
+        };
+        Properties properties = new Properties();
+        properties.setProperty("host", "localhost");
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("members", members);
+        BeanConfig notifierConfig = new BeanConfig(
+                UDPRevisionNotifier.class.getName(), properties);
+        ClusterConfig cc = new ClusterConfig(id, SYNC_DELAY, -1, jf, notifierConfig);
+        SimpleClusterContext context = new SimpleClusterContext(cc);
+
+        journal.setRepositoryHome(context.getRepositoryHome());
+        journal.init(id, context.getNamespaceResolver());
+        journal.setRecords(records);
+
+        ClusterNode clusterNode = new ClusterNode();
+        clusterNode.setRepositoryStatistics(statistics);
+        clusterNode.init(context);
+        return clusterNode;
+    }
+
+}
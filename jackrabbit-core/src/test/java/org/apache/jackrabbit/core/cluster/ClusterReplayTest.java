@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.cluster.SimpleEventListener.UpdateEvent;
+import org.apache.jackrabbit.core.config.ClusterConfig;
+import org.apache.jackrabbit.core.journal.Journal;
+import org.apache.jackrabbit.core.journal.JournalFactory;
+import org.apache.jackrabbit.core.journal.MemoryJournal;
+import org.apache.jackrabbit.core.journal.MemoryJournal.MemoryRecord;
+import org.apache.jackrabbit.core.observation.EventState;
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceResolver;
+import org.apache.jackrabbit.test.JUnitTest;
+
+/**
+ * Test cases for replaying the changes of other cluster nodes with
+ * multiple threads.
+ */
+public class ClusterReplayTest extends JUnitTest {
+
+    /** Sync delay: 5 seconds. */
+    private static final long SYNC_DELAY = 5000;
+
+    /** Number of replay threads of the slave. */
+    private static final int REPLAY_THREADS = 4;
+
+    /** Number of updates. */
+    private static final int UPDATES = 300;
+
+    /** Update event factory. */
+    private final UpdateEventFactory factory = UpdateEventFactory.getInstance();
+
+    /** Records shared among multiple memory journals. */
+    private final ArrayList<MemoryRecord> records = new ArrayList<MemoryRecord>();
+
+    /** Master node. */
+    private ClusterNode master;
+
+    /** Slave node. */
+    private ClusterNode slave;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        master = createClusterNode("master", 1);
+        master.start();
+
+        slave = createClusterNode("slave", REPLAY_THREADS);
+        slave.disableAutoSync();
+        slave.start();
+
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        if (slave != null) {
+            slave.stop();
+        }
+        if (master != null) {
+            master.stop();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Verify that all updates are delivered in the order of the journal per
+     * workspace, and that consecutive updates of a workspace are batched.
+     */
+    public void testReplayPreservesOrder() throws Exception {
+        RecordingListener a = new RecordingListener(100);
+        RecordingListener b = new RecordingListener(0);
+        slave.createUpdateChannel("a").setListener(a);
+        slave.createUpdateChannel("b").setListener(new PlainListener(b));
+
+        List<String> expectedA = new ArrayList<String>();
+        List<String> expectedB = new ArrayList<String>();
+        for (int i = 0; i < UPDATES; i++) {
+            String userData = String.valueOf(i);
+            if (i % 3 == 0) {
+                commit("b", userData);
+                expectedB.add(userData);
+            } else {
+                commit("a", userData);
+                expectedA.add(userData);
+            }
+        }
+
+        slave.sync();
+
+        assertEquals(master.getRevision(), slave.getRevision());
+        assertEquals(expectedA, a.getUserData());
+        assertEquals(expectedB, b.getUserData());
+        assertTrue(a.getCalls() < expectedA.size());
+        assertEquals(expectedB.size(), b.getCalls());
+    }
+
+    /**
+     * Verify that the updates of the version storage are delivered in the
+     * order of the journal relative to the updates of the workspaces.
+     */
+    public void testReplayOrdersVersionUpdates() throws Exception {
+        List<String> delivered =
+            Collections.synchronizedList(new ArrayList<String>());
+        slave.createUpdateChannel("a").setListener(
+                new RecordingListener(100, delivered));
+        slave.createUpdateChannel(null).setListener(
+                new RecordingListener(0, delivered));
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < UPDATES; i++) {
+            String userData = String.valueOf(i);
+            commit(i % 10 == 9 ? null : "a", userData);
+            expected.add(userData);
+        }
+
+        slave.sync();
+
+        assertEquals(master.getRevision(), slave.getRevision());
+        assertEquals(expected, new ArrayList<String>(delivered));
+    }
+
+    /**
+     * Verify that the revision is only advanced up to the update preceding
+     * an update that can not be delivered, and that the remaining updates
+     * are delivered again by the next synchronization.
+     */
+    public void testFailedReplayIsRetried() throws Exception {
+        RecordingListener a = new RecordingListener(0);
+        a.failAt = String.valueOf(UPDATES / 2);
+        slave.createUpdateChannel("a").setListener(a);
+
+        long revision = 0;
+        for (int i = 0; i < UPDATES; i++) {
+            if (i == UPDATES / 2) {
+                revision = master.getRevision();
+            }
+            commit("a", String.valueOf(i));
+        }
+
+        slave.sync();
+        assertEquals(revision, slave.getRevision());
+
+        a.failAt = null;
+        a.clear();
+        slave.sync();
+        assertEquals(master.getRevision(), slave.getRevision());
+        assertEquals(UPDATES - UPDATES / 2, a.getUserData().size());
+    }
+
+    private void commit(String workspace, String userData)
+            throws ClusterException {
+        UpdateEvent template = factory.createUpdateOperation();
+        UpdateEvent update = new UpdateEvent(template.getChanges(),
+                template.getEvents(), System.currentTimeMillis(), userData);
+        UpdateEventChannel channel = master.createUpdateChannel(workspace);
+        channel.updateCreated(update);
+        channel.updatePrepared(update);
+        channel.updateCommitted(update, null);
+    }
+
+    /**
+     * Create a cluster node, with a memory journal referencing the shared
+     * list of records.
+     *
+     * @param id cluster node id
+     * @param replayThreads number of replay threads
+     */
+    private ClusterNode createClusterNode(String id, int replayThreads)
+            throws Exception {
+        final MemoryJournal journal = new MemoryJournal();
+        JournalFactory jf = new JournalFactory() {
+            public Journal getJournal(NamespaceResolver resolver)
+                    throws RepositoryException {
+                return journal;
+            }
+        };
+        ClusterConfig cc = new ClusterConfig(
+                id, SYNC_DELAY, -1, jf, null, replayThreads);
+        SimpleClusterContext context = new SimpleClusterContext(cc);
+
+        journal.setRepositoryHome(context.getRepositoryHome());
+        journal.init(id, context.getNamespaceResolver());
+        journal.setRecords(records);
+
+        ClusterNode clusterNode = new ClusterNode();
+        clusterNode.init(context);
+        return clusterNode;
+    }
+
+    /**
+     * Listener that records the user data of the delivered updates.
+     */
+    private static class RecordingListener implements BatchUpdateEventListener {
+
+        /** Time to wait in the first call, so that further records queue up. */
+        private final long firstCallDelay;
+
+        private final List<String> userData;
+
+        private int calls;
+
+        /** User data of the update to fail with an illegal state. */
+        volatile String failAt;
+
+        RecordingListener(long firstCallDelay) {
+            this(firstCallDelay,
+                    Collections.synchronizedList(new ArrayList<String>()));
+        }
+
+        RecordingListener(long firstCallDelay, List<String> userData) {
+            this.firstCallDelay = firstCallDelay;
+            this.userData = userData;
+        }
+
+        public void externalUpdate(ChangeLog changes, List<EventState> events,
+                long timestamp, String userData) throws RepositoryException {
+            called();
+            record(userData);
+        }
+
+        public void externalUpdate(ChangeLog changes,
+                List<ChangeLogRecord> records) throws RepositoryException {
+            called();
+            for (ChangeLogRecord record : records) {
+                record(record.getUserData());
+            }
+        }
+
+        private void called() {
+            boolean first;
+            synchronized (this) {
+                first = calls++ == 0;
+            }
+            if (first && firstCallDelay > 0) {
+                try {
+                    Thread.sleep(firstCallDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void record(String data) throws RepositoryException {
+            if (data.equals(failAt)) {
+                throw new RepositoryException(new IllegalStateException(data));
+            }
+            userData.add(data);
+        }
+
+        synchronized int getCalls() {
+            return calls;
+        }
+
+        List<String> getUserData() {
+            return new ArrayList<String>(userData);
+        }
+
+        synchronized void clear() {
+            calls = 0;
+            userData.clear();
+        }
+
+    }
+
+    /**
+     * Listener that does not support batches.
+     */
+    private static class PlainListener implements UpdateEventListener {
+
+        private final UpdateEventListener delegate;
+
+        PlainListener(UpdateEventListener delegate) {
+            this.delegate = delegate;
+        }
+
+        public void externalUpdate(ChangeLog changes, List<EventState> events,
+                long timestamp, String userData) throws RepositoryException {
+            delegate.externalUpdate(changes, events, timestamp, userData);
+        }
+
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.apache.jackrabbit.core.journal.Journal;
+import org.apache.jackrabbit.core.journal.RecordIterator;
+import org.apache.jackrabbit.test.JUnitTest;
+
+/**
+ * Tests clustering with a database journal that uses group commit.
+ */
+public class DbClusterGroupCommitTest extends JUnitTest {
+
+    private static final int THREADS = 8;
+
+    private static final int SAVES = 10;
+
+    public void setUp() throws Exception {
+        deleteAll();
+
+        String xml = FileUtils.readFileToString(new File(
+                "./src/test/resources/org/apache/jackrabbit/core/cluster/repository-h2.xml"));
+        xml = xml.replace("<param name=\"databaseType\" value=\"h2\"/>",
+                "<param name=\"databaseType\" value=\"h2\"/>"
+                + "<param name=\"groupCommitSize\" value=\"4\"/>");
+        FileUtils.writeStringToFile(
+                new File("./target/dbClusterGroupCommitTest/node1/repository.xml"), xml);
+        FileUtils.writeStringToFile(
+                new File("./target/dbClusterGroupCommitTest/node2/repository.xml"), xml);
+    }
+
+    public void tearDown() throws Exception {
+        deleteAll();
+    }
+
+    private static void deleteAll() throws IOException {
+        FileUtils.deleteDirectory(new File("./target/dbClusterGroupCommitTest"));
+    }
+
+    public void testConcurrentSaves() throws Exception {
+        final ClusterRepository rep1 = new ClusterRepository(RepositoryConfig.create(
+                new File("./target/dbClusterGroupCommitTest/node1")));
+        RepositoryImpl rep2 = RepositoryImpl.create(RepositoryConfig.create(
+                new File("./target/dbClusterGroupCommitTest/node2")));
+        try {
+            Session s1 = login(rep1);
+            s1.getRootNode().addNode("test");
+            s1.save();
+
+            // values of the property changed by all threads, in the order
+            // in which the other cluster node replays the changes
+            final List<String> replayed =
+                Collections.synchronizedList(new ArrayList<String>());
+            Session s2 = login(rep2);
+            s2.getWorkspace().getObservationManager().addEventListener(
+                    new EventListener() {
+                        public void onEvent(EventIterator events) {
+                            while (events.hasNext()) {
+                                Event event = events.nextEvent();
+                                try {
+                                    if (event.getPath().equals("/test/last")) {
+                                        replayed.add(event.getUserData());
+                                    }
+                                } catch (RepositoryException e) {
+                                    replayed.add(e.toString());
+                                }
+                            }
+                        }
+                    },
+                    Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED,
+                    "/test", false, null, null, false);
+
+            final List<Exception> failures =
+                Collections.synchronizedList(new ArrayList<Exception>());
+            Thread[] threads = new Thread[THREADS];
+            for (int i = 0; i < threads.length; i++) {
+                final String name = "t" + i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            Session s = login(rep1);
+                            try {
+                                Node parent = s.getNode("/test").addNode(name);
+                                s.save();
+                                for (int j = 0; j < SAVES; j++) {
+                                    parent.addNode("n" + j);
+                                    s.save();
+                                    setLast(s, name + "/" + j);
+                                }
+                            } finally {
+                                s.logout();
+                            }
+                        } catch (Exception e) {
+                            failures.add(e);
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(Collections.emptyList(), failures);
+
+            // every group committed save has set the revision of the node
+            ClusterNode node1 = rep1.getClusterNode();
+            assertEquals(getLatestRevision(node1.getJournal()), node1.getRevision());
+
+            // saves of the other cluster node are still possible, and
+            // synchronize it with all records of the first one
+            s2.getRootNode().addNode("node2");
+            s2.save();
+            s1.getRootNode().addNode("node1");
+            s1.save();
+
+            assertTrue(s1.nodeExists("/node2"));
+
+            // the journal has the changes in the order of their commit
+            long timeout = System.currentTimeMillis() + 10000;
+            while (replayed.size() < THREADS * SAVES
+                    && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertEquals(THREADS * SAVES, replayed.size());
+            assertEquals(s1.getProperty("/test/last").getString(),
+                    replayed.get(replayed.size() - 1));
+            for (int i = 0; i < THREADS; i++) {
+                for (int j = 0; j < SAVES; j++) {
+                    assertTrue(s2.nodeExists("/test/t" + i + "/n" + j));
+                }
+            }
+            s1.logout();
+            s2.logout();
+        } finally {
+            rep1.shutdown();
+            rep2.shutdown();
+        }
+    }
+
+    /**
+     * Sets the property changed by all threads, retrying on conflicts.
+     */
+    private static void setLast(Session session, String value)
+            throws RepositoryException {
+        for (;;) {
+            try {
+                session.getWorkspace().getObservationManager().setUserData(value);
+                session.getNode("/test").setProperty("last", value);
+                session.save();
+                return;
+            } catch (InvalidItemStateException e) {
+                session.refresh(false);
+            }
+        }
+    }
+
+    private static long getLatestRevision(Journal journal) throws Exception {
+        long revision = -1;
+        RecordIterator records = journal.getRecords(0);
+        try {
+            while (records.hasNext()) {
+                revision = records.nextRecord().getRevision();
+            }
+        } finally {
+            records.close();
+        }
+        return revision;
+    }
+
+    private static Session login(RepositoryImpl repository) throws Exception {
+        return repository.login(
+                new SimpleCredentials("admin", "admin".toCharArray()));
+    }
+
+    private static class ClusterRepository extends RepositoryImpl {
+
+        ClusterRepository(RepositoryConfig config) throws RepositoryException {
+            super(config);
+        }
+
+        ClusterNode getClusterNode() {
+            return context.getClusterNode();
+        }
+
+    }
+
+}
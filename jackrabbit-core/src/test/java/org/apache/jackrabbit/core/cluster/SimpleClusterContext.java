@@ -104,4 +104,11 @@ public class SimpleClusterContext implements ClusterContext {
     public void updateEventsReady(String workspace) throws RepositoryException {
         // nothing to be done here
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void snapshotIndexes(File dir) throws RepositoryException {
+        // nothing to be done here
+    }
 }
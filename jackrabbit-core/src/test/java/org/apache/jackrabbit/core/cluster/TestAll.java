@@ -37,9 +37,13 @@ public class TestAll extends TestCase {
     public static Test suite() {
         TestSuite suite = new TestSuite();
 
+        suite.addTestSuite(ClusterCheckpointTest.class);
+        suite.addTestSuite(ClusterNotificationTest.class);
         suite.addTestSuite(ClusterRecordTest.class);
+        suite.addTestSuite(ClusterReplayTest.class);
         suite.addTestSuite(ClusterSyncTest.class);
         suite.addTestSuite(DbClusterTest.class);
+        suite.addTestSuite(DbClusterGroupCommitTest.class);
         suite.addTestSuite(DbClusterTestJCR3162.class);
         suite.addTestSuite(FailUpdateOnJournalExceptionTest.class);
 
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.api.JackrabbitValue;
+import org.apache.jackrabbit.api.management.MarkProgressListener;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.gc.GarbageCollector;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+
+/**
+ * Test the DataStore garbage collector with a mark state directory.
+ */
+public class GCMarkStateTest extends AbstractJCRTest {
+
+    private File directory;
+
+    private List<String> referenced;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File("target/gc-mark-state");
+        FileUtils.deleteDirectory(directory);
+        referenced = new ArrayList<String>();
+        Random random = new Random();
+        byte[] data = new byte[10000];
+        for (int i = 0; i < 10; i++) {
+            random.nextBytes(data);
+            Node n = testRootNode.addNode("x" + i);
+            n.setProperty("data", superuser.getValueFactory().createBinary(
+                    new ByteArrayInputStream(data)));
+            superuser.save();
+            if (i % 2 == 0) {
+                n.remove();
+                superuser.save();
+            } else {
+                referenced.add(((JackrabbitValue) n.getProperty("data").getValue())
+                        .getContentIdentity());
+            }
+        }
+        Collections.sort(referenced);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+        referenced = null;
+        super.tearDown();
+    }
+
+    public void testMark() throws Exception {
+        GarbageCollector gc = createGarbageCollector();
+        if (gc == null) {
+            return;
+        }
+        Progress progress = new Progress(-1);
+        gc.setMarkEventListener(progress);
+        try {
+            gc.mark();
+            assertTrue(progress.batches > 0);
+            assertReferenced(new File(directory, "references.txt"));
+            gc.sweep();
+        } finally {
+            gc.close();
+        }
+        assertEquals(0, directory.list().length);
+        assertReadable();
+    }
+
+    public void testResume() throws Exception {
+        GarbageCollector gc = createGarbageCollector();
+        if (gc == null) {
+            return;
+        }
+        // stop the scan after the first persistence manager is done
+        Progress progress = new Progress(1);
+        gc.setMarkEventListener(progress);
+        gc.setConcurrentThreadSize(1);
+        try {
+            try {
+                gc.mark();
+                fail("The scan was not interrupted");
+            } catch (RepositoryException e) {
+                assertEquals(Progress.INTERRUPTED, e.getMessage());
+            }
+            String done = progress.persistenceManager;
+            assertNotNull(done);
+            assertFalse(new File(directory, "references.txt").exists());
+
+            progress = new Progress(-1);
+            gc.setMarkEventListener(progress);
+            gc.mark();
+            assertFalse(progress.persistenceManagers.contains(done));
+            assertReferenced(new File(directory, "references.txt"));
+            gc.sweep();
+        } finally {
+            gc.close();
+        }
+        assertReadable();
+    }
+
+    public void testEarlierScanIsNotResumed() throws Exception {
+        GarbageCollector gc = createGarbageCollector();
+        if (gc == null) {
+            return;
+        }
+        Progress progress = new Progress(-1);
+        gc.setMarkEventListener(progress);
+        try {
+            gc.mark();
+        } finally {
+            gc.close();
+        }
+        Set<String> scanned = progress.persistenceManagers;
+        assertTrue(new File(directory, "references.txt").exists());
+
+        // neither a complete nor an interrupted scan of a garbage collector
+        // that has been closed is used by another one
+        gc = createGarbageCollector();
+        progress = new Progress(1);
+        gc.setMarkEventListener(progress);
+        try {
+            gc.mark();
+            fail("The scan was not interrupted");
+        } catch (RepositoryException e) {
+            assertEquals(Progress.INTERRUPTED, e.getMessage());
+        } finally {
+            gc.close();
+        }
+        assertFalse(new File(directory, "references.txt").exists());
+
+        gc = createGarbageCollector();
+        progress = new Progress(-1);
+        gc.setMarkEventListener(progress);
+        try {
+            gc.mark();
+            assertEquals(scanned, progress.persistenceManagers);
+            assertReferenced(new File(directory, "references.txt"));
+            gc.sweep();
+        } finally {
+            gc.close();
+        }
+        assertReadable();
+    }
+
+    private GarbageCollector createGarbageCollector() throws RepositoryException {
+        Session session = getHelper().getSuperuserSession();
+        GarbageCollector gc = ((SessionImpl) session).createDataStoreGarbageCollector();
+        session.logout();
+        if (gc.getDataStore() == null || !gc.isPersistenceManagerScan()) {
+            gc.close();
+            return null;
+        }
+        gc.setMarkStateDirectory(directory);
+        return gc;
+    }
+
+    private void assertReferenced(File file) throws Exception {
+        List<String> ids = FileUtils.readLines(file, "UTF-8");
+        for (String id : referenced) {
+            assertTrue(id, ids.contains(id));
+        }
+        List<String> sorted = new ArrayList<String>(ids);
+        Collections.sort(sorted);
+        assertEquals(sorted, ids);
+    }
+
+    private void assertReadable() throws Exception {
+        for (int i = 1; i < 10; i += 2) {
+            Node n = testRootNode.getNode("x" + i);
+            assertEquals(10000, n.getProperty("data").getBinary().getSize());
+        }
+    }
+
+    /**
+     * Records the progress, and fails the scan after a number of batches.
+     */
+    private static class Progress implements MarkProgressListener {
+
+        static final String INTERRUPTED = "interrupted";
+
+        private final int maxBatches;
+
+        int batches;
+
+        String persistenceManager;
+
+        final Set<String> persistenceManagers = new HashSet<String>();
+
+        Progress(int maxBatches) {
+            this.maxBatches = maxBatches;
+        }
+
+        public void beforeScanning(Node n) throws RepositoryException {
+            if (batches == maxBatches) {
+                throw new RepositoryException(INTERRUPTED);
+            }
+        }
+
+        public void afterBatch(String persistenceManager, long nodes,
+                long references, double nodesPerSecond) {
+            assertTrue(nodes > 0);
+            assertTrue(nodesPerSecond >= 0);
+            this.persistenceManager = persistenceManager;
+            persistenceManagers.add(persistenceManager);
+            batches++;
+        }
+
+    }
+
+}
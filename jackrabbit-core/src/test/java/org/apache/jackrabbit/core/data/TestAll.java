@@ -44,6 +44,7 @@ public class TestAll extends TestCase {
         suite.addTestSuite(GarbageCollectorTest.class);
         suite.addTestSuite(GCConcurrentTest.class);
         suite.addTestSuite(GCEventListenerTest.class);
+        suite.addTestSuite(GCMarkStateTest.class);
         suite.addTestSuite(LazyFileInputStreamTest.class);
         suite.addTestSuite(NodeTypeTest.class);
         suite.addTestSuite(OpenFilesTest.class);
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.id;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class NodeIdMapTest extends TestCase {
+
+    public void testPutGetRemove() {
+        NodeIdMap<String> map = new NodeIdMap<String>();
+        NodeId a = new NodeId(1, 2);
+        NodeId b = new NodeId(2, 1);
+        assertTrue(map.isEmpty());
+        assertNull(map.put(a, "a"));
+        assertNull(map.put(b, "b"));
+        assertEquals("a", map.put(new NodeId(1, 2), "a2"));
+        assertEquals(2, map.size());
+        assertEquals("a2", map.get(a));
+        assertEquals("b", map.get(2, 1));
+        assertTrue(map.containsKey(b));
+        assertNull(map.get(new NodeId(1, 1)));
+
+        assertFalse(map.remove(1, 2, "a"));
+        assertTrue(map.remove(1, 2, map.get(a)));
+        assertNull(map.remove(a));
+        assertEquals("b", map.remove(b));
+        assertTrue(map.isEmpty());
+
+        try {
+            map.put(a, null);
+            fail("null values are not supported");
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares the map against a {@link HashMap} using random operations on
+     * a small set of keys, so that resizing, collisions and deletions in
+     * the middle of probe sequences are covered.
+     */
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        NodeId[] ids = new NodeId[500];
+        for (int i = 0; i < ids.length; i++) {
+            // few distinct bits, like the well-known node ids
+            ids[i] = new NodeId(0xbabecafebabecafeL, i);
+        }
+        NodeIdMap<Integer> map = new NodeIdMap<Integer>();
+        Map<NodeId, Integer> expected = new HashMap<NodeId, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            NodeId id = ids[random.nextInt(ids.length)];
+            switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                assertEquals(expected.put(id, i), map.put(id, i));
+                break;
+            case 2:
+                assertEquals(expected.remove(id), map.remove(id));
+                break;
+            default:
+                assertEquals(expected.get(id), map.get(id));
+            }
+            assertEquals(expected.size(), map.size());
+            if (i % 20000 == 0) {
+                map.clear();
+                expected.clear();
+            }
+        }
+        for (NodeId id : ids) {
+            assertEquals(expected.get(id), map.get(id));
+        }
+        assertEquals(new HashSet<Integer>(expected.values()),
+                new HashSet<Integer>(map.values()));
+    }
+
+}
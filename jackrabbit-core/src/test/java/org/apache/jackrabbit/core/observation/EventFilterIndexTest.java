@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.observation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.commons.conversion.PathResolver;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+
+/**
+ * Tests the selection of events by the {@link EventFilterIndex}.
+ */
+public class EventFilterIndexTest extends AbstractJCRTest {
+
+    private static final int LISTENERS = 300;
+
+    private ObservationDispatcher dispatcher;
+
+    private ObservationManagerImpl obsMgr;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        dispatcher = new ObservationDispatcher();
+        obsMgr = new ObservationManagerImpl(
+                dispatcher, (SessionImpl) superuser, null);
+    }
+
+    protected void tearDown() throws Exception {
+        dispatcher = null;
+        obsMgr = null;
+        super.tearDown();
+    }
+
+    public void testSelect() throws Exception {
+        EventConsumer deep = createConsumer(
+                Event.NODE_ADDED, true, "/a");
+        EventConsumer shallow = createConsumer(
+                Event.NODE_ADDED, false, "/a");
+        EventConsumer properties = createConsumer(
+                Event.PROPERTY_ADDED, true, "/a/b");
+        EventConsumer twoPaths = createConsumer(
+                Event.NODE_ADDED | Event.PROPERTY_ADDED, true, "/x", "/a", "/a/b");
+        EventConsumer blockAll = new EventConsumer(
+                (SessionImpl) superuser, new CountingListener(),
+                EventFilter.BLOCK_ALL);
+        EventFilterIndex index = new EventFilterIndex(Arrays.asList(
+                deep, shallow, properties, twoPaths, blockAll));
+
+        EventState nodeInA = nodeAdded("/a", "n");
+        EventState nodeBelowA = nodeAdded("/a/b/c", "n");
+        EventState propertyInB = propertyAdded("/a/b", "p");
+        EventState nodeInY = nodeAdded("/y", "n");
+        EventStateCollection events = obsMgr.createEventStateCollection();
+        events.addAll(Arrays.asList(
+                nodeInA, nodeBelowA, propertyInB, nodeInY));
+        EventFilterIndex.Selection selection = index.select(events);
+
+        assertEquals(Arrays.asList(nodeInA, nodeBelowA),
+                selection.getEvents(deep));
+        assertEquals(Collections.singletonList(nodeInA),
+                selection.getEvents(shallow));
+        assertEquals(Collections.singletonList(propertyInB),
+                selection.getEvents(properties));
+        assertEquals(Arrays.asList(nodeInA, nodeBelowA, propertyInB),
+                selection.getEvents(twoPaths));
+        assertTrue(selection.getEvents(blockAll).isEmpty());
+
+        // consumers registered after the index was built get all events
+        EventConsumer added = createConsumer(Event.NODE_ADDED, true, "/z");
+        assertEquals(events.getEvents(), selection.getEvents(added));
+    }
+
+    public void testDispatchSkipsListenersWithoutEvents() throws Exception {
+        CountingListener[] listeners = new CountingListener[LISTENERS];
+        for (int i = 0; i < LISTENERS; i++) {
+            listeners[i] = new CountingListener();
+            obsMgr.addEventListener(listeners[i], Event.NODE_ADDED,
+                    "/p" + i, true, null, null, false);
+        }
+        EventStateCollection events = obsMgr.createEventStateCollection();
+        events.addAll(Collections.singleton(nodeAdded("/p7/q", "n")));
+        events.prepare();
+        events.dispatch();
+        dispatcher.dispose();
+
+        for (int i = 0; i < LISTENERS; i++) {
+            assertEquals("listener " + i, i == 7 ? 1 : 0,
+                    listeners[i].deliveries.get());
+        }
+    }
+
+    private EventConsumer createConsumer(
+            int eventTypes, boolean isDeep, String... paths) throws Exception {
+        EventFilter filter = obsMgr.createEventFilter(eventTypes,
+                Arrays.asList(paths), isDeep, null, null, false, false, false);
+        return new EventConsumer(
+                (SessionImpl) superuser, new CountingListener(), filter);
+    }
+
+    private EventState nodeAdded(String parent, String name) throws Exception {
+        Path parentPath = getQPath(parent);
+        return EventState.childNodeAdded(NodeId.randomId(), parentPath,
+                NodeId.randomId(), getQPath(parent + "/" + name),
+                NameConstants.NT_UNSTRUCTURED, Collections.<Name>emptySet(),
+                superuser);
+    }
+
+    private EventState propertyAdded(String parent, String name)
+            throws Exception {
+        return EventState.propertyAdded(NodeId.randomId(), getQPath(parent),
+                getQPath(parent + "/" + name), NameConstants.NT_UNSTRUCTURED,
+                Collections.<Name>emptySet(), superuser);
+    }
+
+    private Path getQPath(String path) throws Exception {
+        return ((PathResolver) superuser).getQPath(path).getNormalizedPath();
+    }
+
+    private static class CountingListener implements EventListener {
+
+        private final AtomicInteger deliveries = new AtomicInteger();
+
+        public void onEvent(EventIterator events) {
+            deliveries.incrementAndGet();
+        }
+
+    }
+
+}
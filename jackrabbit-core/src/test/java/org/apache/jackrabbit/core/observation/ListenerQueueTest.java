@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.observation;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.jackrabbit.api.jmx.EventListenerMBean;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+
+/**
+ * Tests the delivery of events with a queue per listener that is drained by
+ * a pool of worker threads.
+ */
+public class ListenerQueueTest extends AbstractJCRTest {
+
+    private static final int COLLECTIONS = 3;
+
+    private ExecutorService workers;
+
+    private ObservationDispatcher dispatcher;
+
+    private ObservationManagerImpl obsMgr;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        workers = Executors.newFixedThreadPool(2);
+        dispatcher = new ObservationDispatcher(workers, null);
+        obsMgr = new ObservationManagerImpl(
+                dispatcher, (SessionImpl) superuser, null);
+    }
+
+    protected void tearDown() throws Exception {
+        workers.shutdown();
+        dispatcher = null;
+        obsMgr = null;
+        super.tearDown();
+    }
+
+    public void testSlowListenerDoesNotDelayOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> slowEvents = new ArrayList<String>();
+        EventListener slow = new EventListener() {
+            public void onEvent(EventIterator events) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // fall through
+                }
+                while (events.hasNext()) {
+                    try {
+                        slowEvents.add(events.nextEvent().getPath());
+                    } catch (Exception e) {
+                        fail(e.toString());
+                    }
+                }
+            }
+        };
+        final CountDownLatch delivered = new CountDownLatch(COLLECTIONS);
+        EventListener fast = new EventListener() {
+            public void onEvent(EventIterator events) {
+                delivered.countDown();
+            }
+        };
+        obsMgr.addEventListener(
+                slow, Event.NODE_ADDED, "/", true, null, null, false);
+        obsMgr.addEventListener(
+                fast, Event.NODE_ADDED, "/", true, null, null, false);
+
+        for (int i = 0; i < COLLECTIONS; i++) {
+            dispatchNodeAdded("n" + i);
+        }
+        assertTrue("fast listener delayed by slow listener",
+                delivered.await(10, TimeUnit.SECONDS));
+
+        EventListenerMBean slowBean = getMBean(slow);
+        Thread.sleep(10);
+        assertTrue(slowBean.getQueueBacklogMillis() > 0);
+
+        release.countDown();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (slowBean.getQueueBacklogMillis() > 0
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, slowEvents.size());
+        for (int i = 0; i < COLLECTIONS; i++) {
+            assertEquals("/n" + i, slowEvents.get(i));
+        }
+        assertEquals(COLLECTIONS, slowBean.getEventDeliveries());
+        assertEquals(COLLECTIONS, slowBean.getEventsDelivered());
+        assertEquals(0, slowBean.getQueueBacklogMillis());
+        assertEquals(COLLECTIONS, getMBean(fast).getEventDeliveries());
+
+        obsMgr.removeEventListener(slow);
+        assertNull(findMBean(slow));
+        dispatcher.dispose();
+        assertNull(findMBean(fast));
+    }
+
+    public void testListenersNotTrackedWithoutQueues() throws Exception {
+        ObservationDispatcher single = new ObservationDispatcher();
+        try {
+            ObservationManagerImpl manager = new ObservationManagerImpl(
+                    single, (SessionImpl) superuser, null);
+            EventListener listener = new EventListener() {
+                public void onEvent(EventIterator events) {
+                }
+            };
+            manager.addEventListener(
+                    listener, Event.NODE_ADDED, "/", true, null, null, false);
+            assertNull(findMBean(listener));
+            for (EventConsumer c : single.getAsynchronousConsumers()) {
+                assertNull(c.getTracker());
+            }
+        } finally {
+            single.dispose();
+        }
+    }
+
+    private EventListenerMBean getMBean(EventListener listener)
+            throws Exception {
+        EventListenerMBean bean = findMBean(listener);
+        assertNotNull("no MBean for " + listener, bean);
+        return bean;
+    }
+
+    private EventListenerMBean findMBean(EventListener listener)
+            throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName query = new ObjectName(ObservationDispatcher.MBEAN_DOMAIN
+                + ":type=EventListener,*");
+        for (ObjectName name : server.queryNames(query, null)) {
+            EventListenerMBean bean = JMX.newMBeanProxy(
+                    server, name, EventListenerMBean.class);
+            if (bean.getToString().equals(listener.toString())) {
+                return bean;
+            }
+        }
+        return null;
+    }
+
+    private void dispatchNodeAdded(String name) throws Exception {
+        PathFactory factory = PathFactoryImpl.getInstance();
+        Path root = factory.getRootPath();
+        Name childName = NameFactoryImpl.getInstance().create(
+                Name.NS_DEFAULT_URI, name);
+        EventStateCollection events = obsMgr.createEventStateCollection();
+        events.addAll(Collections.singleton(EventState.childNodeAdded(
+                NodeId.randomId(), root, NodeId.randomId(),
+                factory.create(root, childName, true),
+                NameConstants.NT_UNSTRUCTURED, Collections.<Name>emptySet(),
+                superuser)));
+        events.prepare();
+        events.dispatch();
+    }
+
+}
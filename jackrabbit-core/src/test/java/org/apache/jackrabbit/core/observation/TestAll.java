@@ -42,6 +42,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(MoveInPlaceTest.class);
         suite.addTestSuite(ShareableNodesTest.class);
         suite.addTestSuite(WarningOnSaveWithNotificationThreadTest.class);
+        suite.addTestSuite(ListenerQueueTest.class);
+        suite.addTestSuite(EventFilterIndexTest.class);
 
         return suite;
     }
@@ -32,6 +32,7 @@ import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.persistence.mem.InMemBundlePersistenceManager;
 import org.apache.jackrabbit.core.persistence.mem.InMemPersistenceManager;
 import org.apache.jackrabbit.core.persistence.obj.ObjectPersistenceManager;
+import org.apache.jackrabbit.core.persistence.pool.BundleDbPersistenceManager;
 import org.apache.jackrabbit.core.persistence.xml.XMLPersistenceManager;
 import org.apache.jackrabbit.core.state.ChangeLog;
 import org.apache.jackrabbit.core.state.ItemState;
@@ -118,6 +119,80 @@ public class PersistenceManagerTest extends TestCase {
         assertPersistenceManager(manager);
     }
 
+    public void testH2PoolPersistenceManagerWithConcurrentReads()
+            throws Exception {
+        org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager manager =
+            new org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager();
+        manager.setDriver("org.h2.Driver");
+        manager.setUrl("jdbc:h2:mem:" + database.getPath());
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setConcurrentReads("true");
+        assertPersistenceManager(manager);
+    }
+
+    /**
+     * Verify that a cluster node can still read a cached node after another
+     * cluster node has replaced the child node pages of the node.
+     */
+    public void testClusteredChildNodePages() throws Exception {
+        NamespaceRegistryImpl registry =
+            new NamespaceRegistryImpl(new MemoryFileSystem());
+        BundleDbPersistenceManager first = createClusteredManager(registry);
+        BundleDbPersistenceManager second = createClusteredManager(registry);
+        try {
+            NodeState node = new NodeState(
+                    NODE_ID, TEST, RepositoryImpl.ROOT_NODE_ID,
+                    ItemState.STATUS_NEW, true);
+            node.addPropertyName(NameConstants.JCR_PRIMARYTYPE);
+            for (int i = 0; i < 30; i++) {
+                node.addChildNodeEntry(NameFactoryImpl.getInstance().create(
+                        "", "child" + i), NodeId.randomId());
+            }
+            ChangeLog create = new ChangeLog();
+            create.added(node);
+            first.store(create);
+
+            // caches the bundle without accessing the child node entries
+            assertTrue(second.exists(NODE_ID));
+
+            node.setStatus(ItemState.STATUS_EXISTING);
+            node.removeChildNodeEntry(node.getChildNodeEntries().get(15).getId());
+            ChangeLog update = new ChangeLog();
+            update.modified(node);
+            first.store(update);
+
+            NodeState stale = second.load(NODE_ID);
+            assertEquals(30, stale.getChildNodeEntries().size());
+
+            second.onExternalUpdate(update);
+            assertEquals(node, second.load(NODE_ID));
+        } finally {
+            second.close();
+            first.close();
+        }
+    }
+
+    private BundleDbPersistenceManager createClusteredManager(
+            NamespaceRegistryImpl registry) throws Exception {
+        org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager manager =
+            new org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager();
+        manager.setDriver("org.h2.Driver");
+        manager.setUrl("jdbc:h2:mem:" + database.getPath());
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setChildNodePageSize("10");
+        manager.init(new PMContext(
+                directory,
+                new MemoryFileSystem(),
+                RepositoryImpl.ROOT_NODE_ID,
+                registry,
+                null,
+                null,
+                new RepositoryStatisticsImpl(),
+                true,
+                null));
+        return manager;
+    }
+
     private void assertPersistenceManager(PersistenceManager manager)
             throws Exception {
         manager.init(new PMContext(
@@ -220,6 +295,11 @@ public class PersistenceManagerTest extends TestCase {
         create.modified(references);
         manager.store(create);
 
+        if (manager instanceof BatchLoadingPersistenceManager) {
+            ((BatchLoadingPersistenceManager) manager).prefetch(
+                    Arrays.asList(NODE_ID, CHILD_ID, NodeId.randomId()));
+        }
+
         assertTrue(manager.exists(NODE_ID));
         assertTrue(manager.exists(CHILD_ID));
         assertTrue(manager.exists(PROPERTY_ID));
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+
+/**
+ * Test cases for storing the child node entries of a bundle in separate
+ * pages.
+ */
+public class ChildNodePageTest extends TestCase {
+
+    private static final int PAGE_SIZE = 100;
+
+    private MemoryBLOBStore blobStore;
+
+    private BundleBinding binding;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        blobStore = new MemoryBLOBStore();
+        binding = new BundleBinding(null, blobStore, null, null, null);
+    }
+
+    public void testSmallBundleIsNotPaged() throws Exception {
+        NodePropBundle bundle = createBundle(PAGE_SIZE);
+        assertTrue(store(bundle).isEmpty());
+        assertNull(bundle.getChildNodePages());
+        assertEquals(0, blobStore.blobs.size());
+        assertEquals(BundleBinding.VERSION_3, serialize(bundle)[0]);
+    }
+
+    public void testRoundtrip() throws Exception {
+        NodePropBundle bundle = createBundle(10 * PAGE_SIZE + 1);
+        List<ChildNodeEntry> expected =
+            new ArrayList<ChildNodeEntry>(bundle.getChildNodeEntries());
+        assertTrue(store(bundle).isEmpty());
+        assertEquals(11, bundle.getChildNodePages().size());
+        assertEquals(11, blobStore.blobs.size());
+
+        byte[] data = serialize(bundle);
+        assertEquals(BundleBinding.VERSION_4, data[0]);
+
+        NodePropBundle copy = deserialize(bundle.getId(), data);
+        assertFalse(copy.isChildNodeEntriesLoaded());
+        assertEquals(0, blobStore.gets);
+        assertEquals(expected, copy.getChildNodeEntries());
+        assertEquals(11, blobStore.gets);
+        assertEquals(bundle, copy);
+    }
+
+    public void testUnchangedEntriesAreNotWritten() throws Exception {
+        NodePropBundle bundle = createBundle(10 * PAGE_SIZE);
+        store(bundle);
+        NodePropBundle copy = deserialize(bundle.getId(), serialize(bundle));
+
+        blobStore.puts = 0;
+        assertTrue(store(copy).isEmpty());
+        assertEquals(0, blobStore.gets);
+
+        copy.loadChildNodeEntries();
+        assertTrue(store(copy).isEmpty());
+        assertEquals(0, blobStore.puts);
+    }
+
+    public void testAddWritesSinglePage() throws Exception {
+        NodePropBundle bundle = createBundle(10 * PAGE_SIZE);
+        store(bundle);
+
+        // append
+        blobStore.puts = 0;
+        bundle.addChildNodeEntry(createName(-1), NodeId.randomId());
+        assertTrue(store(bundle).isEmpty());
+        assertEquals(1, blobStore.puts);
+        assertEquals(11, bundle.getChildNodePages().size());
+
+        // insert in the middle
+        blobStore.puts = 0;
+        bundle.getChildNodeEntries().add(
+                450, new ChildNodeEntry(createName(-2), NodeId.randomId()));
+        assertEquals(1, store(bundle).size());
+        assertEquals(2, blobStore.puts);
+        assertEquals(12, bundle.getChildNodePages().size());
+        assertPersisted(bundle);
+    }
+
+    public void testRemoveWritesSinglePage() throws Exception {
+        NodePropBundle bundle = createBundle(10 * PAGE_SIZE);
+        store(bundle);
+
+        blobStore.puts = 0;
+        bundle.getChildNodeEntries().remove(550);
+        List<String> obsolete = store(bundle);
+        assertEquals(1, obsolete.size());
+        assertEquals(1, blobStore.puts);
+        binding.removeChildNodePages(obsolete);
+        assertEquals(10, blobStore.blobs.size());
+        assertPersisted(bundle);
+    }
+
+    public void testFewEntriesAreStoredInline() throws Exception {
+        NodePropBundle bundle = createBundle(2 * PAGE_SIZE);
+        store(bundle);
+        assertEquals(2, bundle.getChildNodePages().size());
+
+        List<ChildNodeEntry> entries = bundle.getChildNodeEntries();
+        entries.subList(PAGE_SIZE / 2, entries.size()).clear();
+        binding.removeChildNodePages(store(bundle));
+        assertNull(bundle.getChildNodePages());
+        assertEquals(0, blobStore.blobs.size());
+        assertEquals(BundleBinding.VERSION_3, serialize(bundle)[0]);
+        assertPersisted(bundle);
+    }
+
+    public void testDisablePaging() throws Exception {
+        NodePropBundle bundle = createBundle(2 * PAGE_SIZE);
+        store(bundle);
+        bundle.loadChildNodeEntries();
+        binding.removeChildNodePages(binding.storeChildNodePages(bundle, 0));
+        assertNull(bundle.getChildNodePages());
+        assertEquals(0, blobStore.blobs.size());
+        assertPersisted(bundle);
+    }
+
+    /**
+     * Applies random additions, removals and reorderings, and checks that
+     * the stored pages always contain the expected entries and that no
+     * pages are left behind.
+     */
+    public void testRandomOperations() throws Exception {
+        Random random = new Random(1);
+        NodePropBundle bundle = createBundle(5 * PAGE_SIZE);
+        store(bundle);
+        for (int i = 0; i < 200; i++) {
+            List<ChildNodeEntry> entries = bundle.getChildNodeEntries();
+            int changes = 1 + random.nextInt(20);
+            for (int j = 0; j < changes; j++) {
+                int index = random.nextInt(entries.size());
+                switch (random.nextInt(3)) {
+                case 0:
+                    entries.add(index, new ChildNodeEntry(
+                            createName(i * 100 + j), NodeId.randomId()));
+                    break;
+                case 1:
+                    if (entries.size() > 1) {
+                        entries.remove(index);
+                    }
+                    break;
+                default:
+                    entries.add(random.nextInt(entries.size()),
+                            entries.remove(index));
+                }
+            }
+            binding.removeChildNodePages(store(bundle));
+
+            List<NodePropBundle.ChildNodePage> pages =
+                bundle.getChildNodePages();
+            assertEquals(pages == null ? 0 : pages.size(),
+                    blobStore.blobs.size());
+            if (pages != null) {
+                for (NodePropBundle.ChildNodePage page : pages) {
+                    assertTrue(page.getSize() <= PAGE_SIZE);
+                }
+            }
+            bundle = assertPersisted(bundle);
+        }
+    }
+
+    private List<String> store(NodePropBundle bundle) throws Exception {
+        return binding.storeChildNodePages(bundle, PAGE_SIZE);
+    }
+
+    /**
+     * Checks that a copy read from the serialized bundle and the stored
+     * pages has the same child node entries, and returns the copy.
+     */
+    private NodePropBundle assertPersisted(NodePropBundle bundle)
+            throws Exception {
+        NodePropBundle copy = deserialize(bundle.getId(), serialize(bundle));
+        assertEquals(bundle.getChildNodeEntries(), copy.getChildNodeEntries());
+        return copy;
+    }
+
+    private byte[] serialize(NodePropBundle bundle) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        binding.writeBundle(out, bundle);
+        return out.toByteArray();
+    }
+
+    private NodePropBundle deserialize(NodeId id, byte[] data)
+            throws Exception {
+        blobStore.gets = 0;
+        return binding.readBundle(new ByteArrayInputStream(data), id);
+    }
+
+    private static NodePropBundle createBundle(int children) {
+        NodePropBundle bundle = new NodePropBundle(NodeId.randomId());
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+        for (int i = 0; i < children; i++) {
+            bundle.addChildNodeEntry(createName(i), NodeId.randomId());
+        }
+        return bundle;
+    }
+
+    private static Name createName(int i) {
+        return NameFactoryImpl.getInstance().create(
+                Name.NS_DEFAULT_URI, "child" + i);
+    }
+
+    /**
+     * Blob store that keeps the blobs in memory and counts the reads and
+     * writes.
+     */
+    private static class MemoryBLOBStore implements BLOBStore {
+
+        private final Map<String, byte[]> blobs = new HashMap<String, byte[]>();
+
+        private int puts;
+
+        private int gets;
+
+        public String createId(PropertyId id, int index) {
+            return id + "." + index;
+        }
+
+        public void put(String blobId, InputStream in, long size)
+                throws Exception {
+            puts++;
+            blobs.put(blobId, IOUtils.toByteArray(in));
+        }
+
+        public InputStream get(String blobId) throws Exception {
+            gets++;
+            byte[] data = blobs.get(blobId);
+            if (data == null) {
+                throw new Exception("no such BLOB: " + blobId);
+            }
+            return new ByteArrayInputStream(data);
+        }
+
+        public boolean remove(String blobId) {
+            return blobs.remove(blobId) != null;
+        }
+
+    }
+
+}
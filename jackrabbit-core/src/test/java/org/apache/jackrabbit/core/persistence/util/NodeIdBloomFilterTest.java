@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.util;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link NodeIdBloomFilter} class.
+ */
+public class NodeIdBloomFilterTest extends TestCase {
+
+    /**
+     * Checks that added ids are always found, and that the false positive
+     * rate is in the expected range.
+     */
+    public void testMightContain() {
+        NodeIdBloomFilter filter = new NodeIdBloomFilter(10000);
+        NodeId[] ids = new NodeId[10000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            filter.add(ids[i]);
+        }
+        filter.add(new NodeId(0, 0));
+
+        for (NodeId id : ids) {
+            assertTrue(filter.mightContain(id));
+        }
+        assertTrue(filter.mightContain(new NodeId(0, 0)));
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(NodeId.randomId())) {
+                falsePositives++;
+            }
+        }
+        // 8 bits per id give a false positive rate of about 2.5%
+        assertTrue(falsePositives < 500);
+    }
+
+    /**
+     * Checks that the filter size is rounded to whole words.
+     */
+    public void testGetSize() {
+        assertEquals(1024, new NodeIdBloomFilter(1024).getSize());
+        assertEquals(1024, new NodeIdBloomFilter(1030).getSize());
+        assertEquals(8, new NodeIdBloomFilter(0).getSize());
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * Test cases for the {@link OffHeapBundleCache} class.
+ */
+public class OffHeapBundleCacheTest extends TestCase {
+
+    private static byte[] data(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    public void testGetPutRemove() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 4096, 1024);
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+
+        assertNull(cache.get(a));
+        cache.put(a, data(100, 1));
+        cache.put(b, data(0, 0));
+        assertTrue(Arrays.equals(data(100, 1), cache.get(a)));
+        assertEquals(0, cache.get(b).length);
+
+        cache.put(a, data(50, 2));
+        assertTrue(Arrays.equals(data(50, 2), cache.get(a)));
+        assertEquals(2, cache.getElementCount());
+
+        cache.remove(a);
+        assertNull(cache.get(a));
+        assertEquals(1, cache.getElementCount());
+
+        cache.clear();
+        assertNull(cache.get(b));
+        assertEquals(0, cache.getElementCount());
+        assertEquals(0, cache.getMemoryUsed());
+    }
+
+    /**
+     * Checks that the oldest entries are evicted when the slabs are
+     * recycled, and that entries too large for a slab are not cached.
+     */
+    public void testEviction() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 4096, 1024);
+        NodeId[] ids = new NodeId[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            cache.put(ids[i], data(200, i));
+        }
+
+        // 4 slabs of 4 records each, one of them partially filled
+        assertTrue(cache.getElementCount() <= 16);
+        assertTrue(cache.getElementCount() >= 12);
+        assertNull(cache.get(ids[0]));
+        for (int i = ids.length - 10; i < ids.length; i++) {
+            assertTrue(Arrays.equals(data(200, i), cache.get(ids[i])));
+        }
+
+        NodeId large = NodeId.randomId();
+        cache.put(large, data(2000, 0));
+        assertNull(cache.get(large));
+    }
+
+}
@@ -29,6 +29,9 @@ public class TestAll extends TestCase {
         suite.addTestSuite(BundleBindingTest.class);
         suite.addTestSuite(NodeCorruptionTest.class);
         suite.addTestSuite(BundleBindingRandomizedTest.class);
+        suite.addTestSuite(OffHeapBundleCacheTest.class);
+        suite.addTestSuite(NodeIdBloomFilterTest.class);
+        suite.addTestSuite(ChildNodePageTest.class);
 
         return suite;
     }
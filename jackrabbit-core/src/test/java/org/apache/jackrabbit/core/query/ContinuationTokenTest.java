@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+
+import org.apache.jackrabbit.api.query.JackrabbitQuery;
+import org.apache.jackrabbit.api.query.JackrabbitQueryResult;
+
+/**
+ * Tests paging through query results with continuation tokens.
+ */
+public class ContinuationTokenTest extends AbstractQueryTest {
+
+    private static final int NUM_NODES = 10;
+
+    private String statement;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        for (int i = 0; i < NUM_NODES; i++) {
+            testRootNode.addNode("node" + i).setProperty("name", 10 + i);
+        }
+        testRootNode.getSession().save();
+        statement = "/jcr:root" + testRoot + "/* order by @name";
+    }
+
+    public void testPaging() throws Exception {
+        List<String> paths = new ArrayList<String>();
+        String token = null;
+        do {
+            JackrabbitQueryResult result = executePage(qm, token, 3);
+            for (NodeIterator it = result.getNodes(); it.hasNext(); ) {
+                paths.add(it.nextNode().getPath());
+            }
+            token = result.getContinuationToken();
+        } while (token != null && paths.size() < 2 * NUM_NODES);
+        assertEquals(getAllPaths(), paths);
+    }
+
+    public void testPagingWithOffset() throws Exception {
+        JackrabbitQueryResult result = executePage(qm, null, 2);
+        String token = result.getContinuationToken();
+        assertNotNull(token);
+
+        Query q = qm.createQuery(statement, Query.XPATH);
+        ((JackrabbitQuery) q).setContinuationToken(token);
+        q.setOffset(1);
+        q.setLimit(2);
+        List<String> all = getAllPaths();
+        assertEquals(all.subList(3, 5), getPaths(q.execute().getNodes()));
+    }
+
+    public void testContinueWithOtherSession() throws Exception {
+        String token = executePage(qm, null, 4).getContinuationToken();
+        assertNotNull(token);
+
+        Session s = getHelper().getSuperuserSession();
+        try {
+            QueryManager qm2 = s.getWorkspace().getQueryManager();
+            List<String> all = getAllPaths();
+            assertEquals(all.subList(4, 8), getPaths(executePage(qm2, token, 4).getNodes()));
+        } finally {
+            s.logout();
+        }
+    }
+
+    public void testCursorReadsFromSnapshot() throws Exception {
+        List<String> all = getAllPaths();
+        String token = executePage(qm, null, 4).getContinuationToken();
+        assertNotNull(token);
+
+        // sorts before all other nodes, but the open cursor does not see it
+        testRootNode.addNode("first").setProperty("name", 0);
+        testRootNode.getSession().save();
+
+        assertEquals(all.subList(4, 8), getPaths(executePage(qm, token, 4).getNodes()));
+    }
+
+    public void testNoTokenWithoutLimit() throws Exception {
+        Query q = qm.createQuery(statement, Query.XPATH);
+        assertNull(((JackrabbitQueryResult) q.execute()).getContinuationToken());
+    }
+
+    public void testNoTokenAtEnd() throws Exception {
+        assertNull(executePage(qm, null, NUM_NODES + 1).getContinuationToken());
+    }
+
+    public void testInvalidToken() throws Exception {
+        try {
+            executePage(qm, "invalid", 2);
+            fail("invalid continuation token must be rejected");
+        } catch (RepositoryException e) {
+            // expected
+        }
+    }
+
+    public void testQueryObjectModel() throws Exception {
+        QueryObjectModelFactory qf = qm.getQOMFactory();
+        Query q = qf.createQuery(qf.selector(testNodeType, "s"), null, null, null);
+        try {
+            ((JackrabbitQuery) q).setContinuationToken(".0");
+            fail("query object models do not support continuation");
+        } catch (UnsupportedRepositoryOperationException e) {
+            // expected
+        }
+    }
+
+    private JackrabbitQueryResult executePage(QueryManager queryManager,
+                                              String token,
+                                              int limit)
+            throws RepositoryException {
+        Query q = queryManager.createQuery(statement, Query.XPATH);
+        ((JackrabbitQuery) q).setContinuationToken(token);
+        q.setLimit(limit);
+        return (JackrabbitQueryResult) q.execute();
+    }
+
+    private List<String> getAllPaths() throws RepositoryException {
+        return getPaths(qm.createQuery(statement, Query.XPATH).execute().getNodes());
+    }
+
+    private static List<String> getPaths(NodeIterator nodes)
+            throws RepositoryException {
+        List<String> paths = new ArrayList<String>();
+        while (nodes.hasNext()) {
+            paths.add(nodes.nextNode().getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query;
+
+import java.util.Arrays;
+
+import javax.jcr.Node;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+
+import org.apache.jackrabbit.commons.JcrUtils;
+
+/**
+ * Test cases for the planning of JCR_SQL2 join queries.
+ */
+public class JoinPlanTest extends AbstractQueryTest {
+
+    private static final int MANY = 20;
+
+    private Node node;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        node = testRootNode.addNode("jointest", "nt:unstructured");
+        for (int i = 0; i < MANY; i++) {
+            Node n = node.addNode("many" + i, "nt:unstructured");
+            n.setProperty("planKind", "many");
+            n.setProperty("planRef", "k" + i);
+        }
+        for (int i = 0; i < 2; i++) {
+            Node n = node.addNode("few" + i, "nt:unstructured");
+            n.setProperty("planKind", "few");
+            n.setProperty("planKey", "k" + i);
+        }
+        testRootNode.getSession().save();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        node.remove();
+        testRootNode.getSession().save();
+        super.tearDown();
+    }
+
+    public void testSmallerSideFirst() throws Exception {
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON a.planRef = b.planKey"
+                + " WHERE a.planKind = 'many' AND b.planKind = 'few'";
+        Query query = qm.createQuery(join, Query.JCR_SQL2);
+
+        String plan = ((QueryObjectModelImpl) query).explain();
+        assertTrue(plan, plan.contains("sides swapped"));
+        assertTrue(plan, plan.indexOf("AS b") < plan.indexOf("AS a"));
+        assertTrue(plan, plan.contains("(estimated 2 rows)"));
+        assertTrue(plan, plan.contains("(estimated " + MANY + " rows)"));
+
+        QueryResult result = query.execute();
+        assertEquals(Arrays.asList("a", "b"),
+                Arrays.asList(result.getSelectorNames()));
+        int count = 0;
+        for (Row row : JcrUtils.getRows(result)) {
+            Node a = row.getNode("a");
+            Node b = row.getNode("b");
+            assertEquals("many", a.getProperty("planKind").getString());
+            assertEquals(a.getProperty("planRef").getString(),
+                    b.getProperty("planKey").getString());
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
+    public void testWrittenOrderWhenLeftIsSmaller() throws Exception {
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON a.planKey = b.planRef"
+                + " WHERE a.planKind = 'few' AND b.planKind = 'many'";
+        Query query = qm.createQuery(join, Query.JCR_SQL2);
+
+        String plan = ((QueryObjectModelImpl) query).explain();
+        assertFalse(plan, plan.contains("sides swapped"));
+        assertTrue(plan, plan.contains("index nested loop join"));
+        checkResult(query.execute(), 2);
+    }
+
+    public void testHashJoin() throws Exception {
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " LEFT OUTER JOIN [nt:unstructured] AS b ON a.planRef = b.planKey"
+                + " WHERE a.planKind = 'many' AND b.planKind = 'few'";
+        Query query = qm.createQuery(join, Query.JCR_SQL2);
+
+        String plan = ((QueryObjectModelImpl) query).explain();
+        assertFalse(plan, plan.contains("sides swapped"));
+        assertTrue(plan, plan.contains("hash join"));
+        checkResult(query.execute(), 2);
+    }
+
+}
@@ -42,6 +42,7 @@ public class TestAll extends TestCase {
         suite.addTestSuite(SelectClauseTest.class);
         suite.addTestSuite(SQLTest.class);
         suite.addTestSuite(JoinTest.class);
+        suite.addTestSuite(JoinPlanTest.class);
         suite.addTestSuite(OrderByTest.class);
         suite.addTestSuite(XPathAxisTest.class);
         suite.addTestSuite(SkipDeletedNodesTest.class);
@@ -60,6 +61,7 @@ public class TestAll extends TestCase {
         suite.addTestSuite(SimilarQueryTest.class);
         suite.addTestSuite(FulltextSQL2QueryTest.class);
         suite.addTestSuite(LimitAndOffsetTest.class);
+        suite.addTestSuite(ContinuationTokenTest.class);
         suite.addTestSuite(SQL2NodeLocalNameTest.class);
         suite.addTestSuite(SQL2OuterJoinTest.class);
         suite.addTestSuite(SQL2PathEscapingTest.class);
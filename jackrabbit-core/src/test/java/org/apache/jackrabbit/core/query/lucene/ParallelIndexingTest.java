@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.query.QueryResult;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+
+/**
+ * <code>ParallelIndexingTest</code> checks that documents created by multiple
+ * threads are indexed correctly.
+ */
+public class ParallelIndexingTest extends AbstractIndexingTest {
+
+    private static final int NODE_COUNT = 200;
+
+    public void testParallelDocumentCreation() throws Exception {
+        SearchIndex index = getSearchIndex();
+        IndexingStatistics.Stage stage =
+            index.getIndexingStatistics().getDocumentCreation();
+        long documents = stage.getDocuments();
+        int concurrency = index.getIndexingConcurrency();
+        index.setIndexingConcurrency(4);
+        try {
+            for (int i = 0; i < NODE_COUNT; i++) {
+                testRootNode.addNode("node" + i).setProperty("value", i);
+            }
+            session.save();
+        } finally {
+            index.setIndexingConcurrency(concurrency);
+        }
+
+        assertTrue(stage.getDocuments() - documents >= NODE_COUNT);
+
+        QueryResult result = executeQuery(testPath + "/*[@value >= 0]");
+        assertEquals(NODE_COUNT, result.getNodes().getSize());
+        result = executeQuery(
+                testPath + "/*[@value = " + (NODE_COUNT - 1) + "]");
+        assertEquals(1, result.getNodes().getSize());
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.query.lucene.directory.DirectoryManager;
+import org.apache.jackrabbit.core.query.lucene.directory.FSDirectoryManager;
+import org.apache.jackrabbit.core.query.lucene.directory.RAMDirectoryManager;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * <code>ParentArrayTest</code> checks that the parent cache of an index is
+ * persisted, loaded for the same segments only and remapped on merges.
+ */
+public class ParentArrayTest extends TestCase {
+
+    private final File dir = new File("target", "ParentArrayTest");
+
+    private final NodeId root = NodeId.randomId();
+    private final NodeId a = NodeId.randomId();
+    private final NodeId b = NodeId.randomId();
+    private final NodeId c = NodeId.randomId();
+    private final NodeId d = NodeId.randomId();
+    private final NodeId e = NodeId.randomId();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+        super.tearDown();
+    }
+
+    public void testLoad() throws Exception {
+        DirectoryManager dirMgr = createFSDirectoryManager();
+        PersistentIndex idx = createIndex("index", dirMgr);
+        idx.addDocuments(new Document[]{
+                createDocument(root, null), createDocument(a, root),
+                createDocument(b, a), createDocument(c, a)});
+        idx.commit();
+        // initializes and persists the cache
+        ReadOnlyIndexReader reader = idx.getReadOnlyIndexReader(true);
+        ParentArray expected = getParents(reader);
+        reader.release();
+        idx.close();
+        assertTrue(new File(new File(dir, "index"), ParentArray.FILE_NAME).exists());
+
+        idx = createIndex("index", dirMgr);
+        reader = idx.getReadOnlyIndexReader(false);
+        try {
+            ParentArray parents = getParents(reader);
+            assertEquals(4, parents.size());
+            for (int i = 0; i < parents.size(); i++) {
+                assertEquals(expected.get(i), parents.get(i));
+            }
+            Map<NodeId, Integer> docs = getDocs(reader);
+            assertEquals(docs.get(a).intValue(), parents.get(docs.get(b)));
+            assertEquals(docs.get(a).intValue(), parents.get(docs.get(c)));
+        } finally {
+            reader.release();
+            idx.close();
+        }
+    }
+
+    public void testOtherSegments() throws Exception {
+        DirectoryManager dirMgr = createFSDirectoryManager();
+        PersistentIndex idx = createIndex("index", dirMgr);
+        idx.addDocuments(new Document[]{
+                createDocument(root, null), createDocument(a, root)});
+        idx.commit();
+        idx.getReadOnlyIndexReader(true).release();
+        idx.addDocuments(new Document[]{createDocument(b, a)});
+        idx.commit();
+        idx.close();
+
+        idx = createIndex("index", dirMgr);
+        ReadOnlyIndexReader reader = idx.getReadOnlyIndexReader(false);
+        try {
+            ParentArray parents = getParents(reader);
+            assertEquals(3, parents.size());
+            for (int i = 0; i < parents.size(); i++) {
+                assertEquals(-1, parents.get(i));
+            }
+        } finally {
+            reader.release();
+            idx.close();
+        }
+    }
+
+    public void testMerge() throws Exception {
+        DirectoryManager dirMgr = new RAMDirectoryManager();
+        PersistentIndex idx1 = createIndex("index1", dirMgr);
+        idx1.addDocuments(new Document[]{
+                createDocument(root, null), createDocument(a, root),
+                createDocument(b, a)});
+        idx1.commit();
+        idx1.removeDocument(TermFactory.createUUIDTerm(root.toString()));
+        PersistentIndex idx2 = createIndex("index2", dirMgr);
+        idx2.addDocuments(new Document[]{
+                createDocument(c, a), createDocument(d, c),
+                createDocument(e, d)});
+        idx2.commit();
+
+        PersistentIndex merged = createIndex("merged", dirMgr);
+        IndexReader[] readers = new IndexReader[]{
+                idx1.getReadOnlyIndexReader(true),
+                idx2.getReadOnlyIndexReader(true)};
+        try {
+            merged.addIndexes(readers);
+        } finally {
+            for (IndexReader reader : readers) {
+                Util.closeOrRelease(reader);
+            }
+        }
+        idx1.close();
+        idx2.close();
+
+        ReadOnlyIndexReader reader = merged.getReadOnlyIndexReader(false);
+        try {
+            ParentArray parents = getParents(reader);
+            assertEquals(5, parents.size());
+            Map<NodeId, Integer> docs = getDocs(reader);
+            assertFalse(docs.containsKey(root));
+            // deleted parent
+            assertEquals(-1, parents.get(docs.get(a)));
+            assertEquals(docs.get(a).intValue(), parents.get(docs.get(b)));
+            // parent merged from another index
+            assertEquals(-1, parents.get(docs.get(c)));
+            assertEquals(docs.get(c).intValue(), parents.get(docs.get(d)));
+            assertEquals(docs.get(d).intValue(), parents.get(docs.get(e)));
+        } finally {
+            reader.release();
+            merged.close();
+        }
+    }
+
+    private DirectoryManager createFSDirectoryManager() throws Exception {
+        SearchIndex handler = new SearchIndex();
+        handler.setPath(dir.getAbsolutePath());
+        DirectoryManager dirMgr = new FSDirectoryManager();
+        dirMgr.init(handler);
+        return dirMgr;
+    }
+
+    private static PersistentIndex createIndex(String name, DirectoryManager dirMgr)
+            throws Exception {
+        return new PersistentIndex(name,
+                new StandardAnalyzer(Version.LUCENE_36), Similarity.getDefault(),
+                new DocNumberCache(100),
+                new IndexingQueue(new IndexingQueueStore(new RAMDirectory())),
+                dirMgr, 0);
+    }
+
+    private static ParentArray getParents(ReadOnlyIndexReader reader) {
+        return reader.getBase().getBase().getParents();
+    }
+
+    private static Map<NodeId, Integer> getDocs(IndexReader reader)
+            throws Exception {
+        Map<NodeId, Integer> docs = new HashMap<NodeId, Integer>();
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            if (!reader.isDeleted(i)) {
+                docs.put(new NodeId(reader.document(i).get(FieldNames.UUID)), i);
+            }
+        }
+        return docs;
+    }
+
+    private static Document createDocument(NodeId id, NodeId parent) {
+        Document doc = new Document();
+        doc.add(new IDField(id));
+        doc.add(new Field(FieldNames.PARENT, false,
+                parent == null ? "" : parent.toString(), Field.Store.YES,
+                Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
+        return doc;
+    }
+}
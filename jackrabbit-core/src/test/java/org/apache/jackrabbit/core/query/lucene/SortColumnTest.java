@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.util.Collections;
+
+import javax.jcr.PropertyType;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.query.lucene.directory.DirectoryManager;
+import org.apache.jackrabbit.core.query.lucene.directory.FSDirectoryManager;
+import org.apache.jackrabbit.core.query.lucene.directory.RAMDirectoryManager;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * <code>SortColumnTest</code> checks that sort columns return the same values
+ * as the {@link SharedFieldCache}, are persisted and loaded for the same
+ * segments, and are written when indexes are merged.
+ */
+public class SortColumnTest extends TestCase {
+
+    private static final String PROPERTY = "1:p";
+
+    private static final String PREFIX =
+        FieldNames.createNamedValue(PROPERTY, "");
+
+    private final File dir = new File("target", "SortColumnTest");
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+        super.tearDown();
+    }
+
+    public void testLong() throws Exception {
+        checkColumn(PropertyType.LONG, LongField.longToString(-7),
+                LongField.longToString(42), LongField.longToString(3));
+    }
+
+    public void testDate() throws Exception {
+        checkColumn(PropertyType.DATE, DateField.timeToString(1000L),
+                DateField.timeToString(0L), DateField.timeToString(86400000L));
+    }
+
+    public void testDouble() throws Exception {
+        checkColumn(PropertyType.DOUBLE, DoubleField.doubleToString(1.5),
+                DoubleField.doubleToString(-0.25), DoubleField.doubleToString(1.5));
+    }
+
+    public void testString() throws Exception {
+        checkColumn(PropertyType.STRING, "bär", "", "apple");
+    }
+
+    public void testMultiValued() throws Exception {
+        PersistentIndex idx = createIndex("index", new RAMDirectoryManager());
+        Document doc = createDocument(PropertyType.STRING, "a");
+        doc.add(createField(PropertyType.STRING, "b"));
+        idx.addDocuments(new Document[]{doc});
+        idx.commit();
+        ReadOnlyIndexReader reader = idx.getReadOnlyIndexReader();
+        try {
+            assertNull(getColumn(reader));
+        } finally {
+            reader.release();
+            idx.close();
+        }
+    }
+
+    public void testMixedTypes() throws Exception {
+        PersistentIndex idx = createIndex("index", new RAMDirectoryManager());
+        idx.addDocuments(new Document[]{
+                createDocument(PropertyType.LONG, LongField.longToString(1)),
+                createDocument(PropertyType.DOUBLE, DoubleField.doubleToString(2))});
+        idx.commit();
+        ReadOnlyIndexReader reader = idx.getReadOnlyIndexReader();
+        try {
+            assertNull(getColumn(reader));
+        } finally {
+            reader.release();
+            idx.close();
+        }
+    }
+
+    public void testOtherSegments() throws Exception {
+        DirectoryManager dirMgr = createFSDirectoryManager();
+        PersistentIndex idx = createIndex("index", dirMgr);
+        idx.addDocuments(new Document[]{createDocument(PropertyType.STRING, "a")});
+        idx.commit();
+        ReadOnlyIndexReader reader = idx.getReadOnlyIndexReader();
+        assertEquals("a", getColumn(reader).getValue(0));
+        reader.release();
+        idx.addDocuments(new Document[]{createDocument(PropertyType.STRING, "b")});
+        idx.commit();
+        idx.close();
+
+        idx = createIndex("index", dirMgr);
+        reader = idx.getReadOnlyIndexReader();
+        try {
+            SortColumn column = getColumn(reader);
+            assertEquals(2, column.size());
+            assertEquals("a", column.getValue(0));
+            assertEquals("b", column.getValue(1));
+        } finally {
+            reader.release();
+            idx.close();
+        }
+    }
+
+    public void testMerge() throws Exception {
+        DirectoryManager dirMgr = createFSDirectoryManager();
+        PersistentIndex idx1 = createIndex("index1", dirMgr);
+        idx1.addDocuments(new Document[]{createDocument(PropertyType.STRING, "x")});
+        idx1.commit();
+        PersistentIndex idx2 = createIndex("index2", dirMgr);
+        idx2.addDocuments(new Document[]{createDocument(PropertyType.STRING, "y")});
+        idx2.commit();
+
+        PersistentIndex merged = createIndex("merged", dirMgr);
+        merged.setSortColumns(Collections.singleton(PROPERTY));
+        IndexReader[] readers = new IndexReader[]{
+                idx1.getReadOnlyIndexReader(), idx2.getReadOnlyIndexReader()};
+        try {
+            merged.addIndexes(readers);
+        } finally {
+            for (IndexReader reader : readers) {
+                Util.closeOrRelease(reader);
+            }
+        }
+        idx1.close();
+        idx2.close();
+        merged.close();
+
+        assertTrue(new File(new File(dir, "merged"),
+                SortColumn.getFileName(PREFIX)).exists());
+        merged = createIndex("merged", dirMgr);
+        ReadOnlyIndexReader reader = merged.getReadOnlyIndexReader();
+        try {
+            SortColumn column = getColumn(reader);
+            assertEquals("x", column.getValue(0));
+            assertEquals("y", column.getValue(1));
+        } finally {
+            reader.release();
+            merged.close();
+        }
+    }
+
+    /**
+     * Indexes the given values and a document without the property, and
+     * checks that the column created from the index and the column loaded
+     * from the file both return the values of the {@link SharedFieldCache}.
+     */
+    private void checkColumn(int type, String... values) throws Exception {
+        DirectoryManager dirMgr = createFSDirectoryManager();
+        PersistentIndex idx = createIndex("index", dirMgr);
+        Document[] docs = new Document[values.length + 1];
+        for (int i = 0; i < values.length; i++) {
+            docs[i] = createDocument(type, values[i]);
+        }
+        docs[values.length] = createDocument(type);
+        idx.addDocuments(docs);
+        idx.commit();
+        ReadOnlyIndexReader reader = idx.getReadOnlyIndexReader();
+        try {
+            checkColumn(reader);
+        } finally {
+            reader.release();
+            idx.close();
+        }
+        assertTrue(new File(new File(dir, "index"),
+                SortColumn.getFileName(PREFIX)).exists());
+
+        idx = createIndex("index", dirMgr);
+        reader = idx.getReadOnlyIndexReader();
+        try {
+            checkColumn(reader);
+        } finally {
+            reader.release();
+            idx.close();
+        }
+    }
+
+    private static void checkColumn(ReadOnlyIndexReader reader)
+            throws Exception {
+        SortColumn column = getColumn(reader);
+        SharedFieldCache.ValueIndex index = SharedFieldCache.INSTANCE.getValueIndex(
+                reader, FieldNames.PROPERTIES, PREFIX);
+        assertEquals(reader.maxDoc(), column.size());
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            assertEquals(index.getValue(i), column.getValue(i));
+        }
+        assertNull(column.getValue(reader.maxDoc() - 1));
+    }
+
+    private static SortColumn getColumn(ReadOnlyIndexReader reader)
+            throws Exception {
+        return reader.getBase().getBase().getSortColumn(
+                FieldNames.PROPERTIES, PREFIX);
+    }
+
+    private DirectoryManager createFSDirectoryManager() throws Exception {
+        SearchIndex handler = new SearchIndex();
+        handler.setPath(dir.getAbsolutePath());
+        DirectoryManager dirMgr = new FSDirectoryManager();
+        dirMgr.init(handler);
+        return dirMgr;
+    }
+
+    private static PersistentIndex createIndex(String name, DirectoryManager dirMgr)
+            throws Exception {
+        return new PersistentIndex(name,
+                new StandardAnalyzer(Version.LUCENE_36), Similarity.getDefault(),
+                new DocNumberCache(100),
+                new IndexingQueue(new IndexingQueueStore(new RAMDirectory())),
+                dirMgr, 0);
+    }
+
+    private static Document createDocument(int type, String... values) {
+        Document doc = new Document();
+        doc.add(new IDField(NodeId.randomId()));
+        doc.add(new Field(FieldNames.LOCAL_NAME, false, "n", Field.Store.NO,
+                Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
+        for (String value : values) {
+            doc.add(createField(type, value));
+        }
+        return doc;
+    }
+
+    private static Field createField(int type, String value) {
+        Field field = new Field(FieldNames.PROPERTIES,
+                new SingletonTokenStream(
+                        FieldNames.createNamedValue(PROPERTY, value), type));
+        field.setOmitNorms(true);
+        return field;
+    }
+}
@@ -42,6 +42,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(DecimalConvertTest.class);
         suite.addTestSuite(IndexingAggregateTest.class);
         suite.addTestSuite(IndexMigrationTest.class);
+        suite.addTestSuite(ParentArrayTest.class);
+        suite.addTestSuite(SortColumnTest.class);
         suite.addTestSuite(ChainedTermEnumTest.class);
         suite.addTestSuite(IndexingConfigurationImplTest.class);
         suite.addTestSuite(SQL2IndexingAggregateTest.class);
@@ -53,6 +55,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(ArrayHitsTest.class);
         suite.addTestSuite(IndexFormatVersionTest.class);
         suite.addTestSuite(SynonymProviderTest.class);
+        suite.addTestSuite(ParallelIndexingTest.class);
+        suite.addTestSuite(TextExtractionSchedulerTest.class);
 
         return suite;
     }
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.data.DataStore;
+import org.apache.jackrabbit.core.data.FileDataStore;
+import org.apache.jackrabbit.core.query.lucene.LazyTextExtractorField.ParsingTask;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * <code>TextExtractionSchedulerTest</code> tests the concurrency limits,
+ * deadlines and caching of the {@link TextExtractionScheduler}.
+ */
+public class TextExtractionSchedulerTest extends TestCase {
+
+    private static final String PDF = "application/pdf";
+
+    private File directory;
+
+    private File storeDirectory;
+
+    private FileDataStore store;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("textcache", "", new File("target"));
+        directory.delete();
+        storeDirectory =
+            File.createTempFile("datastore", "", new File("target"));
+        storeDirectory.delete();
+        store = new FileDataStore();
+        store.setMinRecordLength(0);
+        store.init(storeDirectory.getAbsolutePath());
+    }
+
+    protected void tearDown() throws Exception {
+        store.close();
+        FileUtils.deleteDirectory(storeDirectory);
+        FileUtils.deleteDirectory(directory);
+        super.tearDown();
+    }
+
+    public void testLimitKey() {
+        Map<String, Long> limits = TextExtractionScheduler.parseLimits(
+                "application/pdf=2, image/*=1, *=8");
+        assertEquals(Long.valueOf(2), limits.get(PDF));
+        assertEquals(PDF, TextExtractionScheduler.getLimitKey(
+                limits, "Application/PDF; version=1.4"));
+        assertEquals("image/*", TextExtractionScheduler.getLimitKey(
+                limits, "image/png"));
+        assertEquals("*", TextExtractionScheduler.getLimitKey(
+                limits, "text/plain"));
+        assertEquals("*", TextExtractionScheduler.getLimitKey(limits, null));
+
+        limits = TextExtractionScheduler.parseLimits("application/pdf=2");
+        assertNull(TextExtractionScheduler.getLimitKey(limits, "text/plain"));
+
+        try {
+            TextExtractionScheduler.parseLimits("application/pdf");
+            fail("Malformed limit must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testConcurrencyLimit() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        TextExtractionScheduler scheduler = new TextExtractionScheduler(
+                executor, "application/pdf=1", null, null);
+        TestParser parser = new TestParser("text", 1);
+
+        TestTask[] tasks = new TestTask[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new TestTask(parser, "pdf" + i, PDF);
+            scheduler.execute(tasks[i]);
+        }
+        TestTask plain = new TestTask(parser, "plain", "text/plain");
+        scheduler.execute(plain);
+
+        // one pdf and the unlimited plain text extraction
+        assertEquals(2, executor.queue.size());
+        assertEquals(1, scheduler.getRunning(PDF));
+        assertEquals(2, scheduler.getWaiting(PDF));
+
+        while (!executor.queue.isEmpty()) {
+            executor.queue.removeFirst().run();
+            assertTrue(scheduler.getRunning(PDF) <= 1);
+        }
+        for (TestTask task : tasks) {
+            assertEquals("text", task.text.trim());
+        }
+        assertEquals("text", plain.text.trim());
+        assertEquals(0, scheduler.getRunning(PDF));
+        assertEquals(0, scheduler.getWaiting(PDF));
+    }
+
+    public void testDeadline() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        TextExtractionScheduler scheduler = new TextExtractionScheduler(
+                executor, null, "application/pdf=100", null);
+        // an endless document
+        TestTask task = new TestTask(
+                new TestParser("text ", Integer.MAX_VALUE), "pdf", PDF);
+        scheduler.execute(task);
+
+        long start = System.currentTimeMillis();
+        executor.queue.removeFirst().run();
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertFalse(task.isComplete());
+        // the text extracted so far is kept
+        assertTrue(task.text.startsWith("text "));
+    }
+
+    public void testCancel() throws Exception {
+        TestTask task = new TestTask(
+                new TestParser("text ", Integer.MAX_VALUE), "pdf", PDF);
+        task.cancel();
+        task.run();
+        assertFalse(task.isComplete());
+        assertEquals("", task.text);
+    }
+
+    public void testCache() throws Exception {
+        TextExtractionCache cache =
+            new TextExtractionCache(directory, 1024 * 1024, "config");
+        QueueExecutor executor = new QueueExecutor();
+        TextExtractionScheduler scheduler = new TextExtractionScheduler(
+                executor, null, null, cache);
+        TestParser parser = new TestParser("cached text", 1);
+
+        TestTask first = new TestTask(parser, "content", PDF, store);
+        scheduler.execute(first);
+        executor.queue.removeFirst().run();
+        assertEquals(1, parser.count.get());
+        assertTrue(cache.getSize() > 0);
+
+        // a copy of the same binary is taken from the cache
+        TestTask copy = new TestTask(parser, "content", PDF, store);
+        scheduler.execute(copy);
+        assertTrue(executor.queue.isEmpty());
+        assertEquals(1, parser.count.get());
+        assertEquals(first.text, copy.text);
+
+        // different content
+        TestTask other = new TestTask(parser, "other", PDF, store);
+        scheduler.execute(other);
+        executor.queue.removeFirst().run();
+        assertEquals(2, parser.count.get());
+
+        // binaries outside of the data store are not cached
+        for (int i = 0; i < 2; i++) {
+            scheduler.execute(new TestTask(parser, "content", PDF));
+            executor.queue.removeFirst().run();
+        }
+        assertEquals(4, parser.count.get());
+
+        // entries survive a restart
+        cache = new TextExtractionCache(directory, 1024 * 1024, "config");
+        String id = first.getValue().getDataIdentifier().toString();
+        assertEquals(first.text,
+                cache.get(cache.getKey(id, PDF, Integer.MAX_VALUE)));
+
+        // but not a change of the parser configuration
+        cache = new TextExtractionCache(directory, 1024 * 1024, "changed");
+        assertNull(cache.get(cache.getKey(id, PDF, Integer.MAX_VALUE)));
+    }
+
+    public void testFingerprint() throws Exception {
+        File config = new File(directory, "tika-config.xml");
+        FileUtils.writeStringToFile(config, "<properties/>", "UTF-8");
+        String fingerprint =
+            TextExtractionCache.getFingerprint(config.toURI().toURL());
+        assertEquals(fingerprint,
+                TextExtractionCache.getFingerprint(config.toURI().toURL()));
+        assertFalse(fingerprint.equals(
+                TextExtractionCache.getFingerprint(null)));
+
+        FileUtils.writeStringToFile(
+                config, "<properties><parsers/></properties>", "UTF-8");
+        assertFalse(fingerprint.equals(
+                TextExtractionCache.getFingerprint(config.toURI().toURL())));
+    }
+
+    public void testPrune() throws Exception {
+        TextExtractionCache cache =
+            new TextExtractionCache(directory, 1000, "config");
+        char[] chars = new char[100];
+        String text = new String(chars).replace('\0', 'x');
+        for (int i = 0; i < 20; i++) {
+            cache.put(cache.getKey("id" + i, PDF, 1), text);
+        }
+        assertTrue(cache.getSize() <= 1000);
+        assertNull(cache.get(cache.getKey("id0", PDF, 1)));
+        assertEquals(text, cache.get(cache.getKey("id19", PDF, 1)));
+    }
+
+    /**
+     * Executor that queues the commands until the test runs them.
+     */
+    private static class QueueExecutor implements Executor {
+
+        private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+    }
+
+    private static class TestTask extends ParsingTask {
+
+        private volatile String text;
+
+        TestTask(Parser parser, String content, String mediaType)
+                throws Exception {
+            super(parser, InternalValue.create(content.getBytes("UTF-8")),
+                    createMetadata(mediaType), Integer.MAX_VALUE);
+        }
+
+        TestTask(Parser parser, String content, String mediaType,
+                 DataStore store) throws Exception {
+            super(parser, InternalValue.create(new ByteArrayInputStream(
+                    content.getBytes("UTF-8")), store),
+                    createMetadata(mediaType), Integer.MAX_VALUE);
+        }
+
+        private static Metadata createMetadata(String mediaType) {
+            Metadata metadata = new Metadata();
+            metadata.set(Metadata.CONTENT_TYPE, mediaType);
+            return metadata;
+        }
+
+        protected void setExtractedText(String value) {
+            text = value;
+        }
+
+    }
+
+    /**
+     * Parser that writes the given text a number of times.
+     */
+    private static class TestParser implements Parser {
+
+        private final String text;
+
+        private final int repeat;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        TestParser(String text, int repeat) {
+            this.text = text;
+            this.repeat = repeat;
+        }
+
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Collections.singleton(MediaType.application("pdf"));
+        }
+
+        public void parse(InputStream stream, ContentHandler handler,
+                          Metadata metadata, ParseContext context)
+                throws SAXException {
+            count.incrementAndGet();
+            XHTMLContentHandler xhtml =
+                new XHTMLContentHandler(handler, metadata);
+            xhtml.startDocument();
+            for (int i = 0; i < repeat; i++) {
+                xhtml.characters(text);
+            }
+            xhtml.endDocument();
+        }
+
+    }
+}
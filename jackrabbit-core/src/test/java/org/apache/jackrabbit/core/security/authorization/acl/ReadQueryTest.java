@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization.acl;
+
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.core.NodeImpl;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.security.authorization.AbstractEvaluationTest;
+import org.apache.jackrabbit.core.security.authorization.AccessControlConstants;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
+import org.apache.jackrabbit.test.NotExecutableException;
+
+import javax.jcr.AccessDeniedException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.query.Query;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <code>ReadQueryTest</code> checks that query results are filtered by the
+ * read permission of the subtree of access controlled nodes.
+ */
+public class ReadQueryTest extends AbstractEvaluationTest {
+
+    private String path;
+    private String childNPath;
+    private String childNPath2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        Node node = testRootNode.addNode(nodeName1, testNodeType);
+        Node cn1 = node.addNode(nodeName2, testNodeType);
+        Node cn2 = node.addNode(nodeName3, testNodeType);
+        superuser.save();
+
+        path = node.getPath();
+        childNPath = cn1.getPath();
+        childNPath2 = cn2.getPath();
+    }
+
+    @Override
+    protected boolean isExecutable() {
+        return EvaluationUtil.isExecutable(acMgr);
+    }
+
+    @Override
+    protected JackrabbitAccessControlList getPolicy(AccessControlManager acM, String path, Principal principal) throws RepositoryException, AccessDeniedException, NotExecutableException {
+        return EvaluationUtil.getPolicy(acM, path, principal);
+    }
+
+    @Override
+    protected Map<String, Value> getRestrictions(Session s, String path) {
+        return Collections.emptyMap();
+    }
+
+    public void testQueryReadDenied() throws Exception {
+        Privilege[] privileges = privilegesFromName(Privilege.JCR_READ);
+
+        /* deny READ privilege for testUser at 'path' */
+        withdrawPrivileges(path, privileges, getRestrictions(superuser, path));
+        /* allow READ privilege for testUser at 'childNPath' */
+        givePrivileges(childNPath, privileges, getRestrictions(superuser, childNPath));
+
+        Session testSession = getTestSession();
+        Set<String> paths = query(testSession);
+        assertFalse(paths.contains(path));
+        assertTrue(paths.contains(childNPath));
+        assertFalse(paths.contains(childNPath2));
+
+        SubtreeReadPermissions permissions = getPermissions(testSession);
+        assertEquals(Boolean.FALSE, permissions.canReadSubtree(getId(path)));
+        assertEquals(Boolean.TRUE, permissions.canReadSubtree(getId(childNPath)));
+    }
+
+    public void testQueryReadRestricted() throws Exception {
+        Privilege[] privileges = privilegesFromName(Privilege.JCR_READ);
+
+        /* deny READ privilege for testUser at the child 'nodeName2' of 'path' */
+        Map<String, Value> restrictions = new HashMap<String, Value>(getRestrictions(superuser, path));
+        restrictions.put(AccessControlConstants.P_GLOB.toString(),
+                superuser.getValueFactory().createValue("/" + nodeName2));
+        withdrawPrivileges(path, privileges, restrictions);
+
+        Session testSession = getTestSession();
+        Set<String> paths = query(testSession);
+        assertTrue(paths.contains(path));
+        assertFalse(paths.contains(childNPath));
+        assertTrue(paths.contains(childNPath2));
+
+        assertNull(getPermissions(testSession).canReadSubtree(getId(path)));
+    }
+
+    private Set<String> query(Session s) throws RepositoryException {
+        String stmt = "/jcr:root" + testRoot + "//element(*, nt:base)";
+        Query q = s.getWorkspace().getQueryManager().createQuery(stmt, Query.XPATH);
+        Set<String> paths = new HashSet<String>();
+        for (NodeIterator it = q.execute().getNodes(); it.hasNext(); ) {
+            paths.add(it.nextNode().getPath());
+        }
+        return paths;
+    }
+
+    private SubtreeReadPermissions getPermissions(Session s) {
+        return (SubtreeReadPermissions) ((SessionImpl) s).getAccessManager();
+    }
+
+    private NodeId getId(String nPath) throws RepositoryException {
+        return ((NodeImpl) superuser.getNode(nPath)).getNodeId();
+    }
+}
@@ -43,6 +43,7 @@ public class TestAll extends TestCase {
         suite.addTestSuite(EntryCollectorTest.class);
 
         suite.addTestSuite(ReadTest.class);
+        suite.addTestSuite(ReadQueryTest.class);
         suite.addTestSuite(WriteTest.class);
         suite.addTestSuite(AcReadWriteTest.class);
         suite.addTestSuite(LockTest.class);
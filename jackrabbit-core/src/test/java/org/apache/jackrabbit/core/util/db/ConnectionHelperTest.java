@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.util.db;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the batch updates of the {@link ConnectionHelper}.
+ */
+public class ConnectionHelperTest extends TestCase {
+
+    private static final String DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
+
+    private static final String DERBY_URL = "jdbc:derby:target/connection-helper-test/db;create=true";
+
+    private ConnectionFactory connectionFactory;
+
+    private ConnectionHelper helper;
+
+    @Override
+    protected void setUp() throws Exception {
+        System.setProperty("derby.stream.error.file", "target/derby-connectionhelpertest.log");
+        connectionFactory = new ConnectionFactory();
+        DataSource ds = connectionFactory.getDataSource(DRIVER, DERBY_URL, "", "");
+        helper = new DerbyConnectionHelper(ds, false);
+        if (helper.tableExists("BATCHTEST")) {
+            helper.exec("drop table BATCHTEST");
+        }
+        helper.exec("create table BATCHTEST (ID int not null primary key, DATA blob(1M))");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        helper.exec("drop table BATCHTEST");
+        connectionFactory.close();
+    }
+
+    public void testUpdateBatch() throws Exception {
+        List<Object[]> params = new ArrayList<Object[]>();
+        for (int i = 0; i < 10; i++) {
+            params.add(new Object[] { i, new byte[] { (byte) i } });
+        }
+        int[] counts = helper.updateBatch(
+                "insert into BATCHTEST (ID, DATA) values (?, ?)", params);
+        assertEquals(10, counts.length);
+        assertEquals(10, count());
+
+        params.clear();
+        for (int i = 0; i < 5; i++) {
+            params.add(new Object[] { i });
+        }
+        counts = helper.updateBatch("delete from BATCHTEST where ID = ?", params);
+        assertEquals(5, counts.length);
+        assertEquals(5, count());
+    }
+
+    public void testUpdateBatchIsPartOfTransaction() throws Exception {
+        List<Object[]> params = new ArrayList<Object[]>();
+        for (int i = 0; i < 3; i++) {
+            params.add(new Object[] { i, new byte[0] });
+        }
+        helper.startBatch();
+        helper.updateBatch("insert into BATCHTEST (ID, DATA) values (?, ?)", params);
+        helper.endBatch(false);
+        assertEquals(0, count());
+
+        helper.startBatch();
+        helper.updateBatch("insert into BATCHTEST (ID, DATA) values (?, ?)", params);
+        helper.endBatch(true);
+        assertEquals(3, count());
+    }
+
+    private int count() throws Exception {
+        ResultSet rs = helper.query("select count(*) from BATCHTEST");
+        try {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        } finally {
+            DbUtility.close(rs);
+        }
+    }
+
+}
@@ -33,6 +33,7 @@ public class TestAll extends TestCase {
     public static Test suite() {
         TestSuite suite = new TestSuite("Database utility tests");
         suite.addTestSuite(ConnectionFactoryTest.class);
+        suite.addTestSuite(ConnectionHelperTest.class);
         return suite;
     }
 }
@@ -16,12 +16,20 @@
  */
 package org.apache.jackrabbit.core.data;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Abstract Backend which has a reference to the underlying {@link CachingDataStore} and is
@@ -29,6 +37,11 @@ import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
  */
 public abstract class AbstractBackend implements Backend {
 
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractBackend.class);
+
     /**
      * {@link CachingDataStore} instance using this backend.
      */
@@ -54,6 +67,21 @@ public abstract class AbstractBackend implements Backend {
      */
     private volatile Executor asyncWriteExecutor;
 
+    /**
+     * The size of the parts of multipart uploads and ranged downloads.
+     */
+    private long partSize = 16L * 1024 * 1024;
+
+    /**
+     * The pool size of the part upload executor.
+     */
+    private int partUploadPoolSize = 5;
+
+    /**
+     * Part upload pooling executor.
+     */
+    private volatile ExecutorService partUploadExecutor;
+
     /**
      * Returns the pool size of the asynchronous write pool executor.
      * @return the pool size of the asynchronous write pool executor
@@ -70,6 +98,40 @@ public abstract class AbstractBackend implements Backend {
         this.asyncWritePoolSize = asyncWritePoolSize;
     }
 
+    /**
+     * Returns the size of the parts of multipart uploads and ranged downloads.
+     * @return the size in bytes
+     */
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Sets the size of the parts of multipart uploads and ranged downloads.
+     * @param partSize the size in bytes
+     */
+    public void setPartSize(long partSize) {
+        this.partSize = partSize;
+    }
+
+    /**
+     * Returns the number of parts of a multipart upload that are uploaded
+     * concurrently.
+     * @return the pool size of the part upload executor
+     */
+    public int getPartUploadPoolSize() {
+        return partUploadPoolSize;
+    }
+
+    /**
+     * Sets the number of parts of a multipart upload that are uploaded
+     * concurrently.
+     * @param partUploadPoolSize pool size of the part upload executor
+     */
+    public void setPartUploadPoolSize(int partUploadPoolSize) {
+        this.partUploadPoolSize = partUploadPoolSize;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -85,11 +147,79 @@ public abstract class AbstractBackend implements Backend {
      */
     @Override
     public void close() throws DataStoreException {
-        Executor asyncExecutor = getAsyncWriteExecutor();
+        Executor asyncExecutor = asyncWriteExecutor;
 
         if (asyncExecutor != null && asyncExecutor instanceof ExecutorService) {
             ((ExecutorService) asyncExecutor).shutdownNow();
         }
+
+        ExecutorService partExecutor = partUploadExecutor;
+
+        if (partExecutor != null) {
+            partExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Uploads a file in parts of {@link #getPartSize()}, which are uploaded
+     * concurrently. The upload is aborted if a part fails. This backend must
+     * implement {@link MultipartBackend}.
+     * @param identifier key of the file
+     * @param file file that would be stored in backend
+     * @throws DataStoreException for any error
+     */
+    protected void writeInParts(DataIdentifier identifier, final File file)
+            throws DataStoreException {
+        if (!(this instanceof MultipartBackend)) {
+            throw new DataStoreException(getClass().getName()
+                + " does not support multipart uploads");
+        }
+        final MultipartBackend backend = (MultipartBackend) this;
+        long length = file.length();
+        int parts = (int) Math.max(1, (length + partSize - 1) / partSize);
+        final String uploadId = backend.initiateUpload(identifier);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(parts);
+        boolean completed = false;
+        try {
+            for (int i = 0; i < parts; i++) {
+                final int partNumber = i + 1;
+                final long offset = i * partSize;
+                final long size = Math.min(partSize, length - offset);
+                futures.add(getPartUploadExecutor().submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws DataStoreException {
+                        backend.uploadPart(uploadId, partNumber, file, offset, size);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            backend.completeUpload(uploadId, identifier, parts);
+            completed = true;
+        } catch (InterruptedException e) {
+            throw new DataStoreException("Interrupted while uploading ["
+                + identifier + "]", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DataStoreException) {
+                throw (DataStoreException) e.getCause();
+            }
+            throw new DataStoreException("Not able to upload a part of ["
+                + identifier + "]", e.getCause());
+        } finally {
+            if (!completed) {
+                for (Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+                try {
+                    backend.abortUpload(uploadId);
+                } catch (DataStoreException e) {
+                    LOG.warn("Failed to abort upload [" + uploadId + "] of ["
+                        + identifier + "]", e);
+                }
+            }
+        }
     }
 
     /**
@@ -159,6 +289,27 @@ public abstract class AbstractBackend implements Backend {
         return executor;
     }
 
+    /**
+     * Returns ExecutorService used to upload the parts of multipart uploads.
+     * @return ExecutorService used to upload the parts of multipart uploads
+     */
+    protected ExecutorService getPartUploadExecutor() {
+        ExecutorService executor = partUploadExecutor;
+
+        if (executor == null) {
+            synchronized (this) {
+                executor = partUploadExecutor;
+                if (executor == null) {
+                    partUploadExecutor = executor = Executors.newFixedThreadPool(
+                            Math.max(1, getPartUploadPoolSize()),
+                            new NamedThreadFactory(getClass().getSimpleName() + "-part-worker"));
+                }
+            }
+        }
+
+        return executor;
+    }
+
     /**
      * Creates an {@link Executor}.
      * This method is invoked during the initialization for asynchronous write/touch job executions.
@@ -38,8 +38,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -60,7 +62,10 @@ import org.slf4j.LoggerFactory;
  * {@link LocalCache}, then it is fetched from {@link Backend} and saved to
  * {@link LocalCache} for further access. This class is designed to work without
  * {@link LocalCache} and then all information is fetched from {@link Backend}.
- * To disable {@link LocalCache} set {@link #setCacheSize(long)} to 0. *
+ * To disable {@link LocalCache} set {@link #setCacheSize(long)} to 0. If the
+ * {@link Backend} is a {@link MultipartBackend}, records larger than a part
+ * are downloaded in ranges, and their streams are served from the ranges
+ * downloaded so far while the rest downloads.
  * Configuration:
  * 
  * <pre>
@@ -126,6 +131,12 @@ public abstract class CachingDataStore extends AbstractDataStore implements
      */
     protected final Map<DataIdentifier, Long> asyncDownloadCache = new ConcurrentHashMap<DataIdentifier, Long>(5);
 
+    /**
+     * In memory map to hold in-progress ranged downloads. Once download is
+     * finished corresponding entry is flushed from the map.
+     */
+    private final ConcurrentMap<DataIdentifier, RangeDownload> rangeDownloads = new ConcurrentHashMap<DataIdentifier, RangeDownload>(5);
+
     /**
      * In memory cache to hold {@link DataRecord#getLength()} against
      * {@link DataIdentifier}
@@ -605,7 +616,8 @@ public abstract class CachingDataStore extends AbstractDataStore implements
      * Get stream of record from {@link LocalCache}. If record is not available
      * in {@link LocalCache}, this method fetches record from {@link Backend}
      * and stores it to {@link LocalCache}. Stream is then returned from cached
-     * record.
+     * record. Large records of a {@link MultipartBackend} are fetched in
+     * ranges, and the stream is returned before the whole record is fetched.
      */
     InputStream getStream(DataIdentifier identifier) throws DataStoreException {
         InputStream in = null;
@@ -615,6 +627,10 @@ public abstract class CachingDataStore extends AbstractDataStore implements
             if (cached != null) {
                 return cached;
             }
+            InputStream ranged = getRangeStream(identifier, fileName);
+            if (ranged != null) {
+                return ranged;
+            }
             in = backend.read(identifier);
             return cache.store(fileName, in);
         } catch (IOException e) {
@@ -624,6 +640,54 @@ public abstract class CachingDataStore extends AbstractDataStore implements
         }
     }
 
+    /**
+     * Return a stream of the record that is served from a ranged download
+     * of the record, starting the download if it is not running yet. Returns
+     * null if the {@link Backend} is not a {@link MultipartBackend},
+     * {@link LocalCache} is disabled or the record is not larger than a part.
+     */
+    private InputStream getRangeStream(DataIdentifier identifier,
+            String fileName) throws DataStoreException, IOException {
+        if (!(backend instanceof MultipartBackend) || cacheSize == 0) {
+            return null;
+        }
+        MultipartBackend multipartBackend = (MultipartBackend) backend;
+        Long length = recLenCache.get(identifier);
+        if (length == null) {
+            length = backend.getLength(identifier);
+            recLenCache.put(identifier, length);
+        }
+        if (length <= multipartBackend.getPartSize()) {
+            return null;
+        }
+        RangeDownload download = rangeDownloads.get(identifier);
+        if (download == null) {
+            RangeDownload created = new RangeDownload(multipartBackend,
+                identifier, length, newTemporaryFile(), cache, fileName,
+                rangeDownloads);
+            download = rangeDownloads.putIfAbsent(identifier, created);
+            if (download == null) {
+                download = created;
+                try {
+                    downloadExecService.execute(created);
+                } catch (RejectedExecutionException e) {
+                    rangeDownloads.remove(identifier);
+                    created.discard();
+                    return null;
+                }
+                LOG.debug("Range download [{}] started.", identifier);
+            } else {
+                created.discard();
+            }
+        }
+        InputStream in = download.newStream();
+        if (in == null) {
+            // the download is done
+            in = cache.getIfStored(fileName);
+        }
+        return in;
+    }
+
     /**
      * Return lastModified of record from {@link Backend} assuming
      * {@link Backend} as a single source of truth.
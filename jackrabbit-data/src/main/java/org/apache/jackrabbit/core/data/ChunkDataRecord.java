@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Data record of a {@link ChunkDataStore}, which is based on the manifest
+ * that lists the chunks of the binary stream.
+ */
+public class ChunkDataRecord extends AbstractDataRecord {
+
+    /**
+     * The data store that contains the chunks.
+     */
+    private final ChunkDataStore store;
+
+    /**
+     * The manifest of the record.
+     */
+    private final File manifest;
+
+    /**
+     * Creates a data record based on the given identifier and manifest.
+     *
+     * @param store the data store
+     * @param identifier data identifier
+     * @param manifest file that contains the manifest
+     */
+    public ChunkDataRecord(
+            ChunkDataStore store, DataIdentifier identifier, File manifest) {
+        super(store, identifier);
+        assert manifest.isFile();
+        this.store = store;
+        this.manifest = manifest;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLength() throws DataStoreException {
+        try {
+            return ChunkDataStore.readLength(manifest);
+        } catch (IOException e) {
+            throw new DataStoreException("Error reading manifest " + manifest.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The chunks are opened one after the other while the stream is read.
+     * Skipping does not read the chunks that are skipped entirely.
+     */
+    public InputStream getStream() throws DataStoreException {
+        try {
+            ChunkDataStore.Manifest m = ChunkDataStore.readManifest(manifest);
+            File[] files = new File[m.ids.size()];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = store.getChunkFile(m.ids.get(i));
+            }
+            return new ChunkInputStream(files, m.lengths);
+        } catch (IOException e) {
+            throw new DataStoreException("Error reading manifest " + manifest.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLastModified() {
+        return manifest.lastModified();
+    }
+}
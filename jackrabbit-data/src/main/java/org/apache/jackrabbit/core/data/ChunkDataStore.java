@@ -0,0 +1,838 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File-based data store that splits binaries into content-defined chunks and
+ * stores every distinct chunk only once. Unlike the {@link FileDataStore},
+ * which only detects identical binaries, binaries that share most of their
+ * content, such as different versions of a large asset, share the storage
+ * of their common chunks.
+ * <p>
+ * Chunk boundaries are found with a rolling hash over the content, so that
+ * inserting or removing bytes only changes the chunks around the change.
+ * Every record is stored as a small manifest that lists its chunks, named
+ * using a message digest of the whole binary stream like the files of the
+ * {@link FileDataStore}. Chunks are named using a message digest of their
+ * content. Records are reassembled on read by streaming the chunks in
+ * order, and skipping in the stream of a record skips whole chunks without
+ * reading them.
+ * <p>
+ * Configuration:
+ * <pre>
+ * &lt;DataStore class="org.apache.jackrabbit.core.data.ChunkDataStore"&gt;
+ *     &lt;param name="{@link #setPath(String) path}" value="/data/datastore"/&gt;
+ *     &lt;param name="{@link #setMinRecordLength(int) minRecordLength}" value="1024"/&gt;
+ *     &lt;param name="{@link #setMinChunkSize(int) minChunkSize}" value="16384"/&gt;
+ *     &lt;param name="{@link #setAverageChunkSize(int) averageChunkSize}" value="65536"/&gt;
+ *     &lt;param name="{@link #setMaxChunkSize(int) maxChunkSize}" value="262144"/&gt;
+ * &lt;/DataStore&gt;
+ * </pre>
+ * <p>
+ * If the directory is not set, the directory &lt;repository home&gt;/repository/datastore is used.
+ * <p>
+ * Garbage collection marks records like with the {@link FileDataStore}, by
+ * updating the modified date of their manifests. When the unused records
+ * are deleted, the chunks that are no longer referenced by any manifest are
+ * deleted as well.
+ */
+public class ChunkDataStore extends AbstractDataStore
+        implements MultiDataStoreAware {
+
+    /**
+     * Logger instance
+     */
+    private static Logger log = LoggerFactory.getLogger(ChunkDataStore.class);
+
+    /**
+     * The default value for the minimum object size.
+     */
+    private static final int DEFAULT_MIN_RECORD_LENGTH = 100;
+
+    /**
+     * The default value for the minimum chunk size.
+     */
+    private static final int DEFAULT_MIN_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The default value for the average chunk size.
+     */
+    private static final int DEFAULT_AVERAGE_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The default value for the maximum chunk size.
+     */
+    private static final int DEFAULT_MAX_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The maximum last modified time resolution of the file system.
+     */
+    private static final int ACCESS_TIME_RESOLUTION = 2000;
+
+    /**
+     * Name of the directory used for temporary files.
+     * Must be at least 3 characters.
+     */
+    private static final String TMP = "tmp";
+
+    /**
+     * Name of the directory that contains the record manifests.
+     */
+    private static final String RECORDS = "records";
+
+    /**
+     * Name of the directory that contains the chunks.
+     */
+    private static final String CHUNKS = "chunks";
+
+    /**
+     * Version of the manifest format.
+     */
+    private static final byte MANIFEST_VERSION = 1;
+
+    /**
+     * The number of bytes the rolling hash depends on.
+     */
+    private static final int WINDOW = 64;
+
+    /**
+     * Random values of the rolling hash for each byte value. The values
+     * must not change, because they define the chunk boundaries of the
+     * stored records.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6a09e667f3bcc908L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * The minimum modified date. If a record is accessed (read or write) with a modified date
+     * older than this value, the modified date is updated to the current time.
+     */
+    private volatile long minModifiedDate;
+
+    /**
+     * The directory that contains the manifests, chunks and temporary files.
+     */
+    private File directory;
+
+    /**
+     * The directory that contains the record manifests.
+     */
+    private File records;
+
+    /**
+     * The directory that contains the chunks.
+     */
+    private File chunks;
+
+    /**
+     * The name of the directory that contains the manifests, chunks and
+     * temporary files.
+     */
+    private String path;
+
+    /**
+     * The minimum size of an object that should be stored in this data store.
+     */
+    private int minRecordLength = DEFAULT_MIN_RECORD_LENGTH;
+
+    /**
+     * The minimum size of a chunk, except for the last chunk of a record.
+     */
+    private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+
+    /**
+     * The average size of a chunk.
+     */
+    private int averageChunkSize = DEFAULT_AVERAGE_CHUNK_SIZE;
+
+    /**
+     * The maximum size of a chunk.
+     */
+    private int maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+
+    /**
+     * The bits of the rolling hash that must be zero at a chunk boundary.
+     */
+    private long boundaryMask;
+
+    /**
+     * All data identifiers that are currently in use are in this set until they are garbage collected.
+     */
+    protected Map<DataIdentifier, WeakReference<DataIdentifier>> inUse =
+        Collections.synchronizedMap(new WeakHashMap<DataIdentifier, WeakReference<DataIdentifier>>());
+
+    /**
+     * Number of records being added that reference each chunk, until their
+     * manifest is written. Guarded by this data store.
+     */
+    private final Map<String, Integer> pendingChunks =
+        new HashMap<String, Integer>();
+
+    /**
+     * The chunks referenced by manifests while unused chunks are deleted,
+     * or <code>null</code>. Guarded by this data store.
+     */
+    private Set<String> liveChunks;
+
+    /**
+     * Initialized the data store.
+     * If the path is not set, &lt;repository home&gt;/repository/datastore is used.
+     * This directory is automatically created if it does not yet exist.
+     *
+     * @param homeDir
+     * @throws DataStoreException if the chunk sizes are invalid
+     */
+    public void init(String homeDir) throws DataStoreException {
+        if (minChunkSize < WINDOW || averageChunkSize <= minChunkSize
+                || maxChunkSize < averageChunkSize) {
+            throw new DataStoreException("Invalid chunk sizes: min "
+                    + minChunkSize + ", average " + averageChunkSize
+                    + ", max " + maxChunkSize);
+        }
+        // a boundary is found on average after 2^bits bytes past the minimum
+        int bits = 31 - Integer.numberOfLeadingZeros(
+                averageChunkSize - minChunkSize);
+        boundaryMask = ((1L << bits) - 1) << (64 - bits);
+        if (path == null) {
+            path = homeDir + "/repository/datastore";
+        }
+        directory = new File(path);
+        records = new File(directory, RECORDS);
+        chunks = new File(directory, CHUNKS);
+        records.mkdirs();
+        chunks.mkdirs();
+    }
+
+    /**
+     * Get a data record for the given identifier.
+     *
+     * @param identifier the identifier
+     * @return the data record or null
+     */
+    public DataRecord getRecordIfStored(DataIdentifier identifier) throws DataStoreException {
+        File file = getFile(records, identifier.toString());
+        if (!file.exists()) {
+            return null;
+        }
+        if (minModifiedDate != 0) {
+            // only check when running garbage collection
+            synchronized (this) {
+                if (FileDataStore.getLastModified(file) < minModifiedDate) {
+                    FileDataStore.setLastModified(file, System.currentTimeMillis() + ACCESS_TIME_RESOLUTION);
+                }
+            }
+        }
+        usesIdentifier(identifier);
+        return new ChunkDataRecord(this, identifier, file);
+    }
+
+    private void usesIdentifier(DataIdentifier identifier) {
+        inUse.put(identifier, new WeakReference<DataIdentifier>(identifier));
+    }
+
+    /**
+     * Creates a new data record.
+     * The stream is split into chunks, and every chunk that is not stored
+     * yet is saved. Then the manifest of the record is saved, named using
+     * the {@link #DIGEST} message digest of the whole stream. If a record
+     * with the same digest already exists, it is returned instead.
+     *
+     * @param input binary stream
+     * @return data record that contains the given stream
+     * @throws DataStoreException if the record could not be created
+     */
+    public DataRecord addRecord(InputStream input) throws DataStoreException {
+        List<String> ids = new ArrayList<String>();
+        File temporary = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST);
+            MessageDigest chunkDigest = MessageDigest.getInstance(DIGEST);
+            List<Integer> lengths = new ArrayList<Integer>();
+            long length = 0;
+
+            byte[] buffer = new byte[2 * maxChunkSize];
+            int start = 0;
+            int end = 0;
+            boolean eof = false;
+            while (true) {
+                if (!eof && end - start < maxChunkSize) {
+                    // keep at least one maximum chunk in the buffer
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    while (end < buffer.length) {
+                        int n = input.read(buffer, end, buffer.length - end);
+                        if (n < 0) {
+                            eof = true;
+                            break;
+                        }
+                        end += n;
+                    }
+                }
+                if (start == end) {
+                    break;
+                }
+                int size = findBoundary(buffer, start, end - start);
+                digest.update(buffer, start, size);
+                chunkDigest.update(buffer, start, size);
+                String id = encodeHexString(chunkDigest.digest());
+                ids.add(id);
+                storeChunk(id, buffer, start, size);
+                lengths.add(size);
+                length += size;
+                start += size;
+            }
+
+            DataIdentifier identifier =
+                new DataIdentifier(encodeHexString(digest.digest()));
+            temporary = newTemporaryFile();
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary)));
+            try {
+                output.writeByte(MANIFEST_VERSION);
+                output.writeLong(length);
+                output.writeInt(ids.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    output.writeUTF(ids.get(i));
+                    output.writeInt(lengths.get(i));
+                }
+            } finally {
+                output.close();
+            }
+
+            File file;
+            synchronized (this) {
+                // Check if the same record already exists, or
+                // move the manifest in place if needed
+                usesIdentifier(identifier);
+                file = getFile(records, identifier.toString());
+                if (!file.exists()) {
+                    file.getParentFile().mkdirs();
+                    if (temporary.renameTo(file)) {
+                        // no longer need to delete the temporary file
+                        temporary = null;
+                    } else {
+                        throw new IOException(
+                                "Can not rename " + temporary.getAbsolutePath()
+                                + " to " + file.getAbsolutePath()
+                                + " (media read only?)");
+                    }
+                } else {
+                    long now = System.currentTimeMillis();
+                    if (FileDataStore.getLastModified(file) < now + ACCESS_TIME_RESOLUTION) {
+                        FileDataStore.setLastModified(file, now + ACCESS_TIME_RESOLUTION);
+                    }
+                }
+                if (liveChunks != null) {
+                    // unused chunks are being deleted
+                    liveChunks.addAll(ids);
+                }
+            }
+            return new ChunkDataRecord(this, identifier, file);
+        } catch (NoSuchAlgorithmException e) {
+            throw new DataStoreException(DIGEST + " not available", e);
+        } catch (IOException e) {
+            throw new DataStoreException("Could not add record", e);
+        } finally {
+            synchronized (this) {
+                for (String id : ids) {
+                    Integer count = pendingChunks.remove(id);
+                    if (count != null && count > 1) {
+                        pendingChunks.put(id, count - 1);
+                    }
+                }
+            }
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the chunk that starts at the given offset. The
+     * chunk ends after the first position past the minimum chunk size where
+     * the rolling hash of the preceding bytes has all bits of the boundary
+     * mask cleared, or at the maximum chunk size.
+     *
+     * @param buffer buffer with the following bytes of the stream
+     * @param offset offset of the chunk
+     * @param length number of bytes in the buffer, which is only less than
+     *               the maximum chunk size at the end of the stream
+     * @return chunk length
+     */
+    private int findBoundary(byte[] buffer, int offset, int length) {
+        if (length <= minChunkSize) {
+            return length;
+        }
+        int limit = offset + Math.min(length, maxChunkSize);
+        long hash = 0;
+        // the hash only depends on the last bytes before the boundary
+        for (int i = offset + minChunkSize - WINDOW; i < limit; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ((hash & boundaryMask) == 0 && i - offset >= minChunkSize) {
+                return i - offset + 1;
+            }
+        }
+        return limit - offset;
+    }
+
+    /**
+     * Stores the given chunk unless it already exists, and marks it as
+     * referenced by a record being added.
+     *
+     * @param id chunk identifier
+     * @param buffer buffer with the chunk
+     * @param offset offset of the chunk
+     * @param length chunk length
+     * @throws IOException if the chunk could not be stored
+     */
+    private void storeChunk(String id, byte[] buffer, int offset, int length)
+            throws IOException {
+        File file = getFile(chunks, id);
+        synchronized (this) {
+            Integer count = pendingChunks.get(id);
+            pendingChunks.put(id, count == null ? 1 : count + 1);
+            if (file.exists()) {
+                return;
+            }
+        }
+        File temporary = newTemporaryFile();
+        try {
+            OutputStream output = new FileOutputStream(temporary);
+            try {
+                output.write(buffer, offset, length);
+            } finally {
+                output.close();
+            }
+            synchronized (this) {
+                if (!file.exists()) {
+                    file.getParentFile().mkdirs();
+                    if (temporary.renameTo(file)) {
+                        temporary = null;
+                    } else {
+                        throw new IOException(
+                                "Can not rename " + temporary.getAbsolutePath()
+                                + " to " + file.getAbsolutePath()
+                                + " (media read only?)");
+                    }
+                }
+            }
+        } finally {
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the chunk with the given identifier.
+     *
+     * @param id chunk identifier
+     * @return chunk file
+     */
+    File getChunkFile(String id) {
+        return getFile(chunks, id);
+    }
+
+    /**
+     * Returns the identified file. This method implements the pattern
+     * used to avoid problems with too many files in a single directory.
+     * <p>
+     * No sanity checks are performed on the given identifier.
+     *
+     * @param root directory of the records or chunks
+     * @param id record or chunk identifier
+     * @return identified file
+     */
+    private static File getFile(File root, String id) {
+        File file = root;
+        file = new File(file, id.substring(0, 2));
+        file = new File(file, id.substring(2, 4));
+        file = new File(file, id.substring(4, 6));
+        return new File(file, id);
+    }
+
+    /**
+     * Returns a unique temporary file to be used for creating a new
+     * chunk or manifest.
+     *
+     * @return temporary file
+     * @throws IOException
+     */
+    private File newTemporaryFile() throws IOException {
+        // the directory is already created in the init method
+        return File.createTempFile(TMP, null, directory);
+    }
+
+    public void updateModifiedDateOnAccess(long before) {
+        minModifiedDate = before;
+    }
+
+    /**
+     * Deletes the manifest of the given record. Its chunks are deleted by
+     * the next call to {@link #deleteAllOlderThan(long)}, unless they are
+     * used by other records.
+     */
+    public void deleteRecord(DataIdentifier identifier)
+            throws DataStoreException {
+        File file = getFile(records, identifier.toString());
+        synchronized (this) {
+            if (file.exists() && !file.delete()) {
+                log.warn("Failed to delete file " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Deletes the records with a manifest older than the given time that are
+     * not in use, and then the chunks that are no longer referenced by any
+     * manifest. Chunks of records that are being added are kept.
+     *
+     * @param min the minimum time
+     * @return the number of records deleted
+     */
+    public int deleteAllOlderThan(long min) throws DataStoreException {
+        synchronized (this) {
+            liveChunks = new HashSet<String>();
+        }
+        try {
+            int count = 0;
+            List<File> files = new ArrayList<File>();
+            listRecursive(files, records);
+            for (File file : files) {
+                synchronized (this) {
+                    long lastModified;
+                    try {
+                        lastModified = FileDataStore.getLastModified(file);
+                    } catch (DataStoreException e) {
+                        log.warn("Failed to read modification date; file not deleted", e);
+                        continue;
+                    }
+                    if (lastModified < min
+                            && !inUse.containsKey(new DataIdentifier(file.getName()))) {
+                        log.info("Deleting old record {}", file.getName());
+                        if (file.delete()) {
+                            count++;
+                        } else {
+                            log.warn("Failed to delete old file " + file.getAbsolutePath());
+                        }
+                    }
+                }
+            }
+
+            // collect the chunks of the remaining records
+            files.clear();
+            listRecursive(files, records);
+            for (File file : files) {
+                List<String> ids;
+                try {
+                    ids = readManifest(file).ids;
+                } catch (IOException e) {
+                    if (!file.exists()) {
+                        // deleted concurrently
+                        continue;
+                    }
+                    log.warn("Failed to read manifest " + file.getAbsolutePath()
+                            + "; chunks not deleted", e);
+                    return count;
+                }
+                synchronized (this) {
+                    liveChunks.addAll(ids);
+                }
+            }
+
+            files.clear();
+            listRecursive(files, chunks);
+            int chunkCount = 0;
+            for (File file : files) {
+                synchronized (this) {
+                    String id = file.getName();
+                    if (!liveChunks.contains(id)
+                            && !pendingChunks.containsKey(id)
+                            && file.lastModified() < min) {
+                        if (file.delete()) {
+                            chunkCount++;
+                        } else {
+                            log.warn("Failed to delete old file " + file.getAbsolutePath());
+                        }
+                    }
+                }
+            }
+            log.info("Deleted {} records and {} chunks", count, chunkCount);
+            deleteEmptyDirectories(records);
+            deleteEmptyDirectories(chunks);
+            return count;
+        } finally {
+            synchronized (this) {
+                liveChunks = null;
+            }
+        }
+    }
+
+    private void deleteEmptyDirectories(File dir) {
+        File[] list = dir.listFiles();
+        if (list != null) {
+            for (File f : list) {
+                if (f.isDirectory()) {
+                    deleteEmptyDirectories(f);
+                    // JCR-1396: automatic removal of empty directories
+                    synchronized (this) {
+                        String[] entries = f.list();
+                        if (entries != null && entries.length == 0) {
+                            f.delete();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void listRecursive(List<File> list, File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    listRecursive(list, f);
+                } else {
+                    list.add(f);
+                }
+            }
+        }
+    }
+
+    public Iterator<DataIdentifier> getAllIdentifiers() {
+        List<File> files = new ArrayList<File>();
+        listRecursive(files, records);
+        List<DataIdentifier> identifiers = new ArrayList<DataIdentifier>();
+        for (File f : files) {
+            identifiers.add(new DataIdentifier(f.getName()));
+        }
+        log.debug("Found " + identifiers.size() + " identifiers.");
+        return identifiers.iterator();
+    }
+
+    public void clearInUse() {
+        inUse.clear();
+    }
+
+    /**
+     * Get the name of the directory where this data store keeps the files.
+     *
+     * @return the full path name
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Set the name of the directory where this data store keeps the files.
+     *
+     * @param directoryName the path name
+     */
+    public void setPath(String directoryName) {
+        this.path = directoryName;
+    }
+
+    public int getMinRecordLength() {
+        return minRecordLength;
+    }
+
+    /**
+     * Set the minimum object length.
+     *
+     * @param minRecordLength the length
+     */
+    public void setMinRecordLength(int minRecordLength) {
+        this.minRecordLength = minRecordLength;
+    }
+
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    /**
+     * Set the minimum chunk size. Only the last chunk of a record can be
+     * smaller.
+     *
+     * @param minChunkSize the size in bytes
+     */
+    public void setMinChunkSize(int minChunkSize) {
+        this.minChunkSize = minChunkSize;
+    }
+
+    public int getAverageChunkSize() {
+        return averageChunkSize;
+    }
+
+    /**
+     * Set the average chunk size. Smaller chunks find more duplicate
+     * content, but need more files. The distance between the minimum and
+     * the average size is rounded down to a power of two.
+     *
+     * @param averageChunkSize the size in bytes
+     */
+    public void setAverageChunkSize(int averageChunkSize) {
+        this.averageChunkSize = averageChunkSize;
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * Set the maximum chunk size.
+     *
+     * @param maxChunkSize the size in bytes
+     */
+    public void setMaxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public void close() {
+        // nothing to do
+    }
+
+    //---------------------------------------------------------< protected >--
+
+    @Override
+    protected byte[] getOrCreateReferenceKey() throws DataStoreException {
+        File file = new File(directory, "reference.key");
+        try {
+            if (file.exists()) {
+                return FileUtils.readFileToByteArray(file);
+            } else {
+                byte[] key = super.getOrCreateReferenceKey();
+                FileUtils.writeByteArrayToFile(file, key);
+                return key;
+            }
+        } catch (IOException e) {
+            throw new DataStoreException(
+                    "Unable to access reference key file " + file.getPath(), e);
+        }
+    }
+
+    //-----------------------------------------------------------< private >--
+
+    /**
+     * Reads the length of a record from its manifest.
+     *
+     * @param file manifest file
+     * @return record length
+     * @throws IOException if the manifest could not be read
+     */
+    static long readLength(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            checkVersion(file, input.readByte());
+            return input.readLong();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads the manifest of a record.
+     *
+     * @param file manifest file
+     * @return the chunks of the record
+     * @throws IOException if the manifest could not be read
+     */
+    static Manifest readManifest(File file) throws IOException {
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            checkVersion(file, input.readByte());
+            Manifest manifest = new Manifest();
+            manifest.length = input.readLong();
+            int count = input.readInt();
+            manifest.ids = new ArrayList<String>(count);
+            manifest.lengths = new long[count];
+            for (int i = 0; i < count; i++) {
+                manifest.ids.add(input.readUTF());
+                manifest.lengths[i] = input.readInt();
+            }
+            return manifest;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void checkVersion(File file, byte version)
+            throws IOException {
+        if (version != MANIFEST_VERSION) {
+            throw new IOException("Unsupported manifest version " + version
+                    + ": " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * The chunks of a record.
+     */
+    static class Manifest {
+
+        /**
+         * The record length.
+         */
+        long length;
+
+        /**
+         * The identifiers of the chunks, in order.
+         */
+        List<String> ids;
+
+        /**
+         * The lengths of the chunks.
+         */
+        long[] lengths;
+
+    }
+
+}
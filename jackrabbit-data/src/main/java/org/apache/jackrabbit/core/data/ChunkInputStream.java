@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that reads the chunks of a record of the
+ * {@link ChunkDataStore} in order. Each chunk file is opened when the first
+ * byte is read from it, and closed as soon as its end has been reached.
+ * Skipping moves past whole chunks without opening them, so that a range
+ * of a large record can be read without reading the chunks before it.
+ */
+class ChunkInputStream extends InputStream {
+
+    /**
+     * The chunk files.
+     */
+    private final File[] files;
+
+    /**
+     * The chunk lengths.
+     */
+    private final long[] lengths;
+
+    /**
+     * Index of the current chunk.
+     */
+    private int index;
+
+    /**
+     * Position within the current chunk.
+     */
+    private long position;
+
+    /**
+     * The stream of the current chunk, or <code>null</code> if it is not
+     * open.
+     */
+    private InputStream current;
+
+    /**
+     * Creates a stream that reads the given chunks.
+     *
+     * @param files the chunk files
+     * @param lengths the chunk lengths
+     */
+    ChunkInputStream(File[] files, long[] lengths) {
+        this.files = files;
+        this.lengths = lengths;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        if (current == null) {
+            current = new FileInputStream(files[index]);
+            if (position > 0 && current.skip(position) != position) {
+                throw new IOException("Chunk too short: " + files[index]);
+            }
+        }
+        int n = current.read(
+                b, off, (int) Math.min(len, lengths[index] - position));
+        if (n < 0) {
+            throw new IOException("Chunk too short: " + files[index]);
+        }
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && nextChunk()) {
+            long step = Math.min(n - skipped, lengths[index] - position);
+            if (current != null) {
+                step = current.skip(step);
+                if (step <= 0) {
+                    break;
+                }
+            }
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (index < lengths.length) {
+            return (int) Math.min(Integer.MAX_VALUE, lengths[index] - position);
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeChunk();
+        index = files.length;
+    }
+
+    /**
+     * Moves to the next chunk if the current one has been read entirely.
+     *
+     * @return <code>false</code> at the end of the stream
+     * @throws IOException if the current chunk could not be closed
+     */
+    private boolean nextChunk() throws IOException {
+        while (index < files.length && position == lengths[index]) {
+            closeChunk();
+            index++;
+            position = 0;
+        }
+        return index < files.length;
+    }
+
+    private void closeChunk() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+}
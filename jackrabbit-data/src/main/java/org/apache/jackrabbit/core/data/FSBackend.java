@@ -22,9 +22,11 @@ package org.apache.jackrabbit.core.data;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -32,13 +34,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.UUID;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class FSBackend extends AbstractBackend {
+public class FSBackend extends AbstractBackend implements MultipartBackend {
 
     private Properties properties;
 
@@ -48,6 +52,13 @@ public class FSBackend extends AbstractBackend {
 
     public static final String FS_BACKEND_PATH = "fsBackendPath";
 
+    public static final String FS_BACKEND_PART_SIZE = "fsBackendPartSize";
+
+    /**
+     * Name of the directory of the parts of multipart uploads.
+     */
+    private static final String UPLOADS = ".uploads";
+
     /**
      * Logger instance.
      */
@@ -94,6 +105,10 @@ public class FSBackend extends AbstractBackend {
             throw new DataStoreException("Could not initialize FSBackend from "
                 + getConfig() + ". [" + FS_BACKEND_PATH + "] property not found.");
         }
+        String partSize = prop.getProperty(FS_BACKEND_PART_SIZE);
+        if (partSize != null && !"".equals(partSize.trim())) {
+            setPartSize(Long.parseLong(partSize.trim()));
+        }
         fsPathDir = new File(this.fsPath);
         if (fsPathDir.exists() && fsPathDir.isFile()) {
             throw new DataStoreException("Can not create a directory "
@@ -120,6 +135,25 @@ public class FSBackend extends AbstractBackend {
         }
     }
 
+    @Override
+    public InputStream read(DataIdentifier identifier, long offset, long length)
+                    throws DataStoreException {
+        File file = getFile(identifier);
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            IOUtils.skipFully(in, offset);
+            InputStream range = new BoundedInputStream(in, length);
+            in = null;
+            return range;
+        } catch (IOException e) {
+            throw new DataStoreException("Error opening input stream of "
+                + file.getAbsolutePath() + " at offset " + offset, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
     @Override
     public long getLength(DataIdentifier identifier) throws DataStoreException {
         File file = getFile(identifier);
@@ -148,12 +182,13 @@ public class FSBackend extends AbstractBackend {
     public void write(DataIdentifier identifier, File src)
                     throws DataStoreException {
         File dest = getFile(identifier);
+        if (src.length() > getPartSize() && !dest.exists()) {
+            writeInParts(identifier, src);
+            return;
+        }
         synchronized (this) {
             if (dest.exists()) {
-                long now = System.currentTimeMillis();
-                if (getLastModified(dest) < now + ACCESS_TIME_RESOLUTION) {
-                    setLastModified(dest, now + ACCESS_TIME_RESOLUTION);
-                }
+                touchWritten(dest);
             } else {
                 try {
                     FileUtils.copyFile(src, dest);
@@ -193,12 +228,106 @@ public class FSBackend extends AbstractBackend {
         });
     }
 
+    @Override
+    public String initiateUpload(DataIdentifier identifier)
+                    throws DataStoreException {
+        String uploadId = UUID.randomUUID().toString();
+        File dir = getUploadDirectory(uploadId);
+        if (!dir.mkdirs()) {
+            throw new DataStoreException("Could not create directory: "
+                + dir.getAbsolutePath());
+        }
+        return uploadId;
+    }
+
+    @Override
+    public void uploadPart(String uploadId, int partNumber, File file,
+                    long offset, long length) throws DataStoreException {
+        File part = new File(getUploadDirectory(uploadId), "part-" + partNumber);
+        RandomAccessFile in = null;
+        FileOutputStream out = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            out = new FileOutputStream(part);
+            FileChannel source = in.getChannel();
+            FileChannel target = out.getChannel();
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long count = source.transferTo(position, end - position, target);
+                if (count <= 0) {
+                    throw new IOException("Unexpected end of file at " + position);
+                }
+                position += count;
+            }
+        } catch (IOException e) {
+            throw new DataStoreException("Not able to write part ["
+                + partNumber + "] of upload [" + uploadId + "]", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public void completeUpload(String uploadId, DataIdentifier identifier,
+                    int parts) throws DataStoreException {
+        File dir = getUploadDirectory(uploadId);
+        File dest = getFile(identifier);
+        try {
+            synchronized (this) {
+                if (dest.exists()) {
+                    touchWritten(dest);
+                    return;
+                }
+            }
+            File temp = new File(dir, "record");
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                for (int i = 1; i <= parts; i++) {
+                    FileUtils.copyFile(new File(dir, "part-" + i), out);
+                }
+            } finally {
+                out.close();
+            }
+            synchronized (this) {
+                if (dest.exists()) {
+                    touchWritten(dest);
+                } else {
+                    File parent = dest.getParentFile();
+                    if (!parent.isDirectory() && !parent.mkdirs()) {
+                        throw new IOException("Could not create directory: "
+                            + parent.getAbsolutePath());
+                    }
+                    if (!temp.renameTo(dest)) {
+                        FileUtils.copyFile(temp, dest);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new DataStoreException("Not able to write file ["
+                + identifier + "]", e);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    @Override
+    public void abortUpload(String uploadId) throws DataStoreException {
+        try {
+            FileUtils.deleteDirectory(getUploadDirectory(uploadId));
+        } catch (IOException e) {
+            throw new DataStoreException("Not able to delete upload ["
+                + uploadId + "]", e);
+        }
+    }
+
     @Override
     public Iterator<DataIdentifier> getAllIdentifiers()
                     throws DataStoreException {
         ArrayList<File> files = new ArrayList<File>();
         for (File file : fsPathDir.listFiles()) {
-            if (file.isDirectory()) { // skip top-level files
+            if (isRecordDirectory(file)) { // skip top-level files
                 listRecursive(files, file);
             }
         }
@@ -283,7 +412,7 @@ public class FSBackend extends AbstractBackend {
                     throws DataStoreException {
         Set<DataIdentifier> deleteIdSet = new HashSet<DataIdentifier>(30);
         for (File file : fsPathDir.listFiles()) {
-            if (file.isDirectory()) { // skip top-level files
+            if (isRecordDirectory(file)) { // skip top-level files
                 deleteOlderRecursive(file, min, deleteIdSet);
             }
         }
@@ -331,6 +460,37 @@ public class FSBackend extends AbstractBackend {
         return new File(file, string);
     }
 
+    /**
+     * Returns the directory of the parts of an upload.
+     * @param uploadId identifier of the upload
+     * @return the directory
+     */
+    private File getUploadDirectory(String uploadId) {
+        return new File(new File(fsPathDir, UPLOADS), uploadId);
+    }
+
+    /**
+     * Returns whether a top-level file is a directory of records, and not
+     * a file or the directory of multipart uploads.
+     * @param file the top-level file
+     * @return true if the file is a directory of records
+     */
+    private static boolean isRecordDirectory(File file) {
+        return file.isDirectory() && !UPLOADS.equals(file.getName());
+    }
+
+    /**
+     * Updates the last modified date of a record that is written again.
+     * @param dest the file of the record
+     * @throws DataStoreException if modifying the date fails
+     */
+    private static void touchWritten(File dest) throws DataStoreException {
+        long now = System.currentTimeMillis();
+        if (getLastModified(dest) < now + ACCESS_TIME_RESOLUTION) {
+            setLastModified(dest, now + ACCESS_TIME_RESOLUTION);
+        }
+    }
+
     /**
      * Set the last modified date of a file, if the file is writable.
      * @param file the file
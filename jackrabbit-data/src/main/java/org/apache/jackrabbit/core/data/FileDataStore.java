@@ -462,7 +462,7 @@ public class FileDataStore extends AbstractDataStore
      * @return the last modified date
      * @throws DataStoreException if reading fails
      */
-    private static long getLastModified(File file) throws DataStoreException {
+    static long getLastModified(File file) throws DataStoreException {
         long lastModified = file.lastModified();
         if (lastModified == 0) {
             throw new DataStoreException("Failed to read record modified date: " + file.getAbsolutePath());
@@ -477,7 +477,7 @@ public class FileDataStore extends AbstractDataStore
      * @param time the new last modified date
      * @throws DataStoreException if the file is writable but modifying the date fails
      */
-    private static void setLastModified(File file, long time) throws DataStoreException {
+    static void setLastModified(File file, long time) throws DataStoreException {
         if (!file.setLastModified(time)) {
             if (!file.canWrite()) {
                 // if we can't write to the file, so garbage collection will also not delete it
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * A {@link Backend} that can upload a file in parts, which are written
+ * concurrently, and read a range of a record. {@link AbstractBackend}
+ * uploads large files in parts, and {@link CachingDataStore} downloads
+ * large records in ranges, so that a stream of the record can be read
+ * before the whole record is downloaded.
+ */
+public interface MultipartBackend extends Backend {
+
+    /**
+     * Returns the size of the parts of an upload and of the ranges of a
+     * download. Files and records that are not larger are transferred at
+     * once.
+     *
+     * @return the size in bytes
+     */
+    long getPartSize();
+
+    /**
+     * Starts the upload of a record in parts.
+     *
+     * @param identifier
+     *            identifier of the record.
+     * @return identifier of the upload.
+     * @throws DataStoreException
+     *             for any error.
+     */
+    String initiateUpload(DataIdentifier identifier) throws DataStoreException;
+
+    /**
+     * Uploads a part of a file. The parts of an upload may be uploaded
+     * concurrently and in any order.
+     *
+     * @param uploadId
+     *            identifier of the upload.
+     * @param partNumber
+     *            number of the part, starting with 1.
+     * @param file
+     *            the file that is uploaded.
+     * @param offset
+     *            offset of the part in the file.
+     * @param length
+     *            length of the part.
+     * @throws DataStoreException
+     *             for any error.
+     */
+    void uploadPart(String uploadId, int partNumber, File file, long offset,
+            long length) throws DataStoreException;
+
+    /**
+     * Stores the uploaded parts as the record identified by identifier. If
+     * the record pre-exists, it updates the timestamp of the record, like
+     * {@link #write(DataIdentifier, File)}.
+     *
+     * @param uploadId
+     *            identifier of the upload.
+     * @param identifier
+     *            identifier of the record.
+     * @param parts
+     *            number of uploaded parts.
+     * @throws DataStoreException
+     *             for any error.
+     */
+    void completeUpload(String uploadId, DataIdentifier identifier, int parts)
+            throws DataStoreException;
+
+    /**
+     * Discards the parts of an upload.
+     *
+     * @param uploadId
+     *            identifier of the upload.
+     * @throws DataStoreException
+     *             for any error.
+     */
+    void abortUpload(String uploadId) throws DataStoreException;
+
+    /**
+     * Return inputstream of a range of the record identified by identifier.
+     *
+     * @param identifier
+     *            identifier of record.
+     * @param offset
+     *            offset of the range.
+     * @param length
+     *            length of the range.
+     * @return inputstream of the range.
+     * @throws DataStoreException
+     *             if record not found or any error.
+     */
+    InputStream read(DataIdentifier identifier, long offset, long length)
+            throws DataStoreException;
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Download of a record from a {@link MultipartBackend} in ranges to a
+ * temporary file. Streams of the record can be read while the download
+ * runs: they are served from the ranges downloaded so far, and wait for
+ * the following ranges. Once done, the file is moved to the
+ * {@link LocalCache}, and the download is removed from the map of running
+ * downloads.
+ */
+class RangeDownload implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeDownload.class);
+
+    private final MultipartBackend backend;
+
+    private final DataIdentifier identifier;
+
+    private final long length;
+
+    private final File file;
+
+    private final LocalCache cache;
+
+    private final String fileName;
+
+    private final Map<DataIdentifier, RangeDownload> downloads;
+
+    /**
+     * The number of bytes downloaded so far.
+     */
+    private long downloaded;
+
+    /**
+     * Whether the download is done, successfully or not.
+     */
+    private boolean done;
+
+    /**
+     * The cause of the failure of the download, if it failed.
+     */
+    private Exception failure;
+
+    /**
+     * The number of open streams of the temporary file.
+     */
+    private int readers;
+
+    RangeDownload(MultipartBackend backend, DataIdentifier identifier,
+            long length, File file, LocalCache cache, String fileName,
+            Map<DataIdentifier, RangeDownload> downloads) {
+        this.backend = backend;
+        this.identifier = identifier;
+        this.length = length;
+        this.file = file;
+        this.cache = cache;
+        this.fileName = fileName;
+        this.downloads = downloads;
+    }
+
+    @Override
+    public void run() {
+        long startTime = System.currentTimeMillis();
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            byte[] buffer = new byte[64 * 1024];
+            long partSize = backend.getPartSize();
+            for (long offset = 0; offset < length; offset += partSize) {
+                InputStream in = backend.read(identifier, offset,
+                    Math.min(partSize, length - offset));
+                try {
+                    for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                        out.write(buffer, 0, n);
+                        advance(n);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            out.close();
+            out = null;
+            if (getDownloaded() != length) {
+                throw new IOException("Downloaded " + getDownloaded()
+                    + " of " + length + " bytes");
+            }
+            finish(null);
+            LOG.debug("Range download [{}] completed in [{}] ms.", identifier,
+                (System.currentTimeMillis() - startTime));
+        } catch (Exception e) {
+            LOG.warn("Range download [" + identifier + "] failed", e);
+            finish(e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            downloads.remove(identifier, this);
+        }
+    }
+
+    /**
+     * Returns a stream of the record that is served from the downloaded
+     * ranges, or null if the download is already done.
+     *
+     * @return the stream, or null
+     * @throws IOException if the temporary file could not be opened
+     */
+    synchronized InputStream newStream() throws IOException {
+        if (done) {
+            return null;
+        }
+        RangeInputStream in = new RangeInputStream(new RandomAccessFile(file, "r"));
+        readers++;
+        return in;
+    }
+
+    /**
+     * Deletes the temporary file of a download that was never started.
+     */
+    void discard() {
+        file.delete();
+    }
+
+    private synchronized long getDownloaded() {
+        return downloaded;
+    }
+
+    private synchronized void advance(int n) {
+        downloaded += n;
+        notifyAll();
+    }
+
+    private synchronized void finish(Exception failure) {
+        this.failure = failure;
+        done = true;
+        notifyAll();
+        if (failure == null) {
+            // moves the file, unless the cache doesn't admit it
+            cache.store(fileName, file);
+        }
+        if (readers == 0) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Waits until the byte at the given position is downloaded.
+     *
+     * @param position the position
+     * @return the number of bytes from the position that are downloaded, or
+     *         0 at the end of the record
+     * @throws IOException if the download failed
+     */
+    private synchronized long await(long position) throws IOException {
+        while (position < length && downloaded <= position && !done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for ["
+                    + identifier + "] to download");
+            }
+        }
+        if (position >= length) {
+            return 0;
+        } else if (downloaded > position) {
+            return downloaded - position;
+        }
+        throw new IOException("Download of [" + identifier + "] failed", failure);
+    }
+
+    private synchronized void closed() {
+        readers--;
+        if (done && readers == 0) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Stream of the temporary file that waits for the ranges to download.
+     */
+    private class RangeInputStream extends InputStream {
+
+        private final RandomAccessFile in;
+
+        private long position;
+
+        private boolean closed;
+
+        RangeInputStream(RandomAccessFile in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            } else if (len == 0) {
+                return 0;
+            }
+            long available = await(position);
+            if (available == 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, available));
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            in.seek(position);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE,
+                Math.max(0, getDownloaded() - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                in.close();
+                closed();
+            }
+        }
+
+    }
+
+}
@@ -22,8 +22,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
@@ -48,6 +50,7 @@ import org.slf4j.LoggerFactory;
  * <ul>
  * <li>{@link #exec(String, Object...)}</li>
  * <li>{@link #update(String, Object[])}</li>
+ * <li>{@link #updateBatch(String, List)}</li>
  * <li>{@link #exec(String, Object[], boolean, int)}</li>
  * </ul>
  *
@@ -353,6 +356,63 @@ public class ConnectionHelper {
         }
     }
 
+    /**
+     * Executes an update or delete statement once for each of the given
+     * parameter sets. The statement is prepared once and, if supported, all
+     * executions are sent to the database as a single JDBC batch, which
+     * saves a round trip per execution. Like all other statements, the batch
+     * is part of the current transaction if this helper is in batch mode.
+     *
+     * @param sql an SQL statement string
+     * @param paramsList the parameter sets, one per execution
+     * @return the update counts, one per execution; may be
+     *         {@link Statement#SUCCESS_NO_INFO} if the driver does not report them
+     * @throws SQLException on error
+     */
+    public final int[] updateBatch(final String sql, final List<Object[]> paramsList)
+            throws SQLException {
+        List<Object> allParams = new ArrayList<Object>();
+        for (Object[] params : paramsList) {
+            Collections.addAll(allParams, params);
+        }
+        return new RetryManager<int[]>(allParams.toArray()) {
+
+            @Override
+            protected int[] call() throws SQLException {
+                return reallyUpdateBatch(sql, paramsList);
+            }
+
+        }.doTry();
+    }
+
+    int[] reallyUpdateBatch(String sql, List<Object[]> paramsList) throws SQLException {
+        Connection con = null;
+        PreparedStatement stmt = null;
+        boolean inBatchMode = inBatchMode();
+        long start = System.currentTimeMillis();
+        try {
+            con = getConnection(inBatchMode);
+            stmt = con.prepareStatement(sql);
+            int[] counts = new int[paramsList.size()];
+            if (paramsList.size() > 1 && supportsBatchUpdates(con)) {
+                for (Object[] params : paramsList) {
+                    addBatch(stmt, params);
+                }
+                int[] result = stmt.executeBatch();
+                System.arraycopy(result, 0, counts, 0, Math.min(result.length, counts.length));
+            } else {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = execute(stmt, paramsList.get(i)).getUpdateCount();
+                }
+            }
+            return counts;
+        } finally {
+            closeResources(con, stmt, null, inBatchMode);
+            log.debug("SQL-Execution [{}] of {} parameter sets took [{}] ms.",
+                    new Object[] { sql, paramsList.size(), System.currentTimeMillis() - start });
+        }
+    }
+
     /**
      * Executes a SQL query and returns the {@link ResultSet}. The
      * returned {@link ResultSet} should be closed by clients.
@@ -512,6 +572,46 @@ public class ConnectionHelper {
      * @throws SQLException on error
      */
     protected PreparedStatement execute(PreparedStatement stmt, Object[] params) throws SQLException {
+        setParameters(stmt, params);
+        stmt.execute();
+        return stmt;
+    }
+
+    /**
+     * Sets the parameters of the given statement and adds them to its batch. Used by
+     * {@link #updateBatch(String, List)} if the database supports batch updates.
+     *
+     * @param stmt the {@link PreparedStatement} to add the parameters to
+     * @param params the parameters
+     * @throws SQLException on error
+     */
+    protected void addBatch(PreparedStatement stmt, Object[] params) throws SQLException {
+        setParameters(stmt, params);
+        stmt.addBatch();
+    }
+
+    /**
+     * Checks whether statements can be executed as JDBC batches on the given connection. This default
+     * implementation asks the driver. Subclasses that need to bind parameters in a special way in
+     * {@link #execute(PreparedStatement, Object[])} should return {@code false}, so that batches are
+     * executed statement by statement.
+     *
+     * @param con the connection
+     * @return whether batch updates are supported
+     * @throws SQLException on error
+     */
+    protected boolean supportsBatchUpdates(Connection con) throws SQLException {
+        return con.getMetaData().supportsBatchUpdates();
+    }
+
+    /**
+     * Sets the parameters of the given statement and unwraps {@link StreamWrapper} instances.
+     *
+     * @param stmt the {@link PreparedStatement}
+     * @param params the parameters
+     * @throws SQLException on error
+     */
+    private void setParameters(PreparedStatement stmt, Object[] params) throws SQLException {
         for (int i = 0; params != null && i < params.length; i++) {
             Object p = params[i];
             if (p instanceof StreamWrapper) {
@@ -521,8 +621,6 @@ public class ConnectionHelper {
                 stmt.setObject(i + 1, p);
             }
         }
-        stmt.execute();
-        return stmt;
     }
 
     /**
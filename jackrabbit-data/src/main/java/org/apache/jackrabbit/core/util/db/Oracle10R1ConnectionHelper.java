@@ -121,6 +121,17 @@ public final class Oracle10R1ConnectionHelper extends OracleConnectionHelper {
         }
     }
 
+    /**
+     * Temporary blobs can only be freed after the statement has been executed, so batches are
+     * executed statement by statement.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsBatchUpdates(Connection con) {
+        return false;
+    }
+
     /**
      * Creates a temporary oracle.sql.BLOB instance via reflection and spools the contents of the specified
      * stream.
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test {@link CachingFDS} with multipart uploads and ranged downloads.
+ */
+public class TestCachingFDSMultipart extends TestFileDataStore {
+
+    protected static final Logger LOG = LoggerFactory.getLogger(TestCachingFDSMultipart.class);
+
+    private static final int PART_SIZE = 16 * 1024;
+
+    /**
+     * Ranged reads after the first range wait for this latch, if set.
+     */
+    private volatile CountDownLatch rangeLatch;
+
+    protected DataStore createDataStore() throws RepositoryException {
+        CachingFDS cacheFDS = new CachingFDS() {
+            @Override
+            protected Backend createBackend() {
+                FSBackend backend = new FSBackend() {
+                    @Override
+                    public InputStream read(DataIdentifier identifier,
+                            long offset, long length) throws DataStoreException {
+                        CountDownLatch latch = rangeLatch;
+                        if (latch != null && offset > 0) {
+                            try {
+                                latch.await();
+                            } catch (InterruptedException e) {
+                                throw new DataStoreException(e);
+                            }
+                        }
+                        return super.read(identifier, offset, length);
+                    }
+                };
+                backend.setProperties(createProperties());
+                return backend;
+            }
+        };
+        cacheFDS.setSecret("12345");
+        // disable asynchronous writing in testing.
+        cacheFDS.setAsyncUploadLimit(0);
+        cacheFDS.setProactiveCaching(false);
+        cacheFDS.init(dataStoreDir);
+        return cacheFDS;
+    }
+
+    private Properties createProperties() {
+        Properties props = loadProperties("/fs.properties");
+        String pathValue = props.getProperty(FSBackend.FS_BACKEND_PATH);
+        if (pathValue != null && !"".equals(pathValue.trim())) {
+            fsPath = pathValue + "/cachingFds" + "-"
+                + String.valueOf(randomGen.nextInt(100000)) + "-"
+                + String.valueOf(randomGen.nextInt(100000));
+        } else {
+            fsPath = dataStoreDir + "/cachingFdsMultipart";
+        }
+        props.setProperty(FSBackend.FS_BACKEND_PATH, fsPath);
+        props.setProperty(FSBackend.FS_BACKEND_PART_SIZE, String.valueOf(PART_SIZE));
+        return props;
+    }
+
+    /**
+     * Test that a file larger than a part is uploaded in parts.
+     */
+    public void testUploadInParts() throws Exception {
+        FSBackend backend = new FSBackend();
+        backend.init(null, dataStoreDir, createProperties());
+        try {
+            File file = new File(dataStoreDir, "upload");
+            byte[] data = new byte[PART_SIZE * 3 + 100];
+            randomGen.nextBytes(data);
+            FileUtils.writeByteArrayToFile(file, data);
+            DataIdentifier identifier = new DataIdentifier("0123456789abcdef");
+            backend.write(identifier, file);
+
+            assertEquals(data.length, backend.getLength(identifier));
+            InputStream in = backend.read(identifier);
+            try {
+                assertEquals(new ByteArrayInputStream(data), in);
+            } finally {
+                in.close();
+            }
+            in = backend.read(identifier, PART_SIZE + 10, 20);
+            try {
+                byte[] range = IOUtils.toByteArray(in);
+                assertEquals(20, range.length);
+                for (int i = 0; i < range.length; i++) {
+                    assertEquals(data[PART_SIZE + 10 + i], range[i]);
+                }
+            } finally {
+                in.close();
+            }
+            Iterator<DataIdentifier> it = backend.getAllIdentifiers();
+            assertEquals(identifier, it.next());
+            assertFalse(it.hasNext());
+            assertEquals(0, new File(fsPath, ".uploads").list().length);
+        } finally {
+            backend.close();
+        }
+    }
+
+    /**
+     * Test that the stream of a record that is not cached is served before
+     * the record is downloaded.
+     */
+    public void testStreamWhileDownloading() throws Exception {
+        ds = createDataStore();
+        byte[] data = new byte[dataLength];
+        randomGen.nextBytes(data);
+        DataRecord rec = ds.addRecord(new ByteArrayInputStream(data));
+        DataIdentifier identifier = rec.getIdentifier();
+        ((CachingDataStore) ds).deleteFromCache(identifier);
+
+        rangeLatch = new CountDownLatch(1);
+        InputStream in = ds.getRecord(identifier).getStream();
+        try {
+            byte[] first = new byte[PART_SIZE];
+            IOUtils.readFully(in, first);
+            for (int i = 0; i < PART_SIZE; i++) {
+                assertEquals(data[i], first[i]);
+            }
+            rangeLatch.countDown();
+            byte[] rest = IOUtils.toByteArray(in);
+            assertEquals(data.length - PART_SIZE, rest.length);
+            for (int i = 0; i < rest.length; i++) {
+                assertEquals(data[PART_SIZE + i], rest[i]);
+            }
+        } finally {
+            in.close();
+            rangeLatch = null;
+        }
+        assertRecord(data, ds.getRecord(identifier));
+        ds.close();
+    }
+
+}
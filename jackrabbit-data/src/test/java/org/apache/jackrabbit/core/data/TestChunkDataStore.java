@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Test cases to test {@link ChunkDataStore}
+ */
+public class TestChunkDataStore extends TestCaseBase {
+
+    private String path;
+
+    @Override
+    protected DataStore createDataStore() throws RepositoryException {
+        ChunkDataStore cds = new ChunkDataStore();
+        path = dataStoreDir + "/repository/datastore";
+        cds.setPath(path);
+        cds.setMinChunkSize(1024);
+        cds.setAverageChunkSize(4096);
+        cds.setMaxChunkSize(16384);
+        cds.init(dataStoreDir);
+        return cds;
+    }
+
+    @Override
+    protected void tearDown() {
+        FileUtils.deleteQuietly(new File(path));
+        super.tearDown();
+    }
+
+    /**
+     * Test that a binary with bytes inserted in the middle only stores the
+     * chunks around the change again.
+     */
+    public void testModifiedBinarySharesChunks() throws Exception {
+        ds = createDataStore();
+        byte[] data = new byte[1024 * 1024];
+        new Random(1).nextBytes(data);
+        DataRecord rec1 = ds.addRecord(new ByteArrayInputStream(data));
+        long size = chunkBytes();
+        assertEquals(data.length, size);
+
+        byte[] modified = new byte[data.length + 10];
+        System.arraycopy(data, 0, modified, 0, 500000);
+        System.arraycopy(data, 500000, modified, 500010, data.length - 500000);
+        DataRecord rec2 = ds.addRecord(new ByteArrayInputStream(modified));
+        assertFalse(rec1.equals(rec2));
+        assertTrue("too many new chunks: " + (chunkBytes() - size),
+                chunkBytes() - size < 4 * 16384);
+
+        assertRecord(data, ds.getRecord(rec1.getIdentifier()));
+        assertRecord(modified, ds.getRecord(rec2.getIdentifier()));
+
+        // the same binary is stored only once
+        DataRecord rec3 = ds.addRecord(new ByteArrayInputStream(modified));
+        assertEquals(rec2, rec3);
+        ds.close();
+    }
+
+    /**
+     * Test reading ranges of a record with skip.
+     */
+    public void testSkip() throws Exception {
+        ds = createDataStore();
+        byte[] data = new byte[200000];
+        new Random(2).nextBytes(data);
+        DataRecord rec = ds.addRecord(new ByteArrayInputStream(data));
+        for (int offset : new int[] { 0, 1, 1023, 70000, 199999, 200000 }) {
+            InputStream in = rec.getStream();
+            try {
+                assertEquals(offset, in.skip(offset));
+                byte[] range = new byte[Math.min(5000, data.length - offset)];
+                assertEquals(range.length, IOUtils.read(in, range));
+                for (int i = 0; i < range.length; i++) {
+                    assertEquals(data[offset + i], range[i]);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        InputStream in = rec.getStream();
+        assertEquals(data.length, in.skip(data.length + 100));
+        assertEquals(-1, in.read());
+        in.close();
+        ds.close();
+    }
+
+    /**
+     * Test that deleting old records deletes the chunks that are no longer
+     * referenced, and keeps the chunks that other records use.
+     */
+    public void testDeleteUnusedChunks() throws Exception {
+        ds = createDataStore();
+        byte[] data = new byte[300000];
+        new Random(3).nextBytes(data);
+        byte[] shared = new byte[data.length];
+        System.arraycopy(data, 0, shared, 0, data.length / 2);
+        new Random(4).nextBytes(data);
+        System.arraycopy(shared, 0, data, 0, data.length / 2);
+        byte[] other = new byte[data.length];
+        new Random(5).nextBytes(other);
+        System.arraycopy(shared, 0, other, 0, other.length / 2);
+
+        DataRecord rec1 = ds.addRecord(new ByteArrayInputStream(data));
+        DataRecord rec2 = ds.addRecord(new ByteArrayInputStream(other));
+        long both = chunkBytes();
+
+        sleep(2000);
+        long updateTime = System.currentTimeMillis();
+        ds.updateModifiedDateOnAccess(updateTime);
+        sleep(1000);
+        rec2 = ds.getRecord(rec2.getIdentifier());
+        ds.clearInUse();
+        assertEquals(1, ds.deleteAllOlderThan(updateTime));
+        ds.updateModifiedDateOnAccess(0);
+
+        assertNull(ds.getRecordIfStored(rec1.getIdentifier()));
+        assertRecord(other, ds.getRecord(rec2.getIdentifier()));
+        long remaining = chunkBytes();
+        assertTrue(remaining < both);
+        assertTrue(remaining >= other.length);
+        assertTrue(remaining < other.length + 2 * 16384);
+        ds.close();
+    }
+
+    private long chunkBytes() {
+        return FileUtils.sizeOfDirectory(new File(path, "chunks"));
+    }
+
+}
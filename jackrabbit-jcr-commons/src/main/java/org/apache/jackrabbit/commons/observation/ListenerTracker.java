@@ -156,6 +156,24 @@ public class ListenerTracker {
         this.headTimestamp.set(length == 0 ? 0 : headTimestamp);
     }
 
+    /**
+     * Applications that deliver events to the listener directly instead of
+     * through the {@link #getTrackedListener() tracked listener} should call
+     * this after each {@code onEvent()} call to record the delivery.
+     *
+     * @param events number of events delivered by the call
+     * @param time   the time taken by the call
+     * @param unit   the time unit
+     */
+    public void recordEventDelivery(long events, long time, TimeUnit unit) {
+        long nanos = unit.toNanos(time);
+        eventDeliveries.incrementAndGet();
+        eventsDelivered.addAndGet(events);
+        eventDeliveryTime.addAndGet(nanos);
+        eventCount.getCounter().addAndGet(events);
+        eventConsumerTime.getCounter().addAndGet(nanos);
+    }
+
     /**
      * Records the number of measured values over the past second and resets
      * the counter. This method should be scheduled to be called once per
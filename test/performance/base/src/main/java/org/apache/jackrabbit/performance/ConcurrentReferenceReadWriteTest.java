@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.performance;
+
+import java.util.Random;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Test case that looks up the references to randomly selected referenceable
+ * nodes while a single writer thread continuously updates reference
+ * properties pointing to these nodes. Reference lookups are not cached by
+ * the item state managers, so this test measures how much the readers are
+ * held up by concurrent saves in the persistence manager.
+ */
+public class ConcurrentReferenceReadWriteTest extends AbstractTest {
+
+    private static final int NODE_COUNT = 100;
+
+    private static final int READER_COUNT = getScale(20);
+
+    private Session session;
+
+    private Node root;
+
+    public void beforeSuite() throws Exception {
+        session = loginWriter();
+        root = session.getRootNode().addNode("testroot", "nt:unstructured");
+        for (int i = 0; i < NODE_COUNT; i++) {
+            Node target = root.addNode("target" + i, "nt:unstructured");
+            target.addMixin("mix:referenceable");
+            root.addNode("source" + i, "nt:unstructured");
+        }
+        session.save();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            root.getNode("source" + i).setProperty(
+                    "ref", root.getNode("target" + i));
+        }
+        session.save();
+
+        for (int i = 0; i < READER_COUNT; i++) {
+            addBackgroundJob(new Reader());
+        }
+        addBackgroundJob(new Writer());
+    }
+
+    private class Reader implements Runnable {
+
+        private final Session session = loginReader();
+
+        private final Random random = new Random();
+
+        public void run() {
+            try {
+                int i = random.nextInt(NODE_COUNT);
+                session.getRootNode().getNode(
+                        "testroot/target" + i).getReferences().getSize();
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+    }
+
+    private class Writer implements Runnable {
+
+        private final Session session = loginWriter();
+
+        private final Random random = new Random();
+
+        public void run() {
+            try {
+                int i = random.nextInt(NODE_COUNT);
+                int j = random.nextInt(NODE_COUNT);
+                Node testroot = session.getRootNode().getNode("testroot");
+                testroot.getNode("source" + i).setProperty(
+                        "ref", testroot.getNode("target" + j));
+                session.save();
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+    }
+
+    public void runTest() throws Exception {
+        Reader reader = new Reader();
+        for (int i = 0; i < 1000; i++) {
+            reader.run();
+        }
+    }
+
+    public void afterSuite() throws Exception {
+        session.refresh(false);
+        for (int i = 0; i < NODE_COUNT; i++) {
+            root.getNode("source" + i).remove();
+        }
+        session.save();
+        root.remove();
+        session.save();
+    }
+
+}